@@ -66,6 +66,11 @@ public final class Config {
      */
     public static final String SMART_PLAYLIST_TYPE = "smart_playlist_type";
 
+    /**
+     * The path of a folder passed to the folder browser
+     */
+    public static final String FOLDER_PATH = "folder_path";
+
     public enum SmartPlaylistType {
         LastAdded(-1, R.string.playlist_last_added),
         RecentlyPlayed(-2, R.string.playlist_recently_played),
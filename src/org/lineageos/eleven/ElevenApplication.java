@@ -23,6 +23,8 @@ import android.os.StrictMode.ThreadPolicy;
 import android.os.StrictMode.VmPolicy;
 
 import org.lineageos.eleven.cache.ImageCache;
+import org.lineageos.eleven.provider.PlaylistCountStore;
+import org.lineageos.eleven.provider.SmartPlaylistStore;
 
 public class ElevenApplication extends Application {
     @Override
@@ -32,6 +34,10 @@ public class ElevenApplication extends Application {
         if (BuildConfig.DEBUG) {
             enableStrictMode();
         }
+
+        // start following MediaStore changes before any playlist count is read
+        PlaylistCountStore.getInstance(this);
+        SmartPlaylistStore.getInstance(this);
     }
 
     @Override
@@ -51,6 +51,7 @@ import android.media.session.MediaSession;
 import android.media.session.PlaybackState;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
@@ -64,7 +65,6 @@ import android.provider.MediaStore.Audio.AlbumColumns;
 import android.provider.MediaStore.Audio.AudioColumns;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.LongSparseArray;
 import android.view.KeyEvent;
 
 import androidx.annotation.NonNull;
@@ -73,10 +73,15 @@ import org.lineageos.eleven.Config.IdType;
 import org.lineageos.eleven.appwidgets.AppWidgetLarge;
 import org.lineageos.eleven.appwidgets.AppWidgetLargeAlternate;
 import org.lineageos.eleven.appwidgets.AppWidgetSmall;
+import org.lineageos.eleven.cache.ArtworkKey;
 import org.lineageos.eleven.cache.ImageCache;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.provider.GenreIndex;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.provider.MusicCatalog;
 import org.lineageos.eleven.provider.MusicPlaybackState;
 import org.lineageos.eleven.provider.RecentStore;
+import org.lineageos.eleven.provider.SmartPlaylistStore;
 import org.lineageos.eleven.provider.SongPlayCount;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.utils.Lists;
@@ -93,6 +98,7 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Objects;
 import java.util.Random;
 import java.util.TreeSet;
 
@@ -216,6 +222,12 @@ public class MusicPlaybackService extends Service
      */
     public static final String REFRESH = PKG_NAME + ".refresh";
 
+    /**
+     * Extra of {@link #REFRESH} with the {@link MediaStoreChanges} flags of the lists that
+     * have to refresh
+     */
+    public static final String REFRESH_CHANGES = "changes";
+
     /**
      * Used by the alarm intent to shutdown the service after being idle
      */
@@ -516,7 +528,8 @@ public class MusicPlaybackService extends Service
     private BroadcastReceiver mUnmountReceiver = null;
 
     // to improve perf, instead of hitting the disk cache or file cache, store the bitmaps in memory
-    private String mCachedKey;
+    private ArtworkKey mCachedKey;
+    private long mCachedAlbumId = -1;
     private final BitmapWithColors[] mCachedBitmapWithColors = new BitmapWithColors[2];
 
     private QueueUpdateTask mQueueUpdateTask;
@@ -536,6 +549,16 @@ public class MusicPlaybackService extends Service
      */
     private SongPlayCount mSongPlayCountCache;
 
+    /**
+     * The user defined smart playlists, which follow the plays
+     */
+    private SmartPlaylistStore mSmartPlaylistStore;
+
+    /**
+     * The genres of the songs, shown in the media session
+     */
+    private GenreIndex mGenreIndex;
+
     /**
      * Stores the playback state
      */
@@ -608,6 +631,12 @@ public class MusicPlaybackService extends Service
         // gets the song play count cache
         mSongPlayCountCache = SongPlayCount.getInstance(this);
 
+        // gets the smart playlists that depend on plays
+        mSmartPlaylistStore = SmartPlaylistStore.getInstance(this);
+
+        // starts building the genre index
+        mGenreIndex = GenreIndex.getInstance(this);
+
         // gets a pointer to the playback state store
         mPlaybackStateStore = MusicPlaybackState.getInstance(this);
 
@@ -669,6 +698,8 @@ public class MusicPlaybackService extends Service
                 MediaStore.Audio.Media.INTERNAL_CONTENT_URI, true, mMediaStoreObserver);
         getContentResolver().registerContentObserver(
                 MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, mMediaStoreObserver);
+        getContentResolver().registerContentObserver(
+                MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI, true, mMediaStoreObserver);
 
         // Initialize the delayed shutdown intent
         final Intent shutdownIntent = new Intent(this, MusicPlaybackService.class);
@@ -1469,6 +1500,16 @@ public class MusicPlaybackService extends Service
      * Notify the change-receivers that something has changed.
      */
     private void notifyChange(final String what) {
+        notifyChange(what, null);
+    }
+
+    /**
+     * Notify the change-receivers that something has changed, with additional extras.
+     *
+     * @param what   the action of the change
+     * @param extras additional extras of the change intent or null
+     */
+    private void notifyChange(final String what, final Bundle extras) {
         if (D) Log.d(TAG, "notifyChange: what = " + what);
 
         // Update the lockscreen controls
@@ -1488,6 +1529,9 @@ public class MusicPlaybackService extends Service
         if (NEW_LYRICS.equals(what)) {
             intent.putExtra("lyrics", mLyrics);
         }
+        if (extras != null) {
+            intent.putExtras(extras);
+        }
 
         sendStickyBroadcast(intent);
 
@@ -1500,6 +1544,8 @@ public class MusicPlaybackService extends Service
             mRecentsCache.addSongId(getAudioId());
 
             mSongPlayCountCache.bumpSongCount(getAudioId());
+
+            mSmartPlaylistStore.onSongPlayed(getAudioId());
         } else if (QUEUE_CHANGED.equals(what) || QUEUE_MOVED.equals(what)) {
             saveQueue(true);
             if (isPlaying()) {
@@ -1966,6 +2012,37 @@ public class MusicPlaybackService extends Service
         return numremoved;
     }
 
+    /**
+     * Removes all instances of several tracks from the playlist at once
+     *
+     * @param ids The ids to be removed
+     * @return how many instances of the tracks were removed
+     */
+    public int removeTrackIds(final long[] ids) {
+        final long[] sortedIds = Arrays.copyOf(ids, ids.length);
+        Arrays.sort(sortedIds);
+
+        int numremoved = 0;
+        synchronized (this) {
+            // walk backwards and remove each run of matching tracks with a single call
+            int last = -1;
+            for (int i = mPlaylist.size() - 1; i >= -1; i--) {
+                final boolean matches = i >= 0
+                        && Arrays.binarySearch(sortedIds, mPlaylist.get(i).mId) >= 0;
+                if (matches && last < 0) {
+                    last = i;
+                } else if (!matches && last >= 0) {
+                    numremoved += removeTracksInternal(i + 1, last);
+                    last = -1;
+                }
+            }
+        }
+        if (numremoved > 0) {
+            notifyChange(QUEUE_CHANGED);
+        }
+        return numremoved;
+    }
+
     /**
      * Removes a song from the playlist at the specified position.
      *
@@ -2101,22 +2178,7 @@ public class MusicPlaybackService extends Service
             if (mCursor == null || mPlayPos < 0 || mPlayPos >= mPlaylist.size()) {
                 return null;
             }
-            String[] genreProjection = {MediaStore.Audio.Genres.NAME};
-            Uri genreUri = MediaStore.Audio.Genres.getContentUriForAudioId("external",
-                    (int) mPlaylist.get(mPlayPos).mId);
-            Cursor genreCursor = getContentResolver().query(genreUri, genreProjection,
-                    null, null, null);
-            if (genreCursor != null) {
-                try {
-                    if (genreCursor.moveToFirst()) {
-                        return genreCursor.getString(
-                                genreCursor.getColumnIndexOrThrow(MediaStore.Audio.Genres.NAME));
-                    }
-                } finally {
-                    genreCursor.close();
-                }
-            }
-            return null;
+            return mGenreIndex.getGenreName(mPlaylist.get(mPlayPos).mId);
         }
     }
 
@@ -2828,25 +2890,29 @@ public class MusicPlaybackService extends Service
         final String albumName = getAlbumName();
         final String artistName = getArtistName();
         final long albumId = getAlbumId();
-        final String key = albumName + "_" + artistName + "_" + albumId;
+        // the same key the album views cache the artwork under
+        final ArtworkKey key = ArtworkKey.forAlbum(albumName, artistName);
+        final boolean sameAlbum = Objects.equals(key, mCachedKey) && albumId == mCachedAlbumId;
         final int targetIndex = smallBitmap ? 0 : 1;
 
         // if the cached key matches and we have the bitmap, return it
-        if (key.equals(mCachedKey) && mCachedBitmapWithColors[targetIndex] != null) {
+        if (sameAlbum && mCachedBitmapWithColors[targetIndex] != null) {
             return mCachedBitmapWithColors[targetIndex];
         }
 
         // otherwise get the artwork (or default artwork if none found)
-        final BitmapWithColors bitmap = mImageFetcher.getArtwork(albumName, albumId, smallBitmap);
+        final BitmapWithColors bitmap = mImageFetcher.getArtwork(albumName, artistName, albumId,
+                smallBitmap);
 
         // if the key is different, clear the bitmaps first
-        if (!key.equals(mCachedKey)) {
+        if (!sameAlbum) {
             mCachedBitmapWithColors[0] = null;
             mCachedBitmapWithColors[1] = null;
         }
 
         // store the new key and bitmap
         mCachedKey = key;
+        mCachedAlbumId = albumId;
         mCachedBitmapWithColors[targetIndex] = bitmap;
         return bitmap;
     }
@@ -2855,7 +2921,18 @@ public class MusicPlaybackService extends Service
      * Called when one of the lists should refresh or requery.
      */
     public void refresh() {
-        notifyChange(REFRESH);
+        refresh(MediaStoreChanges.ALL);
+    }
+
+    /**
+     * Called when only some of the lists should refresh or requery.
+     *
+     * @param changes the {@link MediaStoreChanges} flags of the lists to refresh
+     */
+    private void refresh(final int changes) {
+        final Bundle extras = new Bundle();
+        extras.putInt(REFRESH_CHANGES, changes);
+        notifyChange(REFRESH, extras);
     }
 
     /**
@@ -2939,6 +3016,7 @@ public class MusicPlaybackService extends Service
         // milliseconds to delay before calling refresh to aggregate events
         private static final long REFRESH_DELAY = 500;
         private final Handler mHandler;
+        private final MediaStoreChanges mChanges = new MediaStoreChanges();
 
         public MediaStoreObserver(Handler handler) {
             super(handler);
@@ -2946,10 +3024,17 @@ public class MusicPlaybackService extends Service
         }
 
         @Override
-        public void onChange(boolean selfChange) {
-            // if a change is detected, remove any scheduled callback
-            // then post a new one. This is intended to prevent closely
+        public void onChange(boolean selfChange, Uri uri) {
+            // only called directly before R, which doesn't report the kind of change
+            onChange(selfChange, uri, 0);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri, int flags) {
+            // remember which lists are affected, then remove any scheduled
+            // callback and post a new one. This is intended to prevent closely
             // spaced events from generating multiple refresh calls
+            mChanges.add(uri, flags);
             mHandler.removeCallbacks(this);
             mHandler.postDelayed(this, REFRESH_DELAY);
         }
@@ -2957,8 +3042,9 @@ public class MusicPlaybackService extends Service
         @Override
         public void run() {
             // actually call refresh when the delayed callback fires
-            Log.e("ELEVEN", "calling refresh!");
-            refresh();
+            final int changes = mChanges.getAndReset();
+            if (D) Log.d(TAG, "MediaStore changed, refreshing " + changes);
+            refresh(changes);
         }
     }
 
@@ -3630,6 +3716,11 @@ public class MusicPlaybackService extends Service
             return mService.get().removeTrack(id);
         }
 
+        @Override
+        public int removeTrackIds(final long[] ids) {
+            return mService.get().removeTrackIds(ids);
+        }
+
         @Override
         public boolean removeTrackAtPosition(final long id, final int position) {
             return mService.get().removeTrackAtPosition(id, position);
@@ -3665,53 +3756,29 @@ public class MusicPlaybackService extends Service
                 return null;
             }
 
-            final StringBuilder selection = new StringBuilder();
-            selection.append(MediaStore.Audio.Media._ID).append(" IN (");
-            for (int i = 0; i < mQueue.length; i++) {
-                if (i != 0) {
-                    selection.append(",");
-                }
-                selection.append(mQueue[i]);
+            final MusicCatalog catalog = MusicCatalog.getInstance(MusicPlaybackService.this);
+            MusicCatalog.Snapshot snapshot = catalog.getQueueSnapshot(mQueue);
+            if (snapshot == null) {
+                snapshot = catalog.getSnapshot(mQueue);
             }
-            selection.append(")");
 
-            Cursor c = getContentResolver().query(
-                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                    new String[]{AudioColumns._ID, AudioColumns.TITLE, AudioColumns.ARTIST},
-                    selection.toString(), null, null);
-            if (c == null) {
-                return null;
-            }
-
-            try {
-                LongSparseArray<MediaDescription> descsById = new LongSparseArray<>();
-                final int idColumnIndex = c.getColumnIndexOrThrow(AudioColumns._ID);
-                final int titleColumnIndex = c.getColumnIndexOrThrow(AudioColumns.TITLE);
-                final int artistColumnIndex = c.getColumnIndexOrThrow(AudioColumns.ARTIST);
-
-                while (c.moveToNext() && !isCancelled()) {
-                    final MediaDescription desc = new MediaDescription.Builder()
-                            .setTitle(c.getString(titleColumnIndex))
-                            .setSubtitle(c.getString(artistColumnIndex))
+            List<MediaSession.QueueItem> items = new ArrayList<>();
+            for (int i = 0; i < mQueue.length && !isCancelled(); i++) {
+                final int row = snapshot.indexOfSong(mQueue[i]);
+                final MediaDescription desc;
+                if (row >= 0) {
+                    desc = new MediaDescription.Builder()
+                            .setTitle(snapshot.getSongTitle(row))
+                            .setSubtitle(snapshot.getSongArtist(row))
                             .build();
-                    final long id = c.getLong(idColumnIndex);
-                    descsById.put(id, desc);
-                }
-
-                List<MediaSession.QueueItem> items = new ArrayList<>();
-                for (int i = 0; i < mQueue.length; i++) {
-                    MediaDescription desc = descsById.get(mQueue[i]);
-                    if (desc == null) {
-                        // shouldn't happen except in corner cases like
-                        // music being deleted while we were processing
-                        desc = new MediaDescription.Builder().build();
-                    }
-                    items.add(new MediaSession.QueueItem(desc, i));
+                } else {
+                    // shouldn't happen except in corner cases like
+                    // music being deleted while we were processing
+                    desc = new MediaDescription.Builder().build();
                 }
-                return items;
-            } finally {
-                c.close();
+                items.add(new MediaSession.QueueItem(desc, i));
             }
+            return items;
         }
 
         @Override
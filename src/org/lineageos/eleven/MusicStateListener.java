@@ -16,16 +16,26 @@
  */
 package org.lineageos.eleven;
 
+import org.lineageos.eleven.provider.MediaStoreChanges;
+
 /**
  * Listens for playback changes to send the the fragments bound to this activity
  */
 public interface MusicStateListener {
 
     /**
-     * Called when {@link MusicPlaybackService#REFRESH} is invoked
+     * Called when {@link MusicPlaybackService#REFRESH} is invoked for any of the
+     * {@link #getRefreshChanges()}
      */
     void restartLoader();
 
+    /**
+     * @return the {@link MediaStoreChanges} flags of the content shown by the listener
+     */
+    default int getRefreshChanges() {
+        return MediaStoreChanges.ALL;
+    }
+
     /**
      * Called when {@link MusicPlaybackService#PLAYLIST_CHANGED} is invoked
      */
@@ -26,11 +26,13 @@ import androidx.annotation.NonNull;
 import androidx.fragment.app.FragmentActivity;
 import androidx.recyclerview.widget.RecyclerView;
 
+import org.lineageos.eleven.cache.ArtworkSize;
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.model.Album;
 import org.lineageos.eleven.ui.MusicHolder;
 import org.lineageos.eleven.ui.MusicHolder.DataHolder;
 import org.lineageos.eleven.utils.ElevenUtils;
+import org.lineageos.eleven.utils.ListDiffer;
 import org.lineageos.eleven.widgets.IPopupMenuCallback;
 
 import java.util.Collections;
@@ -59,6 +61,8 @@ public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements I
      */
     private DataHolder[] mData = new DataHolder[0];
     private List<Album> mAlbums = Collections.emptyList();
+    private final ListDiffer<Album> mDiffer = new ListDiffer<>(this, album -> album.mAlbumId,
+            mAlbums);
 
     /**
      * Used to listen to the pop up menu callbacks
@@ -102,22 +106,31 @@ public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements I
     @Override
     public void onBindViewHolder(@NonNull MusicHolder holder, int position) {
         // Retrieve the data holder
-        final DataHolder dataHolder = mData[position];
-
-        // set the pop up menu listener
-        holder.mPopupMenuButton.get().setPopupMenuClickedListener(mListener);
-        // Sets the position each time because of recycling
-        holder.mPopupMenuButton.get().setPosition(position);
+        final DataHolder dataHolder = getDataHolder(position);
+
+        // set the pop up menu listener, unchanged rows aren't rebound when the list is
+        // refreshed so the position is read when the menu is clicked
+        holder.mPopupMenuButton.get().setPopupMenuClickedListener((v, p) -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (mListener != null && adapterPosition != RecyclerView.NO_POSITION) {
+                mListener.onPopupMenuClicked(v, adapterPosition);
+            }
+        });
         // Set each album name (line one)
         holder.mLineOne.get().setText(dataHolder.lineOne);
         // Set the artist name (line two)
         holder.mLineTwo.get().setText(dataHolder.lineTwo);
         // Set click listener
-        holder.itemView.setOnClickListener(v -> mOnItemClickedListener.accept(getItem(position)));
+        holder.itemView.setOnClickListener(v -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (adapterPosition != RecyclerView.NO_POSITION) {
+                mOnItemClickedListener.accept(getItem(adapterPosition));
+            }
+        });
         // Asynchronously load the album images into the adapter
         mImageFetcher.loadAlbumImage(
                 dataHolder.lineTwo, dataHolder.lineOne,
-                dataHolder.itemId, holder.mImage.get());
+                dataHolder.itemId, holder.mImage.get(), ArtworkSize.GRID);
     }
 
     @Override
@@ -126,49 +139,37 @@ public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements I
     }
 
     /**
-     * Method used to cache the data used to populate the list or grid. The idea
-     * is to cache everything before {@code #getView(int, View, ViewGroup)} is
-     * called.
+     * Method used to cache the data used to populate the list or grid. The data holders
+     * are only built once a position is bound, so a large library doesn't have to create
+     * every album up front.
      */
     public void buildCache() {
         mData = new DataHolder[mAlbums.size()];
-        int i = 0;
-        for (Album album : mAlbums) {
-            mData[i] = new DataHolder();
-            mData[i].itemId = album.mAlbumId;
-            mData[i].lineOne = album.mAlbumName;
-            mData[i].lineTwo = album.mArtistName;
-            i++;
+    }
+
+    private DataHolder getDataHolder(final int position) {
+        if (mData[position] == null) {
+            final Album album = getItem(position);
+            final DataHolder dataHolder = new DataHolder();
+            dataHolder.itemId = album.mAlbumId;
+            dataHolder.lineOne = album.mAlbumName;
+            dataHolder.lineTwo = album.mArtistName;
+            mData[position] = dataHolder;
         }
+        return mData[position];
     }
 
     public void setData(List<Album> albums) {
-        int oldSize = mAlbums == null ? 0 : mAlbums.size();
-        int newSize = albums.size();
-
-        mAlbums = albums;
-        buildCache();
-
-        if (oldSize == 0) {
-            notifyItemRangeInserted(0, newSize);
-        } else {
-            int diff = oldSize - newSize;
-            if (diff > 0) {
-                // Items were removed
-                notifyItemRangeChanged(0, newSize);
-                notifyItemRangeRemoved(newSize, diff);
-            } else if (diff < 0) {
-                // Items were added
-                notifyItemRangeChanged(0, oldSize);
-                notifyItemRangeInserted(oldSize, diff * -1);
-            } else {
-                notifyItemChanged(0, oldSize);
-            }
-        }
+        // only rebind the rows that changed, the diff is calculated in the background
+        mDiffer.submitList(albums, () -> {
+            mAlbums = albums;
+            buildCache();
+        });
     }
 
     public void unload() {
         int size = mAlbums.size();
+        mDiffer.cancel();
         mAlbums.clear();
         notifyItemRangeRemoved(0, size);
     }
@@ -34,6 +34,7 @@ import androidx.fragment.app.FragmentStatePagerAdapter;
 import org.lineageos.eleven.BuildConstants;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ArtworkSize;
 import org.lineageos.eleven.model.AlbumArtistDetails;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -253,7 +254,8 @@ public class AlbumArtPagerAdapter extends FragmentStatePagerAdapter {
                     details.mArtistName,
                     details.mAlbumName,
                     details.mAlbumId,
-                    mImageView
+                    mImageView,
+                    ArtworkSize.FULL
             );
         }
     }
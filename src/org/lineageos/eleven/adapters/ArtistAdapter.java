@@ -31,6 +31,7 @@ import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.model.Artist;
 import org.lineageos.eleven.ui.MusicHolder;
 import org.lineageos.eleven.utils.ElevenUtils;
+import org.lineageos.eleven.utils.ListDiffer;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.widgets.IPopupMenuCallback;
 
@@ -60,6 +61,7 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
      * Used to cache the artist info
      */
     private List<Artist> mArtists;
+    private final ListDiffer<Artist> mDiffer;
 
     /**
      * Used to listen to the pop up menu callbacks
@@ -84,6 +86,7 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
         mImageFetcher = ElevenUtils.getImageFetcher(context);
         mOnItemClickListener = onItemClickListener;
         mArtists = new ArrayList<>(0);
+        mDiffer = new ListDiffer<>(this, artist -> artist.mArtistId, mArtists);
     }
 
     @NonNull
@@ -101,9 +104,21 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
         String songNumber = MusicUtils.makeLabel(mContext,
                 R.plurals.Nsongs, artist.mSongNumber);
 
-        holder.itemView.setOnClickListener(v -> mOnItemClickListener.accept(position));
+        // unchanged rows aren't rebound when the list is refreshed, so read the position when
+        // the row is clicked
+        holder.itemView.setOnClickListener(v -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (adapterPosition != RecyclerView.NO_POSITION) {
+                mOnItemClickListener.accept(adapterPosition);
+            }
+        });
         // set the pop up menu listener
-        holder.mPopupMenuButton.get().setPopupMenuClickedListener(mListener);
+        holder.mPopupMenuButton.get().setPopupMenuClickedListener((v, p) -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (mListener != null && adapterPosition != RecyclerView.NO_POSITION) {
+                mListener.onPopupMenuClicked(v, adapterPosition);
+            }
+        });
         // Set each artist name (line one)
         holder.mLineOne.get().setText(artist.mArtistName);
         // Set the number of albums (line two)
@@ -111,8 +126,6 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
                 albumNumber, songNumber));
         // Asynchronously load the artist image into the adapter
         mImageFetcher.loadArtistImage(artist.mArtistName, holder.mImage.get());
-        // because of recycling, we need to set the position each time
-        holder.mPopupMenuButton.get().setPosition(position);
     }
 
     @Override
@@ -125,6 +138,7 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
      */
     public void unload() {
         int size = mArtists.size();
+        mDiffer.cancel();
         mArtists.clear();
         notifyItemRangeRemoved(0, size);
     }
@@ -146,26 +160,7 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
     }
 
     public void setData(List<Artist> artists) {
-        int oldSize = mArtists == null ? 0 : mArtists.size();
-        int newSize = artists.size();
-
-        mArtists = artists;
-
-        if (oldSize == 0) {
-            notifyItemRangeInserted(0, newSize);
-        } else {
-            int diff = oldSize - newSize;
-            if (diff > 0) {
-                // Items were removed
-                notifyItemRangeChanged(0, newSize);
-                notifyItemRangeRemoved(newSize, diff);
-            } else if (diff < 0) {
-                // Items were added
-                notifyItemRangeChanged(0, oldSize);
-                notifyItemRangeInserted(oldSize, diff * -1);
-            } else {
-                notifyItemChanged(0, oldSize);
-            }
-        }
+        // only rebind the rows that changed, the diff is calculated in the background
+        mDiffer.submitList(artists, () -> mArtists = artists);
     }
 }
@@ -29,6 +29,7 @@ import androidx.fragment.app.FragmentActivity;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ArtworkSize;
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.model.Album;
 import org.lineageos.eleven.utils.ElevenUtils;
@@ -113,7 +114,7 @@ public class ArtistDetailAlbumAdapter
         }
         holder.description.setText(sb.toString());
         mImageFetcher.loadAlbumImage(
-                a.mArtistName, a.mAlbumName, a.mAlbumId, holder.art);
+                a.mArtistName, a.mAlbumName, a.mAlbumId, holder.art, ArtworkSize.GRID);
         holder.popupButton.setPopupMenuClickedListener(mListener);
         holder.popupButton.setPosition(position);
         addAction(holder.itemView, a);
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.adapters;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.FolderTree;
+import org.lineageos.eleven.ui.MusicHolder;
+import org.lineageos.eleven.utils.ElevenUtils;
+import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.widgets.IPopupMenuCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This {@link RecyclerView.Adapter} is used to display the sub folders of a folder followed by
+ * the songs directly in it.
+ */
+public class FolderAdapter extends RecyclerView.Adapter<MusicHolder> implements
+        IPopupMenuCallback {
+
+    /**
+     * Used to identify the view type
+     */
+    private static final int FOLDER_VIEW_TYPE = 0;
+
+    /**
+     * Used to identify the view type
+     */
+    private static final int SONG_VIEW_TYPE = 1;
+
+    private final List<FolderTree.Folder> mFolders = new ArrayList<>();
+    private final List<Song> mSongs = new ArrayList<>();
+
+    /**
+     * Used to listen to the pop up menu callbacks
+     */
+    private IListener mListener;
+
+    /**
+     * Used to listen to item clicks.
+     */
+    private final Consumer<Integer> mOnItemClickListener;
+
+    private final Context mContext;
+    private final ImageFetcher mImageFetcher;
+
+    /**
+     * Constructor of <code>FolderAdapter</code>
+     *
+     * @param context             The {@link Context} to use.
+     * @param onItemClickListener Called with the position of a clicked folder or song
+     */
+    public FolderAdapter(final Context context, final Consumer<Integer> onItemClickListener) {
+        mContext = context;
+        mOnItemClickListener = onItemClickListener;
+        mImageFetcher = ElevenUtils.getImageFetcher(context);
+    }
+
+    @NonNull
+    @Override
+    public MusicHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new MusicHolder(LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.list_item_normal, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull MusicHolder holder, int position) {
+        holder.itemView.setOnClickListener(v -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (adapterPosition != RecyclerView.NO_POSITION) {
+                mOnItemClickListener.accept(adapterPosition);
+            }
+        });
+
+        final FolderTree.Folder folder = getFolder(position);
+        if (folder != null) {
+            holder.mLineOne.get().setText(folder.mName);
+            holder.mLineTwo.get().setText(MusicUtils.makeLabel(mContext, R.plurals.Nsongs,
+                    folder.getSongCount()));
+            holder.mLineOneRight.get().setVisibility(View.GONE);
+            holder.mPopupMenuButton.get().setVisibility(View.GONE);
+            holder.mImage.get().setImageResource(R.drawable.folder_icon);
+            return;
+        }
+
+        final Song song = getSong(position);
+        holder.mLineOne.get().setText(song.mSongName);
+        holder.mLineTwo.get().setText(MusicUtils.makeCombinedString(mContext, song.mArtistName,
+                song.mAlbumName));
+        holder.mLineOneRight.get().setVisibility(View.VISIBLE);
+        holder.mLineOneRight.get().setText(MusicUtils.makeShortTimeString(mContext,
+                song.mDuration));
+        holder.mPopupMenuButton.get().setVisibility(View.VISIBLE);
+        holder.mPopupMenuButton.get().setPopupMenuClickedListener((v, p) -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (mListener != null && adapterPosition != RecyclerView.NO_POSITION) {
+                mListener.onPopupMenuClicked(v, adapterPosition);
+            }
+        });
+        if (song.mAlbumId >= 0) {
+            mImageFetcher.loadAlbumImage(song.mArtistName, song.mAlbumName, song.mAlbumId,
+                    holder.mImage.get());
+        }
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return position < mFolders.size() ? FOLDER_VIEW_TYPE : SONG_VIEW_TYPE;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mFolders.size() + mSongs.size();
+    }
+
+    /**
+     * @return the folder at the position or null if the position is a song
+     */
+    public FolderTree.Folder getFolder(final int position) {
+        return position < mFolders.size() ? mFolders.get(position) : null;
+    }
+
+    /**
+     * @return the song at the position or null if the position is a folder
+     */
+    public Song getSong(final int position) {
+        return position < mFolders.size() ? null : mSongs.get(position - mFolders.size());
+    }
+
+    /**
+     * Replaces the content of the list
+     *
+     * @param folders the sub folders
+     * @param songs   the songs directly in the folder
+     */
+    public void setData(final List<FolderTree.Folder> folders, final List<Song> songs) {
+        mFolders.clear();
+        mFolders.addAll(folders);
+        mSongs.clear();
+        mSongs.addAll(songs);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Method that unloads and clears the items in the adapter
+     */
+    public void unload() {
+        final int size = getItemCount();
+        mFolders.clear();
+        mSongs.clear();
+        notifyItemRangeRemoved(0, size);
+    }
+
+    @Override
+    public void setPopupMenuClickedListener(IListener listener) {
+        mListener = listener;
+    }
+}
@@ -31,6 +31,7 @@ import org.lineageos.eleven.Config.SmartPlaylistType;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.model.Playlist;
+import org.lineageos.eleven.provider.SmartPlaylistStore;
 import org.lineageos.eleven.ui.MusicHolder;
 import org.lineageos.eleven.ui.MusicHolder.DataHolder;
 import org.lineageos.eleven.ui.fragments.PlaylistFragment;
@@ -134,6 +135,9 @@ public class PlaylistAdapter extends RecyclerView.Adapter<MusicHolder> implement
                     holder.mImage.get().setImageResource(R.drawable.top_tracks_icon);
                     break;
             }
+        } else if (SmartPlaylistStore.isSmartPlaylist(dataHolder.itemId)) {
+            // smart playlists the user defined have no artwork of their own
+            holder.mImage.get().setImageResource(R.drawable.smart_playlist_icon);
         } else {
             // load the image
             ImageFetcher.getInstance(mContext).loadPlaylistCoverArtImage(
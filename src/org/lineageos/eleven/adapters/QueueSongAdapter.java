@@ -27,10 +27,12 @@ import androidx.recyclerview.widget.RecyclerView;
 import org.lineageos.eleven.Config;
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.CatalogSongList;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.ui.MusicHolder;
 import org.lineageos.eleven.ui.fragments.QueueFragment;
 import org.lineageos.eleven.utils.ElevenUtils;
+import org.lineageos.eleven.utils.ListDiffer;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.widgets.IPopupMenuCallback;
 import org.lineageos.eleven.widgets.PlayPauseButtonContainer;
@@ -64,6 +66,7 @@ public class QueueSongAdapter extends RecyclerView.Adapter<MusicHolder> implemen
     private MusicPlaybackTrack mCurrentlyPlayingTrack;
 
     private List<Song> mSongs;
+    private final ListDiffer<Song> mDiffer;
 
     /**
      * Used to listen to the pop up menu callbacks
@@ -100,6 +103,7 @@ public class QueueSongAdapter extends RecyclerView.Adapter<MusicHolder> implemen
         mSourceType = sourceType;
         mOnItemClickListener = onItemClickListener;
         mSongs = new ArrayList<>();
+        mDiffer = new ListDiffer<>(this, song -> song.mSongId, mSongs);
     }
 
     /**
@@ -127,16 +131,26 @@ public class QueueSongAdapter extends RecyclerView.Adapter<MusicHolder> implemen
         // Retrieve the data holder
         Song item = getItem(position);
 
-        holder.mPopupMenuButton.get().setPopupMenuClickedListener(mListener);
-        // Sets the position each time because of recycling
-        holder.mPopupMenuButton.get().setPosition(position);
+        // Unchanged rows aren't rebound when the queue is refreshed or edited, so read the
+        // position when the row is clicked
+        holder.mPopupMenuButton.get().setPopupMenuClickedListener((v, p) -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (mListener != null && adapterPosition != RecyclerView.NO_POSITION) {
+                mListener.onPopupMenuClicked(v, adapterPosition);
+            }
+        });
         // Set each song name (line one)
         holder.mLineOne.get().setText(item.mSongName);
         // Set the album name (line two)
         holder.mLineTwo.get().setText(MusicUtils.makeCombinedString(mContext, item.mArtistName,
                 item.mAlbumName));
 
-        holder.itemView.setOnClickListener(v -> mOnItemClickListener.accept(position));
+        holder.itemView.setOnClickListener(v -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (adapterPosition != RecyclerView.NO_POSITION) {
+                mOnItemClickListener.accept(adapterPosition);
+            }
+        });
 
         // Asynchronously load the artist image into the adapter
         if (item.mAlbumId >= 0) {
@@ -172,6 +186,7 @@ public class QueueSongAdapter extends RecyclerView.Adapter<MusicHolder> implemen
      */
     public void unload() {
         int size = mSongs.size();
+        mDiffer.cancel();
         mSongs.clear();
         notifyItemRangeRemoved(0, size);
     }
@@ -195,7 +210,9 @@ public class QueueSongAdapter extends RecyclerView.Adapter<MusicHolder> implemen
         int updated = 0;
 
         for (int i = 0; i < mSongs.size() && updated < toBeUpdated; i++) {
-            long id = mSongs.get(i).mSongId;
+            // read the id directly if we can to avoid creating every song of a large queue
+            long id = mSongs instanceof CatalogSongList
+                    ? ((CatalogSongList) mSongs).getId(i) : mSongs.get(i).mSongId;
             if ((currentTrack != null && id == currentTrack.mId) || id == previousPlayingId) {
                 notifyItemChanged(i);
                 updated++;
@@ -213,30 +230,13 @@ public class QueueSongAdapter extends RecyclerView.Adapter<MusicHolder> implemen
     }
 
     public void setData(List<Song> song) {
-        int oldSize = mSongs == null ? 0 : mSongs.size();
-        int newSize = song.size();
-
-        mSongs = song;
-        if (oldSize == 0) {
-            notifyItemRangeInserted(0, newSize);
-        } else {
-            int diff = oldSize - newSize;
-            if (diff > 0) {
-                // Items were removed
-                notifyItemRangeChanged(0, newSize);
-                notifyItemRangeRemoved(newSize, diff);
-            } else if (diff < 0) {
-                // Items were added
-                notifyItemRangeChanged(0, oldSize);
-                notifyItemRangeInserted(oldSize, diff * -1);
-            } else {
-                notifyItemChanged(0, oldSize);
-            }
-        }
+        // only rebind the rows that changed, the diff is calculated in the background
+        mDiffer.submitList(song, () -> mSongs = song);
     }
 
     public void remove(int position) {
         mSongs.remove(position);
+        mDiffer.onListModified();
         notifyItemRemoved(position);
     }
 
@@ -247,6 +247,7 @@ public class QueueSongAdapter extends RecyclerView.Adapter<MusicHolder> implemen
 
         Song moving = mSongs.remove(startPosition);
         mSongs.add(endPosition, moving);
+        mDiffer.onListModified();
         notifyItemMoved(startPosition, endPosition);
     }
 }
@@ -27,11 +27,13 @@ import androidx.recyclerview.widget.RecyclerView;
 import org.lineageos.eleven.Config;
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.CatalogList;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.ui.MusicHolder;
 import org.lineageos.eleven.ui.MusicHolder.DataHolder;
 import org.lineageos.eleven.ui.fragments.SongFragment;
 import org.lineageos.eleven.utils.ElevenUtils;
+import org.lineageos.eleven.utils.ListDiffer;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.widgets.IPopupMenuCallback;
 
@@ -63,6 +65,7 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
      */
     private DataHolder[] mData;
     private List<Song> mSongs;
+    private final ListDiffer<Song> mDiffer;
 
     /**
      * Used to listen to the pop up menu callbacks
@@ -104,6 +107,7 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
         mSourceType = sourceType;
         mOnItemClickListener = onItemClickListener;
         mSongs = new ArrayList<>(0);
+        mDiffer = new ListDiffer<>(this, song -> song.mSongId, mSongs);
     }
 
     /**
@@ -130,13 +134,23 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
     @Override
     public void onBindViewHolder(@NonNull MusicHolder holder, int position) {
         // Retrieve the data holder
-        final DataHolder dataHolder = mData[position];
-
-        holder.itemView.setOnClickListener(v -> mOnItemClickListener.accept(position));
+        final DataHolder dataHolder = getDataHolder(position);
+
+        // Unchanged rows aren't rebound when the list is refreshed, so read the position when
+        // the row is clicked
+        holder.itemView.setOnClickListener(v -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (adapterPosition != RecyclerView.NO_POSITION) {
+                mOnItemClickListener.accept(adapterPosition);
+            }
+        });
 
-        holder.mPopupMenuButton.get().setPopupMenuClickedListener(mListener);
-        // Sets the position each time because of recycling
-        holder.mPopupMenuButton.get().setPosition(position);
+        holder.mPopupMenuButton.get().setPopupMenuClickedListener((v, p) -> {
+            final int adapterPosition = holder.getAdapterPosition();
+            if (mListener != null && adapterPosition != RecyclerView.NO_POSITION) {
+                mListener.onPopupMenuClicked(v, adapterPosition);
+            }
+        });
         // Set each song name (line one)
         holder.mLineOne.get().setText(dataHolder.lineOne);
         // Set the album name (line two)
@@ -170,34 +184,46 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
     }
 
     /**
-     * Method used to cache the data used to populate the list or grid. The idea
-     * is to cache everything before {@code #getView(int, View, ViewGroup)} is
-     * called.
+     * Subclasses whose rows show something that depends on the position instead of only the
+     * song have to rebind every row when the list changes
+     *
+     * @return true if {@link #customizeBind} or {@link #showNowPlayingIndicator} use the
+     * position
+     */
+    protected boolean isBindingPositionDependent() {
+        return false;
+    }
+
+    /**
+     * Method used to cache the data used to populate the list or grid. The data holders
+     * are only built once a position is bound, so a large library doesn't have to create
+     * every song up front.
      */
     public void buildCache() {
         mData = new DataHolder[getItemCount()];
-        for (int i = 0; i < getItemCount(); i++) {
-            // Build the song
-            final Song song = getItem(i);
+    }
 
-            // skip special placeholders
-            if (song.mSongId == -1) {
-                continue;
-            }
+    private DataHolder getDataHolder(final int position) {
+        if (mData[position] == null) {
+            // Build the song
+            final Song song = getItem(position);
 
             // Build the data holder
-            mData[i] = new DataHolder();
+            final DataHolder dataHolder = new DataHolder();
             // Song Id
-            mData[i].itemId = song.mSongId;
+            dataHolder.itemId = song.mSongId;
             // Song names
-            mData[i].lineOne = song.mSongName;
+            dataHolder.lineOne = song.mSongName;
             // Song duration
-            mData[i].lineOneRight = MusicUtils.makeShortTimeString(mContext, song.mDuration);
+            dataHolder.lineOneRight = MusicUtils.makeShortTimeString(mContext, song.mDuration);
 
             // Artist Name | Album Name
-            mData[i].lineTwo = MusicUtils.makeCombinedString(mContext, song.mArtistName,
+            dataHolder.lineTwo = MusicUtils.makeCombinedString(mContext, song.mArtistName,
                     song.mAlbumName);
+
+            mData[position] = dataHolder;
         }
+        return mData[position];
     }
 
     /**
@@ -205,6 +231,7 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
      */
     public void unload() {
         int size = mSongs.size();
+        mDiffer.cancel();
         mSongs.clear();
         mData = null;
         notifyItemRangeRemoved(0, size);
@@ -234,7 +261,7 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
         int updated = 0;
 
         for (int i = 0; i < mSongs.size() && updated < toBeUpdated; i++) {
-            long id = mSongs.get(i).mSongId;
+            long id = getSongId(i);
             if ((currentTrack != null && id == currentTrack.mId) || id == previousPlayingId) {
                 notifyItemChanged(i);
                 updated++;
@@ -246,6 +273,10 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
      * @return Gets the list of song ids from the adapter
      */
     public long[] getSongIds() {
+        if (mSongs instanceof CatalogList) {
+            return ((CatalogList<Song>) mSongs).getIds();
+        }
+
         long[] ret = new long[mSongs.size()];
         for (int i = 0; i < mSongs.size(); i++) {
             ret[i] = getItem(i).mSongId;
@@ -254,11 +285,31 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
         return ret;
     }
 
+    /**
+     * @return the id of the song at the position without creating a paged song
+     */
+    private long getSongId(int position) {
+        if (mSongs instanceof CatalogList) {
+            return ((CatalogList<Song>) mSongs).getId(position);
+        }
+
+        return mSongs.get(position).mSongId;
+    }
+
     public Song getItem(int position) {
         return mSongs.get(position);
     }
 
     public void setData(List<Song> songs) {
+        if (!isBindingPositionDependent()) {
+            // only rebind the rows that changed, the diff is calculated in the background
+            mDiffer.submitList(songs, () -> {
+                mSongs = songs;
+                buildCache();
+            });
+            return;
+        }
+
         int oldSize = mSongs == null ? 0 : mSongs.size();
         int newSize = songs.size();
 
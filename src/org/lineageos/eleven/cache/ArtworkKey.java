@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import androidx.annotation.NonNull;
+
+import org.lineageos.eleven.Config;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The key of an image in the memory and disk caches.  Keys are immutable and interned, so the
+ * hash code, the keys of the {@link ArtworkSize}s and the disk cache file name are worked out
+ * once per image instead of on every lookup.  Two keys are equal if their strings are, keys
+ * that were handed around as strings, see {@link #of(String)}, find the same entries.
+ */
+public final class ArtworkKey {
+
+    /* About the number of images on screen and in the memory caches */
+    private static final int INTERNED_KEYS = 1024;
+
+    private static final TinyLfuCache<String, ArtworkKey> sInterned =
+            new TinyLfuCache<>(INTERNED_KEYS);
+
+    /* Album keys by the hash of their names, a power of two */
+    private static final int ALBUM_KEY_SLOTS = 1024;
+
+    /* The album keys looked up last, so binding a row doesn't build the key string again */
+    private static final AlbumSlot[] sAlbumKeys = new AlbumSlot[ALBUM_KEY_SLOTS];
+
+    private static final String BLURRED_SUFFIX = "_blur";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final String mKey;
+    private final int mHash;
+    /* The keys of the artwork sizes, by ordinal, null for keys that are sized already */
+    private final ArtworkKey[] mSizes;
+    private ArtworkKey mBlurred;
+    private volatile String mDiskName;
+
+    /**
+     * An album key with the names it was made of
+     */
+    private static final class AlbumSlot {
+        final String mAlbumName;
+        final String mArtistName;
+        final ArtworkKey mKey;
+
+        AlbumSlot(final String albumName, final String artistName, final ArtworkKey key) {
+            mAlbumName = albumName;
+            mArtistName = artistName;
+            mKey = key;
+        }
+    }
+
+    private ArtworkKey(final String key, final boolean sized) {
+        mKey = key;
+        mHash = key.hashCode();
+        mSizes = sized ? null : new ArtworkKey[ArtworkSize.values().length];
+    }
+
+    /**
+     * @param key the string of a key, as returned by {@link #toString()}
+     * @return the key, null if the string is null
+     */
+    public static ArtworkKey of(final String key) {
+        if (key == null) {
+            return null;
+        }
+        ArtworkKey artworkKey = sInterned.get(key);
+        if (artworkKey == null) {
+            // a race creates two equal keys, one of them is dropped again
+            artworkKey = new ArtworkKey(key, false);
+            sInterned.put(key, artworkKey);
+        }
+        return artworkKey;
+    }
+
+    /**
+     * @param albumName  The album name
+     * @param artistName The artist name
+     * @return the key of the album artwork, null if a name is missing.  Keys looked up lately
+     * are found by their names without building the key string.
+     */
+    public static ArtworkKey forAlbum(final String albumName, final String artistName) {
+        if (albumName == null || artistName == null) {
+            return null;
+        }
+        // strings cache their hash, and the catalog hands out the same string for a name
+        int hash = 31 * albumName.hashCode() + artistName.hashCode();
+        hash ^= (hash >>> 16);
+        final int index = hash & (ALBUM_KEY_SLOTS - 1);
+        AlbumSlot slot = sAlbumKeys[index];
+        if (slot == null || !slot.mAlbumName.equals(albumName)
+                || !slot.mArtistName.equals(artistName)) {
+            // the slot is replaced as a whole, racing threads see either the old or new one
+            slot = new AlbumSlot(albumName, artistName,
+                    of(albumName + "_" + artistName + "_" + Config.ALBUM_ART_SUFFIX));
+            sAlbumKeys[index] = slot;
+        }
+        return slot.mKey;
+    }
+
+    /**
+     * @param artistName The artist name
+     * @return the key of the artist image, null if the name is missing
+     */
+    public static ArtworkKey forArtist(final String artistName) {
+        return of(artistName);
+    }
+
+    /**
+     * @param playlistId playlist identifier
+     * @return the key of the cover art of the playlist
+     */
+    public static ArtworkKey forPlaylistCover(final long playlistId) {
+        return of("playlist_cover_" + playlistId);
+    }
+
+    /**
+     * @param playlistId playlist identifier
+     * @return the key of the top artist image of the playlist
+     */
+    public static ArtworkKey forPlaylistArtist(final long playlistId) {
+        return of("playlist_artist_" + playlistId);
+    }
+
+    /**
+     * @param size the size class of the artwork
+     * @return the key of the artwork in this size, {@link ArtworkSize#FULL} is the key itself
+     */
+    public ArtworkKey sized(final ArtworkSize size) {
+        if (size == ArtworkSize.FULL || mSizes == null) {
+            return this;
+        }
+        // racing threads create equal keys, any of them may be kept
+        ArtworkKey sized = mSizes[size.ordinal()];
+        if (sized == null) {
+            sized = new ArtworkKey(size.getKey(mKey), true);
+            mSizes[size.ordinal()] = sized;
+        }
+        return sized;
+    }
+
+    /**
+     * @return the key of the blurred artwork shown behind the player, see {@link StackBlur}
+     */
+    public ArtworkKey blurred() {
+        ArtworkKey blurred = mBlurred;
+        if (blurred == null) {
+            blurred = new ArtworkKey(mKey + BLURRED_SUFFIX, true);
+            mBlurred = blurred;
+        }
+        return blurred;
+    }
+
+    /**
+     * @return the name of the disk cache entry, the hex encoded MD5 digest of the key
+     */
+    public String getDiskName() {
+        String diskName = mDiskName;
+        if (diskName == null) {
+            diskName = hashForDisk(mKey);
+            mDiskName = diskName;
+        }
+        return diskName;
+    }
+
+    /**
+     * A hashing method that changes a string (like a URL) into a hash suitable
+     * for using as a disk filename.
+     *
+     * @param key The key used to store the file
+     */
+    private static String hashForDisk(final String key) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("MD5");
+            final byte[] bytes = digest.digest(key.getBytes());
+            final char[] hex = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (final NoSuchAlgorithmException e) {
+            return String.valueOf(key.hashCode());
+        }
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ArtworkKey)) {
+            return false;
+        }
+        final ArtworkKey key = (ArtworkKey) other;
+        return mHash == key.mHash && mKey.equals(key.mKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mKey;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * The size classes album artwork is decoded and cached in.  Each size is decoded from the
+ * original with sampling and kept under its own cache key, so small views never decode or
+ * hold the full artwork.
+ */
+public enum ArtworkSize {
+    /* List rows and the bottom action bar */
+    THUMB(64, "_thumb"),
+    /* Grid cells, album headers, widgets and collages */
+    GRID(240, "_grid"),
+    /* The player and the lock screen, capped at FULL_MAX_PIXELS */
+    FULL(0, "");
+
+    /* The largest side artwork is decoded at */
+    private static final int FULL_MAX_PIXELS = 1024;
+
+    private final int mSizeDp;
+    private final String mKeySuffix;
+
+    ArtworkSize(final int sizeDp, final String keySuffix) {
+        mSizeDp = sizeDp;
+        mKeySuffix = keySuffix;
+    }
+
+    /**
+     * @param key the cache key of the artwork
+     * @return the cache key of the artwork in this size
+     */
+    public String getKey(final String key) {
+        return key == null ? null : key + mKeySuffix;
+    }
+
+    /**
+     * @return the length in pixels the shorter side of the artwork is decoded to at most
+     */
+    public int getPixelSize(final Context context) {
+        if (this == FULL) {
+            return FULL_MAX_PIXELS;
+        }
+        return Math.round(mSizeDp * context.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * Picks the smallest size that fills a view.  Views that aren't laid out yet are sized by
+     * their layout parameters, views without a fixed size get {@link #FULL}.
+     *
+     * @param view the view the artwork is shown in
+     * @return the size class for the view
+     */
+    public static ArtworkSize forView(final View view) {
+        int pixels = Math.max(view.getWidth(), view.getHeight());
+        if (pixels <= 0) {
+            final ViewGroup.LayoutParams params = view.getLayoutParams();
+            if (params != null) {
+                pixels = Math.max(params.width, params.height);
+            }
+        }
+        if (pixels <= 0) {
+            return FULL;
+        }
+
+        for (final ArtworkSize size : values()) {
+            if (size == FULL || pixels <= size.getPixelSize(view.getContext())) {
+                return size;
+            }
+        }
+        return FULL;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitmaps nobody uses anymore, kept to be decoded into again through
+ * {@link android.graphics.BitmapFactory.Options#inBitmap} instead of allocating new ones.
+ * The bitmaps are kept by their allocation size, a decode takes the smallest bitmap that is
+ * large enough as long as it doesn't waste too much of it.
+ * <p>
+ * Bitmaps are only pooled when the code that made them releases them explicitly, like the
+ * copies made to scale, blur or sample artwork.  Bitmaps of the memory cache are never
+ * pooled: once handed out they may still be shown, blurred, cached under another key or
+ * waiting to be written to the disk cache long after they left the memory cache.
+ */
+public final class BitmapPool {
+    /* A pooled bitmap is only used for decodes that need at least this fraction of it */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    /* The pool may hold this fraction of the heap, a quarter of the memory cache */
+    private static final int HEAP_DIVIDER = 16;
+
+    private static BitmapPool sInstance;
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+    private final int mMaxSize;
+    private int mSize;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    /**
+     * @param maxSize the maximum number of bytes of the pooled bitmaps
+     */
+    public BitmapPool(final int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return the pool shared by the image cache and the code working on its images
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool((int) (Runtime.getRuntime().maxMemory() / HEAP_DIVIDER));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Hands a bitmap back to the pool.  The caller must hold the only reference to it, and
+     * must not use it anymore: its pixels are overwritten by the next decode that takes it.
+     *
+     * @param bitmap the bitmap, it is only kept if it can be decoded into
+     */
+    public synchronized void put(final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+        final int size = bitmap.getAllocationByteCount();
+        if (size > mMaxSize / 2) {
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.push(bitmap);
+        mSize += size;
+        mPutCount++;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Takes a bitmap out of the pool to decode into
+     *
+     * @param byteCount the number of bytes the decoded image needs
+     * @return a bitmap with at least as many bytes or null if the pool has none that fits
+     */
+    public synchronized Bitmap get(final int byteCount) {
+        final Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.ceilingEntry(byteCount);
+        if (entry == null || entry.getKey() > (long) byteCount * MAX_SIZE_MULTIPLE) {
+            mMissCount++;
+            return null;
+        }
+
+        final Bitmap bitmap = entry.getValue().pop();
+        if (entry.getValue().isEmpty()) {
+            mBuckets.remove(entry.getKey());
+        }
+        mSize -= entry.getKey();
+        mHitCount++;
+        return bitmap;
+    }
+
+    /**
+     * Drops the largest bitmaps until the pool is small enough
+     *
+     * @param maxSize the maximum number of bytes to keep
+     */
+    public synchronized void trimToSize(final int maxSize) {
+        while (mSize > maxSize && !mBuckets.isEmpty()) {
+            final Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.lastEntry();
+            entry.getValue().removeLast();
+            if (entry.getValue().isEmpty()) {
+                mBuckets.remove(entry.getKey());
+            }
+            mSize -= entry.getKey();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Drops all the pooled bitmaps
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return the maximum number of bytes of the pooled bitmaps
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    @SuppressLint("DefaultLocale")
+    @Override
+    public synchronized String toString() {
+        final int requests = mHitCount + mMissCount;
+        final int hitPercent = requests != 0 ? 100 * mHitCount / requests : 0;
+        return String.format("BitmapPool[size=%d,maxSize=%d,hits=%d,misses=%d,hitRate=%d%%,"
+                        + "puts=%d,evictions=%d]", mSize, mMaxSize, mHitCount, mMissCount,
+                hitPercent, mPutCount, mEvictionCount);
+    }
+}
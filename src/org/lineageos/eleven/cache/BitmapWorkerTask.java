@@ -59,7 +59,7 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
     /**
      * The key used to store cached entries
      */
-    public final String mKey;
+    public final ArtworkKey mKey;
 
     /**
      * Constructor of <code>BitmapWorkerTask</code>
@@ -69,8 +69,9 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
      * @param imageType    The type of image URL to fetch for.
      * @param fromDrawable what drawable to transition from
      */
-    public BitmapWorkerTask(final String key, final ImageView imageView, final ImageType imageType,
-                            final Drawable fromDrawable, final Context context) {
+    public BitmapWorkerTask(final ArtworkKey key, final ImageView imageView,
+                            final ImageType imageType, final Drawable fromDrawable,
+                            final Context context) {
         this(key, imageView, imageType, fromDrawable, context, false);
     }
 
@@ -83,7 +84,7 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
      * @param fromDrawable   what drawable to transition from
      * @param scaleImgToView flag to scale the bitmap to the image view bounds
      */
-    public BitmapWorkerTask(final String key, final ImageView imageView,
+    public BitmapWorkerTask(final ArtworkKey key, final ImageView imageView,
                             final ImageType imageType, final Drawable fromDrawable,
                             final Context context, final boolean scaleImgToView) {
         mKey = key;
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.ScriptIntrinsicBlur;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the {@link StackBlur} of {@link BlurBitmapWorkerTask} against the RenderScript blur
+ * it replaced: the artwork scaled up to 500 pixels and blurred 8 times with a new script and
+ * new allocations for every pass.  The blur task logs the results for the first artwork it
+ * blurs when debugging is enabled.
+ */
+@SuppressWarnings("deprecation")
+public final class BlurBenchmark {
+
+    /* The RenderScript path as it was */
+    private static final int LEGACY_MIN_SIZE = 500;
+    private static final int LEGACY_RUNS = 8;
+    private static final float LEGACY_RADIUS = 25f;
+
+    /**
+     * The measurements of one blur
+     */
+    public static final class Result {
+        public final String mName;
+        /* The size of the blurred image */
+        public final int mWidth;
+        public final int mHeight;
+        /* The average time of a blur in microseconds */
+        public final long mMicros;
+
+        private Result(final String name, final int width, final int height,
+                       final long micros) {
+            mName = name;
+            mWidth = width;
+            mHeight = height;
+            mMicros = micros;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return mName + ": " + mWidth + "x" + mHeight + ", " + mMicros + "us";
+        }
+    }
+
+    private BlurBenchmark() {
+    }
+
+    /**
+     * Blurs a sample image with the RenderScript path and the stack blur
+     *
+     * @param context The {@link Context} to use
+     * @param sample  a software bitmap to blur
+     * @param maxSize the size the stack blur scales down to
+     * @param radius  the radius of the stack blur
+     * @param rounds  the number of times to blur it, the times are averaged
+     * @return the results of the RenderScript path and the stack blur
+     */
+    @WorkerThread
+    public static List<Result> run(final Context context, final Bitmap sample,
+                                   final int maxSize, final int radius, final int rounds) {
+        final List<Result> results = new ArrayList<>();
+        final RenderScript renderScript = RenderScript.create(context);
+        try {
+            // warm up both paths so the first round doesn't count their setup
+            Bitmap output = blurLegacy(renderScript, sample);
+            long nanos = 0;
+            for (int i = 0; i < rounds; i++) {
+                final long start = SystemClock.elapsedRealtimeNanos();
+                output = blurLegacy(renderScript, sample);
+                nanos += SystemClock.elapsedRealtimeNanos() - start;
+            }
+            results.add(new Result("RenderScript", output.getWidth(), output.getHeight(),
+                    nanos / rounds / 1000));
+        } finally {
+            renderScript.destroy();
+        }
+
+        final StackBlur stackBlur = StackBlur.getInstance();
+        Bitmap output = stackBlur.blur(sample, maxSize, radius);
+        long nanos = 0;
+        for (int i = 0; i < rounds; i++) {
+            final long start = SystemClock.elapsedRealtimeNanos();
+            output = stackBlur.blur(sample, maxSize, radius);
+            nanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        results.add(new Result("StackBlur", output.getWidth(), output.getHeight(),
+                nanos / rounds / 1000));
+        return results;
+    }
+
+    private static Bitmap blurLegacy(final RenderScript renderScript, final Bitmap bitmap) {
+        Bitmap input = bitmap;
+        Bitmap output;
+        if (input.getWidth() < LEGACY_MIN_SIZE || input.getHeight() < LEGACY_MIN_SIZE) {
+            final float multiplier = Math.max(LEGACY_MIN_SIZE / (float) input.getWidth(),
+                    LEGACY_MIN_SIZE / (float) input.getHeight());
+            input = Bitmap.createScaledBitmap(bitmap, (int) (input.getWidth() * multiplier),
+                    (int) (input.getHeight() * multiplier), true);
+            output = input;
+        } else {
+            output = Bitmap.createBitmap(input.getWidth(), input.getHeight(),
+                    input.getConfig());
+        }
+
+        for (int i = 0; i < LEGACY_RUNS; i++) {
+            final Allocation inputAlloc = Allocation.createFromBitmap(renderScript, input);
+            final Allocation outputAlloc = Allocation.createTyped(renderScript,
+                    inputAlloc.getType());
+            final ScriptIntrinsicBlur script = ScriptIntrinsicBlur.create(renderScript,
+                    Element.U8_4(renderScript));
+
+            script.setRadius(LEGACY_RADIUS);
+            script.setInput(inputAlloc);
+            script.forEach(outputAlloc);
+            outputAlloc.copyTo(output);
+            input = output;
+        }
+        return output;
+    }
+}
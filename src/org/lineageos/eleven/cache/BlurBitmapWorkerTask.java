@@ -20,10 +20,6 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
-import android.renderscript.Allocation;
-import android.renderscript.Element;
-import android.renderscript.RenderScript;
-import android.renderscript.ScriptIntrinsicBlur;
 import android.util.Log;
 import android.widget.ImageView;
 
@@ -34,20 +30,22 @@ import java.lang.ref.WeakReference;
 
 /**
  * This will download the image (if needed) and create a blur and set the scrim as well on the
- * BlurScrimImage
+ * BlurScrimImage.  The blur is cached under {@link ArtworkKey#blurred()}, so it is only made
+ * once per album.
  */
 public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
         BlurBitmapWorkerTask.ResultContainer> {
 
     private static final String TAG = BlurBitmapWorkerTask.class.getSimpleName();
+    private static final boolean DEBUG = false;
 
-    // if the image is too small, the blur will look bad post scale up so we use the min size
-    // to scale up before blurring
-    private static final int MIN_BITMAP_SIZE = 500;
-    // number of times to run the blur
-    private static final int NUM_BLUR_RUNS = 8;
-    // 25f is the max blur radius possible
-    private static final float BLUR_RADIUS = 25f;
+    // the artwork is scaled down to this before blurring, the view scales the blur back up
+    private static final int BLUR_SIZE = 128;
+    // about the spread the RenderScript blur had, 8 runs of radius 25 at 500 pixels
+    private static final int BLUR_RADIUS = 18;
+
+    private static final int BENCHMARK_ROUNDS = 5;
+    private static boolean sBenchmarked;
 
     // container for the result
     public static class ResultContainer {
@@ -60,11 +58,6 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
      */
     private final WeakReference<AlbumScrimImage> mBlurScrimImage;
 
-    /**
-     * RenderScript used to blur the image
-     */
-    private static RenderScript sRenderScript;
-
     /**
      * Constructor of <code>BlurBitmapWorkerTask</code>
      *
@@ -73,16 +66,12 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
      * @param imageType       The type of image URL to fetch for.
      * @param fromDrawable    what drawable to transition from
      */
-    public BlurBitmapWorkerTask(final String key, final AlbumScrimImage albumScrimImage,
+    public BlurBitmapWorkerTask(final ArtworkKey key, final AlbumScrimImage albumScrimImage,
                                 final ImageType imageType, final Drawable fromDrawable,
                                 final Context context) {
         super(key, albumScrimImage.getImageView(), imageType, fromDrawable, context);
         mBlurScrimImage = new WeakReference<>(albumScrimImage);
 
-        if (sRenderScript == null) {
-            sRenderScript = RenderScript.create(mContext);
-        }
-
         // use the existing image as the drawable and if it doesn't exist fallback to transparent
         mFromDrawable = albumScrimImage.getImageView().getDrawable();
         if (mFromDrawable == null) {
@@ -96,63 +85,43 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
             return null;
         }
 
-        Bitmap bitmap = getBitmapInBackground(params);
-
-        ResultContainer result = new ResultContainer();
+        // the blur is only drawn, so the cached one may be a hardware bitmap
+        final ArtworkKey blurKey = mKey.blurred();
+        Bitmap blurred = mImageCache.getCachedBitmap(blurKey, true);
 
-        Bitmap output;
-
-        if (bitmap != null) {
-            // now create the blur bitmap
-            Bitmap input = bitmap;
+        if (blurred == null) {
+            // the blur is much smaller than the grid size, so there's no need to decode more
+            final Bitmap bitmap = ImageWorker.getBitmapInBackground(mContext, mImageCache, mKey,
+                    Long.parseLong(params[2]), mImageType, ArtworkSize.GRID);
+            if (bitmap == null || isCancelled()) {
+                return null;
+            }
 
-            // if the image is too small, scale it up before running through the blur
-            if (input.getWidth() < MIN_BITMAP_SIZE || input.getHeight() < MIN_BITMAP_SIZE) {
-                float multiplier = Math.max(MIN_BITMAP_SIZE / (float) input.getWidth(),
-                        MIN_BITMAP_SIZE / (float) input.getHeight());
-                input = Bitmap.createScaledBitmap(bitmap, (int) (input.getWidth() * multiplier),
-                        (int) (input.getHeight() * multiplier), true);
-                // since we created a new bitmap, we can re-use the bitmap for our output
-                output = input;
-            } else {
-                // if we aren't creating a new bitmap, create a new output bitmap
-                output = Bitmap.createBitmap(input.getWidth(), input.getHeight(),
-                        input.getConfig());
+            if (DEBUG && !sBenchmarked) {
+                sBenchmarked = true;
+                Log.d(TAG, "Blur benchmark of " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                        + ": " + BlurBenchmark.run(mContext, bitmap, BLUR_SIZE, BLUR_RADIUS,
+                        BENCHMARK_ROUNDS));
             }
 
-            // run the blur multiple times
-            for (int i = 0; i < NUM_BLUR_RUNS; i++) {
-                try {
-                    final Allocation inputAlloc = Allocation.createFromBitmap(sRenderScript, input);
-                    final Allocation outputAlloc = Allocation.createTyped(sRenderScript,
-                            inputAlloc.getType());
-                    final ScriptIntrinsicBlur script = ScriptIntrinsicBlur.create(sRenderScript,
-                            Element.U8_4(sRenderScript));
-
-                    script.setRadius(BLUR_RADIUS);
-                    script.setInput(inputAlloc);
-                    script.forEach(outputAlloc);
-                    outputAlloc.copyTo(output);
-
-                    // if we run more than 1 blur, the new input should be the old output
-                    input = output;
-                } catch (RuntimeException e) {
-                    Log.w(TAG, "Cannot blur image. " + e.getMessage());
-                    break;
-                }
+            blurred = StackBlur.getInstance().blur(bitmap, BLUR_SIZE, BLUR_RADIUS);
+            if (blurred == null) {
+                Log.w(TAG, "Cannot blur image");
+                return null;
             }
+            mImageCache.addBitmapToCache(blurKey, blurred);
+        }
 
-            // Set the scrim color to be 50% gray
-            result.mPaletteColor = 0x7f000000;
+        ResultContainer result = new ResultContainer();
 
-            // create the bitmap transition drawable
-            result.mImageViewBitmapDrawable = createImageTransitionDrawable(output,
-                    ImageWorker.FADE_IN_TIME_SLOW, true);
+        // Set the scrim color to be 50% gray
+        result.mPaletteColor = 0x7f000000;
 
-            return result;
-        }
+        // create the bitmap transition drawable
+        result.mImageViewBitmapDrawable = createImageTransitionDrawable(blurred,
+                ImageWorker.FADE_IN_TIME_SLOW, true);
 
-        return null;
+        return result;
     }
 
     @Override
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.lineageos.eleven.cache.disklrucache.DiskLruCache;
+import org.lineageos.eleven.utils.IoUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Writes images to the disk cache behind the callers' backs.  Writes are queued and done in
+ * batches on a thread of their own, and the journal is flushed once after a quiet period
+ * instead of after every write.  Until an image is written, {@link #getPending(String)}
+ * returns it so readers of the disk cache still see it.  The queue holds at most
+ * {@link #MAX_PENDING_BYTES} and is dropped once it's known there is no disk cache to write to.
+ */
+public class DiskCacheWriter {
+    private static final String TAG = DiskCacheWriter.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* Flush the journal once no image was written for this long */
+    private static final long FLUSH_DELAY = 2000;
+
+    /* The queued images hold at most this many bytes, the oldest are dropped beyond it */
+    private static final int MAX_PENDING_BYTES = 8 * 1024 * 1024;
+
+    /* The number of times the benchmark encodes the first image written when debugging */
+    private static final int BENCHMARK_ROUNDS = 5;
+
+    private static final int MSG_WRITE = 1;
+    private static final int MSG_FLUSH = 2;
+
+    private final Supplier<DiskLruCache> mDiskCache;
+    private final Handler mHandler;
+
+    /* The images waiting to be written by their disk key, guarded by this */
+    private final LinkedHashMap<String, Pending> mPending = new LinkedHashMap<>();
+    private int mPendingBytes;
+
+    /* False once it's known there is no disk cache, until one is opened */
+    private volatile boolean mDiskCacheAvailable = true;
+
+    private volatile DiskEncoding mEncoding = DiskEncoding.JPEG;
+    private boolean mBenchmarked;
+
+    /**
+     * An image waiting to be written, either a bitmap to encode or the bytes to store as is
+     */
+    public static final class Pending {
+        public final Bitmap mBitmap;
+        public final byte[] mBytes;
+        final boolean mReplace;
+        final int mByteCount;
+
+        private Pending(final Bitmap bitmap, final byte[] bytes, final boolean replace) {
+            mBitmap = bitmap;
+            mBytes = bytes;
+            mReplace = replace;
+            mByteCount = bytes != null ? bytes.length : bitmap.getAllocationByteCount();
+        }
+    }
+
+    /**
+     * Constructor of <code>DiskCacheWriter</code>
+     *
+     * @param diskCache returns the disk cache to write to, or null while there is none
+     */
+    public DiskCacheWriter(final Supplier<DiskLruCache> diskCache) {
+        mDiskCache = diskCache;
+
+        final HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(@NonNull final Message msg) {
+                switch (msg.what) {
+                    case MSG_WRITE:
+                        writePending();
+                        break;
+                    case MSG_FLUSH:
+                        flushJournal();
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * Tells whether there is a disk cache to write to.  Images are only queued while there
+     * is one or it's still being opened.
+     *
+     * @param available true once the disk cache is opened, false if it couldn't be opened or
+     *                  was closed or deleted
+     */
+    public void setDiskCacheAvailable(final boolean available) {
+        mDiskCacheAvailable = available;
+        if (available) {
+            // write what was queued while it was being opened
+            mHandler.sendEmptyMessage(MSG_WRITE);
+        } else {
+            clear();
+        }
+    }
+
+    /**
+     * @param encoding the codec bitmaps are encoded with from now on
+     */
+    public void setEncoding(final DiskEncoding encoding) {
+        mEncoding = encoding;
+    }
+
+    /**
+     * Queues a bitmap to be encoded and written
+     *
+     * @param key     the disk key
+     * @param bitmap  the bitmap, hardware bitmaps are read back when they are encoded
+     * @param replace true to overwrite an image already stored under the key
+     */
+    public void write(final String key, final Bitmap bitmap, final boolean replace) {
+        enqueue(key, new Pending(bitmap, null, replace));
+    }
+
+    /**
+     * Queues encoded image bytes to be written as they are
+     *
+     * @param key     the disk key
+     * @param bytes   the encoded image
+     * @param replace true to overwrite an image already stored under the key
+     */
+    public void write(final String key, final byte[] bytes, final boolean replace) {
+        enqueue(key, new Pending(null, bytes, replace));
+    }
+
+    private void enqueue(final String key, final Pending pending) {
+        if (!mDiskCacheAvailable) {
+            return;
+        }
+        synchronized (this) {
+            // a queued replacement wins over a later image that only fills a gap
+            final Pending queued = mPending.get(key);
+            if (queued != null && !pending.mReplace) {
+                return;
+            }
+            removePending(key);
+            mPending.put(key, pending);
+            mPendingBytes += pending.mByteCount;
+            trimPending();
+        }
+        if (!mHandler.hasMessages(MSG_WRITE)) {
+            mHandler.sendEmptyMessage(MSG_WRITE);
+        }
+    }
+
+    /**
+     * @param key the disk key
+     * @return the image waiting to be written under the key or null
+     */
+    public synchronized Pending getPending(final String key) {
+        return mPending.get(key);
+    }
+
+    /**
+     * Drops an image that wasn't written yet
+     *
+     * @param key the disk key
+     */
+    public synchronized void remove(final String key) {
+        removePending(key);
+    }
+
+    /**
+     * Drops all the images that weren't written yet
+     */
+    public synchronized void clear() {
+        mPending.clear();
+        mPendingBytes = 0;
+    }
+
+    private void removePending(final String key) {
+        final Pending pending = mPending.remove(key);
+        if (pending != null) {
+            mPendingBytes -= pending.mByteCount;
+        }
+    }
+
+    /**
+     * Drops the oldest images until the queue fits its limit, keeping the newest one
+     */
+    private void trimPending() {
+        final Iterator<Pending> iterator = mPending.values().iterator();
+        while (mPendingBytes > MAX_PENDING_BYTES && mPending.size() > 1) {
+            mPendingBytes -= iterator.next().mByteCount;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Writes the queued images and flushes the journal now
+     */
+    public void flush() {
+        mHandler.removeMessages(MSG_FLUSH);
+        mHandler.sendEmptyMessage(MSG_WRITE);
+        mHandler.sendEmptyMessage(MSG_FLUSH);
+    }
+
+    /**
+     * Runs a task on the writer thread once the images queued so far are written, for work
+     * on the disk cache that has to see them like closing it
+     *
+     * @param task the task to run
+     */
+    public void runAfterWrites(final Runnable task) {
+        mHandler.sendEmptyMessage(MSG_WRITE);
+        mHandler.post(task);
+    }
+
+    private void writePending() {
+        final ArrayList<String> keys;
+        synchronized (this) {
+            keys = new ArrayList<>(mPending.keySet());
+        }
+        final DiskLruCache diskCache = mDiskCache.get();
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (diskCache == null || diskCache.isClosed()) {
+            // written once the disk cache is opened, or dropped if it can't be
+            if (!mDiskCacheAvailable) {
+                clear();
+            }
+            return;
+        }
+
+        int written = 0;
+        for (final String key : keys) {
+            final Pending pending;
+            synchronized (this) {
+                pending = mPending.get(key);
+            }
+            if (pending != null && write(diskCache, key, pending)) {
+                written++;
+            }
+            // the image stays visible to readers until it's on disk
+            synchronized (this) {
+                if (pending != null && mPending.get(key) == pending) {
+                    removePending(key);
+                }
+            }
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Wrote " + written + " of " + keys.size() + " images");
+        }
+        if (written > 0) {
+            mHandler.removeMessages(MSG_FLUSH);
+            mHandler.sendEmptyMessageDelayed(MSG_FLUSH, FLUSH_DELAY);
+        }
+    }
+
+    private boolean write(final DiskLruCache diskCache, final String key,
+                          final Pending pending) {
+        DiskLruCache.Editor editor = null;
+        OutputStream out = null;
+        try {
+            if (!pending.mReplace && diskCache.contains(key)) {
+                return false;
+            }
+            editor = diskCache.edit(key);
+            if (editor == null) {
+                return false;
+            }
+            out = editor.newOutputStream(ImageCache.DISK_CACHE_INDEX);
+            if (pending.mBytes != null) {
+                out.write(pending.mBytes);
+            } else {
+                if (DEBUG && !mBenchmarked
+                        && pending.mBitmap.getConfig() != Bitmap.Config.HARDWARE) {
+                    mBenchmarked = true;
+                    Log.d(TAG, "Encoding benchmark of a " + pending.mBitmap.getWidth() + "x"
+                            + pending.mBitmap.getHeight() + " image: "
+                            + DiskEncodingBenchmark.run(pending.mBitmap, BENCHMARK_ROUNDS));
+                }
+                mEncoding.compress(pending.mBitmap, out);
+            }
+            out.close();
+            editor.commit();
+            return true;
+        } catch (final IOException | IllegalStateException e) {
+            // the cache may have been cleared or closed while the image was queued
+            Log.e(TAG, "write", e);
+            abortQuietly(editor);
+            return false;
+        } finally {
+            IoUtils.closeQuietly(out);
+        }
+    }
+
+    private static void abortQuietly(final DiskLruCache.Editor editor) {
+        if (editor != null) {
+            try {
+                editor.abort();
+            } catch (final IOException | IllegalStateException ignored) {
+            }
+        }
+    }
+
+    private void flushJournal() {
+        final DiskLruCache diskCache = mDiskCache.get();
+        if (diskCache == null) {
+            return;
+        }
+        try {
+            if (!diskCache.isClosed()) {
+                diskCache.flush();
+            }
+        } catch (final IOException e) {
+            Log.e(TAG, "flush", e);
+        }
+    }
+}
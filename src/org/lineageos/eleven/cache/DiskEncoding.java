@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.os.Build;
+
+import java.io.OutputStream;
+
+/**
+ * The codecs images can be written to the disk cache with, a trade off between the time to
+ * encode them, their size on disk and their quality.  Images that are stored with the bytes
+ * they came in aren't encoded again.  See {@link DiskEncodingBenchmark} to compare them.
+ */
+public enum DiskEncoding {
+    /* What the cache always used, large files and the slowest encode */
+    JPEG_HIGH(CompressFormat.JPEG, 98),
+    /* Visually the same for artwork at a fraction of the size of JPEG_HIGH */
+    JPEG(CompressFormat.JPEG, 90),
+    /* Smaller than JPEG at the same quality, but slower to encode */
+    WEBP(null, 85),
+    /* Lossless, keeps transparency, the largest files */
+    PNG(CompressFormat.PNG, 100);
+
+    private final CompressFormat mFormat;
+    private final int mQuality;
+
+    DiskEncoding(final CompressFormat format, final int quality) {
+        mFormat = format;
+        mQuality = quality;
+    }
+
+    /**
+     * @return the format to compress bitmaps with
+     */
+    @SuppressWarnings("deprecation")
+    public CompressFormat getFormat() {
+        if (mFormat != null) {
+            return mFormat;
+        }
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? CompressFormat.WEBP_LOSSY : CompressFormat.WEBP;
+    }
+
+    /**
+     * @return the quality to compress bitmaps with, 0 - 100
+     */
+    public int getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * Encodes a bitmap
+     *
+     * @param bitmap the bitmap to encode
+     * @param out    the stream to write to
+     * @return true if the bitmap was encoded
+     */
+    public boolean compress(final Bitmap bitmap, final OutputStream out) {
+        return bitmap.compress(getFormat(), mQuality, out);
+    }
+}
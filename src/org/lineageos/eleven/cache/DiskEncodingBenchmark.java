@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures every {@link DiskEncoding} on a sample image: how long it takes to encode and to
+ * decode it again and how large it is on disk.  {@link ImageCache} logs the results for the
+ * first image it writes when debugging is enabled.
+ */
+public final class DiskEncodingBenchmark {
+
+    /**
+     * The measurements of one encoding
+     */
+    public static final class Result {
+        public final DiskEncoding mEncoding;
+        /* The size of the encoded image in bytes */
+        public final int mSize;
+        /* The average time of an encode and a decode in microseconds */
+        public final long mEncodeMicros;
+        public final long mDecodeMicros;
+
+        private Result(final DiskEncoding encoding, final int size, final long encodeMicros,
+                       final long decodeMicros) {
+            mEncoding = encoding;
+            mSize = size;
+            mEncodeMicros = encodeMicros;
+            mDecodeMicros = decodeMicros;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return mEncoding + ": " + mSize + " bytes, encode " + mEncodeMicros
+                    + "us, decode " + mDecodeMicros + "us";
+        }
+    }
+
+    private DiskEncodingBenchmark() {
+    }
+
+    /**
+     * Encodes and decodes a sample image with every encoding
+     *
+     * @param sample a software bitmap to encode
+     * @param rounds the number of times to encode and decode it, the times are averaged
+     * @return the results in the order of {@link DiskEncoding#values()}
+     */
+    @WorkerThread
+    public static List<Result> run(final Bitmap sample, final int rounds) {
+        final List<Result> results = new ArrayList<>();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final DiskEncoding encoding : DiskEncoding.values()) {
+            // warm up the codec so the first round doesn't count its setup
+            out.reset();
+            encoding.compress(sample, out);
+
+            long encodeNanos = 0;
+            long decodeNanos = 0;
+            for (int i = 0; i < rounds; i++) {
+                out.reset();
+                long start = SystemClock.elapsedRealtimeNanos();
+                encoding.compress(sample, out);
+                encodeNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+                final byte[] bytes = out.toByteArray();
+                start = SystemClock.elapsedRealtimeNanos();
+                final Bitmap decoded = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+                decodeNanos += SystemClock.elapsedRealtimeNanos() - start;
+                if (decoded != null) {
+                    decoded.recycle();
+                }
+            }
+            results.add(new Result(encoding, out.size(), encodeNanos / rounds / 1000,
+                    decodeNanos / rounds / 1000));
+        }
+        return results;
+    }
+}
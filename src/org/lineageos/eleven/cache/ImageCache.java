@@ -25,7 +25,6 @@ import android.content.ContentUris;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
-import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.AsyncTask;
@@ -42,13 +41,12 @@ import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.IoUtils;
 
 import java.io.File;
+import java.io.DataInputStream;
 import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.HashSet;
 
 import androidx.annotation.NonNull;
@@ -58,6 +56,7 @@ import androidx.annotation.NonNull;
  */
 public final class ImageCache {
     private static final String TAG = ImageCache.class.getSimpleName();
+    private static final boolean DEBUG = false;
 
     /**
      * The {@link Uri} used to retrieve album art
@@ -67,37 +66,59 @@ public final class ImageCache {
     /**
      * Default memory cache size as a percent of device memory class
      */
-    private static final float MEM_CACHE_DIVIDER = 0.50f;
+    private static final float MEM_CACHE_DIVIDER = 0.25f;
 
     /**
-     * Default disk cache size 50MB
+     * Size of the cache of hardware bitmaps as a percent of device memory class.  Their pixels
+     * live in graphics memory, so they are counted apart from the heap of the memory cache.
      */
-    private static final int DISK_CACHE_SIZE = 50 * 1024 * 1024;
+    private static final float HARDWARE_CACHE_DIVIDER = 0.25f;
 
     /**
-     * Compression settings when writing images to disk cache
+     * Default disk cache size 50MB
      */
-    private static final CompressFormat COMPRESS_FORMAT = CompressFormat.JPEG;
+    private static final int DISK_CACHE_SIZE = 50 * 1024 * 1024;
 
     /**
      * Disk cache index to read from
      */
-    private static final int DISK_CACHE_INDEX = 0;
+    static final int DISK_CACHE_INDEX = 0;
 
     /**
-     * Image compression quality
+     * Artwork files up to this size are stored in the disk cache as they are instead of
+     * encoding the decoded artwork again
      */
-    private static final int COMPRESS_QUALITY = 98;
+    private static final int MAX_ORIGINAL_BYTES = 512 * 1024;
 
     /**
      * LRU cache
      */
     private MemoryCache mLruCache;
 
+    /**
+     * LRU cache of {@link Bitmap.Config#HARDWARE} bitmaps that are only drawn on screen
+     */
+    private MemoryCache mHardwareCache;
+
+    /**
+     * Bitmaps released by their owners to decode into
+     */
+    private final BitmapPool mBitmapPool = BitmapPool.getInstance();
+
     /**
      * Disk LRU cache
      */
-    private DiskLruCache mDiskCache;
+    private volatile DiskLruCache mDiskCache;
+
+    /**
+     * Writes images to the disk cache in the background
+     */
+    private final DiskCacheWriter mDiskWriter = new DiskCacheWriter(() -> mDiskCache);
+
+    /**
+     * The density of the screen, given to bitmaps scaled while decoding
+     */
+    private int mDensityDpi;
 
     private static ImageCache sInstance;
 
@@ -133,6 +154,7 @@ public final class ImageCache {
      * @param context     The {@link Context} to use
      */
     private void init(final Context context) {
+        mDensityDpi = context.getResources().getDisplayMetrics().densityDpi;
         ElevenUtils.execute(new AsyncTask<Void, Void, Void>() {
 
             @Override
@@ -169,6 +191,8 @@ public final class ImageCache {
                 }
             }
         }
+        // images queued while the disk cache was opened are written now, or dropped
+        mDiskWriter.setDiskCacheAvailable(mDiskCache != null);
     }
 
     /**
@@ -180,7 +204,10 @@ public final class ImageCache {
         final ActivityManager activityManager = context.getSystemService(ActivityManager.class);
         final int lruCacheSize = Math.round(MEM_CACHE_DIVIDER * activityManager.getMemoryClass()
                 * 1024 * 1024);
+        final int hardwareCacheSize = Math.round(HARDWARE_CACHE_DIVIDER
+                * activityManager.getMemoryClass() * 1024 * 1024);
         mLruCache = new MemoryCache(lruCacheSize);
+        mHardwareCache = new MemoryCache(hardwareCacheSize);
 
         // Release some memory as needed
         context.registerComponentCallbacks(new ComponentCallbacks2() {
@@ -191,6 +218,16 @@ public final class ImageCache {
                     evictAll();
                 } else if (level >= TRIM_MEMORY_BACKGROUND) {
                     mLruCache.trimToSize(mLruCache.size() / 2);
+                    mHardwareCache.trimToSize(mHardwareCache.size() / 2);
+                }
+                // the pool only saves allocations, drop it before the cached images
+                if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                    mBitmapPool.clear();
+                } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+                    mBitmapPool.trimToSize(mBitmapPool.getMaxSize() / 2);
+                }
+                if (DEBUG) {
+                    Log.d(TAG, "onTrimMemory(" + level + ") " + getStats());
                 }
             }
 
@@ -206,6 +243,13 @@ public final class ImageCache {
         });
     }
 
+    /**
+     * @return the hit, miss and eviction counts of the memory caches and the bitmap pool
+     */
+    public String getStats() {
+        return mLruCache + " " + mHardwareCache + " " + mBitmapPool;
+    }
+
     /**
      * Find and return an existing ImageCache stored in a {@link RetainFragment}
      * , if not found a new one is created using the supplied params and saved
@@ -258,18 +302,20 @@ public final class ImageCache {
      * @param data   The key used to store the image
      * @param bitmap The {@link Bitmap} to cache
      */
-    public void addBitmapToCache(final String data, final Bitmap bitmap) {
+    public void addBitmapToCache(final ArtworkKey data, final Bitmap bitmap) {
         addBitmapToCache(data, bitmap, false);
     }
 
     /**
-     * Adds a new image to the memory and disk caches
+     * Adds a new image to the memory and disk caches.  The image is written to the disk cache
+     * in the background, see {@link DiskCacheWriter}.
      *
      * @param data    The key used to store the image
      * @param bitmap  The {@link Bitmap} to cache
      * @param replace force a replace even if the bitmap exists in the cache
      */
-    public void addBitmapToCache(final String data, final Bitmap bitmap, final boolean replace) {
+    public void addBitmapToCache(final ArtworkKey data, final Bitmap bitmap,
+                                 final boolean replace) {
         if (data == null || bitmap == null) {
             return;
         }
@@ -278,34 +324,14 @@ public final class ImageCache {
         addBitmapToMemCache(data, bitmap, replace);
 
         // Add to disk cache
-        if (mDiskCache != null && !mDiskCache.isClosed()) {
-            final String key = hashKeyForDisk(data);
-            OutputStream out = null;
-            try {
-                final DiskLruCache.Snapshot snapshot = mDiskCache.get(key);
-                if (snapshot != null) {
-                    snapshot.getInputStream(DISK_CACHE_INDEX).close();
-                }
+        mDiskWriter.write(data.getDiskName(), bitmap, replace);
+    }
 
-                if (snapshot == null || replace) {
-                    final DiskLruCache.Editor editor = mDiskCache.edit(key);
-                    if (editor != null) {
-                        out = editor.newOutputStream(DISK_CACHE_INDEX);
-                        bitmap.compress(COMPRESS_FORMAT, COMPRESS_QUALITY, out);
-                        editor.commit();
-                        out.close();
-                        flush();
-                    }
-                }
-            } catch (final IOException e) {
-                // if the user clears the cache while we have an async task going we could try
-                // writing to the disk cache while it isn't ready. Catching here will silently
-                // fail instead
-                Log.e(TAG, "addBitmapToCache", e);
-            } finally {
-                IoUtils.closeQuietly(out);
-            }
-        }
+    /**
+     * @param encoding The codec images are written to the disk cache with from now on
+     */
+    public void setDiskEncoding(final DiskEncoding encoding) {
+        mDiskWriter.setEncoding(encoding);
     }
 
     /**
@@ -314,44 +340,65 @@ public final class ImageCache {
      * @param data   The key identifier
      * @param bitmap The {@link Bitmap} to cache
      */
-    public void addBitmapToMemCache(final String data, final Bitmap bitmap) {
+    public void addBitmapToMemCache(final ArtworkKey data, final Bitmap bitmap) {
         addBitmapToMemCache(data, bitmap, false);
     }
 
     /**
-     * Called to add a new image to the memory cache
+     * Called to add a new image to the memory cache.  Hardware bitmaps go to a cache of their
+     * own so they are only handed out for display.
      *
      * @param data    The key identifier
      * @param bitmap  The {@link Bitmap} to cache
      * @param replace whether to force a replace if it already exists
      */
-    public void addBitmapToMemCache(final String data, final Bitmap bitmap, final boolean replace) {
+    public void addBitmapToMemCache(final ArtworkKey data, final Bitmap bitmap,
+                                    final boolean replace) {
         if (data == null || bitmap == null) {
             return;
         }
         // Add to memory cache
-        if (replace || getBitmapFromMemCache(data) == null) {
+        if (bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            if (replace || mHardwareCache.get(data) == null) {
+                mHardwareCache.put(data, bitmap);
+            }
+        } else if (replace || getBitmapFromMemCache(data) == null) {
             mLruCache.put(data, bitmap);
         }
     }
 
     /**
-     * Fetches a cached image from the memory cache
+     * Fetches a cached image from the memory cache, whose pixels can be read
      *
      * @param data Unique identifier for which item to get
      * @return The {@link Bitmap} if found in cache, null otherwise
      */
-    public final Bitmap getBitmapFromMemCache(final String data) {
+    public final Bitmap getBitmapFromMemCache(final ArtworkKey data) {
         return (data == null || mLruCache == null) ? null : mLruCache.get(data);
     }
 
+    /**
+     * Fetches a cached image that is only going to be drawn on screen from the memory cache
+     *
+     * @param data Unique identifier for which item to get
+     * @return The {@link Bitmap}, which may be a hardware bitmap, if found in cache, null
+     * otherwise
+     */
+    public final Bitmap getDisplayBitmapFromMemCache(final ArtworkKey data) {
+        if (data == null || mHardwareCache == null) {
+            return null;
+        }
+        final Bitmap bitmap = mHardwareCache.get(data);
+        return bitmap != null ? bitmap : getBitmapFromMemCache(data);
+    }
+
     /**
      * Fetches a cached image from the disk cache
      *
      * @param data Unique identifier for which item to get
      * @return The {@link Bitmap} if found in cache, null otherwise
      */
-    public final Bitmap getBitmapFromDiskCache(final String data) {
+    public final Bitmap getBitmapFromDiskCache(final ArtworkKey data) {
         if (data == null) {
             return null;
         }
@@ -362,27 +409,7 @@ public final class ImageCache {
             return getBitmapFromMemCache(data);
         }
 
-        final String key = hashKeyForDisk(data);
-        if (mDiskCache != null) {
-            InputStream inputStream = null;
-            try {
-                final DiskLruCache.Snapshot snapshot = mDiskCache.get(key);
-                if (snapshot != null) {
-                    inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
-                    if (inputStream != null) {
-                        final Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                        if (bitmap != null) {
-                            return bitmap;
-                        }
-                    }
-                }
-            } catch (final IOException e) {
-                Log.e(TAG, "getBitmapFromDiskCache", e);
-            } finally {
-                IoUtils.closeQuietly(inputStream);
-            }
-        }
-        return null;
+        return decodeDiskEntry(data, 0, false);
     }
 
     /**
@@ -392,13 +419,26 @@ public final class ImageCache {
      * @param data Unique identifier for which item to get
      * @return The {@link Bitmap} if found in cache, null otherwise
      */
-    public final Bitmap getCachedBitmap(final String data) {
+    public final Bitmap getCachedBitmap(final ArtworkKey data) {
+        return getCachedBitmap(data, false);
+    }
+
+    /**
+     * Tries to return a cached image from memory cache before fetching from the
+     * disk cache
+     *
+     * @param data    Unique identifier for which item to get
+     * @param display true if the image is only drawn on screen and may be a hardware bitmap
+     * @return The {@link Bitmap} if found in cache, null otherwise
+     */
+    public final Bitmap getCachedBitmap(final ArtworkKey data, final boolean display) {
         if (data == null) {
             return null;
         }
-        Bitmap cachedImage = getBitmapFromMemCache(data);
+        Bitmap cachedImage = display
+                ? getDisplayBitmapFromMemCache(data) : getBitmapFromMemCache(data);
         if (cachedImage == null) {
-            cachedImage = getBitmapFromDiskCache(data);
+            cachedImage = decodeDiskEntry(data, 0, display);
         }
         if (cachedImage != null) {
             addBitmapToMemCache(data, cachedImage);
@@ -408,37 +448,297 @@ public final class ImageCache {
     }
 
     /**
-     * Tries to return the album art from memory cache and disk cache, before
-     * calling {@code #getArtworkFromFile(Context, String)} again
+     * Tries to return the album art in the given size from memory cache and disk cache.  A
+     * smaller size is decoded from the full size image in the disk cache if there is one, as
+     * that may be an image the user picked, before calling
+     * {@code #getArtworkFromFile(Context, long, ArtworkSize)} again.
      *
      * @param context The {@link Context} to use
      * @param data    The name of the album art
      * @param id      The ID of the album to find artwork for
-     * @return The artwork for an album
+     * @param size    The size class of the artwork
+     * @return The artwork for an album, cached under {@link ArtworkKey#sized(ArtworkSize)}
+     */
+    public final Bitmap getCachedArtwork(final Context context, final ArtworkKey data,
+                                         final long id, final ArtworkSize size) {
+        return getCachedArtwork(context, data, id, size, false);
+    }
+
+    /**
+     * Tries to return the album art in the given size from memory cache and disk cache, see
+     * {@link #getCachedArtwork(Context, ArtworkKey, long, ArtworkSize)}
+     *
+     * @param display true if the artwork is only drawn on screen and may be a hardware bitmap
      */
-    public final Bitmap getCachedArtwork(final Context context, final String data, final long id) {
+    public final Bitmap getCachedArtwork(final Context context, final ArtworkKey data,
+                                         final long id, final ArtworkSize size,
+                                         final boolean display) {
         if (context == null || data == null) {
             return null;
         }
-        Bitmap cachedImage = getCachedBitmap(data);
+        final ArtworkKey sizedData = data.sized(size);
+        final int pixelSize = size.getPixelSize(context);
+        Bitmap cachedImage = display
+                ? getDisplayBitmapFromMemCache(sizedData) : getBitmapFromMemCache(sizedData);
+        if (cachedImage == null) {
+            // the full size entry may hold the original artwork, larger than the size class
+            cachedImage = decodeDiskEntry(sizedData, pixelSize, display);
+        }
+        if (cachedImage == null && size != ArtworkSize.FULL) {
+            cachedImage = decodeDiskEntry(data, pixelSize, display);
+        }
         if (cachedImage == null && id >= 0) {
-            cachedImage = getArtworkFromFile(context, id);
+            cachedImage = getArtworkFromFile(context, id, size, display, data);
         }
         if (cachedImage != null) {
-            addBitmapToMemCache(data, cachedImage);
+            addBitmapToMemCache(sizedData, cachedImage);
             return cachedImage;
         }
         return null;
     }
 
+    /**
+     * Decodes an image of the disk cache without adding it to the memory cache
+     *
+     * @param data       Unique identifier for which item to get
+     * @param targetSize The length the shorter side is decoded to at most, 0 to keep the size
+     * @param display    true to decode a hardware bitmap that can only be drawn on screen
+     * @return The {@link Bitmap} if found in the disk cache, null otherwise
+     */
+    private Bitmap decodeDiskEntry(final ArtworkKey data, final int targetSize,
+                                   final boolean display) {
+        final String key = data.getDiskName();
+        final DiskCacheWriter.Pending pending = mDiskWriter.getPending(key);
+        if (pending != null) {
+            return decodePending(pending, targetSize, display);
+        }
+
+        final DiskLruCache diskCache = mDiskCache;
+        if (diskCache == null) {
+            return null;
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream inputStream = null;
+        try {
+            // the entry can only be read once per snapshot, so open it for each pass
+            DiskLruCache.Snapshot snapshot = diskCache.get(key);
+            if (snapshot == null) {
+                return null;
+            }
+            inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
+            BitmapFactory.decodeStream(inputStream, null, options);
+            inputStream.close();
+            if (!setSampling(options, targetSize)) {
+                return null;
+            }
+
+            return decode(options, display, decodeOptions -> {
+                final DiskLruCache.Snapshot entry = diskCache.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                try (InputStream in = entry.getInputStream(DISK_CACHE_INDEX)) {
+                    return BitmapFactory.decodeStream(in, null, decodeOptions);
+                }
+            });
+        } catch (final IOException e) {
+            Log.e(TAG, "decodeDiskEntry", e);
+            return null;
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Returns an image that is still waiting to be written to the disk cache like it was
+     * decoded from there
+     *
+     * @param pending    the queued image
+     * @param targetSize The length the shorter side is decoded to at most, 0 to keep the size
+     * @param display    true if a hardware bitmap can be returned
+     * @return The {@link Bitmap}
+     */
+    private Bitmap decodePending(final DiskCacheWriter.Pending pending, final int targetSize,
+                                 final boolean display) {
+        if (pending.mBytes != null) {
+            return decodeBytes(pending.mBytes, targetSize, display);
+        }
+
+        Bitmap bitmap = pending.mBitmap;
+        final int shortSide = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        final boolean scale = targetSize > 0 && shortSide > targetSize;
+        if (bitmap.getConfig() == Bitmap.Config.HARDWARE && (scale || !display)) {
+            bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, scale);
+        }
+        if (bitmap != null && scale) {
+            final float factor = targetSize / (float) shortSide;
+            final Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.round(bitmap.getWidth() * factor),
+                    Math.round(bitmap.getHeight() * factor), true);
+            // the copy of a hardware bitmap was only made to be scaled
+            if (bitmap != pending.mBitmap && bitmap != scaled) {
+                mBitmapPool.put(bitmap);
+            }
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes an encoded image in memory
+     *
+     * @param bytes      The encoded image
+     * @param targetSize The length the shorter side is decoded to at most, 0 to keep the size
+     * @param display    true to decode a hardware bitmap that can only be drawn on screen
+     * @return The {@link Bitmap} or null if it couldn't be decoded
+     */
+    private Bitmap decodeBytes(final byte[] bytes, final int targetSize, final boolean display) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (!setSampling(options, targetSize)) {
+            return null;
+        }
+        try {
+            return decode(options, display, decodeOptions ->
+                    BitmapFactory.decodeByteArray(bytes, 0, bytes.length, decodeOptions));
+        } catch (final IOException e) {
+            Log.e(TAG, "decodeBytes", e);
+            return null;
+        }
+    }
+
+    /**
+     * Sets up decoding options whose bounds were decoded to decode the image so its shorter
+     * side is at most the target size.  The image is sampled down by the largest power of two
+     * that keeps it at least that large, then scaled to the exact size while decoding.
+     *
+     * @param options    options with the bounds of the image
+     * @param targetSize the length of the shorter side, 0 to decode the image as it is
+     * @return false if the bounds couldn't be decoded
+     */
+    private static boolean setSampling(final BitmapFactory.Options options,
+                                       final int targetSize) {
+        final int shortSide = Math.min(options.outWidth, options.outHeight);
+        if (shortSide <= 0) {
+            return false;
+        }
+        options.inJustDecodeBounds = false;
+        if (targetSize <= 0) {
+            return true;
+        }
+
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+
+        final int sampledSide = shortSide / sampleSize;
+        if (sampledSide > targetSize) {
+            options.inScaled = true;
+            options.inDensity = sampledSide;
+            options.inTargetDensity = targetSize;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes an image whose sampling is set up with {@link #setSampling}.  Images for display
+     * are decoded straight into a hardware bitmap, which keeps their pixels off the heap but
+     * can't be read or drawn on a software canvas.  Other images are decoded into a bitmap of
+     * the {@link BitmapPool} that is large enough if there is one.
+     * <p>
+     * Cached bitmaps are never decoded into again: once handed out they may still be shown,
+     * blurred, cached under another key or waiting to be written to the disk cache long after
+     * they left the memory cache.  The pool only holds bitmaps their owners released.
+     *
+     * @param options the decoding options
+     * @param display true to decode a hardware bitmap
+     * @param decoder decodes the image with the options it is given
+     * @return the decoded bitmap or null if the image couldn't be decoded
+     */
+    private Bitmap decode(final BitmapFactory.Options options, final boolean display,
+                          final Decoder decoder) throws IOException {
+        if (display) {
+            options.inPreferredConfig = Bitmap.Config.HARDWARE;
+            return restoreDensity(decoder.decode(options));
+        }
+        options.inMutable = true;
+        options.inBitmap = mBitmapPool.get(getDecodedByteCount(options));
+        if (options.inBitmap != null) {
+            try {
+                return restoreDensity(decoder.decode(options));
+            } catch (final IllegalArgumentException e) {
+                // the decoder didn't accept the pooled bitmap, use a new one
+                options.inBitmap = null;
+            }
+        }
+        return restoreDensity(decoder.decode(options));
+    }
+
+    /**
+     * @return the number of bytes an image decoded with the options takes, rounded up
+     */
+    private static int getDecodedByteCount(final BitmapFactory.Options options) {
+        final int sampleSize = Math.max(1, options.inSampleSize);
+        float width = (options.outWidth + sampleSize - 1) / sampleSize;
+        float height = (options.outHeight + sampleSize - 1) / sampleSize;
+        if (options.inScaled && options.inDensity > 0 && options.inTargetDensity > 0) {
+            final float scale = options.inTargetDensity / (float) options.inDensity;
+            width *= scale;
+            height *= scale;
+        }
+        return (int) Math.ceil(width + 1) * (int) Math.ceil(height + 1) * 4;
+    }
+
+    /**
+     * Decodes an image from a source that can be read again for every call
+     */
+    private interface Decoder {
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
+    /**
+     * Scaling while decoding marks the bitmap with the target size as its density, give it
+     * the screen density like any other decoded bitmap so drawables don't resize it
+     */
+    private Bitmap restoreDensity(final Bitmap bitmap) {
+        if (bitmap != null) {
+            bitmap.setDensity(mDensityDpi);
+        }
+        return bitmap;
+    }
+
     /**
      * Used to fetch the artwork for an album locally from the user's device
      *
      * @param context The {@link Context} to use
      * @param albumId The ID of the album to find artwork for
+     * @param size    The size class to decode the artwork in
      * @return The artwork for an album
      */
-    public final Bitmap getArtworkFromFile(final Context context, final long albumId) {
+    public final Bitmap getArtworkFromFile(final Context context, final long albumId,
+                                           final ArtworkSize size) {
+        return getArtworkFromFile(context, albumId, size, false, null);
+    }
+
+    /**
+     * Used to fetch the artwork for an album locally from the user's device
+     *
+     * @param context The {@link Context} to use
+     * @param albumId The ID of the album to find artwork for
+     * @param size    The size class to decode the artwork in
+     * @param display true to decode a hardware bitmap that can only be drawn on screen
+     * @param data    The key to store small artwork files in the disk cache under as they
+     *                are, or null
+     * @return The artwork for an album
+     */
+    private Bitmap getArtworkFromFile(final Context context, final long albumId,
+                                      final ArtworkSize size, final boolean display,
+                                      final ArtworkKey data) {
         if (albumId < 0) {
             return null;
         }
@@ -450,12 +750,36 @@ public final class ImageCache {
             parcelFileDescriptor = context.getContentResolver().openFileDescriptor(uri, "r");
             if (parcelFileDescriptor != null) {
                 final FileDescriptor fileDescriptor = parcelFileDescriptor.getFileDescriptor();
-                artwork = BitmapFactory.decodeFileDescriptor(fileDescriptor);
+                final long length = parcelFileDescriptor.getStatSize();
+                if (data != null && length > 0 && length <= MAX_ORIGINAL_BYTES) {
+                    // keep the file, the disk cache stores it instead of encoding it again
+                    final byte[] bytes = new byte[(int) length];
+                    try (DataInputStream in = new DataInputStream(
+                            new FileInputStream(fileDescriptor))) {
+                        in.readFully(bytes);
+                    }
+                    artwork = decodeBytes(bytes, size.getPixelSize(context), display);
+                    if (artwork != null) {
+                        mDiskWriter.write(data.getDiskName(), bytes, false);
+                    }
+                } else {
+                    // decoding restores the offset of the descriptor, so it can be read twice
+                    final BitmapFactory.Options options = new BitmapFactory.Options();
+                    options.inJustDecodeBounds = true;
+                    BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options);
+                    if (setSampling(options, size.getPixelSize(context))) {
+                        artwork = decode(options, display, decodeOptions ->
+                                BitmapFactory.decodeFileDescriptor(fileDescriptor, null,
+                                        decodeOptions));
+                    }
+                }
             }
         } catch (final IllegalStateException e) {
             // Log.e(TAG, "IllegalStateException - getArtworkFromFile - ", e);
         } catch (final FileNotFoundException e) {
             // Log.e(TAG, "FileNotFoundException - getArtworkFromFile - ", e);
+        } catch (final IOException e) {
+            Log.e(TAG, "getArtworkFromFile", e);
         } catch (final OutOfMemoryError evict) {
             // Log.e(TAG, "OutOfMemoryError - getArtworkFromFile - ", evict);
             evictAll();
@@ -467,31 +791,18 @@ public final class ImageCache {
 
     /**
      * flush() is called to synchronize up other methods that are accessing the
-     * cache first
+     * cache first.  The queued images are written and the journal is flushed in the
+     * background.
      */
     public void flush() {
-        ElevenUtils.execute(new AsyncTask<Void, Void, Void>() {
-
-            @Override
-            protected Void doInBackground(final Void... unused) {
-                if (mDiskCache != null) {
-                    try {
-                        if (!mDiskCache.isClosed()) {
-                            mDiskCache.flush();
-                        }
-                    } catch (final IOException e) {
-                        Log.e(TAG, "flush", e);
-                    }
-                }
-                return null;
-            }
-        });
+        mDiskWriter.flush();
     }
 
     /**
      * Clears the disk and memory caches
      */
     public void clearCaches() {
+        mDiskWriter.clear();
         ElevenUtils.execute(new AsyncTask<Void, Void, Void>() {
 
             @Override
@@ -499,6 +810,7 @@ public final class ImageCache {
                 // Clear the disk cache
                 try {
                     if (mDiskCache != null) {
+                        mDiskWriter.setDiskCacheAvailable(false);
                         mDiskCache.delete();
                         mDiskCache = null;
                     }
@@ -518,21 +830,18 @@ public final class ImageCache {
      * thread.
      */
     public void close() {
-        ElevenUtils.execute(new AsyncTask<Void, Void, Void>() {
-
-            @Override
-            protected Void doInBackground(final Void... unused) {
-                if (mDiskCache != null) {
-                    try {
-                        if (!mDiskCache.isClosed()) {
-                            mDiskCache.close();
-                            mDiskCache = null;
-                        }
-                    } catch (final IOException e) {
-                        Log.e(TAG, "close", e);
+        // write the queued images first, the writer thread runs the close after them
+        mDiskWriter.runAfterWrites(() -> {
+            if (mDiskCache != null) {
+                try {
+                    if (!mDiskCache.isClosed()) {
+                        mDiskWriter.setDiskCacheAvailable(false);
+                        mDiskCache.close();
+                        mDiskCache = null;
                     }
+                } catch (final IOException e) {
+                    Log.e(TAG, "close", e);
                 }
-                return null;
             }
         });
     }
@@ -545,30 +854,48 @@ public final class ImageCache {
         if (mLruCache != null) {
             mLruCache.evictAll();
         }
+        if (mHardwareCache != null) {
+            mHardwareCache.evictAll();
+        }
+        mBitmapPool.clear();
         System.gc();
     }
 
     /**
      * @param key The key used to identify which cache entries to delete.
      */
-    public void removeFromCache(final String key) {
+    public void removeFromCache(final ArtworkKey key) {
         if (key == null) {
             return;
         }
+        // Remove the entries of every artwork size, the full size has the plain key
+        for (final ArtworkSize size : ArtworkSize.values()) {
+            removeEntry(key.sized(size));
+        }
+        // the blur was made from the artwork that is removed
+        removeEntry(key.blurred());
+        flush();
+    }
+
+    private void removeEntry(final ArtworkKey key) {
         // Remove the Lru entry
         if (mLruCache != null) {
             mLruCache.remove(key);
         }
+        if (mHardwareCache != null) {
+            mHardwareCache.remove(key);
+        }
 
         try {
-            // Remove the disk entry
+            // Remove the disk entry and a write of it that is still queued
+            final String diskKey = key.getDiskName();
+            mDiskWriter.remove(diskKey);
             if (mDiskCache != null) {
-                mDiskCache.remove(hashKeyForDisk(key));
+                mDiskCache.remove(diskKey);
             }
         } catch (final IOException e) {
             Log.e(TAG, "removeFromCache(" + key + ")", e);
         }
-        flush();
     }
 
     /**
@@ -608,43 +935,6 @@ public final class ImageCache {
         return path.getUsableSpace();
     }
 
-    /**
-     * A hashing method that changes a string (like a URL) into a hash suitable
-     * for using as a disk filename.
-     *
-     * @param key The key used to store the file
-     */
-    public static String hashKeyForDisk(final String key) {
-        String cacheKey;
-        try {
-            final MessageDigest digest = MessageDigest.getInstance("MD5");
-            digest.update(key.getBytes());
-            cacheKey = bytesToHexString(digest.digest());
-        } catch (final NoSuchAlgorithmException e) {
-            cacheKey = String.valueOf(key.hashCode());
-        }
-        return cacheKey;
-    }
-
-    /**
-     * http://stackoverflow.com/questions/332079
-     *
-     * @param bytes The bytes to convert.
-     * @return A {@link String} converted from the bytes of a hashable key used
-     * to store a filename on the disk, to hex digits.
-     */
-    private static String bytesToHexString(final byte[] bytes) {
-        final StringBuilder builder = new StringBuilder();
-        for (final byte b : bytes) {
-            final String hex = Integer.toHexString(0xFF & b);
-            if (hex.length() == 1) {
-                builder.append('0');
-            }
-            builder.append(hex);
-        }
-        return builder.toString();
-    }
-
     /**
      * A simple non-UI Fragment that stores a single Object and is retained over
      * configuration changes. In this sample it will be used to retain an
@@ -690,17 +980,22 @@ public final class ImageCache {
     }
 
     /**
-     * Used to cache images via {@link LruCache}.
+     * Used to cache images via {@link TinyLfuCache}.
      */
-    public static final class MemoryCache extends LruCache<String, Bitmap> {
+    public static final class MemoryCache extends TinyLfuCache<ArtworkKey, Bitmap> {
+
+        /**
+         * About the size of a grid artwork, to size the frequency sketch
+         */
+        private static final int AVERAGE_BITMAP_SIZE = 256 * 1024;
 
         /**
          * Constructor of <code>MemoryCache</code>
          *
-         * @param maxSize The allowed size of the {@link LruCache}
+         * @param maxSize The allowed size of the {@link TinyLfuCache}
          */
         public MemoryCache(final int maxSize) {
-            super(maxSize);
+            super(maxSize, maxSize / AVERAGE_BITMAP_SIZE);
         }
 
         /**
@@ -711,7 +1006,7 @@ public final class ImageCache {
         }
 
         @Override
-        protected int sizeOf(final String paramString, final Bitmap paramBitmap) {
+        protected int sizeOf(final ArtworkKey paramKey, final Bitmap paramBitmap) {
             return getBitmapSize(paramBitmap);
         }
     }
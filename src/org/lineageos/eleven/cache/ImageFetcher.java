@@ -24,9 +24,9 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.widget.ImageView;
 
-import org.lineageos.eleven.Config;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.cache.PlaylistWorkerTask.PlaylistWorkerType;
+import org.lineageos.eleven.provider.AlbumColorStore;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.colors.BitmapWithColors;
@@ -97,20 +97,29 @@ public class ImageFetcher extends ImageWorker {
     }
 
     /**
-     * Used to fetch album images.
+     * Used to fetch album images in the size that fills the image view.
      */
     public void loadAlbumImage(final String artistName, final String albumName, final long albumId,
                                final ImageView imageView) {
-        loadImage(generateAlbumCacheKey(albumName, artistName), artistName, albumName, albumId,
+        loadImage(ArtworkKey.forAlbum(albumName, artistName), artistName, albumName, albumId,
                 imageView, ImageType.ALBUM);
     }
 
+    /**
+     * Used to fetch album images in a given size, for image views without a fixed size.
+     */
+    public void loadAlbumImage(final String artistName, final String albumName, final long albumId,
+                               final ImageView imageView, final ArtworkSize size) {
+        loadImage(ArtworkKey.forAlbum(albumName, artistName), artistName, albumName, albumId,
+                imageView, ImageType.ALBUM, size, false);
+    }
+
     /**
      * Used to fetch the current artwork.
      */
-    public void loadCurrentArtwork(final ImageView imageView) {
+    public void loadCurrentArtwork(final ImageView imageView, final ArtworkSize size) {
         loadImage(getCurrentCacheKey(), MusicUtils.getArtistName(), MusicUtils.getAlbumName(),
-                MusicUtils.getCurrentAlbumId(), imageView, ImageType.ALBUM);
+                MusicUtils.getCurrentAlbumId(), imageView, ImageType.ALBUM, size, false);
     }
 
     public void updateScrimImage(final AlbumScrimImage image,
@@ -139,15 +148,15 @@ public class ImageFetcher extends ImageWorker {
         ColorExtractor.extractColors(this, callback);
     }
 
-    public static String getCurrentCacheKey() {
-        return generateAlbumCacheKey(MusicUtils.getAlbumName(), MusicUtils.getArtistName());
+    public static ArtworkKey getCurrentCacheKey() {
+        return ArtworkKey.forAlbum(MusicUtils.getAlbumName(), MusicUtils.getArtistName());
     }
 
     /**
      * Used to fetch artist images.
      */
     public void loadArtistImage(final String key, final ImageView imageView) {
-        loadImage(key, key, null, -1, imageView, ImageType.ARTIST);
+        loadImage(ArtworkKey.forArtist(key), key, null, -1, imageView, ImageType.ARTIST);
     }
 
     /**
@@ -155,7 +164,8 @@ public class ImageFetcher extends ImageWorker {
      */
     public void loadArtistImage(final String key, final ImageView imageView,
                                 boolean scaleImgToView) {
-        loadImage(key, key, null, -1, imageView, ImageType.ARTIST, scaleImgToView);
+        loadImage(ArtworkKey.forArtist(key), key, null, -1, imageView, ImageType.ARTIST,
+                scaleImgToView);
     }
 
     /**
@@ -173,62 +183,65 @@ public class ImageFetcher extends ImageWorker {
     /**
      * @param key The key used to find the image to remove
      */
-    public void removeFromCache(final String key) {
+    public void removeFromCache(final ArtworkKey key) {
         if (mImageCache != null) {
             mImageCache.removeFromCache(key);
         }
+        AlbumColorStore.getInstance(mContext).remove(key);
     }
 
     /**
      * Finds cached or downloads album art. Used in {@link MusicPlaybackService}
      * to set the current album art in the notification and lock screen
      *
-     * @param albumName  The name of the current album
-     * @param albumId    The ID of the current album
-     * @param smallArtwork Get the small version of the default artwork if no artwork exists
+     * @param albumName    The name of the current album
+     * @param artistName   The name of the current artist
+     * @param albumId      The ID of the current album
+     * @param smallArtwork Get the {@link ArtworkSize#GRID} size artwork and the small version
+     *                     of the default artwork if no artwork exists
      * @return The album art as an {@link Bitmap}
      */
-    public BitmapWithColors getArtwork(final String albumName, final long albumId,
-                                       boolean smallArtwork) {
+    public BitmapWithColors getArtwork(final String albumName, final String artistName,
+                                       final long albumId, boolean smallArtwork) {
         final String key = String.valueOf(albumId);
-        final Bitmap artwork = getArtworkBitmap(albumName, albumId);
+        final Bitmap artwork = getArtworkBitmap(albumName, artistName, albumId,
+                smallArtwork ? ArtworkSize.GRID : ArtworkSize.FULL);
         if (artwork != null) {
-            return new BitmapWithColors(artwork, key.hashCode());
+            // both sizes share their colors
+            return new BitmapWithColors(artwork, key.hashCode(),
+                    AlbumColorStore.getInstance(mContext), AlbumColorStore.getArtworkId(
+                            ArtworkKey.forAlbum(albumName, artistName), albumId), albumId);
         }
 
         return LetterTileDrawable.createDefaultBitmap(mContext, key, ImageType.ALBUM, false,
                 smallArtwork);
     }
 
-    public Bitmap getArtworkBitmap(final String albumName, final long albumId) {
-        final String key = String.valueOf(albumId);
+    /**
+     * Finds the album art in the caches under the key the album views use, so artwork the
+     * user picked is found as well, or on the device
+     *
+     * @param albumName  The name of the album
+     * @param artistName The name of the artist
+     * @param albumId    The ID of the album
+     * @param size       The size class of the artwork
+     * @return The album art as an {@link Bitmap}
+     */
+    public Bitmap getArtworkBitmap(final String albumName, final String artistName,
+                                   final long albumId, final ArtworkSize size) {
+        final ArtworkKey key = ArtworkKey.forAlbum(albumName, artistName);
         Bitmap artwork = null;
 
-        if (albumName != null && mImageCache != null) {
-            artwork = mImageCache.getBitmapFromDiskCache(key);
-        }
-        if (artwork == null && albumId >= 0 && mImageCache != null) {
-            artwork = mImageCache.getArtworkFromFile(mContext, albumId);
+        if (key != null && mImageCache != null) {
+            // the disk cache may hold the original artwork, so decode it in the size class
+            artwork = mImageCache.getCachedArtwork(mContext, key, albumId, size);
+        } else if (albumId >= 0 && mImageCache != null) {
+            artwork = mImageCache.getArtworkFromFile(mContext, albumId, size);
         }
 
         return artwork;
     }
 
-    /**
-     * Generates key used by album art cache. It needs both album name and artist name
-     * to let to select correct image for the case when there are two albums with the
-     * same artist.
-     *
-     * @param albumName  The album name the cache key needs to be generated.
-     * @param artistName The artist name the cache key needs to be generated.
-     */
-    public static String generateAlbumCacheKey(final String albumName, final String artistName) {
-        if (albumName == null || artistName == null) {
-            return null;
-        }
-        return albumName + "_" + artistName + "_" + Config.ALBUM_ART_SUFFIX;
-    }
-
     /**
      * Decode and sample down a {@link Bitmap} from a Uri.
      *
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the image loads of the {@link ImageWorker} on a small pool of background threads.
+ * Requests for a key that is already being loaded wait for that load instead of starting
+ * another one, so the artwork shared by many rows of a list is only decoded once.  Loads for
+ * views attached to the window run before loads for views that are prefetched or scrolled
+ * away, newest first, and a load that nobody waits for anymore is dropped before it starts.
+ */
+public final class ImageRequestScheduler {
+    private static final String TAG = ImageRequestScheduler.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* Priority of a request for a view attached to the window */
+    private static final int PRIORITY_VISIBLE = 0;
+
+    /* Priority of a request for a view that isn't on screen */
+    private static final int PRIORITY_PREFETCH = 1;
+
+    /* Decoding is mostly CPU bound, leave a core for the UI */
+    private static final int THREAD_COUNT =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ImageRequestScheduler sInstance = null;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* The loads that haven't delivered their result yet, by key.  Guarded by this. */
+    private final HashMap<Object, Job> mJobs = new HashMap<>();
+    private long mSequence;
+
+    /* Metrics, guarded by this */
+    private long mRequestCount;
+    private long mCoalescedCount;
+    private long mCancelledCount;
+    private long mLoadCount;
+    private long mStartedCount;
+    private long mTotalWaitMillis;
+    private long mMaxWaitMillis;
+
+    /**
+     * A snapshot of the scheduler metrics
+     */
+    public static final class Stats {
+        /* Loads waiting for a thread */
+        public final int mQueueDepth;
+        /* Loads queued or running */
+        public final int mInFlight;
+        public final long mRequestCount;
+        /* Requests that joined a load of the same key */
+        public final long mCoalescedCount;
+        /* Loads dropped before they started */
+        public final long mCancelledCount;
+        public final long mLoadCount;
+        /* Time loads waited in the queue before they started */
+        public final long mAverageWaitMillis;
+        public final long mMaxWaitMillis;
+
+        private Stats(final int queueDepth, final int inFlight, final long requestCount,
+                      final long coalescedCount, final long cancelledCount,
+                      final long loadCount, final long averageWaitMillis,
+                      final long maxWaitMillis) {
+            mQueueDepth = queueDepth;
+            mInFlight = inFlight;
+            mRequestCount = requestCount;
+            mCoalescedCount = coalescedCount;
+            mCancelledCount = cancelledCount;
+            mLoadCount = loadCount;
+            mAverageWaitMillis = averageWaitMillis;
+            mMaxWaitMillis = maxWaitMillis;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "queued=" + mQueueDepth + " inFlight=" + mInFlight
+                    + " requests=" + mRequestCount + " coalesced=" + mCoalescedCount
+                    + " cancelled=" + mCancelledCount + " loads=" + mLoadCount
+                    + " avgWait=" + mAverageWaitMillis + "ms maxWait=" + mMaxWaitMillis + "ms";
+        }
+    }
+
+    /**
+     * A view waiting for the image of a key, it follows the view on and off the screen.  The
+     * request is the tag of the view while the image loads.
+     */
+    public final class Request implements View.OnAttachStateChangeListener {
+        private final Object mKey;
+        private final WeakReference<View> mView;
+        private final BiConsumer<View, Bitmap> mCallback;
+        private Job mJob;
+        private int mPriority;
+        private boolean mCancelled;
+
+        private Request(final Object key, final View view,
+                        final BiConsumer<View, Bitmap> callback) {
+            mKey = key;
+            mView = new WeakReference<>(view);
+            mPriority = view.isAttachedToWindow() ? PRIORITY_VISIBLE : PRIORITY_PREFETCH;
+            mCallback = callback;
+            view.addOnAttachStateChangeListener(this);
+        }
+
+        public Object getKey() {
+            return mKey;
+        }
+
+        @Override
+        public void onViewAttachedToWindow(final View view) {
+            setPriority(PRIORITY_VISIBLE);
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(final View view) {
+            setPriority(PRIORITY_PREFETCH);
+        }
+
+        private void setPriority(final int priority) {
+            synchronized (ImageRequestScheduler.this) {
+                if (mCancelled || mPriority == priority) {
+                    return;
+                }
+                mPriority = priority;
+                reprioritize(mJob);
+            }
+        }
+
+        /**
+         * Stops waiting for the image, the load is dropped if no other request waits for it
+         */
+        @MainThread
+        public void cancel() {
+            stopFollowingView();
+            synchronized (ImageRequestScheduler.this) {
+                if (mCancelled) {
+                    return;
+                }
+                mCancelled = true;
+
+                final Job job = mJob;
+                job.mRequests.remove(this);
+                if (job.mRequests.isEmpty() && !job.mStarted && mExecutor.remove(job)) {
+                    mJobs.remove(job.mKey);
+                    mCancelledCount++;
+                } else {
+                    reprioritize(job);
+                }
+            }
+        }
+
+        private void deliver(final Bitmap bitmap) {
+            synchronized (ImageRequestScheduler.this) {
+                if (mCancelled) {
+                    return;
+                }
+            }
+            final View view = stopFollowingView();
+            if (view != null) {
+                mCallback.accept(view, bitmap);
+            }
+        }
+
+        private View stopFollowingView() {
+            final View view = mView.get();
+            if (view != null) {
+                view.removeOnAttachStateChangeListener(this);
+            }
+            return view;
+        }
+    }
+
+    /**
+     * A load of one key, shared by all the requests for it
+     */
+    private final class Job implements Runnable, Comparable<Job> {
+        final Object mKey;
+        final Supplier<Bitmap> mLoader;
+        final List<Request> mRequests = new ArrayList<>();
+        final long mQueuedAt = SystemClock.elapsedRealtime();
+        long mSequence;
+        int mPriority;
+        boolean mStarted;
+
+        Job(final Object key, final Supplier<Bitmap> loader) {
+            mKey = key;
+            mLoader = loader;
+        }
+
+        @Override
+        public int compareTo(final Job other) {
+            if (mPriority != other.mPriority) {
+                return Integer.compare(mPriority, other.mPriority);
+            }
+            // the rows bound last are the ones the user scrolled to
+            return Long.compare(other.mSequence, mSequence);
+        }
+
+        @Override
+        public void run() {
+            synchronized (ImageRequestScheduler.this) {
+                if (mRequests.isEmpty()) {
+                    mJobs.remove(mKey);
+                    mCancelledCount++;
+                    return;
+                }
+                mStarted = true;
+                mStartedCount++;
+                final long wait = SystemClock.elapsedRealtime() - mQueuedAt;
+                mTotalWaitMillis += wait;
+                mMaxWaitMillis = Math.max(mMaxWaitMillis, wait);
+            }
+
+            Bitmap bitmap = null;
+            try {
+                bitmap = mLoader.get();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to load " + mKey, e);
+            }
+
+            final List<Request> requests;
+            synchronized (ImageRequestScheduler.this) {
+                mJobs.remove(mKey);
+                mLoadCount++;
+                requests = new ArrayList<>(mRequests);
+                if (DEBUG) {
+                    Log.d(TAG, "Loaded " + mKey + " for " + requests.size()
+                            + " requests, " + getStatsLocked());
+                }
+            }
+
+            final Bitmap result = bitmap;
+            mMainHandler.post(() -> {
+                for (final Request request : requests) {
+                    request.deliver(result);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return The shared instance of this class
+     */
+    public static synchronized ImageRequestScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new ImageRequestScheduler();
+        }
+        return sInstance;
+    }
+
+    private ImageRequestScheduler() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "ImageLoader #" + threadCount.incrementAndGet()));
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Requests the image of a key for a view
+     *
+     * @param key      identifies the image, requests with equal keys share one load
+     * @param view     the view the image is for, only weakly referenced
+     * @param loader   loads the image in the background if no load for the key is running
+     * @param callback receives the view and the image, or null if there is none, on the main
+     *                 thread unless the request was cancelled or the view is gone
+     * @return the request, to cancel it
+     */
+    @MainThread
+    public synchronized Request submit(final Object key, final View view,
+                                       final Supplier<Bitmap> loader,
+                                       final BiConsumer<View, Bitmap> callback) {
+        final Request request = new Request(key, view, callback);
+        mRequestCount++;
+
+        Job job = mJobs.get(key);
+        if (job == null) {
+            job = new Job(key, loader);
+            job.mPriority = request.mPriority;
+            job.mSequence = ++mSequence;
+            job.mRequests.add(request);
+            request.mJob = job;
+            mJobs.put(key, job);
+            mExecutor.execute(job);
+        } else {
+            mCoalescedCount++;
+            job.mRequests.add(request);
+            request.mJob = job;
+            reprioritize(job);
+        }
+        return request;
+    }
+
+    /**
+     * Moves a queued job to the best priority of its requests.  Must be called while holding
+     * the lock of the scheduler.
+     */
+    private void reprioritize(final Job job) {
+        if (job.mStarted || job.mRequests.isEmpty()) {
+            return;
+        }
+
+        int priority = PRIORITY_PREFETCH;
+        for (final Request request : job.mRequests) {
+            priority = Math.min(priority, request.mPriority);
+        }
+        if (priority != job.mPriority && mExecutor.remove(job)) {
+            if (priority < job.mPriority) {
+                job.mSequence = ++mSequence;
+            }
+            job.mPriority = priority;
+            mExecutor.execute(job);
+        }
+    }
+
+    /**
+     * @return the current metrics
+     */
+    public synchronized Stats getStats() {
+        return getStatsLocked();
+    }
+
+    private Stats getStatsLocked() {
+        return new Stats(mExecutor.getQueue().size(), mJobs.size(), mRequestCount,
+                mCoalescedCount, mCancelledCount, mLoadCount,
+                mStartedCount > 0 ? mTotalWaitMillis / mStartedCount : 0, mMaxWaitMillis);
+    }
+}
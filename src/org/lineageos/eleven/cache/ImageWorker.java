@@ -29,6 +29,7 @@ import android.view.View;
 import android.widget.ImageView;
 
 import org.lineageos.eleven.cache.PlaylistWorkerTask.PlaylistWorkerType;
+import org.lineageos.eleven.provider.AlbumColorStore;
 import org.lineageos.eleven.provider.PlaylistArtworkStore;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.ImageUtils;
@@ -53,7 +54,7 @@ public abstract class ImageWorker {
      * Tracks which images we've tried to download and prevents it from trying again
      * In the future we might want to throw this into a db
      */
-    public static final Set<String> sKeys = Collections.synchronizedSet(new HashSet<>());
+    public static final Set<ArtworkKey> sKeys = Collections.synchronizedSet(new HashSet<>());
 
     /**
      * Default transition drawable fade time
@@ -128,10 +129,12 @@ public abstract class ImageWorker {
      * @param key    The key used to store the image
      * @param bitmap The {@link Bitmap} to cache
      */
-    public void addBitmapToCache(final String key, final Bitmap bitmap) {
+    public void addBitmapToCache(final ArtworkKey key, final Bitmap bitmap) {
         if (mImageCache != null) {
             mImageCache.addBitmapToCache(key, bitmap);
         }
+        // the colors of the artwork it replaces don't apply anymore
+        AlbumColorStore.getInstance(mContext).remove(key);
     }
 
     /**
@@ -146,25 +149,55 @@ public abstract class ImageWorker {
     }
 
     public static Bitmap getBitmapInBackground(final Context context, final ImageCache imageCache,
-                                               final String key, final long albumId,
+                                               final ArtworkKey key, final long albumId,
                                                final ImageType imageType) {
-        // The result
-        Bitmap bitmap = null;
+        return getBitmapInBackground(context, imageCache, key, albumId, imageType,
+                ArtworkSize.FULL);
+    }
+
+    /**
+     * Loads an image from the caches, or album artwork from the device
+     *
+     * @param size the size class of album artwork, other images only have one size
+     */
+    public static Bitmap getBitmapInBackground(final Context context, final ImageCache imageCache,
+                                               final ArtworkKey key, final long albumId,
+                                               final ImageType imageType,
+                                               final ArtworkSize size) {
+        return getBitmapInBackground(context, imageCache, key, albumId, imageType, size, false);
+    }
 
-        // First, check the disk cache for the image
-        if (key != null && imageCache != null) {
-            bitmap = imageCache.getCachedBitmap(key);
+    /**
+     * Loads an image from the caches, or album artwork from the device
+     *
+     * @param size    the size class of album artwork, other images only have one size
+     * @param display true if the image is only drawn on screen, so it may be decoded as a
+     *                hardware bitmap whose pixels can't be read
+     */
+    public static Bitmap getBitmapInBackground(final Context context, final ImageCache imageCache,
+                                               final ArtworkKey key, final long albumId,
+                                               final ImageType imageType,
+                                               final ArtworkSize size, final boolean display) {
+        if (key == null) {
+            return null;
         }
+        // The result
+        Bitmap bitmap = null;
+        final ArtworkKey sizedKey = imageType == ImageType.ALBUM ? key.sized(size) : key;
 
-        // Second, if we're fetching artwork, check the device for the image
-        if (bitmap == null && imageType.equals(ImageType.ALBUM) && albumId >= 0
-                && key != null && imageCache != null) {
-            bitmap = imageCache.getCachedArtwork(context, key, albumId);
+        if (imageCache != null) {
+            if (imageType == ImageType.ALBUM) {
+                // Album artwork is sampled to its size from the caches, or from the device
+                bitmap = imageCache.getCachedArtwork(context, key, albumId, size, display);
+            } else {
+                // Otherwise check the disk cache for the image
+                bitmap = imageCache.getCachedBitmap(sizedKey, display);
+            }
         }
 
         // Finally, add the new image to the cache
         if (bitmap != null) {
-            imageCache.addBitmapToCache(key, bitmap);
+            imageCache.addBitmapToCache(sizedKey, bitmap);
         }
 
         sKeys.add(key);
@@ -266,7 +299,10 @@ public abstract class ImageWorker {
      */
     public static void cancelWork(final View image) {
         Object tag = image.getTag();
-        if (tag instanceof AsyncTaskContainer) {
+        if (tag instanceof ImageRequestScheduler.Request) {
+            ((ImageRequestScheduler.Request) tag).cancel();
+            image.setTag(null);
+        } else if (tag instanceof AsyncTaskContainer) {
             AsyncTaskContainer asyncTaskContainer = (AsyncTaskContainer) tag;
             BitmapWorkerTask<?, ?, ?> bitmapWorkerTask = asyncTaskContainer.getBitmapWorkerTask();
             if (bitmapWorkerTask != null) {
@@ -282,18 +318,24 @@ public abstract class ImageWorker {
      * Returns false if the existing async task is loading the same key value
      * Returns true otherwise and also cancels the async task if one exists
      */
-    public static boolean executePotentialWork(final String key, final View view) {
-        final AsyncTaskContainer asyncTaskContainer = getAsyncTaskContainer(view);
-        if (asyncTaskContainer != null) {
-            // we are trying to reload the same image, return false to indicate no work is needed
-            if (asyncTaskContainer.getKey().equals(key)) {
-                return false;
-            }
+    public static boolean executePotentialWork(final Object key, final View view) {
+        final Object currentKey;
+        final Object tag = view.getTag();
+        if (tag instanceof ImageRequestScheduler.Request) {
+            currentKey = ((ImageRequestScheduler.Request) tag).getKey();
+        } else if (tag instanceof AsyncTaskContainer) {
+            currentKey = ((AsyncTaskContainer) tag).getKey();
+        } else {
+            return true;
+        }
 
-            // since we don't match, cancel the work and switch to the new worker task
-            cancelWork(view);
+        // we are trying to reload the same image, return false to indicate no work is needed
+        if (currentKey.equals(key)) {
+            return false;
         }
 
+        // since we don't match, cancel the work and switch to the new worker task
+        cancelWork(view);
         return true;
     }
 
@@ -346,7 +388,7 @@ public abstract class ImageWorker {
         private final WeakReference<BitmapWorkerTask<?, ?, ?>> mBitmapWorkerTaskReference;
         // keep a copy of the key in case the worker task mBitmapWorkerTaskReference is released
         // after completion
-        private final String mKey;
+        private final ArtworkKey mKey;
 
         /**
          * Constructor of <code>AsyncDrawable</code>
@@ -363,7 +405,7 @@ public abstract class ImageWorker {
             return mBitmapWorkerTaskReference.get();
         }
 
-        public String getKey() {
+        public ArtworkKey getKey() {
             return mKey;
         }
     }
@@ -399,13 +441,35 @@ public abstract class ImageWorker {
      *                   {@link Bitmap}.
      * @param imageType  The type of image URL to fetch for.
      */
-    protected void loadImage(final String key, final String artistName,
+    protected void loadImage(final ArtworkKey key, final String artistName,
                              final String albumName, final long albumId,
                              final ImageView imageView, final ImageType imageType) {
 
         loadImage(key, artistName, albumName, albumId, imageView, imageType, false);
     }
 
+    /**
+     * Called to fetch the artist or album art.  Album art is loaded in the smallest
+     * {@link ArtworkSize} that fills the image view.
+     *
+     * @param key            The unique identifier for the image.
+     * @param artistName     The artist name for the Last.fm API.
+     * @param albumName      The album name for the Last.fm API.
+     * @param albumId        The album art index, to check for missing artwork.
+     * @param imageView      The {@link ImageView} used to set the cached
+     *                       {@link Bitmap}.
+     * @param imageType      The type of image URL to fetch for.
+     * @param scaleImgToView config option to scale the image to the image view's dimensions
+     */
+    protected void loadImage(final ArtworkKey key, final String artistName,
+                             final String albumName, final long albumId,
+                             final ImageView imageView, final ImageType imageType,
+                             final boolean scaleImgToView) {
+        loadImage(key, artistName, albumName, albumId, imageView, imageType,
+                imageView == null ? ArtworkSize.FULL : ArtworkSize.forView(imageView),
+                scaleImgToView);
+    }
+
     /**
      * Called to fetch the artist or album art.
      *
@@ -416,19 +480,26 @@ public abstract class ImageWorker {
      * @param imageView      The {@link ImageView} used to set the cached
      *                       {@link Bitmap}.
      * @param imageType      The type of image URL to fetch for.
+     * @param size           The size class of album art, ignored for other images
      * @param scaleImgToView config option to scale the image to the image view's dimensions
      */
-    protected void loadImage(final String key, final String artistName, final String albumName,
-                             final long albumId, final ImageView imageView,
-                             final ImageType imageType, final boolean scaleImgToView) {
+    protected void loadImage(final ArtworkKey key, final String artistName,
+                             final String albumName, final long albumId,
+                             final ImageView imageView, final ImageType imageType,
+                             final ArtworkSize size,
+                             final boolean scaleImgToView) {
 
         if (key == null || mImageCache == null || imageView == null) {
             return;
         }
 
-        // First, check the memory for the image
-        final Bitmap lruBitmap = mImageCache.getBitmapFromMemCache(key);
+        // First, check the memory for the image, scaling needs an image whose pixels can be read
+        final ArtworkKey sizedKey = imageType == ImageType.ALBUM ? key.sized(size) : key;
+        final Bitmap lruBitmap = scaleImgToView ? mImageCache.getBitmapFromMemCache(sizedKey)
+                : mImageCache.getDisplayBitmapFromMemCache(sizedKey);
         if (lruBitmap != null) {   // Bitmap found in memory cache
+            // a load started for a previous binding must not replace it
+            cancelWork(imageView);
             // scale image if necessary
             if (scaleImgToView) {
                 imageView.setImageBitmap(ImageUtils.scaleBitmapForImageView(lruBitmap, imageView));
@@ -438,35 +509,42 @@ public abstract class ImageWorker {
         } else {
             // load the default image
             if (imageType == ImageType.ARTIST) {
-                loadDefaultImage(imageView, imageType, artistName, key);
+                loadDefaultImage(imageView, imageType, artistName, key.toString());
             } else if (imageType == ImageType.ALBUM) {
                 // don't show letters for albums so pass in null as the display string
                 // because an album could have multiple artists, use the album id as the key here
                 loadDefaultImage(imageView, imageType, null, String.valueOf(albumId));
             } else {
                 // don't show letters for playlists so pass in null as the display string
-                loadDefaultImage(imageView, imageType, null, key);
+                loadDefaultImage(imageView, imageType, null, key.toString());
             }
 
-            if (executePotentialWork(key, imageView)) {
-                Drawable fromDrawable = imageView.getDrawable();
-                if (fromDrawable == null) {
-                    fromDrawable = mTransparentDrawable;
-                }
-
-                // Otherwise run the worker task
-                final SimpleBitmapWorkerTask bitmapWorkerTask = new SimpleBitmapWorkerTask(key,
-                        imageView, imageType, fromDrawable, mContext, scaleImgToView);
-
-                final AsyncTaskContainer asyncTaskContainer =
-                        new AsyncTaskContainer(bitmapWorkerTask);
-                imageView.setTag(asyncTaskContainer);
-                try {
-                    ElevenUtils.execute(bitmapWorkerTask,
-                            artistName, albumName, String.valueOf(albumId));
-                } catch (RejectedExecutionException e) {
-                    // Executor has exhausted queue space
-                }
+            // scaled images depend on the view size, so only views of one size share a load
+            final int width = scaleImgToView ? imageView.getWidth() : 0;
+            final int height = scaleImgToView ? imageView.getHeight() : 0;
+            final Object requestKey = scaleImgToView
+                    ? sizedKey + "_" + width + "x" + height : sizedKey;
+            if (executePotentialWork(requestKey, imageView)) {
+                final Drawable fromDrawable = imageView.getDrawable() != null
+                        ? imageView.getDrawable() : mTransparentDrawable;
+
+                // Otherwise load it in the background, sharing the load with other views
+                final Context context = mContext;
+                final ImageCache imageCache = mImageCache;
+                final ImageRequestScheduler.Request request =
+                        ImageRequestScheduler.getInstance().submit(requestKey, imageView, () -> {
+                            final Bitmap bitmap = getBitmapInBackground(context, imageCache,
+                                    key, albumId, imageType, size, !scaleImgToView);
+                            return scaleImgToView
+                                    ? ImageUtils.scaleBitmap(bitmap, width, height) : bitmap;
+                        }, (view, bitmap) -> {
+                            final Drawable drawable = createImageTransitionDrawable(
+                                    view.getResources(), fromDrawable, bitmap, FADE_IN_TIME,
+                                    false);
+                            ((ImageView) view).setImageDrawable(
+                                    drawable != null ? drawable : fromDrawable);
+                        });
+                imageView.setTag(request);
             }
         }
     }
@@ -485,7 +563,7 @@ public abstract class ImageWorker {
             return;
         }
 
-        String key = null;
+        ArtworkKey key = null;
         switch (type) {
             case Artist:
                 key = PlaylistArtworkStore.getArtistCacheKey(playlistId);
@@ -538,8 +616,9 @@ public abstract class ImageWorker {
      * @param albumId         The album art index, to check for missing artwork.
      * @param albumScrimImage The {@link AlbumScrimImage} used to set the cached {@link Bitmap}.
      */
-    protected void loadBlurImage(final String key, final String artistName, final String albumName,
-                                 final long albumId, final AlbumScrimImage albumScrimImage) {
+    protected void loadBlurImage(final ArtworkKey key, final String artistName,
+                                 final String albumName, final long albumId,
+                                 final AlbumScrimImage albumScrimImage) {
         if (key == null || mImageCache == null || albumScrimImage == null) {
             return;
         }
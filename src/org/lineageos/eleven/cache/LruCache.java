@@ -1,204 +0,0 @@
-/*
- * Copyright (C) 2011 The Android Open Source Project
- * Copyright (C) 2021 The LineageOS Project
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package org.lineageos.eleven.cache;
-
-// NOTE: upstream of this class is android.util.LruCache, changes below
-// expose trimToSize() to be called externally.
-
-import android.annotation.SuppressLint;
-
-import java.util.LinkedHashMap;
-import java.util.Map;
-
-/**
- * Static library version of {@link android.util.LruCache}. Used to write apps
- * that run on API levels prior to 12. When running on API level 12 or above,
- * this implementation is still used; it does not try to switch to the
- * framework's implementation. See the framework SDK documentation for a class
- * overview.
- */
-public class LruCache<K, V> {
-
-    private final LinkedHashMap<K, V> map;
-
-    private final int maxSize;
-
-    /**
-     * Size of this cache in units. Not necessarily the number of elements.
-     */
-    private int size;
-
-    private int hitCount;
-
-    private int missCount;
-
-    /**
-     * @param maxSize for caches that do not override {@link #sizeOf}, this is
-     *                the maximum number of entries in the cache. For all other
-     *                caches, this is the maximum sum of the sizes of the entries in
-     *                this cache.
-     */
-    public LruCache(final int maxSize) {
-        if (maxSize <= 0) {
-            throw new IllegalArgumentException("maxSize <= 0");
-        }
-        this.maxSize = maxSize;
-        this.map = new LinkedHashMap<>(0, 0.75f, true);
-    }
-
-    /**
-     * Returns the value for {@code key} if it exists in the cache or can be
-     * created by {@code #create}. If a value was returned, it is moved to the
-     * head of the queue. This returns null if a value is not cached and cannot
-     * be created.
-     */
-    public final V get(final K key) {
-        if (key == null) {
-            throw new NullPointerException("key == null");
-        }
-
-        V mapValue;
-        synchronized (this) {
-            mapValue = map.get(key);
-            if (mapValue != null) {
-                this.hitCount++;
-                return mapValue;
-            }
-            this.missCount++;
-        }
-
-        return null;
-    }
-
-    /**
-     * Caches {@code value} for {@code key}. The value is moved to the head of
-     * the queue.
-     *
-     * @return the previous value mapped by {@code key}.
-     */
-    @SuppressWarnings("UnusedReturnValue")
-    public final V put(final K key, final V value) {
-        if (key == null || value == null) {
-            throw new NullPointerException("key == null || value == null");
-        }
-
-        V previous;
-        synchronized (this) {
-            this.size += safeSizeOf(key, value);
-            previous = this.map.put(key, value);
-            if (previous != null) {
-                this.size -= safeSizeOf(key, previous);
-            }
-        }
-
-        trimToSize(maxSize);
-        return previous;
-    }
-
-    /**
-     * @param maxSize the maximum size of the cache before returning. May be -1
-     *                to evict even 0-sized elements.
-     */
-    public void trimToSize(final int maxSize) {
-        while (true) {
-            K key;
-            V value;
-            synchronized (this) {
-                if (this.size < 0 || this.map.isEmpty() && size != 0) {
-                    throw new IllegalStateException(getClass().getName()
-                            + ".sizeOf() is reporting inconsistent results!");
-                }
-
-                if (this.size <= maxSize || this.map.isEmpty()) {
-                    break;
-                }
-
-                final Map.Entry<K, V> toEvict = this.map.entrySet().iterator().next();
-                key = toEvict.getKey();
-                value = toEvict.getValue();
-                this.map.remove(key);
-                this.size -= safeSizeOf(key, value);
-            }
-        }
-    }
-
-    /**
-     * Removes the entry for {@code key} if it exists.
-     *
-     * @return the previous value mapped by {@code key}.
-     */
-    @SuppressWarnings("UnusedReturnValue")
-    public final V remove(final K key) {
-        if (key == null) {
-            throw new NullPointerException("key == null");
-        }
-
-        V previous;
-        synchronized (this) {
-            previous = this.map.remove(key);
-            if (previous != null) {
-                this.size -= safeSizeOf(key, previous);
-            }
-        }
-
-        return previous;
-    }
-
-    private int safeSizeOf(final K key, final V value) {
-        final int result = sizeOf(key, value);
-        if (result < 0) {
-            throw new IllegalStateException("Negative size: " + key + "=" + value);
-        }
-        return result;
-    }
-
-    /**
-     * Returns the size of the entry for {@code key} and {@code value} in
-     * user-defined units. The default implementation returns 1 so that size is
-     * the number of entries and max size is the maximum number of entries.
-     * <p>
-     * An entry's size must not change while it is in the cache.
-     */
-    protected int sizeOf(final K key, final V value) {
-        return 1;
-    }
-
-    /**
-     * Clear the cache, calling {@link #trimToSize} on each removed entry.
-     */
-    public final void evictAll() {
-        trimToSize(-1); // -1 will evict 0-sized elements
-    }
-
-    /**
-     * For caches that do not override {@link #sizeOf}, this returns the number
-     * of entries in the cache. For all other caches, this returns the sum of
-     * the sizes of the entries in this cache.
-     */
-    public synchronized final int size() {
-        return this.size;
-    }
-
-    @SuppressLint("DefaultLocale")
-    @Override
-    public synchronized final String toString() {
-        final int accesses = this.hitCount + this.missCount;
-        final int hitPercent = accesses != 0 ? 100 * this.hitCount / accesses : 0;
-        return String.format("LruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]", this.maxSize,
-                this.hitCount, this.missCount, hitPercent);
-    }
-}
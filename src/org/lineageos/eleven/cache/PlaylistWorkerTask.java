@@ -70,7 +70,7 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
      * @param imageView The {@link ImageView} to use.
      * @param fromDrawable what drawable to transition from
      */
-    public PlaylistWorkerTask(final String key, final long playlistId,
+    public PlaylistWorkerTask(final ArtworkKey key, final long playlistId,
                               final PlaylistWorkerType type, final boolean foundInCache,
                               final ImageView imageView, final Drawable fromDrawable,
                               final Context context) {
@@ -232,8 +232,8 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
 
             artistName = sortedCursor.getString(artistIndex);
             // try to load the bitmap
-            bitmap = ImageWorker.getBitmapInBackground(mContext, mImageCache, artistName,
-                    -1, ImageType.ARTIST);
+            bitmap = ImageWorker.getBitmapInBackground(mContext, mImageCache,
+                    ArtworkKey.forArtist(artistName), -1, ImageType.ARTIST);
         } while (sortedCursor.moveToNext() && bitmap == null);
 
         if (bitmap == null) {
@@ -278,7 +278,7 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
         long albumId;
 
         // create a hashset of the keys so we don't load images from the same album multiple times
-        HashSet<String> keys = new HashSet<>(sortedCursor.getCount());
+        HashSet<ArtworkKey> keys = new HashSet<>(sortedCursor.getCount());
 
         do {
             if (isCancelled()) {
@@ -289,13 +289,13 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
             albumName = sortedCursor.getString(albumIdx);
             albumId = sortedCursor.getLong(albumIdIdx);
 
-            String key = ImageFetcher.generateAlbumCacheKey(albumName, artistName);
+            ArtworkKey key = ArtworkKey.forAlbum(albumName, artistName);
 
             // if we successfully added the key (ie the key didn't previously exist)
             if (keys.add(key)) {
                 // try to load the bitmap
                 bitmap = ImageWorker.getBitmapInBackground(mContext, mImageCache,
-                        key, albumId, ImageType.ALBUM);
+                        key, albumId, ImageType.ALBUM, ArtworkSize.GRID);
 
                 // if we got the bitmap, add it to the list
                 if (bitmap != null) {
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A separable stack blur on the CPU.  The image is downsampled first, a blur of the small
+ * image scaled up looks the same as a blur of the large one for a fraction of the work.  The
+ * rows and then the columns are split into bands that are blurred on all cores at once, into
+ * pixel buffers that are kept for the next blur.
+ * <p>
+ * The stack blur weighs the pixels of a line with a triangle, which is close enough to a
+ * gaussian, and only adds and removes one pixel per step whatever the radius.
+ */
+public final class StackBlur {
+    private static final String TAG = StackBlur.class.getSimpleName();
+
+    /* Bands smaller than this aren't worth handing to another thread */
+    private static final int MIN_LINES_PER_BAND = 16;
+    private static final long KEEP_ALIVE_SECONDS = 5;
+
+    private static StackBlur sInstance = null;
+
+    private final int mThreadCount;
+    private final ThreadPoolExecutor mExecutor;
+
+    /* The buffers of the last blur, reused by the next.  Guarded by this. */
+    private int[] mPixels = new int[0];
+    private int[] mScratch = new int[0];
+    private final int[][] mStacks;
+
+    /**
+     * @return A new instance of this class.
+     */
+    public static synchronized StackBlur getInstance() {
+        if (sInstance == null) {
+            sInstance = new StackBlur();
+        }
+        return sInstance;
+    }
+
+    private StackBlur() {
+        mThreadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        mStacks = new int[mThreadCount][];
+
+        // the calling thread blurs a band as well
+        final int helperCount = Math.max(1, mThreadCount - 1);
+        final AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = new ThreadPoolExecutor(helperCount, helperCount, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "StackBlur #" + threadCount.incrementAndGet()));
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Scales an image down and blurs it
+     *
+     * @param source  the image to blur, it isn't changed
+     * @param maxSize the length the longer side is scaled down to at most
+     * @param radius  the blur radius in pixels of the scaled image
+     * @return a new blurred software bitmap, at most maxSize large
+     */
+    @WorkerThread
+    public Bitmap blur(final Bitmap source, final int maxSize, final int radius) {
+        Bitmap input = source;
+        if (input.getConfig() != Bitmap.Config.ARGB_8888) {
+            // hardware and other configs can't hand out their pixels as ints
+            input = input.copy(Bitmap.Config.ARGB_8888, true);
+            if (input == null) {
+                return null;
+            }
+        }
+
+        final float scale = Math.min(1f,
+                maxSize / (float) Math.max(input.getWidth(), input.getHeight()));
+        final int width = Math.max(1, Math.round(input.getWidth() * scale));
+        final int height = Math.max(1, Math.round(input.getHeight() * scale));
+        final Bitmap scaled = Bitmap.createScaledBitmap(input, width, height, true);
+        if (input != source && input != scaled) {
+            // nobody else saw the copy, decodes can reuse it
+            BitmapPool.getInstance().put(input);
+        }
+        // the blur is written back into the bitmap, the source must not change
+        final Bitmap output = scaled != source && scaled.isMutable()
+                ? scaled : scaled.copy(Bitmap.Config.ARGB_8888, true);
+        if (output == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            final int count = width * height;
+            if (mPixels.length < count) {
+                mPixels = new int[count];
+                mScratch = new int[count];
+            }
+            final int[] pixels = mPixels;
+            final int[] scratch = mScratch;
+            output.getPixels(pixels, 0, width, 0, 0, width, height);
+
+            final int r = Math.max(1, Math.min(radius, Math.max(width, height) - 1));
+            // rows into the scratch buffer, then its columns back
+            runBands(height, (band, start, end) -> {
+                final int[] stack = getStack(band, r);
+                for (int y = start; y < end; y++) {
+                    blurLine(pixels, scratch, y * width, 1, width, r, stack);
+                }
+            });
+            runBands(width, (band, start, end) -> {
+                final int[] stack = getStack(band, r);
+                for (int x = start; x < end; x++) {
+                    blurLine(scratch, pixels, x, width, height, r, stack);
+                }
+            });
+
+            output.setPixels(pixels, 0, width, 0, 0, width, height);
+        }
+        return output;
+    }
+
+    /**
+     * Blurs a band of lines, from start inclusive to end exclusive
+     */
+    private interface Band {
+        void blur(int band, int start, int end);
+    }
+
+    /**
+     * Splits lines into bands and blurs them in parallel, the caller blurs the first band
+     */
+    private void runBands(final int lines, final Band band) {
+        final int bands = Math.max(1, Math.min(mThreadCount, lines / MIN_LINES_PER_BAND));
+        final int perBand = (lines + bands - 1) / bands;
+        final CountDownLatch done = new CountDownLatch(bands - 1);
+        for (int i = 1; i < bands; i++) {
+            final int index = i;
+            final int start = i * perBand;
+            final int end = Math.min(lines, start + perBand);
+            mExecutor.execute(() -> {
+                try {
+                    band.blur(index, start, end);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        band.blur(0, 0, Math.min(lines, perBand));
+
+        try {
+            done.await();
+        } catch (final InterruptedException e) {
+            // the buffers may still be written, so wait for the other bands regardless
+            Log.w(TAG, "Interrupted while blurring");
+            boolean interrupted = true;
+            while (interrupted) {
+                try {
+                    done.await();
+                    interrupted = false;
+                } catch (final InterruptedException ignored) {
+                }
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int[] getStack(final int band, final int radius) {
+        final int div = radius * 2 + 1;
+        if (mStacks[band] == null || mStacks[band].length < div) {
+            mStacks[band] = new int[div];
+        }
+        return mStacks[band];
+    }
+
+    /**
+     * Blurs one line of pixels with a stack of the pixels under the kernel, each step takes the
+     * oldest pixel off the stack and pushes the next one
+     *
+     * @param src    the pixels to read
+     * @param dst    the pixels to write, at the same positions
+     * @param offset the index of the first pixel of the line
+     * @param stride the distance between two pixels of the line
+     * @param length the number of pixels of the line
+     * @param radius the blur radius
+     * @param stack  room for 2 * radius + 1 pixels
+     */
+    private static void blurLine(final int[] src, final int[] dst, final int offset,
+                                 final int stride, final int length, final int radius,
+                                 final int[] stack) {
+        final int div = radius * 2 + 1;
+        final int weights = (radius + 1) * (radius + 1);
+        final int last = length - 1;
+
+        int sumA = 0, sumR = 0, sumG = 0, sumB = 0;
+        int inA = 0, inR = 0, inG = 0, inB = 0;
+        int outA = 0, outR = 0, outG = 0, outB = 0;
+
+        // the pixels before the line repeat the first pixel, the ones after it the last
+        for (int i = -radius; i <= radius; i++) {
+            final int pixel = src[offset + Math.min(last, Math.max(i, 0)) * stride];
+            stack[i + radius] = pixel;
+            final int weight = radius + 1 - Math.abs(i);
+            final int a = pixel >>> 24;
+            final int r = (pixel >> 16) & 0xFF;
+            final int g = (pixel >> 8) & 0xFF;
+            final int b = pixel & 0xFF;
+            sumA += a * weight;
+            sumR += r * weight;
+            sumG += g * weight;
+            sumB += b * weight;
+            if (i > 0) {
+                inA += a;
+                inR += r;
+                inG += g;
+                inB += b;
+            } else {
+                outA += a;
+                outR += r;
+                outG += g;
+                outB += b;
+            }
+        }
+
+        int stackPointer = radius;
+        for (int x = 0; x < length; x++) {
+            dst[offset + x * stride] = (sumA / weights) << 24 | (sumR / weights) << 16
+                    | (sumG / weights) << 8 | (sumB / weights);
+
+            sumA -= outA;
+            sumR -= outR;
+            sumG -= outG;
+            sumB -= outB;
+
+            // the oldest pixel leaves the stack, the next pixel of the line takes its place
+            final int oldest = (stackPointer + radius + 1) % div;
+            int pixel = stack[oldest];
+            outA -= pixel >>> 24;
+            outR -= (pixel >> 16) & 0xFF;
+            outG -= (pixel >> 8) & 0xFF;
+            outB -= pixel & 0xFF;
+
+            pixel = src[offset + Math.min(last, x + radius + 1) * stride];
+            stack[oldest] = pixel;
+            inA += pixel >>> 24;
+            inR += (pixel >> 16) & 0xFF;
+            inG += (pixel >> 8) & 0xFF;
+            inB += pixel & 0xFF;
+
+            sumA += inA;
+            sumR += inR;
+            sumG += inG;
+            sumB += inB;
+
+            // the pixel at the center moves from the incoming to the outgoing half
+            stackPointer = (stackPointer + 1) % div;
+            pixel = stack[stackPointer];
+            outA += pixel >>> 24;
+            outR += (pixel >> 16) & 0xFF;
+            outG += (pixel >> 8) & 0xFF;
+            outB += pixel & 0xFF;
+            inA -= pixel >>> 24;
+            inR -= (pixel >> 16) & 0xFF;
+            inG -= (pixel >> 8) & 0xFF;
+            inB -= pixel & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,646 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.annotation.SuppressLint;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent memory cache with a frequency aware admission policy, used where
+ * {@link android.util.LruCache} would be.  It keeps the same hooks, {@link #sizeOf} and
+ * {@link #entryRemoved}, and adds {@link #entryRejected}.
+ * <p>
+ * Reads don't lock: the entries are in a {@link ConcurrentHashMap} and reads are recorded in a
+ * small lossy buffer that is applied to the eviction order in batches by whichever thread gets
+ * the eviction lock next.  Writes take the lock.
+ * <p>
+ * New entries go to a small LRU window.  When the window is full its oldest entry has to win
+ * against the oldest entry of the main space to stay: the one that was used more often
+ * recently, as estimated by a {@link FrequencySketch}, is kept.  A one off large image then
+ * can't push the images that are used over and over out of the cache.
+ */
+public class TinyLfuCache<K, V> {
+    /* The share of the cache that keeps new entries regardless of their frequency */
+    private static final int WINDOW_PERCENT = 20;
+
+    /* Must be a power of two */
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int DRAIN_THRESHOLD = 32;
+
+    private final ConcurrentHashMap<K, Node<K, V>> mMap = new ConcurrentHashMap<>();
+    private final int mMaxSize;
+    private final int mWindowMaxSize;
+
+    /* The eviction order and sizes, guarded by mEvictionLock */
+    private final ReentrantLock mEvictionLock = new ReentrantLock();
+    private final FrequencySketch mSketch;
+    private final AccessOrder<K, V> mWindow = new AccessOrder<>();
+    private final AccessOrder<K, V> mMain = new AccessOrder<>();
+    private int mWindowSize;
+    private int mMainSize;
+
+    /* Reads not applied to the eviction order yet, a read is dropped when it is full */
+    private final AtomicReferenceArray<Object> mReadBuffer =
+            new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong mReadBufferWrites = new AtomicLong();
+    private volatile long mReadBufferReads;
+
+    private final LongAdder mHitCount = new LongAdder();
+    private final LongAdder mMissCount = new LongAdder();
+    /* Guarded by mEvictionLock */
+    private int mPutCount;
+    private int mEvictionCount;
+    private int mRejectionCount;
+
+    /**
+     * An entry of the cache
+     */
+    private static final class Node<K, V> {
+        final K mKey;
+        volatile V mValue;
+        int mSize;
+        boolean mInWindow = true;
+        /* Removed because it wasn't admitted to the main space */
+        boolean mRejected;
+        volatile boolean mRemoved;
+        Node<K, V> mPrev;
+        Node<K, V> mNext;
+
+        Node(final K key, final V value, final int size) {
+            mKey = key;
+            mValue = value;
+            mSize = size;
+        }
+    }
+
+    /**
+     * A list of entries from the least to the most recently used
+     */
+    private static final class AccessOrder<K, V> {
+        private final Node<K, V> mHead = new Node<>(null, null, 0);
+
+        AccessOrder() {
+            mHead.mPrev = mHead;
+            mHead.mNext = mHead;
+        }
+
+        Node<K, V> first() {
+            return next(mHead);
+        }
+
+        Node<K, V> next(final Node<K, V> node) {
+            return node.mNext == mHead ? null : node.mNext;
+        }
+
+        void addLast(final Node<K, V> node) {
+            node.mPrev = mHead.mPrev;
+            node.mNext = mHead;
+            mHead.mPrev.mNext = node;
+            mHead.mPrev = node;
+        }
+
+        void remove(final Node<K, V> node) {
+            node.mPrev.mNext = node.mNext;
+            node.mNext.mPrev = node.mPrev;
+            node.mPrev = null;
+            node.mNext = null;
+        }
+
+        void moveToLast(final Node<K, V> node) {
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *                the maximum number of entries in the cache. For all other
+     *                caches, this is the maximum sum of the sizes of the entries in
+     *                this cache.
+     */
+    public TinyLfuCache(final int maxSize) {
+        this(maxSize, maxSize);
+    }
+
+    /**
+     * @param maxSize         the maximum sum of the sizes of the entries
+     * @param expectedEntries about how many entries fit the cache, the frequency sketch is
+     *                        sized for it
+     */
+    public TinyLfuCache(final int maxSize, final int expectedEntries) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        mWindowMaxSize = Math.max(1, (int) ((long) maxSize * WINDOW_PERCENT / 100));
+        mSketch = new FrequencySketch(expectedEntries);
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache, null otherwise.  This
+     * doesn't lock, the read is applied to the eviction order later.
+     */
+    public final V get(final K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final Node<K, V> node = mMap.get(key);
+        if (node == null) {
+            mMissCount.increment();
+            recordRead(key);
+            return null;
+        }
+        mHitCount.increment();
+        recordRead(node);
+        return node.mValue;
+    }
+
+    /**
+     * Caches {@code value} for {@code key}.  A new entry may be evicted again right away by
+     * a later put if it isn't used, but never by its own put.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public final V put(final K key, final V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        final int size = safeSizeOf(key, value);
+        final ArrayList<Node<K, V>> evicted = new ArrayList<>();
+        V previous = null;
+        mEvictionLock.lock();
+        try {
+            drainReadBuffer();
+            mPutCount++;
+            mSketch.increment(key.hashCode());
+
+            Node<K, V> node = mMap.get(key);
+            if (node != null) {
+                previous = node.mValue;
+                node.mValue = value;
+                addSize(node, size - node.mSize);
+                node.mSize = size;
+                orderOf(node).moveToLast(node);
+            } else {
+                node = new Node<>(key, value, size);
+                mMap.put(key, node);
+                mWindow.addLast(node);
+                mWindowSize += size;
+            }
+            evict(node, evicted);
+        } finally {
+            mEvictionLock.unlock();
+        }
+
+        if (previous != null && previous != value) {
+            entryRemoved(false, key, previous, value);
+        }
+        notifyEvicted(evicted);
+        return previous;
+    }
+
+    /**
+     * Evicts the least recently used entries regardless of their frequency
+     *
+     * @param maxSize the maximum size of the cache before returning. May be -1
+     *                to evict even 0-sized elements.
+     */
+    public void trimToSize(final int maxSize) {
+        final ArrayList<Node<K, V>> evicted = new ArrayList<>();
+        mEvictionLock.lock();
+        try {
+            drainReadBuffer();
+            while (mWindowSize + mMainSize > maxSize) {
+                final Node<K, V> victim = findVictim(null);
+                if (victim == null) {
+                    break;
+                }
+                removeNode(victim);
+                mEvictionCount++;
+                evicted.add(victim);
+            }
+        } finally {
+            mEvictionLock.unlock();
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public final V remove(final K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final Node<K, V> node;
+        mEvictionLock.lock();
+        try {
+            node = mMap.get(key);
+            if (node != null) {
+                removeNode(node);
+            }
+        } finally {
+            mEvictionLock.unlock();
+        }
+
+        if (node != null) {
+            entryRemoved(false, key, node.mValue, null);
+            return node.mValue;
+        }
+        return null;
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is
+     * invoked when a value is evicted to make space, removed by a call to
+     * {@link #remove}, or replaced by a call to {@link #put}. The default
+     * implementation does nothing.
+     * <p>
+     * The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * @param evicted  true if the entry is being removed to make space, false
+     *                 if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null,
+     *                 this removal was caused by a {@link #put}. Otherwise it was caused by
+     *                 an eviction or a {@link #remove}.
+     */
+    protected void entryRemoved(final boolean evicted, final K key, final V oldValue,
+                                final V newValue) {
+    }
+
+    /**
+     * Called for an entry that left the window but wasn't admitted to the main space because it
+     * was used less often than the entry it would have evicted.  Such an entry was put recently,
+     * so its value is likely still in use by whoever put it.  The default implementation calls
+     * {@link #entryRemoved} with {@code evicted} set to false.
+     * <p>
+     * The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     */
+    protected void entryRejected(final K key, final V value) {
+        entryRemoved(false, key, value, null);
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in
+     * user-defined units. The default implementation returns 1 so that size is
+     * the number of entries and max size is the maximum number of entries.
+     * <p>
+     * An entry's size must not change while it is in the cache.
+     */
+    protected int sizeOf(final K key, final V value) {
+        return 1;
+    }
+
+    /**
+     * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+     */
+    public final void evictAll() {
+        trimToSize(-1); // -1 will evict 0-sized elements
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the number
+     * of entries in the cache. For all other caches, this returns the sum of
+     * the sizes of the entries in this cache.
+     */
+    public final int size() {
+        mEvictionLock.lock();
+        try {
+            return mWindowSize + mMainSize;
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of times {@link #get} returned a value
+     */
+    public final long hitCount() {
+        return mHitCount.sum();
+    }
+
+    /**
+     * @return the number of times {@link #get} returned null
+     */
+    public final long missCount() {
+        return mMissCount.sum();
+    }
+
+    /**
+     * @return the number of entries evicted to make space, including new entries that
+     * weren't admitted
+     */
+    public final int evictionCount() {
+        mEvictionLock.lock();
+        try {
+            return mEvictionCount + mRejectionCount;
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of entries that weren't admitted to the main space as they were used
+     * less often than the entry they would have evicted
+     */
+    public final int rejectionCount() {
+        mEvictionLock.lock();
+        try {
+            return mRejectionCount;
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    @SuppressLint("DefaultLocale")
+    @NonNull
+    @Override
+    public final String toString() {
+        final long hits = hitCount();
+        final long accesses = hits + missCount();
+        final long hitPercent = accesses != 0 ? 100 * hits / accesses : 0;
+        mEvictionLock.lock();
+        try {
+            return String.format("%s[maxSize=%d,size=%d,hits=%d,misses=%d,hitRate=%d%%,"
+                            + "puts=%d,evictions=%d,rejections=%d]",
+                    getClass().getSimpleName(), mMaxSize, mWindowSize + mMainSize, hits,
+                    accesses - hits, hitPercent, mPutCount, mEvictionCount, mRejectionCount);
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    private int safeSizeOf(final K key, final V value) {
+        final int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    private void notifyEvicted(final ArrayList<Node<K, V>> evicted) {
+        for (final Node<K, V> node : evicted) {
+            if (node.mRejected) {
+                entryRejected(node.mKey, node.mValue);
+            } else {
+                entryRemoved(true, node.mKey, node.mValue, null);
+            }
+        }
+    }
+
+    private AccessOrder<K, V> orderOf(final Node<K, V> node) {
+        return node.mInWindow ? mWindow : mMain;
+    }
+
+    private void addSize(final Node<K, V> node, final int delta) {
+        if (node.mInWindow) {
+            mWindowSize += delta;
+        } else {
+            mMainSize += delta;
+        }
+    }
+
+    private void removeNode(final Node<K, V> node) {
+        orderOf(node).remove(node);
+        addSize(node, -node.mSize);
+        mMap.remove(node.mKey, node);
+        node.mRemoved = true;
+    }
+
+    /**
+     * Moves the oldest entries of the full window to the main space, where they have to be
+     * used more often than the oldest entry there to be admitted, then evicts in LRU order
+     * if the cache is still too large.
+     *
+     * @param protect the entry that was just put, it is never evicted
+     * @param evicted collects the evicted entries
+     */
+    private void evict(final Node<K, V> protect, final ArrayList<Node<K, V>> evicted) {
+        while (mWindowSize > mWindowMaxSize) {
+            final Node<K, V> candidate = mWindow.first();
+            if (candidate == null || candidate == protect) {
+                break;
+            }
+            mWindow.remove(candidate);
+            mWindowSize -= candidate.mSize;
+            candidate.mInWindow = false;
+            mMain.addLast(candidate);
+            mMainSize += candidate.mSize;
+
+            final int candidateFrequency = mSketch.frequency(candidate.mKey.hashCode());
+            while (mWindowSize + mMainSize > mMaxSize) {
+                final Node<K, V> victim = mMain.first();
+                if (victim == candidate) {
+                    break;
+                }
+                if (candidateFrequency > mSketch.frequency(victim.mKey.hashCode())) {
+                    removeNode(victim);
+                    mEvictionCount++;
+                    evicted.add(victim);
+                } else {
+                    removeNode(candidate);
+                    candidate.mRejected = true;
+                    mRejectionCount++;
+                    evicted.add(candidate);
+                    break;
+                }
+            }
+        }
+
+        while (mWindowSize + mMainSize > mMaxSize) {
+            final Node<K, V> victim = findVictim(protect);
+            if (victim == null) {
+                break;
+            }
+            removeNode(victim);
+            mEvictionCount++;
+            evicted.add(victim);
+        }
+    }
+
+    /**
+     * @return the least recently used entry of the main space or else the window, but not the
+     * protected entry
+     */
+    private Node<K, V> findVictim(final Node<K, V> protect) {
+        Node<K, V> victim = mMain.first();
+        if (victim == protect && victim != null) {
+            victim = mMain.next(victim);
+        }
+        if (victim == null) {
+            victim = mWindow.first();
+            if (victim == protect && victim != null) {
+                victim = mWindow.next(victim);
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Records a read of an entry or of a missing key without taking the lock, and applies
+     * the buffered reads if there are enough of them and the lock is free
+     */
+    private void recordRead(final Object read) {
+        final long reads = mReadBufferReads;
+        long writes;
+        do {
+            writes = mReadBufferWrites.get();
+            if (writes - reads >= READ_BUFFER_SIZE) {
+                // full, drop the read rather than wait
+                tryDrainReadBuffer();
+                return;
+            }
+        } while (!mReadBufferWrites.compareAndSet(writes, writes + 1));
+        mReadBuffer.lazySet((int) writes & READ_BUFFER_MASK, read);
+
+        if (writes + 1 - reads >= DRAIN_THRESHOLD) {
+            tryDrainReadBuffer();
+        }
+    }
+
+    private void tryDrainReadBuffer() {
+        if (mEvictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                mEvictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies the buffered reads, must hold the lock
+     */
+    @SuppressWarnings("unchecked")
+    private void drainReadBuffer() {
+        long reads = mReadBufferReads;
+        final long writes = mReadBufferWrites.get();
+        for (; reads < writes; reads++) {
+            final int index = (int) reads & READ_BUFFER_MASK;
+            final Object read = mReadBuffer.get(index);
+            if (read == null) {
+                // the reader claimed the slot but didn't store its read yet
+                break;
+            }
+            mReadBuffer.lazySet(index, null);
+
+            if (read instanceof Node) {
+                final Node<K, V> node = (Node<K, V>) read;
+                mSketch.increment(node.mKey.hashCode());
+                if (!node.mRemoved) {
+                    orderOf(node).moveToLast(node);
+                }
+            } else {
+                mSketch.increment(read.hashCode());
+            }
+        }
+        mReadBufferReads = reads;
+    }
+
+    /**
+     * Estimates how often keys were used recently with a count-min sketch of 4 bit counters.
+     * All counters are halved once there were about ten times as many increments as the
+     * cache has entries, so old popularity fades.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final int MIN_TABLE_SIZE = 16;
+        private static final int MAX_COUNT = 15;
+
+        private final long[] mTable;
+        private final int mTableMask;
+        private final int mSampleSize;
+        private int mAdditions;
+
+        FrequencySketch(final int expectedEntries) {
+            final int entries = Math.max(MIN_TABLE_SIZE, Math.min(expectedEntries, 1 << 24));
+            // each long holds 16 counters, 4 per entry across the hash functions
+            final int length = Integer.highestOneBit(entries - 1) << 1;
+            mTable = new long[length];
+            mTableMask = length - 1;
+            mSampleSize = 10 * length;
+        }
+
+        int frequency(final int hashCode) {
+            final int hash = spread(hashCode);
+            final int start = (hash & 3) << 2;
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(hash, i);
+                final int count = (int) ((mTable[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(final int hashCode) {
+            final int hash = spread(hashCode);
+            final int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(hash, i);
+                final int offset = (start + i) << 2;
+                if (((mTable[index] >>> offset) & 0xfL) != MAX_COUNT) {
+                    mTable[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++mAdditions >= mSampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < mTable.length; i++) {
+                mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+            }
+            mAdditions /= 2;
+        }
+
+        private int indexOf(final int hash, final int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mTableMask;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
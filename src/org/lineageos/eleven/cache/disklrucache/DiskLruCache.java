@@ -16,8 +16,11 @@
  */
 package org.lineageos.eleven.cache.disklrucache;
 
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -26,18 +29,16 @@ import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -79,6 +80,10 @@ import java.util.regex.Pattern;
  * observe the value at the time that {@link #get} was called. Updates and
  * removals after the call do not impact ongoing reads.
  *
+ * <p>The cache is safe for concurrent use. Edits and removals of one key are
+ * serialized by one of a fixed set of striped locks, so different keys rarely
+ * contend, and reads of committed entries take no lock at all.
+ *
  * <p>This class is tolerant of some I/O errors. If files are missing from the
  * filesystem, the corresponding entries will be dropped from the cache. If
  * an error occurs while writing a cache value, the edit will fail silently.
@@ -86,57 +91,52 @@ import java.util.regex.Pattern;
  * responding appropriately.
  */
 public final class DiskLruCache implements Closeable {
-    static final String JOURNAL_FILE = "journal";
-    static final String JOURNAL_FILE_TEMP = "journal.tmp";
-    static final String JOURNAL_FILE_BACKUP = "journal.bkp";
-    static final String MAGIC = "libcore.io.DiskLruCache";
-    static final String VERSION_1 = "1";
-    static final long ANY_SEQUENCE_NUMBER = -1;
+    static final String JOURNAL_FILE = "journal.bin";
+    static final String JOURNAL_FILE_TEMP = "journal.bin.tmp";
+    static final String JOURNAL_FILE_BACKUP = "journal.bin.bkp";
+    static final String LEGACY_JOURNAL_FILE = "journal";
+    static final int MAGIC = 0x444c5243; // "DLRC"
+    static final int VERSION_2 = 2;
     static final String STRING_KEY_PATTERN = "[a-z0-9_-]{1,120}";
     static final Pattern LEGAL_KEY_PATTERN = Pattern.compile(STRING_KEY_PATTERN);
-    private static final String CLEAN = "CLEAN";
-    private static final String DIRTY = "DIRTY";
-    private static final String REMOVE = "REMOVE";
-    private static final String READ = "READ";
+    private static final int CLEAN = 1;
+    private static final int REMOVE = 2;
+    private static final String DIRTY_SUFFIX = ".tmp";
+
+    /* Evicting sorts the entries, so evict a little more than needed at a time */
+    private static final int TRIM_HEADROOM_DIVIDER = 20;
+
+    /* Must be a power of two */
+    private static final int LOCK_STRIPES = 16;
+
+    private static final int JOURNAL_BUFFER_SIZE = 16 * 1024;
 
     /*
-     * This cache uses a journal file named "journal". A typical journal file
-     * looks like this:
-     *     libcore.io.DiskLruCache
-     *     1
-     *     100
-     *     2
+     * This cache uses a binary journal file named "journal.bin". It starts
+     * with a header of four big endian ints: the magic number, the journal
+     * version, the application's version and the value count.
      *
-     *     CLEAN 3400330d1dfc7f3f7f4b8d4d803dfcf6 832 21054
-     *     DIRTY 335c4c6028171cfddfbaae1a9c313c52
-     *     CLEAN 335c4c6028171cfddfbaae1a9c313c52 3934 2342
-     *     REMOVE 335c4c6028171cfddfbaae1a9c313c52
-     *     DIRTY 1ab96a171faeeee38496d8b330771a7a
-     *     CLEAN 1ab96a171faeeee38496d8b330771a7a 1600 234
-     *     READ 335c4c6028171cfddfbaae1a9c313c52
-     *     READ 3400330d1dfc7f3f7f4b8d4d803dfcf6
+     * Each of the subsequent records is a state of a cache entry: a byte with
+     * the state, a byte with the length of the key and the ASCII key.
+     *   o CLEAN records track a cache entry that has been successfully
+     *     published and may be read. They are followed by the lengths of each
+     *     of its values as longs.
+     *   o REMOVE records track entries that have been deleted.
      *
-     * The first five lines of the journal form its header. They are the
-     * constant string "libcore.io.DiskLruCache", the disk cache's version,
-     * the application's version, the value count, and a blank line.
+     * Reads aren't journaled. The access order is kept in memory and written
+     * to the journal when it is compacted or the cache is closed, as the order
+     * of the records: later records are more recently used entries.
      *
-     * Each of the subsequent lines in the file is a record of the state of a
-     * cache entry. Each line contains space-separated values: a state, a key,
-     * and optional state-specific values.
-     *   o DIRTY lines track that an entry is actively being created or updated.
-     *     Every successful DIRTY action should be followed by a CLEAN or REMOVE
-     *     action. DIRTY lines without a matching CLEAN or REMOVE indicate that
-     *     temporary files may need to be deleted.
-     *   o CLEAN lines track a cache entry that has been successfully published
-     *     and may be read. A publish line is followed by the lengths of each of
-     *     its values.
-     *   o READ lines track accesses for LRU.
-     *   o REMOVE lines track entries that have been deleted.
+     * Edits in progress aren't journaled either. Their files are written next
+     * to the clean files with a ".tmp" suffix, and any file that no clean
+     * entry owns is deleted in the background after the cache is opened.
      *
      * The journal file is appended to as cache operations occur. The journal may
-     * occasionally be compacted by dropping redundant lines. A temporary file named
-     * "journal.tmp" will be used during compaction; that file should be deleted if
-     * it exists when the cache is opened.
+     * occasionally be compacted by dropping redundant records. A temporary file
+     * named "journal.bin.tmp" will be used during compaction; that file should be
+     * deleted if it exists when the cache is opened. A directory with the text
+     * "journal" of earlier versions is cleared, the entries are cheap to create
+     * again.
      */
 
     private final File directory;
@@ -144,39 +144,38 @@ public final class DiskLruCache implements Closeable {
     private final File journalFileTmp;
     private final File journalFileBackup;
     private final int appVersion;
-    private long maxSize;
+    private final long maxSize;
     private final int valueCount;
-    private long size = 0;
-    private Writer journalWriter;
-    private final LinkedHashMap<String, Entry> lruEntries =
-            new LinkedHashMap<>(0, 0.75f, true);
-    private int redundantOpCount;
+    private final AtomicLong size = new AtomicLong();
+    private final ConcurrentHashMap<String, Entry> lruEntries = new ConcurrentHashMap<>();
+    private final AtomicInteger redundantOpCount = new AtomicInteger();
 
-    /**
-     * To differentiate between old and current snapshots, each entry is given
-     * a sequence number each time an edit is committed. A snapshot is stale if
-     * its sequence number is not equal to its entry's sequence number.
-     */
-    private long nextSequenceNumber = 0;
+    /* Ticks on every read and commit, an entry remembers when it was used last */
+    private final AtomicLong accessClock = new AtomicLong();
+
+    /* Editing and removing an entry synchronizes on the lock of its key */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /* Guards journalWriter, appends are short so all keys share it */
+    private final Object journalLock = new Object();
+    private DataOutputStream journalWriter;
+    private volatile boolean closed;
 
     /**
      * This cache uses a single background thread to evict entries.
      */
     final ThreadPoolExecutor executorService =
             new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
-    private final Callable<Void> cleanupCallable = new Callable<Void>() {
-        public Void call() throws Exception {
-            synchronized (DiskLruCache.this) {
-                if (journalWriter == null) {
-                    return null; // Closed.
-                }
-                trimToSize();
-                if (journalRebuildRequired()) {
-                    rebuildJournal();
-                    redundantOpCount = 0;
-                }
+    private final Runnable cleanupRunnable = () -> {
+        if (closed) {
+            return;
+        }
+        try {
+            trimToSize();
+            if (journalRebuildRequired()) {
+                rebuildJournal();
             }
-            return null;
+        } catch (IOException ignored) {
         }
     };
 
@@ -188,6 +187,9 @@ public final class DiskLruCache implements Closeable {
         this.journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
         this.valueCount = valueCount;
         this.maxSize = maxSize;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
     }
 
     /**
@@ -208,6 +210,11 @@ public final class DiskLruCache implements Closeable {
             throw new IllegalArgumentException("valueCount <= 0");
         }
 
+        // The text journal of earlier versions isn't read anymore.
+        if (new File(directory, LEGACY_JOURNAL_FILE).exists()) {
+            Util.deleteContents(directory);
+        }
+
         // If a bkp file exists, use it instead.
         File backupFile = new File(directory, JOURNAL_FILE_BACKUP);
         if (backupFile.exists()) {
@@ -227,6 +234,7 @@ public final class DiskLruCache implements Closeable {
             try {
                 cache.readJournal();
                 cache.processJournal();
+                cache.executorService.execute(cache::deleteOrphanFiles);
                 return cache;
             } catch (IOException journalIsCorrupt) {
                 System.out
@@ -248,147 +256,244 @@ public final class DiskLruCache implements Closeable {
     }
 
     private void readJournal() throws IOException {
-        StrictLineReader reader = new StrictLineReader(new FileInputStream(journalFile),
-                Util.US_ASCII);
-        try {
-            String magic = reader.readLine();
-            String version = reader.readLine();
-            String appVersionString = reader.readLine();
-            String valueCountString = reader.readLine();
-            String blank = reader.readLine();
-            if (!MAGIC.equals(magic)
-                    || !VERSION_1.equals(version)
-                    || !Integer.toString(appVersion).equals(appVersionString)
-                    || !Integer.toString(valueCount).equals(valueCountString)
-                    || !"".equals(blank)) {
-                throw new IOException("unexpected journal header: [" + magic + ", " + version + ", "
-                        + valueCountString + ", " + blank + "]");
-            }
-
-            int lineCount = 0;
-            while (true) {
+        try (DataInputStream reader = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(journalFile), JOURNAL_BUFFER_SIZE))) {
+            int magic;
+            int version;
+            int appVersionValue;
+            int valueCountValue;
+            try {
+                magic = reader.readInt();
+                version = reader.readInt();
+                appVersionValue = reader.readInt();
+                valueCountValue = reader.readInt();
+            } catch (EOFException e) {
+                throw new IOException("truncated journal header");
+            }
+            if (magic != MAGIC
+                    || version != VERSION_2
+                    || appVersionValue != appVersion
+                    || valueCountValue != valueCount) {
+                throw new IOException("unexpected journal header: [" + magic + ", " + version
+                        + ", " + appVersionValue + ", " + valueCountValue + "]");
+            }
+
+            int recordCount = 0;
+            boolean truncated = false;
+            int state;
+            while ((state = reader.read()) != -1) {
                 try {
-                    readJournalLine(reader.readLine());
-                    lineCount++;
+                    readJournalRecord(reader, state);
                 } catch (EOFException endOfJournal) {
+                    truncated = true;
                     break;
                 }
+                recordCount++;
             }
-            redundantOpCount = lineCount - lruEntries.size();
+            redundantOpCount.set(recordCount - lruEntries.size());
 
-            // If we ended on a truncated line, rebuild the journal before appending to it.
-            if (reader.hasUnterminatedLine()) {
+            // If we ended on a truncated record, rebuild the journal before appending to it.
+            if (truncated) {
                 rebuildJournal();
             } else {
-                journalWriter = new BufferedWriter(new OutputStreamWriter(
-                        new FileOutputStream(journalFile, true), Util.US_ASCII));
+                synchronized (journalLock) {
+                    journalWriter = newJournalWriter(journalFile, true);
+                }
             }
-        } finally {
-            Util.closeQuietly(reader);
         }
     }
 
-    private void readJournalLine(String line) throws IOException {
-        int firstSpace = line.indexOf(' ');
-        if (firstSpace == -1) {
-            throw new IOException("unexpected journal line: " + line);
-        }
+    private void readJournalRecord(DataInputStream reader, int state) throws IOException {
+        byte[] keyBytes = new byte[reader.readUnsignedByte()];
+        reader.readFully(keyBytes);
+        String key = new String(keyBytes, Util.US_ASCII);
 
-        int keyBegin = firstSpace + 1;
-        int secondSpace = line.indexOf(' ', keyBegin);
-        final String key;
-        if (secondSpace == -1) {
-            key = line.substring(keyBegin);
-            if (firstSpace == REMOVE.length() && line.startsWith(REMOVE)) {
-                lruEntries.remove(key);
-                return;
+        if (state == REMOVE) {
+            lruEntries.remove(key);
+        } else if (state == CLEAN) {
+            long[] lengths = new long[valueCount];
+            for (int i = 0; i < valueCount; i++) {
+                lengths[i] = reader.readLong();
             }
-        } else {
-            key = line.substring(keyBegin, secondSpace);
-        }
-
-        Entry entry = lruEntries.get(key);
-        if (entry == null) {
-            entry = new Entry(key);
-            lruEntries.put(key, entry);
-        }
-
-        if (secondSpace != -1 && firstSpace == CLEAN.length() && line.startsWith(CLEAN)) {
-            String[] parts = line.substring(secondSpace + 1).split(" ");
+            Entry entry = lruEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                lruEntries.put(key, entry);
+            }
+            entry.lengths = lengths;
             entry.readable = true;
-            entry.currentEditor = null;
-            entry.setLengths(parts);
-        } else if (secondSpace == -1 && firstSpace == DIRTY.length() && line.startsWith(DIRTY)) {
-            entry.currentEditor = new Editor(entry);
-        } else if (secondSpace == -1 && firstSpace == READ.length() && line.startsWith(READ)) {
-            // This work was already done by calling lruEntries.get().
+            // Records are in access order, later ones were used more recently.
+            entry.accessTime = accessClock.incrementAndGet();
         } else {
-            throw new IOException("unexpected journal line: " + line);
+            throw new IOException("unexpected journal record: " + state + " " + key);
         }
     }
 
     /**
-     * Computes the initial size and collects garbage as a part of opening the
-     * cache. Dirty entries are assumed to be inconsistent and will be deleted.
+     * Computes the initial size as a part of opening the cache.
      */
     private void processJournal() throws IOException {
         deleteIfExists(journalFileTmp);
-        for (Iterator<Entry> i = lruEntries.values().iterator(); i.hasNext(); ) {
-            Entry entry = i.next();
-            if (entry.currentEditor == null) {
-                for (int t = 0; t < valueCount; t++) {
-                    size += entry.lengths[t];
+        long total = 0;
+        for (Entry entry : lruEntries.values()) {
+            for (long length : entry.lengths) {
+                total += length;
+            }
+        }
+        size.set(total);
+    }
+
+    /**
+     * Deletes the files no entry owns: edits that never completed and values
+     * whose entry didn't make it to the journal. Also drops the entries whose
+     * files were deleted before their removal reached the journal.
+     */
+    private void deleteOrphanFiles() {
+        // Versions are taken before listing, entries committed since then are skipped.
+        Entry[] entries = lruEntries.values().toArray(new Entry[0]);
+        int[] versions = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            versions[i] = entries[i].version;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        HashSet<String> names = new HashSet<>(files.length);
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        for (int e = 0; e < entries.length; e++) {
+            Entry entry = entries[e];
+            int version = versions[e];
+            if (!entry.readable || (version & 1) != 0) {
+                continue;
+            }
+            for (int i = 0; i < valueCount; i++) {
+                if (!names.contains(entry.getCleanFile(i).getName())) {
+                    try {
+                        removeMissingEntry(entry, version);
+                    } catch (IOException ignored) {
+                        // Another file couldn't be deleted, the orphan pass below retries.
+                    }
+                    break;
                 }
-            } else {
-                entry.currentEditor = null;
-                for (int t = 0; t < valueCount; t++) {
-                    deleteIfExists(entry.getCleanFile(t));
-                    deleteIfExists(entry.getDirtyFile(t));
+            }
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(JOURNAL_FILE)) {
+                continue;
+            }
+            int dot = name.indexOf('.');
+            String key = dot < 0 ? name : name.substring(0, dot);
+            synchronized (lockFor(key)) {
+                Entry entry = lruEntries.get(key);
+                if (entry != null && (entry.currentEditor != null
+                        || (entry.readable && !name.endsWith(DIRTY_SUFFIX)))) {
+                    continue;
                 }
-                i.remove();
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
             }
         }
     }
 
     /**
-     * Creates a new journal that omits redundant information. This replaces the
-     * current journal if it exists.
+     * Creates a new journal that omits redundant information and holds the
+     * entries in access order. This replaces the current journal if it exists.
      */
-    private synchronized void rebuildJournal() throws IOException {
-        if (journalWriter != null) {
-            journalWriter.close();
-        }
+    private void rebuildJournal() throws IOException {
+        synchronized (journalLock) {
+            if (journalWriter != null) {
+                journalWriter.close();
+            }
+
+            try (DataOutputStream writer = newJournalWriter(journalFileTmp, false)) {
+                writer.writeInt(MAGIC);
+                writer.writeInt(VERSION_2);
+                writer.writeInt(appVersion);
+                writer.writeInt(valueCount);
 
-        try (Writer writer = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(journalFileTmp), Util.US_ASCII))) {
-            writer.write(MAGIC);
-            writer.write("\n");
-            writer.write(VERSION_1);
-            writer.write("\n");
-            writer.write(Integer.toString(appVersion));
-            writer.write("\n");
-            writer.write(Integer.toString(valueCount));
-            writer.write("\n");
-            writer.write("\n");
-
-            for (Entry entry : lruEntries.values()) {
-                if (entry.currentEditor != null) {
-                    writer.write(DIRTY + ' ' + entry.key + '\n');
-                } else {
-                    writer.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
+                for (Entry entry : entriesInAccessOrder()) {
+                    if (entry.readable) {
+                        writeRecord(writer, CLEAN, entry.key, entry.lengths);
+                    }
                 }
             }
+
+            if (journalFile.exists()) {
+                renameTo(journalFile, journalFileBackup, true);
+            }
+            renameTo(journalFileTmp, journalFile, false);
+            //noinspection ResultOfMethodCallIgnored
+            journalFileBackup.delete();
+
+            journalWriter = newJournalWriter(journalFile, true);
+            redundantOpCount.set(0);
         }
+    }
 
-        if (journalFile.exists()) {
-            renameTo(journalFile, journalFileBackup, true);
+    private static DataOutputStream newJournalWriter(File file, boolean append)
+            throws FileNotFoundException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file, append), JOURNAL_BUFFER_SIZE));
+    }
+
+    private static void writeRecord(DataOutputStream writer, int state, String key,
+                                    long[] lengths) throws IOException {
+        writer.writeByte(state);
+        writer.writeByte(key.length());
+        writer.writeBytes(key);
+        if (state == CLEAN) {
+            for (long length : lengths) {
+                writer.writeLong(length);
+            }
         }
-        renameTo(journalFileTmp, journalFile, false);
-        //noinspection ResultOfMethodCallIgnored
-        journalFileBackup.delete();
+    }
 
-        journalWriter = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(journalFile, true), Util.US_ASCII));
+    /**
+     * Appends a record to the journal, it reaches the file when the journal
+     * is flushed.
+     */
+    private void appendToJournal(int state, Entry entry) throws IOException {
+        synchronized (journalLock) {
+            if (journalWriter == null) {
+                return; // Closed.
+            }
+            writeRecord(journalWriter, state, entry.key, entry.lengths);
+        }
+        redundantOpCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the entries ordered by the access times they had when this was
+     * called. Reads change those times concurrently, so they are copied
+     * before sorting to keep the comparison consistent.
+     */
+    private Entry[] entriesInAccessOrder() {
+        Entry[] entries = lruEntries.values().toArray(new Entry[0]);
+        final int count = entries.length;
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = entries[i].accessTime;
+        }
+        Integer[] indexes = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, (a, b) -> Long.compare(order[a], order[b]));
+        Entry[] sorted = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = entries[indexes[i]];
+        }
+        return sorted;
+    }
+
+    private Object lockFor(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return locks[hash & (LOCK_STRIPES - 1)];
     }
 
     private static void deleteIfExists(File file) throws IOException {
@@ -409,9 +514,10 @@ public final class DiskLruCache implements Closeable {
     /**
      * Returns a snapshot of the entry named {@code key}, or null if it doesn't
      * exist is not currently readable. If a value is returned, it is moved to
-     * the head of the LRU queue.
+     * the head of the LRU queue. This doesn't take a lock, a read that races
+     * with a commit of the entry opens its values again.
      */
-    public synchronized Snapshot get(String key) throws IOException {
+    public Snapshot get(String key) throws IOException {
         checkNotClosed();
         validateKey(key);
         Entry entry = lruEntries.get(key);
@@ -419,37 +525,75 @@ public final class DiskLruCache implements Closeable {
             return null;
         }
 
-        if (!entry.readable) {
-            return null;
-        }
-
-        // Open all streams eagerly to guarantee that we see a single published
-        // snapshot. If we opened streams lazily then the streams could come
-        // from different edits.
-        InputStream[] ins = new InputStream[valueCount];
-        try {
-            for (int i = 0; i < valueCount; i++) {
-                ins[i] = new FileInputStream(entry.getCleanFile(i));
+        while (true) {
+            int version = entry.version;
+            if ((version & 1) != 0) {
+                // A commit is moving the files, wait for it.
+                Thread.yield();
+                continue;
             }
-        } catch (FileNotFoundException e) {
-            // A file must have been deleted manually!
-            for (int i = 0; i < valueCount; i++) {
-                if (ins[i] != null) {
-                    Util.closeQuietly(ins[i]);
-                } else {
-                    break;
+            if (!entry.readable) {
+                return null;
+            }
+
+            // Open all streams eagerly to guarantee that we see a single published
+            // snapshot. If we opened streams lazily then the streams could come
+            // from different edits.
+            InputStream[] ins = new InputStream[valueCount];
+            try {
+                for (int i = 0; i < valueCount; i++) {
+                    ins[i] = new FileInputStream(entry.getCleanFile(i));
+                }
+            } catch (FileNotFoundException e) {
+                closeAll(ins);
+                if (entry.version != version) {
+                    continue;
                 }
+                // A file was deleted manually or before its removal reached the journal.
+                removeMissingEntry(entry, version);
+                return null;
             }
-            return null;
+            if (entry.version != version) {
+                closeAll(ins);
+                continue;
+            }
+
+            entry.accessTime = accessClock.incrementAndGet();
+            return new Snapshot(ins);
         }
+    }
 
-        redundantOpCount++;
-        journalWriter.append(READ + ' ').append(key).append(String.valueOf('\n'));
-        if (journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
+    /**
+     * Drops an entry whose files are gone, unless it changed since they were
+     * found missing.
+     */
+    private void removeMissingEntry(Entry entry, int version) throws IOException {
+        synchronized (lockFor(entry.key)) {
+            if (lruEntries.get(entry.key) == entry && entry.version == version) {
+                removeEntry(entry.key);
+            }
+        }
+    }
+
+    private static void closeAll(InputStream[] ins) {
+        for (InputStream in : ins) {
+            if (in != null) {
+                Util.closeQuietly(in);
+            } else {
+                break;
+            }
         }
+    }
 
-        return new Snapshot(ins);
+    /**
+     * Returns true if there is a readable entry named {@code key}. Unlike
+     * {@link #get} this neither opens the entry nor counts as a read of it.
+     */
+    public boolean contains(String key) {
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = lruEntries.get(key);
+        return entry != null && entry.readable;
     }
 
     /**
@@ -457,85 +601,83 @@ public final class DiskLruCache implements Closeable {
      * edit is in progress.
      */
     public Editor edit(String key) throws IOException {
-        return edit(key, ANY_SEQUENCE_NUMBER);
-    }
-
-    private synchronized Editor edit(String key, long expectedSequenceNumber) throws IOException {
         checkNotClosed();
         validateKey(key);
-        Entry entry = lruEntries.get(key);
-        if (expectedSequenceNumber != ANY_SEQUENCE_NUMBER && (entry == null
-                || entry.sequenceNumber != expectedSequenceNumber)) {
-            return null; // Snapshot is stale.
-        }
-        if (entry == null) {
-            entry = new Entry(key);
-            lruEntries.put(key, entry);
-        } else if (entry.currentEditor != null) {
-            return null; // Another edit is in progress.
-        }
-
-        Editor editor = new Editor(entry);
-        entry.currentEditor = editor;
+        synchronized (lockFor(key)) {
+            Entry entry = lruEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                lruEntries.put(key, entry);
+            } else if (entry.currentEditor != null) {
+                return null; // Another edit is in progress.
+            }
 
-        // Flush the journal before creating files to prevent file leaks.
-        journalWriter.write(DIRTY + ' ' + key + '\n');
-        journalWriter.flush();
-        return editor;
+            Editor editor = new Editor(entry);
+            entry.currentEditor = editor;
+            return editor;
+        }
     }
 
-    private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+    private void completeEdit(Editor editor, boolean success) throws IOException {
         Entry entry = editor.entry;
-        if (entry.currentEditor != editor) {
-            throw new IllegalStateException();
-        }
+        synchronized (lockFor(entry.key)) {
+            if (entry.currentEditor != editor) {
+                throw new IllegalStateException();
+            }
 
-        // If this edit is creating the entry for the first time, every index must have a value.
-        if (success && !entry.readable) {
-            for (int i = 0; i < valueCount; i++) {
-                if (!editor.written[i]) {
-                    editor.abort();
-                    throw new IllegalStateException("Newly created entry didn't create value for index " + i);
-                }
-                if (!entry.getDirtyFile(i).exists()) {
-                    editor.abort();
-                    return;
+            // If this edit is creating the entry for the first time, every index must have a
+            // value.
+            if (success && !entry.readable) {
+                for (int i = 0; i < valueCount; i++) {
+                    if (!editor.written[i]) {
+                        editor.abort();
+                        throw new IllegalStateException(
+                                "Newly created entry didn't create value for index " + i);
+                    }
+                    if (!entry.getDirtyFile(i).exists()) {
+                        editor.abort();
+                        return;
+                    }
                 }
             }
-        }
 
-        for (int i = 0; i < valueCount; i++) {
-            File dirty = entry.getDirtyFile(i);
-            if (success) {
-                if (dirty.exists()) {
-                    File clean = entry.getCleanFile(i);
-                    dirty.renameTo(clean);
-                    long oldLength = entry.lengths[i];
-                    long newLength = clean.length();
-                    entry.lengths[i] = newLength;
-                    size = size - oldLength + newLength;
+            long[] lengths = entry.lengths.clone();
+            entry.version++; // Readers retry until the files are in place.
+            try {
+                for (int i = 0; i < valueCount; i++) {
+                    File dirty = entry.getDirtyFile(i);
+                    if (success) {
+                        if (dirty.exists()) {
+                            File clean = entry.getCleanFile(i);
+                            //noinspection ResultOfMethodCallIgnored
+                            dirty.renameTo(clean);
+                            long newLength = clean.length();
+                            size.addAndGet(newLength - lengths[i]);
+                            lengths[i] = newLength;
+                        }
+                    } else {
+                        deleteIfExists(dirty);
+                    }
                 }
-            } else {
-                deleteIfExists(dirty);
+                entry.lengths = lengths;
+            } finally {
+                entry.version++;
             }
-        }
 
-        redundantOpCount++;
-        entry.currentEditor = null;
-        if (entry.readable | success) {
-            entry.readable = true;
-            journalWriter.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
-            if (success) {
-                entry.sequenceNumber = nextSequenceNumber++;
+            entry.currentEditor = null;
+            if (entry.readable | success) {
+                entry.readable = true;
+                if (success) {
+                    entry.accessTime = accessClock.incrementAndGet();
+                }
+                appendToJournal(CLEAN, entry);
+            } else {
+                lruEntries.remove(entry.key);
             }
-        } else {
-            lruEntries.remove(entry.key);
-            journalWriter.write(REMOVE + ' ' + entry.key + '\n');
         }
-        journalWriter.flush();
 
-        if (size > maxSize || journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
+        if (size.get() > maxSize || journalRebuildRequired()) {
+            executorService.execute(cleanupRunnable);
         }
     }
 
@@ -545,8 +687,9 @@ public final class DiskLruCache implements Closeable {
      */
     private boolean journalRebuildRequired() {
         final int redundantOpCompactThreshold = 2000;
-        return redundantOpCount >= redundantOpCompactThreshold //
-                && redundantOpCount >= lruEntries.size();
+        final int redundant = redundantOpCount.get();
+        return redundant >= redundantOpCompactThreshold //
+                && redundant >= lruEntries.size();
     }
 
     /**
@@ -556,29 +699,39 @@ public final class DiskLruCache implements Closeable {
      * @return true if an entry was removed.
      */
     @SuppressWarnings("UnusedReturnValue")
-    public synchronized boolean remove(String key) throws IOException {
+    public boolean remove(String key) throws IOException {
         checkNotClosed();
         validateKey(key);
-        Entry entry = lruEntries.get(key);
-        if (entry == null || entry.currentEditor != null) {
-            return false;
-        }
+        return removeEntry(key);
+    }
 
-        for (int i = 0; i < valueCount; i++) {
-            File file = entry.getCleanFile(i);
-            if (file.exists() && !file.delete()) {
-                throw new IOException("failed to delete " + file);
+    private boolean removeEntry(String key) throws IOException {
+        synchronized (lockFor(key)) {
+            Entry entry = lruEntries.get(key);
+            if (entry == null || entry.currentEditor != null) {
+                return false;
             }
-            size -= entry.lengths[i];
-            entry.lengths[i] = 0;
-        }
 
-        redundantOpCount++;
-        journalWriter.append(REMOVE + ' ').append(key).append(String.valueOf('\n'));
-        lruEntries.remove(key);
+            entry.version++;
+            try {
+                entry.readable = false;
+                for (int i = 0; i < valueCount; i++) {
+                    File file = entry.getCleanFile(i);
+                    if (file.exists() && !file.delete()) {
+                        throw new IOException("failed to delete " + file);
+                    }
+                    size.addAndGet(-entry.lengths[i]);
+                }
+                entry.lengths = new long[valueCount];
+                lruEntries.remove(key);
+            } finally {
+                entry.version++;
+            }
+            appendToJournal(REMOVE, entry);
+        }
 
         if (journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
+            executorService.execute(cleanupRunnable);
         }
 
         return true;
@@ -587,12 +740,12 @@ public final class DiskLruCache implements Closeable {
     /**
      * Returns true if this cache has been closed.
      */
-    public synchronized boolean isClosed() {
-        return journalWriter == null;
+    public boolean isClosed() {
+        return closed;
     }
 
     private void checkNotClosed() {
-        if (journalWriter == null) {
+        if (closed) {
             throw new IllegalStateException("cache is closed");
         }
     }
@@ -600,33 +753,62 @@ public final class DiskLruCache implements Closeable {
     /**
      * Force buffered operations to the filesystem.
      */
-    public synchronized void flush() throws IOException {
+    public void flush() throws IOException {
         checkNotClosed();
         trimToSize();
-        journalWriter.flush();
+        synchronized (journalLock) {
+            if (journalWriter != null) {
+                journalWriter.flush();
+            }
+        }
     }
 
     /**
-     * Closes this cache. Stored values will remain on the filesystem.
+     * Closes this cache. Stored values will remain on the filesystem. The
+     * journal is rewritten so the next open sees the current access order.
      */
-    public synchronized void close() throws IOException {
-        if (journalWriter == null) {
-            return; // Already closed.
+    public void close() throws IOException {
+        synchronized (journalLock) {
+            if (closed) {
+                return; // Already closed.
+            }
+            closed = true;
         }
         for (Entry entry : new ArrayList<>(lruEntries.values())) {
-            if (entry.currentEditor != null) {
-                entry.currentEditor.abort();
+            Editor editor = entry.currentEditor;
+            if (editor != null) {
+                try {
+                    editor.abort();
+                } catch (IllegalStateException ignored) {
+                    // The edit completed in the meantime.
+                }
             }
         }
         trimToSize();
-        journalWriter.close();
-        journalWriter = null;
+        rebuildJournal();
+        synchronized (journalLock) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+        executorService.shutdown();
     }
 
+    /**
+     * Removes the least recently used entries until the cache is a little
+     * below its maximum size.
+     */
     private void trimToSize() throws IOException {
-        while (size > maxSize) {
-            Map.Entry<String, Entry> toEvict = lruEntries.entrySet().iterator().next();
-            remove(toEvict.getKey());
+        if (size.get() <= maxSize) {
+            return;
+        }
+        long target = maxSize - maxSize / TRIM_HEADROOM_DIVIDER;
+        for (Entry entry : entriesInAccessOrder()) {
+            if (size.get() <= target) {
+                break;
+            }
+            if (entry.readable) {
+                removeEntry(entry.key);
+            }
         }
     }
 
@@ -705,11 +887,11 @@ public final class DiskLruCache implements Closeable {
                         + "be greater than 0 and less than the maximum value count "
                         + "of " + valueCount);
             }
-            synchronized (DiskLruCache.this) {
+            synchronized (lockFor(entry.key)) {
                 if (entry.currentEditor != this) {
                     throw new IllegalStateException();
                 }
-                if (!entry.readable) {
+                if (written != null) {
                     written[index] = true;
                 }
                 File dirtyFile = entry.getDirtyFile(index);
@@ -738,7 +920,7 @@ public final class DiskLruCache implements Closeable {
         public void commit() throws IOException {
             if (hasErrors) {
                 completeEdit(this, false);
-                remove(entry.key); // The previous entry is stale.
+                removeEntry(entry.key); // The previous entry is stale.
             } else {
                 completeEdit(this, true);
             }
@@ -799,57 +981,34 @@ public final class DiskLruCache implements Closeable {
         private final String key;
 
         /**
-         * Lengths of this entry's files.
+         * Lengths of this entry's files, replaced as a whole by commits.
          */
-        private final long[] lengths;
+        private volatile long[] lengths;
 
         /**
-         * True if this entry has ever been published.
+         * True if this entry has been published and not removed since.
          */
-        private boolean readable;
+        private volatile boolean readable;
 
         /**
          * The ongoing edit or null if this entry is not being edited.
          */
-        private Editor currentEditor;
+        private volatile Editor currentEditor;
 
         /**
-         * The sequence number of the most recently committed edit to this entry.
+         * Odd while a commit or removal moves the files of this entry, readers
+         * that see it change open the files again.
          */
-        private long sequenceNumber;
-
-        private Entry(String key) {
-            this.key = key;
-            this.lengths = new long[valueCount];
-        }
-
-        public String getLengths() {
-            StringBuilder result = new StringBuilder();
-            for (long size : lengths) {
-                result.append(' ').append(size);
-            }
-            return result.toString();
-        }
+        private volatile int version;
 
         /**
-         * Set lengths using decimal numbers like "10123".
+         * The tick of {@link #accessClock} when this entry was last used.
          */
-        private void setLengths(String[] strings) throws IOException {
-            if (strings.length != valueCount) {
-                throw invalidLengths(strings);
-            }
-
-            try {
-                for (int i = 0; i < strings.length; i++) {
-                    lengths[i] = Long.parseLong(strings[i]);
-                }
-            } catch (NumberFormatException e) {
-                throw invalidLengths(strings);
-            }
-        }
+        private volatile long accessTime;
 
-        private IOException invalidLengths(String[] strings) throws IOException {
-            throw new IOException("unexpected journal line: " + java.util.Arrays.toString(strings));
+        private Entry(String key) {
+            this.key = key;
+            this.lengths = new long[valueCount];
         }
 
         public File getCleanFile(int i) {
@@ -857,7 +1016,7 @@ public final class DiskLruCache implements Closeable {
         }
 
         public File getDirtyFile(int i) {
-            return new File(directory, key + "." + i + ".tmp");
+            return new File(directory, key + "." + i + DIRTY_SUFFIX);
         }
     }
 }
@@ -26,14 +26,16 @@ import android.provider.MediaStore.Audio.AlbumColumns;
 import org.lineageos.eleven.model.Album;
 import org.lineageos.eleven.provider.LocalizedStore;
 import org.lineageos.eleven.provider.LocalizedStore.SortParameter;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.provider.MusicCatalog;
+import org.lineageos.eleven.provider.MusicRepository;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
 import org.lineageos.eleven.utils.EmptyCursor;
-import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SortOrder;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -44,11 +46,6 @@ import java.util.List;
  */
 public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
 
-    /**
-     * The result
-     */
-    private final ArrayList<Album> mAlbumsList = Lists.newArrayList();
-
     /**
      * Additional selection filter
      */
@@ -73,42 +70,25 @@ public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
 
     @Override
     public List<Album> loadInBackground() {
+        final String sortOrder = PreferenceUtils.getInstance(getContext()).getAlbumSortOrder();
+        return MusicRepository.getInstance(getContext()).get("albums?" + mArtistId, sortOrder,
+                MediaStoreChanges.ALBUMS, this::loadAlbums);
+    }
+
+    private List<Album> loadAlbums() {
         // Create the Cursor
         Cursor cursor = makeAlbumCursor(getContext(), mArtistId);
-        // Gather the data
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                // Copy the album id
-                final long id = cursor.getLong(0);
-
-                // Copy the album name
-                final String albumName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the number of songs
-                final int songCount = cursor.getInt(3);
-
-                // Copy the release year
-                final String year = cursor.getString(4);
-
-                // as per designer's request, don't show unknown albums
-                if (MediaStore.UNKNOWN_STRING.equals(albumName)) {
-                    continue;
-                }
-
-                // Create a new album and add everything up
-                final Album album = new Album(id, albumName, artist, songCount, year);
-                mAlbumsList.add(album);
-            } while (cursor.moveToNext());
+        if (cursor == null) {
+            return Collections.emptyList();
         }
+
+        // The cursor only provides the order, the albums are created from the catalog
+        // page by page as the list is scrolled
+        final List<Album> albums = MusicCatalog.getInstance(getContext()).getAlbumList(cursor);
         // Close the cursor
-        if (cursor != null) {
-            cursor.close();
-        }
+        cursor.close();
 
-        return mAlbumsList;
+        return albums;
     }
 
     /**
@@ -149,14 +129,6 @@ public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
                 new String[]{
                         /* 0 */
                         AlbumColumns.ALBUM_ID,
-                        /* 1 */
-                        AlbumColumns.ALBUM,
-                        /* 2 */
-                        AlbumColumns.ARTIST,
-                        /* 3 */
-                        AlbumColumns.NUMBER_OF_SONGS,
-                        /* 4 */
-                        AlbumColumns.FIRST_YEAR
                 }, null, null, albumSortOrder);
 
         // if our sort is a localized-based sort, grab localized data from the store
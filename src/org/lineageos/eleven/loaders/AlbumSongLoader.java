@@ -24,7 +24,9 @@ import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
 
 import org.lineageos.eleven.model.Song;
-import org.lineageos.eleven.utils.Lists;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.provider.MusicCatalog;
+import org.lineageos.eleven.provider.MusicRepository;
 import org.lineageos.eleven.utils.PreferenceUtils;
 
 import java.util.ArrayList;
@@ -38,11 +40,6 @@ import java.util.List;
  */
 public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
 
-    /**
-     * The result
-     */
-    private final ArrayList<Song> mSongList = Lists.newArrayList();
-
     /**
      * The Id of the album the songs belong to.
      */
@@ -61,44 +58,23 @@ public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
 
     @Override
     public List<Song> loadInBackground() {
+        final String sortOrder = PreferenceUtils.getInstance(getContext())
+                .getAlbumSongSortOrder();
+        return MusicRepository.getInstance(getContext()).get("albumsongs?" + mAlbumID,
+                sortOrder, MediaStoreChanges.SONGS | MediaStoreChanges.ALBUMS, this::loadSongs);
+    }
+
+    private List<Song> loadSongs() {
+        final ArrayList<Song> songList = new ArrayList<>();
         // Create the Cursor
         Cursor cursor = makeAlbumSongCursor(getContext(), mAlbumID);
-        // Gather the data
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                // Copy the song Id
-                final long id = cursor.getLong(0);
-
-                // Copy the song name
-                final String songName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the album name
-                final String album = cursor.getString(3);
-
-                // Copy the duration
-                final long duration = cursor.getLong(4);
-
-                // Make the duration label
-                final int seconds = (int) (duration / 1000);
-
-                // Grab the Song Year
-                final int year = cursor.getInt(5);
-
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, mAlbumID, seconds, year);
-
-                // Add everything up
-                mSongList.add(song);
-            } while (cursor.moveToNext());
-        }
-        // Close the cursor
+        // Gather the data, the cursor only provides the order and the catalog the rest
         if (cursor != null) {
+            songList.addAll(MusicCatalog.getInstance(getContext()).getSongs(cursor));
+            // Close the cursor
             cursor.close();
         }
-        return mSongList;
+        return songList;
     }
 
     /**
@@ -115,16 +91,6 @@ public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
                 new String[]{
                         /* 0 */
                         BaseColumns._ID,
-                        /* 1 */
-                        AudioColumns.TITLE,
-                        /* 2 */
-                        AudioColumns.ARTIST,
-                        /* 3 */
-                        AudioColumns.ALBUM,
-                        /* 4 */
-                        AudioColumns.DURATION,
-                        /* 5 */
-                        AudioColumns.YEAR,
                 }, selection, null,
                 PreferenceUtils.getInstance(context).getAlbumSongSortOrder());
     }
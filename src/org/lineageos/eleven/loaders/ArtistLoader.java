@@ -19,19 +19,20 @@ package org.lineageos.eleven.loaders;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.Artists;
 
 import org.lineageos.eleven.model.Artist;
 import org.lineageos.eleven.provider.LocalizedStore;
 import org.lineageos.eleven.provider.LocalizedStore.SortParameter;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.provider.MusicCatalog;
+import org.lineageos.eleven.provider.MusicRepository;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
-import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SortOrder;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -42,11 +43,6 @@ import java.util.List;
  */
 public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
 
-    /**
-     * The result
-     */
-    private final ArrayList<Artist> mArtistsList = Lists.newArrayList();
-
     /**
      * Constructor of <code>ArtistLoader</code>
      *
@@ -58,44 +54,26 @@ public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
 
     @Override
     public List<Artist> loadInBackground() {
+        final String sortOrder = PreferenceUtils.getInstance(getContext()).getArtistSortOrder();
+        return MusicRepository.getInstance(getContext()).get("artists", sortOrder,
+                MediaStoreChanges.ARTISTS, this::loadArtists);
+    }
+
+    private List<Artist> loadArtists() {
         // Create the Cursor
         Cursor cursor = makeArtistCursor(getContext());
-        // Gather the data
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                // Copy the artist id
-                final long id = cursor.getLong(0);
-
-                // Copy the artist name
-                final String artistName = cursor.getString(1);
-
-                // Copy the number of albums
-                final int albumCount = cursor.getInt(2);
-
-                // Copy the number of songs
-                final int songCount = cursor.getInt(3);
-
-                // as per designer's request, don't show unknown artist
-                if (MediaStore.UNKNOWN_STRING.equals(artistName)) {
-                    continue;
-                }
-
-                // Create a new artist
-                final Artist artist = new Artist(id, artistName, songCount, albumCount);
-
-                if (cursor instanceof SortedCursor) {
-                    artist.mBucketLabel = (String)((SortedCursor) cursor).getExtraData();
-                }
-
-                mArtistsList.add(artist);
-            } while (cursor.moveToNext());
+        if (cursor == null) {
+            return Collections.emptyList();
         }
+
+        // The cursor only provides the order, the artists are created from the catalog
+        // page by page as the list is scrolled
+        final List<Artist> artists = MusicCatalog.getInstance(getContext())
+                .getArtistList(cursor);
         // Close the cursor
-        if (cursor != null) {
-            cursor.close();
-        }
+        cursor.close();
 
-        return mArtistsList;
+        return artists;
     }
 
     /**
@@ -124,12 +102,6 @@ public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
                 new String[] {
                         /* 0 */
                         Artists._ID,
-                        /* 1 */
-                        Artists.ARTIST,
-                        /* 2 */
-                        Artists.NUMBER_OF_ALBUMS,
-                        /* 3 */
-                        Artists.NUMBER_OF_TRACKS
                 }, null, null, artistSortOrder);
 
         // if our sort is a localized-based sort, grab localized data from the store
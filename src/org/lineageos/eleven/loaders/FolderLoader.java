@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.loaders;
+
+import android.content.Context;
+
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.FolderTree;
+import org.lineageos.eleven.provider.MusicCatalog;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Used to load a folder of the {@link FolderTree} with the songs directly in it
+ */
+public class FolderLoader extends WrappedAsyncTaskLoader<FolderLoader.Contents> {
+
+    /**
+     * The loaded folder, {@link #mFolder} is null if the folder doesn't exist anymore
+     */
+    public static final class Contents {
+        public final FolderTree.Tree mTree;
+        public final FolderTree.Folder mFolder;
+        public final List<Song> mSongs;
+
+        private Contents(final FolderTree.Tree tree, final FolderTree.Folder folder,
+                         final List<Song> songs) {
+            mTree = tree;
+            mFolder = folder;
+            mSongs = songs;
+        }
+    }
+
+    private final String mPath;
+
+    /**
+     * Constructor of <code>FolderLoader</code>
+     *
+     * @param context The {@link Context} to use
+     * @param path    The path of the folder or null for the top folder
+     */
+    public FolderLoader(final Context context, final String path) {
+        super(context);
+        mPath = path;
+    }
+
+    @Override
+    public Contents loadInBackground() {
+        final FolderTree.Tree tree = FolderTree.getInstance(getContext()).getTree();
+        final FolderTree.Folder folder = tree.find(mPath);
+        if (folder == null) {
+            return new Contents(tree, null, Collections.emptyList());
+        }
+        return new Contents(tree, folder, MusicCatalog.getInstance(getContext())
+                .getSongs(tree.getOwnSongIds(folder)));
+    }
+}
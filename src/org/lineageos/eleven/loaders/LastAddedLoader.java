@@ -24,6 +24,7 @@ import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
 
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.MusicCatalog;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.PreferenceUtils;
@@ -56,43 +57,10 @@ public class LastAddedLoader extends SectionCreator.SimpleListLoader<Song> {
     public List<Song> loadInBackground() {
         // Create the xCursor
         Cursor cursor = makeLastAddedCursor(getContext());
-        // Gather the data
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                // Copy the song Id
-                final long id = cursor.getLong(0);
-
-                // Copy the song name
-                final String songName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the album id
-                final long albumId = cursor.getLong(3);
-
-                // Copy the album name
-                final String album = cursor.getString(4);
-
-                // Copy the duration
-                final long duration = cursor.getLong(5);
-
-                // Convert the duration into seconds
-                final int durationInSecs = (int) duration / 1000;
-
-                // Grab the Song Year
-                final int year = cursor.getInt(6);
-
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId, durationInSecs,
-                        year);
-
-                // Add everything up
-                mSongList.add(song);
-            } while (cursor.moveToNext());
-        }
-        // Close the cursor
+        // Gather the data, the cursor only provides the order and the catalog the rest
         if (cursor != null) {
+            mSongList.addAll(MusicCatalog.getInstance(getContext()).getSongs(cursor));
+            // Close the cursor
             cursor.close();
         }
         return mSongList;
@@ -121,18 +89,6 @@ public class LastAddedLoader extends SectionCreator.SimpleListLoader<Song> {
                 new String[]{
                         /* 0 */
                         BaseColumns._ID,
-                        /* 1 */
-                        AudioColumns.TITLE,
-                        /* 2 */
-                        AudioColumns.ARTIST,
-                        /* 3 */
-                        AudioColumns.ALBUM_ID,
-                        /* 4 */
-                        AudioColumns.ALBUM,
-                        /* 5 */
-                        AudioColumns.DURATION,
-                        /* 6 */
-                        AudioColumns.YEAR,
                 }, selection, null, MediaStore.Audio.Media.DATE_ADDED + " DESC");
     }
 }
@@ -21,16 +21,19 @@ import android.content.Context;
 import android.database.AbstractCursor;
 import android.database.Cursor;
 import android.provider.BaseColumns;
-import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
 
+import org.lineageos.eleven.provider.CatalogSongList;
+import org.lineageos.eleven.provider.MusicCatalog;
 import org.lineageos.eleven.utils.MusicUtils;
 
 import java.util.Arrays;
 
 /**
  * A custom {@link Cursor} used to return the queue and allow for easy dragging
- * and dropping of the items in it.
+ * and dropping of the items in it.  The values are read from the {@link MusicCatalog}
+ * for the position the cursor is moved to, so only the part of the queue that is
+ * actually visited is ever looked up.
  */
 @SuppressLint("NewApi")
 public class NowPlayingCursor extends AbstractCursor {
@@ -54,15 +57,16 @@ public class NowPlayingCursor extends AbstractCursor {
 
     private final Context mContext;
 
-    private long[] mNowPlaying;
+    private MusicCatalog.Snapshot mSnapshot;
 
-    private long[] mCursorIndexes;
+    private long[] mNowPlaying;
 
     private int mSize;
 
     private int mCurPos;
 
-    private Cursor mQueueCursor;
+    /* The catalog row of the current position or -1 */
+    private int mCurRow;
 
     /**
      * Constructor of <code>NowPlayingCursor</code>
@@ -85,70 +89,90 @@ public class NowPlayingCursor extends AbstractCursor {
             return true;
         }
 
-        if (mNowPlaying == null || mCursorIndexes == null || newPosition >= mNowPlaying.length) {
+        if (mNowPlaying == null || newPosition < 0 || newPosition >= mSize) {
             return false;
         }
 
-        final long id = mNowPlaying[newPosition];
-        final int cursorIndex = Arrays.binarySearch(mCursorIndexes, id);
-        mQueueCursor.moveToPosition(cursorIndex);
+        mCurRow = mSnapshot.indexOfSong(mNowPlaying[newPosition]);
         mCurPos = newPosition;
         return true;
     }
 
     @Override
     public String getString(final int column) {
-        try {
-            return mQueueCursor.getString(column);
-        } catch (final Exception ignored) {
-            onChange(true);
+        if (mCurRow < 0) {
             return "";
         }
+
+        switch (column) {
+            case 1:
+                return mSnapshot.getSongTitle(mCurRow);
+            case 2:
+                return mSnapshot.getSongArtist(mCurRow);
+            case 4:
+                return mSnapshot.getSongAlbum(mCurRow);
+            default:
+                return String.valueOf(getLong(column));
+        }
     }
 
     @Override
     public short getShort(final int column) {
-        return mQueueCursor.getShort(column);
+        return (short) getLong(column);
     }
 
     @Override
     public int getInt(final int column) {
-        try {
-            return mQueueCursor.getInt(column);
-        } catch (final Exception ignored) {
-            onChange(true);
-            return 0;
-        }
+        return (int) getLong(column);
     }
 
     @Override
     public long getLong(final int column) {
-        try {
-            return mQueueCursor.getLong(column);
-        } catch (final Exception ignored) {
-            onChange(true);
+        if (mCurRow < 0) {
             return 0;
         }
+
+        switch (column) {
+            case 0:
+                return mSnapshot.getSongId(mCurRow);
+            case 3:
+                return mSnapshot.getSongAlbumId(mCurRow);
+            case 5:
+                // the catalog stores seconds, MediaStore reports milliseconds
+                return mSnapshot.getSongDuration(mCurRow) * 1000L;
+            case 6:
+                return mSnapshot.getSongYear(mCurRow);
+            default:
+                return 0;
+        }
     }
 
     @Override
     public float getFloat(final int column) {
-        return mQueueCursor.getFloat(column);
+        return getLong(column);
     }
 
     @Override
     public double getDouble(final int column) {
-        return mQueueCursor.getDouble(column);
+        return getLong(column);
     }
 
     @Override
     public int getType(final int column) {
-        return mQueueCursor.getType(column);
+        switch (column) {
+            case 1:
+            case 2:
+            case 4:
+                return isNull(column) ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+            default:
+                return FIELD_TYPE_INTEGER;
+        }
     }
 
     @Override
     public boolean isNull(final int column) {
-        return mQueueCursor.isNull(column);
+        return mCurRow < 0 || (column == 1 || column == 2 || column == 4)
+                && getString(column) == null;
     }
 
     @Override
@@ -156,87 +180,56 @@ public class NowPlayingCursor extends AbstractCursor {
         return PROJECTION;
     }
 
-    @SuppressWarnings("deprecation")
-    @Override
-    public void deactivate() {
-        if (mQueueCursor != null) {
-            mQueueCursor.deactivate();
-        }
-    }
-
     @Override
     public boolean requery() {
         makeNowPlayingCursor();
         return true;
     }
 
-    @Override
-    public void close() {
-        try {
-            if (mQueueCursor != null) {
-                mQueueCursor.close();
-                mQueueCursor = null;
-            }
-        } catch (final Exception ignored) {
-        }
-        super.close();
+    /**
+     * @return a list of the songs in the queue that only creates the songs that are accessed
+     */
+    public CatalogSongList getSongList() {
+        return new CatalogSongList(mSnapshot, mNowPlaying, mSize);
     }
 
     /**
      * Actually makes the queue
      */
     private void makeNowPlayingCursor() {
-        mQueueCursor = null;
         mNowPlaying = MusicUtils.getQueue();
         mSize = mNowPlaying.length;
-        if (mSize == 0) {
+        mCurPos = -1;
+        mCurRow = -1;
+
+        // fetches any ids the catalog hasn't seen yet in bounded chunks, the queue may also
+        // hold tracks that aren't music so those are looked up without the library filter
+        final MusicCatalog catalog = MusicCatalog.getInstance(mContext);
+        mSnapshot = catalog.getQueueSnapshot(mNowPlaying);
+        if (mSnapshot == null) {
+            // MediaStore couldn't tell us which tracks are gone, keep them all for now
+            mSnapshot = catalog.getSnapshot(mNowPlaying);
             return;
         }
 
-        final StringBuilder selection = new StringBuilder();
-        selection.append(MediaStore.Audio.Media._ID + " IN (");
-        for (int i = 0; i < mSize; i++) {
-            selection.append(mNowPlaying[i]);
-            if (i < mSize - 1) {
-                selection.append(",");
+        long[] missingIds = null;
+        int missingCount = 0;
+        for (long id : mNowPlaying) {
+            if (mSnapshot.indexOfSong(id) < 0) {
+                if (missingIds == null) {
+                    missingIds = new long[mSize];
+                }
+                missingIds[missingCount++] = id;
             }
         }
-        selection.append(")");
-
-        mQueueCursor = mContext.getContentResolver().query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, PROJECTION, selection.toString(),
-                null, MediaStore.Audio.Media._ID);
-
-        if (mQueueCursor == null) {
-            mSize = 0;
-            return;
-        }
-
-        final int playlistSize = mQueueCursor.getCount();
-        mCursorIndexes = new long[playlistSize];
-        mQueueCursor.moveToFirst();
-        final int columnIndex = mQueueCursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-        for (int i = 0; i < playlistSize; i++) {
-            mCursorIndexes[i] = mQueueCursor.getLong(columnIndex);
-            mQueueCursor.moveToNext();
-        }
-        mQueueCursor.moveToFirst();
-        mCurPos = -1;
 
-        int removed = 0;
-        for (int i = mNowPlaying.length - 1; i >= 0; i--) {
-            final long trackId = mNowPlaying[i];
-            final int cursorIndex = Arrays.binarySearch(mCursorIndexes, trackId);
-            if (cursorIndex < 0) {
-                removed += MusicUtils.removeTrack(trackId);
-            }
-        }
-        if (removed > 0) {
+        // report every track that no longer exists to the service at once
+        if (missingCount > 0
+                && MusicUtils.removeTracks(Arrays.copyOf(missingIds, missingCount)) > 0) {
             mNowPlaying = MusicUtils.getQueue();
             mSize = mNowPlaying.length;
-            if (mSize == 0) {
-                mCursorIndexes = null;
-            }
+            final MusicCatalog.Snapshot snapshot = catalog.getQueueSnapshot(mNowPlaying);
+            mSnapshot = snapshot != null ? snapshot : catalog.getSnapshot(mNowPlaying);
         }
     }
 
@@ -26,8 +26,9 @@ import android.provider.MediaStore.Audio.PlaylistsColumns;
 
 import org.lineageos.eleven.Config.SmartPlaylistType;
 import org.lineageos.eleven.model.Playlist;
+import org.lineageos.eleven.provider.PlaylistCountStore;
+import org.lineageos.eleven.provider.SmartPlaylistStore;
 import org.lineageos.eleven.utils.Lists;
-import org.lineageos.eleven.utils.MusicUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -59,30 +60,43 @@ public class PlaylistLoader extends WrappedAsyncTaskLoader<List<Playlist>> {
         // Add the default playlist to the adapter
         makeDefaultPlaylists();
 
+        // Add the smart playlists the user defined
+        mPlaylistList.addAll(SmartPlaylistStore.getInstance(getContext()).getPlaylists());
+
+        final List<Long> ids = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        final List<Long> datesModified = new ArrayList<>();
+
         // Create the Cursor
         Cursor cursor = makePlaylistCursor(getContext());
         // Gather the data
         if (cursor != null && cursor.moveToFirst()) {
             do {
                 // Copy the playlist id
-                final long id = cursor.getLong(0);
+                ids.add(cursor.getLong(0));
 
                 // Copy the playlist name
-                final String name = cursor.getString(1);
-
-                final int songCount = MusicUtils.getSongCountForPlaylist(getContext(), id);
-
-                // Create a new playlist
-                final Playlist playlist = new Playlist(id, name, songCount);
+                names.add(cursor.getString(1));
 
-                // Add everything up
-                mPlaylistList.add(playlist);
+                // Copy the date modified, it tells whether the cached song count is still valid
+                datesModified.add(cursor.getLong(2));
             } while (cursor.moveToNext());
         }
         // Close the cursor
         if (cursor != null) {
             cursor.close();
         }
+
+        // Get all the song counts at once
+        final int[] songCounts = PlaylistCountStore.getInstance(getContext())
+                .getSongCounts(ids, datesModified);
+        for (int i = 0; i < songCounts.length; i++) {
+            // Create a new playlist
+            final Playlist playlist = new Playlist(ids.get(i), names.get(i), songCounts[i]);
+
+            // Add everything up
+            mPlaylistList.add(playlist);
+        }
         return mPlaylistList;
     }
 
@@ -118,7 +132,9 @@ public class PlaylistLoader extends WrappedAsyncTaskLoader<List<Playlist>> {
                         /* 0 */
                         BaseColumns._ID,
                         /* 1 */
-                        PlaylistsColumns.NAME
+                        PlaylistsColumns.NAME,
+                        /* 2 */
+                        PlaylistsColumns.DATE_MODIFIED
                 }, null, null, MediaStore.Audio.Playlists.DEFAULT_SORT_ORDER);
     }
 }
@@ -17,19 +17,17 @@
  */
 package org.lineageos.eleven.loaders;
 
-import android.content.ContentProviderOperation;
 import android.content.Context;
-import android.content.OperationApplicationException;
 import android.database.Cursor;
-import android.net.Uri;
-import android.os.RemoteException;
 import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
 import android.provider.MediaStore.Audio.Playlists;
-import android.util.Log;
 
 import org.lineageos.eleven.model.Song;
-import org.lineageos.eleven.utils.Lists;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.provider.MusicRepository;
+import org.lineageos.eleven.provider.PlaylistCountStore;
+import org.lineageos.eleven.provider.PlaylistEditor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -41,12 +39,9 @@ import java.util.List;
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
 public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
-    private static final String TAG = PlaylistSongLoader.class.getSimpleName();
 
-    /**
-     * The result
-     */
-    private final ArrayList<Song> mSongList = Lists.newArrayList();
+    private static final String MEMBER_SELECTION = AudioColumns.IS_MUSIC + "=1"
+            + " AND " + AudioColumns.TITLE + " != ''";
 
     /**
      * The Id of the playlist the songs belong to.
@@ -66,54 +61,30 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
 
     @Override
     public List<Song> loadInBackground() {
-        final int playlistCount = countPlaylist(getContext(), mPlaylistID);
-
-        // Create the Cursor
-        Cursor cursor = makePlaylistSongCursor(getContext(), mPlaylistID);
-
-        if (cursor != null) {
-            boolean runCleanup = false;
-
-            // if the raw playlist count differs from the mapped playlist count (ie the raw mapping
-            // table vs the mapping table join the audio table) that means the playlist mapping
-            // table is messed up
-            if (cursor.getCount() != playlistCount) {
-                Log.w(TAG, "Count Differs - raw is: " + playlistCount + " while cursor is " +
-                        cursor.getCount());
-
-                runCleanup = true;
-            }
-
-            // check if the play order is already messed up by duplicates
-            if (!runCleanup && cursor.moveToFirst()) {
-                final int playOrderCol = cursor.getColumnIndexOrThrow(Playlists.Members.PLAY_ORDER);
-
-                int lastPlayOrder = -1;
-                do {
-                    int playOrder = cursor.getInt(playOrderCol);
-                    // if we have duplicate play orders, we need to recreate the playlist
-                    if (playOrder == lastPlayOrder) {
-                        runCleanup = true;
-                        break;
-                    }
-                    lastPlayOrder = playOrder;
-                } while (cursor.moveToNext());
+        final MusicRepository repository = MusicRepository.getInstance(getContext());
+
+        // fix duplicate play orders and members whose song is gone before showing the playlist,
+        // also when it is cached as another app may have broken it in the meantime
+        boolean repaired = false;
+        try (Cursor cursor = makePlaylistMemberCursor(getContext(), mPlaylistID)) {
+            if (cursor != null) {
+                repaired = PlaylistEditor.repair(getContext(), mPlaylistID, cursor);
             }
+        }
+        if (repaired) {
+            repository.invalidate(MediaStoreChanges.PLAYLISTS);
+        }
 
-            if (runCleanup) {
-                Log.w(TAG, "Playlist order has flaws - recreating playlist");
+        return repository.get("playlistsongs?" + mPlaylistID,
+                Playlists.Members.DEFAULT_SORT_ORDER,
+                MediaStoreChanges.PLAYLISTS | MediaStoreChanges.SONGS, this::loadSongs);
+    }
 
-                // cleanup the playlist
-                cleanupPlaylist(getContext(), mPlaylistID, cursor);
+    private List<Song> loadSongs() {
+        final ArrayList<Song> songList = new ArrayList<>();
 
-                // create a new cursor
-                cursor.close();
-                cursor = makePlaylistSongCursor(getContext(), mPlaylistID);
-                if (cursor != null) {
-                    Log.d(TAG, "New Count is: " + cursor.getCount());
-                }
-            }
-        }
+        // Create the Cursor
+        final Cursor cursor = makePlaylistSongCursor(getContext(), mPlaylistID);
 
         // Gather the data
         if (cursor != null && cursor.moveToFirst()) {
@@ -154,86 +125,18 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
                         year);
 
                 // Add everything up
-                mSongList.add(song);
+                songList.add(song);
             } while (cursor.moveToNext());
         }
         // Close the cursor
         if (cursor != null) {
             cursor.close();
         }
-        return mSongList;
-    }
-
-    /**
-     * Cleans up the playlist based on the passed in cursor's data
-     *
-     * @param context    The {@link Context} to use
-     * @param playlistId playlistId to clean up
-     * @param cursor     data to repopulate the playlist with
-     */
-    private static void cleanupPlaylist(final Context context, final long playlistId,
-                                        final Cursor cursor) {
-        Log.w(TAG, "Cleaning up playlist: " + playlistId);
 
-        final int idCol = cursor.getColumnIndexOrThrow(Playlists.Members.AUDIO_ID);
-        final Uri uri = Playlists.Members.getContentUri("external", playlistId);
-
-        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
-
-        // Delete all results in the playlist
-        ops.add(ContentProviderOperation.newDelete(uri).build());
-
-        // yield the db every 100 records to prevent ANRs
-        final int YIELD_FREQUENCY = 100;
-
-        // for each item, reset the play order position
-        if (cursor.moveToFirst() && cursor.getCount() > 0) {
-            do {
-                final ContentProviderOperation.Builder builder =
-                        ContentProviderOperation.newInsert(uri)
-                                .withValue(Playlists.Members.PLAY_ORDER, cursor.getPosition())
-                                .withValue(Playlists.Members.AUDIO_ID, cursor.getLong(idCol));
-
-                // yield at the end and not at 0 by incrementing by 1
-                if ((cursor.getPosition() + 1) % YIELD_FREQUENCY == 0) {
-                    builder.withYieldAllowed(true);
-                }
-                ops.add(builder.build());
-            } while (cursor.moveToNext());
-        }
-
-        try {
-            // run the batch operation
-            context.getContentResolver().applyBatch(MediaStore.AUTHORITY, ops);
-        } catch (RemoteException e) {
-            Log.e(TAG, "RemoteException " + e + " while cleaning up playlist " + playlistId);
-        } catch (OperationApplicationException e) {
-            Log.e(TAG, "OperationApplicationException " + e + " while cleaning up playlist "
-                    + playlistId);
-        }
-    }
-
-    /**
-     * Returns the playlist count for the raw playlist mapping table
-     *
-     * @param context    The {@link Context} to use
-     * @param playlistId playlistId to count
-     * @return the number of tracks in the raw playlist mapping table
-     */
-    private static int countPlaylist(final Context context, final long playlistId) {
-        try (Cursor c = context.getContentResolver().query(
-                Playlists.Members.getContentUri("external", playlistId),
-                new String[]{Playlists.Members.AUDIO_ID,}, null, null,
-                Playlists.Members.DEFAULT_SORT_ORDER)) {
-            // when we query using only the audio_id column we will get the raw mapping table
-            // results - which will tell us if the table has rows that don't exist in the normal
-            // table
-            if (c != null) {
-                return c.getCount();
-            }
-        }
-
-        return 0;
+        // the playlists tab shows the count of this playlist, keep it up to date
+        PlaylistCountStore.getInstance(getContext()).updateSongCount(mPlaylistID,
+                songList.size());
+        return songList;
     }
 
     /**
@@ -244,8 +147,6 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
      * @return The {@link Cursor} used to run the song query.
      */
     public static Cursor makePlaylistSongCursor(final Context context, final Long playlistID) {
-        String mSelection = (AudioColumns.IS_MUSIC + "=1") +
-                " AND " + AudioColumns.TITLE + " != ''";
         return context.getContentResolver().query(
                 Playlists.Members.getContentUri("external", playlistID),
                 new String[]{
@@ -267,7 +168,30 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
                         AudioColumns.YEAR,
                         /* 8 */
                         Playlists.Members.PLAY_ORDER,
-                }, mSelection, null,
+                }, MEMBER_SELECTION, null,
+                Playlists.Members.DEFAULT_SORT_ORDER);
+    }
+
+    /**
+     * Creates the {@link Cursor} of the members that {@link PlaylistEditor#repair} needs, without
+     * the song columns.
+     *
+     * @param context    The {@link Context} to use.
+     * @param playlistID The playlist the songs belong to.
+     * @return The {@link Cursor} of the members.
+     */
+    private static Cursor makePlaylistMemberCursor(final Context context,
+                                                   final long playlistID) {
+        return context.getContentResolver().query(
+                Playlists.Members.getContentUri("external", playlistID),
+                new String[]{
+                        /* 0 */
+                        Playlists.Members._ID,
+                        /* 1 */
+                        Playlists.Members.AUDIO_ID,
+                        /* 2 */
+                        Playlists.Members.PLAY_ORDER,
+                }, MEMBER_SELECTION, null,
                 Playlists.Members.DEFAULT_SORT_ORDER);
     }
 }
@@ -21,9 +21,7 @@ import android.content.Context;
 import android.database.Cursor;
 
 import org.lineageos.eleven.model.Song;
-import org.lineageos.eleven.utils.Lists;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -33,11 +31,6 @@ import java.util.List;
  */
 public class QueueLoader extends WrappedAsyncTaskLoader<List<Song>> {
 
-    /**
-     * The result
-     */
-    private final ArrayList<Song> mSongList = Lists.newArrayList();
-
     /**
      * Constructor of <code>QueueLoader</code>
      *
@@ -51,44 +44,11 @@ public class QueueLoader extends WrappedAsyncTaskLoader<List<Song>> {
     public List<Song> loadInBackground() {
         // Create the Cursor
         NowPlayingCursor cursor = new NowPlayingCursor(getContext());
-        // Gather the data
-        if (cursor.moveToFirst()) {
-            do {
-                // Copy the song Id
-                final long id = cursor.getLong(0);
-
-                // Copy the song name
-                final String songName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the album id
-                final long albumId = cursor.getLong(3);
-
-                // Copy the album name
-                final String album = cursor.getString(4);
-
-                // Copy the duration
-                final long duration = cursor.getLong(5);
-
-                // Convert the duration into seconds
-                final int durationInSecs = (int) duration / 1000;
-
-                // Copy the year
-                final int year = cursor.getInt(6);
-
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId,
-                        durationInSecs, year);
-
-                // Add everything up
-                mSongList.add(song);
-            } while (cursor.moveToNext());
-        }
+        // Only the ids are copied, the songs are created once they are shown
+        final List<Song> songs = cursor.getSongList();
         // Close the cursor
         cursor.close();
-        return mSongList;
+        return songs;
     }
 
     /**
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.loaders;
+
+import android.content.Context;
+
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.MusicCatalog;
+import org.lineageos.eleven.provider.SearchIndex;
+import org.lineageos.eleven.sectionadapter.SectionCreator;
+
+import java.util.List;
+
+/**
+ * Used to search the songs of the library with the {@link SearchIndex}
+ */
+public class SearchLoader extends SectionCreator.SimpleListLoader<Song> {
+    /* Maximum number of songs shown for a query */
+    private static final int MAX_RESULTS = 200;
+
+    private final String mQuery;
+
+    /**
+     * Constructor of <code>SearchLoader</code>
+     *
+     * @param context The {@link Context} to use
+     * @param query   The text to search for
+     */
+    public SearchLoader(final Context context, final String query) {
+        super(context);
+        mQuery = query;
+    }
+
+    @Override
+    public List<Song> loadInBackground() {
+        final long[] ids = SearchIndex.getInstance(getContext()).search(mQuery, MAX_RESULTS);
+        return MusicCatalog.getInstance(getContext()).getSongs(ids);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.loaders;
+
+import android.content.Context;
+
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.MusicCatalog;
+import org.lineageos.eleven.provider.SmartPlaylistStore;
+import org.lineageos.eleven.sectionadapter.SectionCreator;
+
+import java.util.List;
+
+/**
+ * Used to read the songs of a user defined smart playlist from the {@link SmartPlaylistStore}
+ */
+public class SmartPlaylistSongLoader extends SectionCreator.SimpleListLoader<Song> {
+    private final long mPlaylistId;
+
+    /**
+     * Constructor of <code>SmartPlaylistSongLoader</code>
+     *
+     * @param context    The {@link Context} to use
+     * @param playlistId The playlist id of the smart playlist
+     */
+    public SmartPlaylistSongLoader(final Context context, final long playlistId) {
+        super(context);
+        mPlaylistId = playlistId;
+    }
+
+    @Override
+    public List<Song> loadInBackground() {
+        final long[] ids = SmartPlaylistStore.getInstance(getContext()).getSongIds(mPlaylistId);
+        return MusicCatalog.getInstance(getContext()).getSongs(ids);
+    }
+}
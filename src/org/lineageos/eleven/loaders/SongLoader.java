@@ -19,20 +19,21 @@ package org.lineageos.eleven.loaders;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.provider.MediaStore;
 import android.provider.MediaStore.Audio;
 import android.text.TextUtils;
 
 import org.lineageos.eleven.model.Song;
 import org.lineageos.eleven.provider.LocalizedStore;
 import org.lineageos.eleven.provider.LocalizedStore.SortParameter;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.provider.MusicCatalog;
+import org.lineageos.eleven.provider.MusicRepository;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
-import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SortOrder;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -43,11 +44,6 @@ import java.util.List;
  */
 public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
 
-    /**
-     * The result
-     */
-    protected final ArrayList<Song> mSongList = Lists.newArrayList();
-
     /**
      * Additional selection filter
      */
@@ -72,53 +68,40 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
 
     @Override
     public List<Song> loadInBackground() {
-        // Create the Cursor
-        Cursor cursor = getCursor();
-
-        // Gather the data
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                // Copy the song Id
-                final long id = cursor.getLong(0);
-
-                // Copy the song name
-                final String songName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the album id
-                final long albumId = cursor.getLong(3);
-
-                // Copy the album name
-                final String album = cursor.getString(4);
-
-                // Copy the duration
-                final long duration = cursor.getLong(5);
-
-                // Convert the duration into seconds
-                final int durationInSecs = (int) duration / 1000;
-
-                // Copy the Year
-                final int year = cursor.getInt(6);
+        final String query = getRepositoryQuery();
+        if (query == null) {
+            return loadSongs();
+        }
 
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId,
-                        durationInSecs, year);
+        final String sortOrder = PreferenceUtils.getInstance(mContext).getSongSortOrder();
+        return MusicRepository.getInstance(mContext).get(query, sortOrder,
+                MediaStoreChanges.SONGS, this::loadSongs);
+    }
 
-                if (cursor instanceof SortedCursor) {
-                    song.mBucketLabel = (String) ((SortedCursor) cursor).getExtraData();
-                }
+    private List<Song> loadSongs() {
+        // Create the Cursor
+        Cursor cursor = getCursor();
 
-                mSongList.add(song);
-            } while (cursor.moveToNext());
+        if (cursor == null) {
+            return Collections.emptyList();
         }
+
+        // The cursor only provides the order, the songs are created from the catalog
+        // page by page as the list is scrolled
+        final List<Song> songs = MusicCatalog.getInstance(mContext).getSongList(cursor);
         // Close the cursor
-        if (cursor != null) {
-            cursor.close();
-        }
+        cursor.close();
 
-        return mSongList;
+        return songs;
+    }
+
+    /**
+     * Identifies the songs in the {@link MusicRepository} - can be overriden
+     *
+     * @return the query of the songs, or null if the songs shouldn't be cached
+     */
+    protected String getRepositoryQuery() {
+        return "songs?" + mSelection;
     }
 
     /**
@@ -161,7 +144,8 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
     }
 
     /**
-     * Creates the {@link Cursor} used to run the query.
+     * Creates the {@link Cursor} used to run the query. The cursor only holds the ids of the
+     * songs in the requested order, the song details are looked up in the {@link MusicCatalog}.
      *
      * @param context   The {@link Context} to use.
      * @param selection Additional selection statement to use
@@ -183,18 +167,6 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
                 new String[]{
                         /* 0 */
                         Audio.Media._ID,
-                        /* 1 */
-                        Audio.Media.TITLE,
-                        /* 2 */
-                        Audio.Media.ARTIST,
-                        /* 3 */
-                        Audio.Media.ALBUM_ID,
-                        /* 4 */
-                        Audio.Media.ALBUM,
-                        /* 5 */
-                        Audio.Media.DURATION,
-                        /* 6 */
-                        Audio.Media.YEAR,
                 }, selectionStatement, null, songSortOrder);
 
         // if our sort is a localized-based sort, grab localized data from the store
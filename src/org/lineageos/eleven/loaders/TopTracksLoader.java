@@ -47,6 +47,12 @@ public class TopTracksLoader extends SongLoader {
         mQueryType = type;
     }
 
+    @Override
+    protected String getRepositoryQuery() {
+        // the play counts and recents aren't observed, so these lists can't be cached
+        return null;
+    }
+
     @Override
     protected Cursor getCursor() {
         SortedCursor retCursor = null;
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.menu;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.Button;
+import android.widget.EditText;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.DialogFragment;
+
+import org.lineageos.eleven.R;
+import org.lineageos.eleven.provider.SmartPlaylistRule;
+import org.lineageos.eleven.provider.SmartPlaylistRule.Field;
+import org.lineageos.eleven.provider.SmartPlaylistRule.Operator;
+import org.lineageos.eleven.provider.SmartPlaylistStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dialog that creates a smart playlist from rules, every filled in field is a rule the songs of
+ * the playlist have to match
+ */
+public class CreateSmartPlaylist extends DialogFragment implements TextWatcher {
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    /* The dialog save button */
+    private Button mSaveButton;
+
+    private EditText mName;
+    private EditText mGenre;
+    private EditText mYearFrom;
+    private EditText mYearTo;
+    private EditText mMinMinutes;
+    private EditText mMaxMinutes;
+    private EditText mAddedDays;
+    private EditText mMinPlays;
+    private EditText mPlayedDays;
+    private EditText mNotPlayedDays;
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(@Nullable final Bundle savedInstanceState) {
+        final View view = requireActivity().getLayoutInflater()
+                .inflate(R.layout.dialog_smart_playlist, null);
+        mName = view.findViewById(R.id.smart_playlist_name);
+        mGenre = view.findViewById(R.id.smart_playlist_genre);
+        mYearFrom = view.findViewById(R.id.smart_playlist_year_from);
+        mYearTo = view.findViewById(R.id.smart_playlist_year_to);
+        mMinMinutes = view.findViewById(R.id.smart_playlist_min_minutes);
+        mMaxMinutes = view.findViewById(R.id.smart_playlist_max_minutes);
+        mAddedDays = view.findViewById(R.id.smart_playlist_added_days);
+        mMinPlays = view.findViewById(R.id.smart_playlist_min_plays);
+        mPlayedDays = view.findViewById(R.id.smart_playlist_played_days);
+        mNotPlayedDays = view.findViewById(R.id.smart_playlist_not_played_days);
+
+        final AlertDialog dialog = new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.new_smart_playlist)
+                .setView(view)
+                .setPositiveButton(R.string.save, (d, which) -> onSaveClick())
+                .setNegativeButton(R.string.cancel, (d, which) -> d.dismiss())
+                .create();
+        dialog.setOnShowListener(d -> {
+            mSaveButton = dialog.getButton(Dialog.BUTTON_POSITIVE);
+            afterTextChanged(null);
+        });
+
+        for (final EditText field : new EditText[]{mName, mGenre, mYearFrom, mYearTo,
+                mMinMinutes, mMaxMinutes, mAddedDays, mMinPlays, mPlayedDays, mNotPlayedDays}) {
+            field.addTextChangedListener(this);
+        }
+        return dialog;
+    }
+
+    private void onSaveClick() {
+        final List<SmartPlaylistRule> rules = makeRules();
+        final String name = mName.getText().toString().trim();
+        if (rules.isEmpty() || name.isEmpty()) {
+            return;
+        }
+
+        // the playlist is stored and evaluated in the background
+        SmartPlaylistStore.getInstance(requireContext()).create(name, rules);
+    }
+
+    /**
+     * @return a rule for each field that is filled in
+     */
+    private List<SmartPlaylistRule> makeRules() {
+        final List<SmartPlaylistRule> rules = new ArrayList<>();
+        final String genre = mGenre.getText().toString().trim();
+        if (!genre.isEmpty()) {
+            rules.add(new SmartPlaylistRule(Field.GENRE, Operator.IS, genre));
+        }
+        addRule(rules, Field.YEAR, Operator.AT_LEAST, mYearFrom, 1);
+        addRule(rules, Field.YEAR, Operator.AT_MOST, mYearTo, 1);
+        addRule(rules, Field.DURATION, Operator.AT_LEAST, mMinMinutes, SECONDS_PER_MINUTE);
+        addRule(rules, Field.DURATION, Operator.AT_MOST, mMaxMinutes, SECONDS_PER_MINUTE);
+        addRule(rules, Field.DATE_ADDED, Operator.AT_MOST, mAddedDays, 1);
+        addRule(rules, Field.PLAY_COUNT, Operator.AT_LEAST, mMinPlays, 1);
+        addRule(rules, Field.LAST_PLAYED, Operator.AT_MOST, mPlayedDays, 1);
+        addRule(rules, Field.LAST_PLAYED, Operator.AT_LEAST, mNotPlayedDays, 1);
+        return rules;
+    }
+
+    private static void addRule(final List<SmartPlaylistRule> rules, final Field field,
+                                final Operator operator, final EditText text,
+                                final int multiplier) {
+        final String value = text.getText().toString().trim();
+        if (TextUtils.isEmpty(value)) {
+            return;
+        }
+        try {
+            rules.add(new SmartPlaylistRule(field, operator,
+                    Long.toString(Long.parseLong(value) * multiplier)));
+        } catch (NumberFormatException e) {
+            // too large for a rule, ignore the field
+        }
+    }
+
+    @Override
+    public void afterTextChanged(final Editable editable) {
+        if (mSaveButton != null) {
+            mSaveButton.setEnabled(mName.getText().toString().trim().length() > 0
+                    && !makeRules().isEmpty());
+        }
+    }
+
+    @Override
+    public void beforeTextChanged(final CharSequence s, final int start, final int count,
+                                  final int after) {
+        /* Nothing to do */
+    }
+
+    @Override
+    public void onTextChanged(final CharSequence s, final int start, final int before,
+                              final int count) {
+        /* Nothing to do */
+    }
+}
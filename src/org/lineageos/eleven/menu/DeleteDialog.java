@@ -26,6 +26,7 @@ import androidx.fragment.app.DialogFragment;
 
 import org.lineageos.eleven.Config;
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ArtworkKey;
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -95,7 +96,7 @@ public class DeleteDialog extends DialogFragment {
                 .setMessage(R.string.cannot_be_undone)
                 .setPositiveButton(delete, (dialog, which) -> {
                     // Remove the items from the image cache
-                    mFetcher.removeFromCache(key);
+                    mFetcher.removeFromCache(ArtworkKey.of(key));
                     // Delete the selected item(s)
                     MusicUtils.deleteTracks(getActivity(), mItemList);
                     if (getActivity() instanceof DeleteDialogCallback) {
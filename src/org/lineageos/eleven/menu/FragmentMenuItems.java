@@ -34,6 +34,7 @@ public interface FragmentMenuItems {
     int REMOVE_FROM_PLAYLIST = 70; // remove track from playlist
     int REMOVE_FROM_RECENT = 80; // remove track from recently played list
     int RENAME_PLAYLIST = 90; // change name of playlist
+    int EXPORT_PLAYLIST = 95; // write playlist to a file
     int MORE_BY_ARTIST = 100; // jump to artist detail page
     int USE_AS_RINGTONE = 110; // set track as ringtone
     int DELETE = 120; // delete track from device
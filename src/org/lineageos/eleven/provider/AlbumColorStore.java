@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+import androidx.palette.graphics.Palette;
+
+import org.lineageos.eleven.cache.ArtworkKey;
+import org.lineageos.eleven.cache.BitmapPool;
+import org.lineageos.eleven.cache.TinyLfuCache;
+import org.lineageos.eleven.utils.colors.BitmapWithColors.BitmapColors;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This db keeps the palette colors of album artwork, so {@link Palette} only runs once per
+ * artwork instead of every time the player, the notification or the status bar need a color.
+ * The colors are stored by the identity of the artwork, e.g. the disk cache name of its key,
+ * so every size and decode of the same artwork shares one row.  The row is removed when the
+ * artwork is replaced or reset, and the colors are extracted again when a song of the album
+ * was modified since, as the artwork MediaStore has for it may have changed.  Rows of albums
+ * that no longer exist are pruned once per process.  The palette is computed from a
+ * downsampled copy of the artwork, and new colors are written in batches.
+ */
+public class AlbumColorStore {
+    private static final String TAG = AlbumColorStore.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* The artwork is scaled down to this before the palette is generated */
+    private static final int SAMPLE_SIZE = 64;
+
+    /* About the number of albums in a queue */
+    private static final int MEMORY_CACHE_SIZE = 256;
+
+    private static final int MSG_WRITE = 1;
+    private static final int MSG_REMOVE = 2;
+    private static final int MSG_PRUNE = 3;
+    /* New colors are written together this long after the first of them */
+    private static final long WRITE_DELAY = 1000;
+    /* Rows of deleted albums are pruned once the app has settled after starting */
+    private static final long PRUNE_DELAY = 30 * 1000;
+
+    /* Prefix of the ids of artwork that is only found by its album id */
+    private static final String MEDIA_STORE_PREFIX = "albumart/";
+
+    private static AlbumColorStore sInstance = null;
+
+    private final Context mContext;
+    private final MusicDB mMusicDatabase;
+    private final Handler mHandler;
+
+    /* The rows that were read or extracted lately, by artwork */
+    private final TinyLfuCache<String, Row> mRows = new TinyLfuCache<>(MEMORY_CACHE_SIZE);
+
+    /* The rows that still have to be written, by artwork.  Guarded by this. */
+    private HashMap<String, Row> mPendingWrites = new HashMap<>();
+
+    /**
+     * The colors of an artwork, the album and its modification date they were extracted for,
+     * and the last bitmap of the artwork they were returned for
+     */
+    private static final class Row {
+        final BitmapColors mColors;
+        final long mAlbumId;
+        final long mDateModified;
+        /* Another process may replace the artwork and the album may change, the stored
+         * colors are only checked again for a different bitmap */
+        final WeakReference<Bitmap> mVerified;
+
+        Row(final BitmapColors colors, final long albumId, final long dateModified,
+            final Bitmap verified) {
+            mColors = colors;
+            mAlbumId = albumId;
+            mDateModified = dateModified;
+            mVerified = new WeakReference<>(verified);
+        }
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized AlbumColorStore getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new AlbumColorStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor of <code>AlbumColorStore</code>
+     *
+     * @param context The {@link Context} to use
+     */
+    private AlbumColorStore(final Context context) {
+        mContext = context;
+        mMusicDatabase = MusicDB.getInstance(context);
+
+        final HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(@NonNull final Message msg) {
+                if (msg.what == MSG_WRITE) {
+                    writePending();
+                } else if (msg.what == MSG_REMOVE) {
+                    mMusicDatabase.getWritableDatabase().delete(AlbumColorColumns.NAME,
+                            AlbumColorColumns.ID + "=?", new String[]{(String) msg.obj});
+                } else if (msg.what == MSG_PRUNE) {
+                    prune();
+                }
+            }
+        };
+        mHandler.sendEmptyMessageDelayed(MSG_PRUNE, PRUNE_DELAY);
+    }
+
+    public void onCreate(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + AlbumColorColumns.NAME + " (" +
+                AlbumColorColumns.ID + " TEXT NOT NULL PRIMARY KEY," +
+                AlbumColorColumns.ALBUM_ID + " LONG NOT NULL," +
+                AlbumColorColumns.DATE_MODIFIED + " LONG NOT NULL," +
+                AlbumColorColumns.VIBRANT + " INT NOT NULL," +
+                AlbumColorColumns.VIBRANT_DARK + " INT NOT NULL," +
+                AlbumColorColumns.VIBRANT_LIGHT + " INT NOT NULL," +
+                AlbumColorColumns.DOMINANT + " INT NOT NULL);");
+    }
+
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion) {
+        // this table was created in version 7
+        if (oldVersion < 7) {
+            onCreate(db);
+        }
+    }
+
+    public void onDowngrade(final SQLiteDatabase db) {
+        // If we ever have downgrade, drop the table to be safe
+        db.execSQL("DROP TABLE IF EXISTS " + AlbumColorColumns.NAME);
+        onCreate(db);
+    }
+
+    /**
+     * @param key     the key the artwork is cached under, or null if there is none
+     * @param albumId the id of the album, used if there is no key
+     * @return the id the colors of the artwork are stored under.  Artwork with a key is
+     * identified by it, as the caches hold the artwork the user picked under it as well as
+     * the one of MediaStore.  Otherwise it can only be the artwork MediaStore has for the
+     * album.
+     */
+    public static String getArtworkId(final ArtworkKey key, final long albumId) {
+        return key != null ? key.getDiskName() : MEDIA_STORE_PREFIX + albumId;
+    }
+
+    /**
+     * Returns the colors of an artwork.  Stored colors are used until the artwork is removed
+     * or a song of the album is modified, otherwise they are extracted and stored.
+     *
+     * @param artworkId identifies the artwork regardless of its size or how it was decoded,
+     *                  see {@link #getArtworkId}
+     * @param albumId   the id of the album of the artwork
+     * @param artwork   the artwork as it is shown, a software or hardware bitmap
+     * @return the colors of the artwork
+     */
+    @WorkerThread
+    public BitmapColors getColors(final String artworkId, final long albumId,
+                                  final Bitmap artwork) {
+        final Row row = mRows.get(artworkId);
+        if (row != null && row.mVerified.get() == artwork) {
+            return row.mColors;
+        }
+
+        final long dateModified = MusicCatalog.getInstance(mContext).getSnapshot()
+                .getAlbumDateModified(albumId);
+        BitmapColors colors = null;
+        final Row pending;
+        synchronized (this) {
+            pending = mPendingWrites.get(artworkId);
+        }
+        if (pending != null && pending.mDateModified == dateModified) {
+            colors = pending.mColors;
+        }
+        if (colors == null) {
+            colors = read(artworkId, dateModified);
+        }
+        final boolean extracted = colors == null;
+        if (extracted) {
+            colors = extract(artwork);
+            if (colors == null) {
+                return row != null ? row.mColors : new BitmapColors(Color.TRANSPARENT,
+                        Color.TRANSPARENT, Color.TRANSPARENT, Color.TRANSPARENT);
+            }
+            if (DEBUG) {
+                Log.d(TAG, "Extracted the colors of " + artworkId);
+            }
+        }
+
+        final Row current = new Row(colors, albumId, dateModified, artwork);
+        if (extracted) {
+            enqueueWrite(artworkId, current);
+        }
+        mRows.put(artworkId, current);
+        return colors;
+    }
+
+    /**
+     * Forgets the colors of an artwork that was replaced or removed
+     *
+     * @param key the key the artwork is cached under
+     */
+    public void remove(final ArtworkKey key) {
+        final String artworkId = key.getDiskName();
+        mRows.remove(artworkId);
+        synchronized (this) {
+            mPendingWrites.remove(artworkId);
+        }
+        mHandler.obtainMessage(MSG_REMOVE, artworkId).sendToTarget();
+    }
+
+    /**
+     * @return the colors of the artwork or null if it couldn't be read
+     */
+    private static BitmapColors extract(final Bitmap artwork) {
+        final Bitmap sample = createSample(artwork);
+        if (sample == null) {
+            return null;
+        }
+        // the sample is small already, the palette doesn't need to scale it again
+        final Palette palette = Palette.from(sample)
+                .resizeBitmapArea(SAMPLE_SIZE * SAMPLE_SIZE)
+                .generate();
+        BitmapPool.getInstance().put(sample);
+        return new BitmapColors(palette);
+    }
+
+    private static Bitmap createSample(final Bitmap artwork) {
+        Bitmap input = artwork;
+        if (input.getConfig() == Bitmap.Config.HARDWARE) {
+            input = input.copy(Bitmap.Config.ARGB_8888, true);
+            if (input == null) {
+                return null;
+            }
+        }
+        final Bitmap sample = Bitmap.createScaledBitmap(input, SAMPLE_SIZE, SAMPLE_SIZE, true);
+        if (input != artwork && input != sample) {
+            BitmapPool.getInstance().put(input);
+        }
+        // don't hand the artwork itself out to be pooled
+        return sample != artwork ? sample : artwork.copy(Bitmap.Config.ARGB_8888, true);
+    }
+
+    /**
+     * @return the stored colors of the artwork or null if there are none or they were
+     * extracted before the album was modified
+     */
+    private BitmapColors read(final String artworkId, final long dateModified) {
+        try (Cursor c = mMusicDatabase.getReadableDatabase().query(AlbumColorColumns.NAME,
+                new String[]{
+                        /* 0 */
+                        AlbumColorColumns.VIBRANT,
+                        /* 1 */
+                        AlbumColorColumns.VIBRANT_DARK,
+                        /* 2 */
+                        AlbumColorColumns.VIBRANT_LIGHT,
+                        /* 3 */
+                        AlbumColorColumns.DOMINANT,
+                }, AlbumColorColumns.ID + "=? AND " + AlbumColorColumns.DATE_MODIFIED + "=?",
+                new String[]{artworkId, String.valueOf(dateModified)},
+                null, null, null)) {
+            if (c.moveToFirst()) {
+                return new BitmapColors(c.getInt(0), c.getInt(1), c.getInt(2), c.getInt(3));
+            }
+        }
+        return null;
+    }
+
+    private synchronized void enqueueWrite(final String artworkId, final Row row) {
+        mPendingWrites.put(artworkId, row);
+        if (!mHandler.hasMessages(MSG_WRITE)) {
+            mHandler.sendEmptyMessageDelayed(MSG_WRITE, WRITE_DELAY);
+        }
+    }
+
+    private void writePending() {
+        final HashMap<String, Row> rows;
+        synchronized (this) {
+            rows = mPendingWrites;
+            mPendingWrites = new HashMap<>();
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            final ContentValues values = new ContentValues(7);
+            for (final Map.Entry<String, Row> row : rows.entrySet()) {
+                final BitmapColors colors = row.getValue().mColors;
+                values.put(AlbumColorColumns.ID, row.getKey());
+                values.put(AlbumColorColumns.ALBUM_ID, row.getValue().mAlbumId);
+                values.put(AlbumColorColumns.DATE_MODIFIED, row.getValue().mDateModified);
+                values.put(AlbumColorColumns.VIBRANT, colors.mVibrantColor);
+                values.put(AlbumColorColumns.VIBRANT_DARK, colors.mVibrantDarkColor);
+                values.put(AlbumColorColumns.VIBRANT_LIGHT, colors.mVibrantLightColor);
+                values.put(AlbumColorColumns.DOMINANT, colors.mDominantColor);
+                database.replace(AlbumColorColumns.NAME, null, values);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Stored the colors of " + rows.size() + " artworks");
+        }
+    }
+
+    /**
+     * Deletes the colors of the albums that are no longer part of the catalog
+     */
+    private void prune() {
+        final MusicCatalog.Snapshot snapshot = MusicCatalog.getInstance(mContext).getSnapshot();
+        if (snapshot.getSongCount() == 0) {
+            // MediaStore may not be readable, don't take that for every album being deleted
+            return;
+        }
+
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        final ArrayList<String> deleted = new ArrayList<>();
+        try (Cursor c = database.query(true, AlbumColorColumns.NAME,
+                new String[]{AlbumColorColumns.ALBUM_ID}, null, null, null, null, null, null)) {
+            while (c.moveToNext()) {
+                final long albumId = c.getLong(0);
+                if (albumId >= 0 && snapshot.indexOfAlbum(albumId) < 0) {
+                    deleted.add(String.valueOf(albumId));
+                }
+            }
+        }
+        if (deleted.isEmpty()) {
+            return;
+        }
+
+        database.beginTransaction();
+        try {
+            for (final String albumId : deleted) {
+                database.delete(AlbumColorColumns.NAME, AlbumColorColumns.ALBUM_ID + "=?",
+                        new String[]{albumId});
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        // rows in memory are checked against the database for every new bitmap anyway
+        if (DEBUG) {
+            Log.d(TAG, "Pruned the colors of " + deleted.size() + " deleted albums");
+        }
+    }
+
+    public interface AlbumColorColumns {
+        /* Table name */
+        String NAME = "album_colors";
+
+        /* Artwork ID column, see getColors */
+        String ID = "artwork";
+
+        /* The album of the artwork */
+        String ALBUM_ID = "album_id";
+
+        /* The latest modification date of the songs of the album, seconds since the epoch */
+        String DATE_MODIFIED = "date_modified";
+
+        /* The palette colors, transparent if the artwork has no such swatch */
+        String VIBRANT = "vibrant";
+        String VIBRANT_DARK = "vibrant_dark";
+        String VIBRANT_LIGHT = "vibrant_light";
+        String DOMINANT = "dominant";
+    }
+}
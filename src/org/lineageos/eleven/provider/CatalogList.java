@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.utils.ListDiffer;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read only list over rows of a {@link MusicCatalog.Snapshot}.  Only the row order and the
+ * bucket labels are held for every item, the model objects are created a page at a time when
+ * the list is accessed and only the most recently used pages are kept around.  This lets a
+ * RecyclerView show a library of any size while only the visible rows are materialized.
+ *
+ * @param <T> the type of item in the list
+ */
+public abstract class CatalogList<T> extends AbstractList<T>
+        implements RandomAccess, ListDiffer.KeyedList {
+    /* Number of items created at once */
+    private static final int PAGE_SIZE = 64;
+
+    /* Number of pages kept in memory, enough for a few screens on either side */
+    private static final int MAX_PAGES = 8;
+
+    protected final MusicCatalog.Snapshot mSnapshot;
+    private final int[] mRows;
+    private final String[] mBucketLabels;
+    private int mSize;
+
+    private final Object[][] mPages;
+    private final int[] mResidentPages = new int[MAX_PAGES];
+    private int mNextEviction;
+
+    /**
+     * @param snapshot     the snapshot the rows belong to
+     * @param rows         the snapshot rows in list order
+     * @param bucketLabels the bucket label of each row or null
+     */
+    protected CatalogList(final MusicCatalog.Snapshot snapshot, final int[] rows,
+                          final String[] bucketLabels) {
+        mSnapshot = snapshot;
+        mRows = rows;
+        mBucketLabels = bucketLabels;
+        mSize = rows.length;
+        mPages = new Object[(rows.length + PAGE_SIZE - 1) / PAGE_SIZE][];
+        for (int i = 0; i < MAX_PAGES; i++) {
+            mResidentPages[i] = -1;
+        }
+    }
+
+    /**
+     * Creates a list over the same rows that doesn't share the created items
+     *
+     * @param other the list to copy
+     */
+    protected CatalogList(final CatalogList<T> other) {
+        this(other.mSnapshot, other.mRows, other.mBucketLabels);
+    }
+
+    /**
+     * @return a list over the same rows, clearing either list doesn't affect the other
+     */
+    public abstract CatalogList<T> copy();
+
+    /**
+     * Creates the item for a snapshot row
+     *
+     * @param row         the snapshot row
+     * @param bucketLabel the bucket label of the item or null
+     */
+    protected abstract T createItem(int row, String bucketLabel);
+
+    /**
+     * @return the id of the item at the position without creating the item
+     */
+    @Override
+    public abstract long getId(int position);
+
+    /**
+     * @return the hash code of the item at the position without creating the item
+     */
+    @Override
+    public abstract int getContentHash(int position);
+
+    /**
+     * @return the bucket labels of the items in list order, or null if the list has none
+     */
+    public String[] getBucketLabels() {
+        return mBucketLabels;
+    }
+
+    /**
+     * @return the ids of all items without creating them
+     */
+    public long[] getIds() {
+        final long[] ids = new long[mSize];
+        for (int i = 0; i < mSize; i++) {
+            ids[i] = getId(i);
+        }
+        return ids;
+    }
+
+    protected int getRow(final int position) {
+        return mRows[position];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized T get(final int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + mSize);
+        }
+
+        final int page = position / PAGE_SIZE;
+        Object[] items = mPages[page];
+        if (items == null) {
+            items = loadPage(page);
+        }
+        return (T) items[position % PAGE_SIZE];
+    }
+
+    /**
+     * Drops every item, the adapters clear their list when they are unloaded
+     */
+    @Override
+    public synchronized void clear() {
+        mSize = 0;
+        for (int i = 0; i < MAX_PAGES; i++) {
+            if (mResidentPages[i] >= 0) {
+                mPages[mResidentPages[i]] = null;
+                mResidentPages[i] = -1;
+            }
+        }
+    }
+
+    private Object[] loadPage(final int page) {
+        final int start = page * PAGE_SIZE;
+        final Object[] items = new Object[Math.min(PAGE_SIZE, mRows.length - start)];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = createItem(mRows[start + i],
+                    mBucketLabels == null ? null : mBucketLabels[start + i]);
+        }
+
+        // evict the page that was loaded the longest time ago
+        if (mResidentPages[mNextEviction] >= 0) {
+            mPages[mResidentPages[mNextEviction]] = null;
+        }
+        mResidentPages[mNextEviction] = page;
+        mNextEviction = (mNextEviction + 1) % MAX_PAGES;
+
+        mPages[page] = items;
+        return items;
+    }
+
+    static final class SongList extends CatalogList<Song> {
+        SongList(final MusicCatalog.Snapshot snapshot, final int[] rows,
+                 final String[] bucketLabels) {
+            super(snapshot, rows, bucketLabels);
+        }
+
+        private SongList(final SongList other) {
+            super(other);
+        }
+
+        @Override
+        public SongList copy() {
+            return new SongList(this);
+        }
+
+        @Override
+        protected Song createItem(final int row, final String bucketLabel) {
+            final Song song = mSnapshot.createSong(row);
+            song.mBucketLabel = bucketLabel;
+            return song;
+        }
+
+        @Override
+        public long getId(final int position) {
+            return mSnapshot.getSongId(getRow(position));
+        }
+
+        @Override
+        public int getContentHash(final int position) {
+            return mSnapshot.getSongContentHash(getRow(position));
+        }
+    }
+
+    static final class AlbumList extends CatalogList<Album> {
+        AlbumList(final MusicCatalog.Snapshot snapshot, final int[] rows) {
+            super(snapshot, rows, null);
+        }
+
+        private AlbumList(final AlbumList other) {
+            super(other);
+        }
+
+        @Override
+        public AlbumList copy() {
+            return new AlbumList(this);
+        }
+
+        @Override
+        protected Album createItem(final int row, final String bucketLabel) {
+            return mSnapshot.createAlbum(row);
+        }
+
+        @Override
+        public long getId(final int position) {
+            return mSnapshot.getAlbumId(getRow(position));
+        }
+
+        @Override
+        public int getContentHash(final int position) {
+            return mSnapshot.getAlbumContentHash(getRow(position));
+        }
+    }
+
+    static final class ArtistList extends CatalogList<Artist> {
+        ArtistList(final MusicCatalog.Snapshot snapshot, final int[] rows,
+                   final String[] bucketLabels) {
+            super(snapshot, rows, bucketLabels);
+        }
+
+        private ArtistList(final ArtistList other) {
+            super(other);
+        }
+
+        @Override
+        public ArtistList copy() {
+            return new ArtistList(this);
+        }
+
+        @Override
+        protected Artist createItem(final int row, final String bucketLabel) {
+            final Artist artist = mSnapshot.createArtist(row);
+            artist.mBucketLabel = bucketLabel;
+            return artist;
+        }
+
+        @Override
+        public long getId(final int position) {
+            return mSnapshot.getArtistId(getRow(position));
+        }
+
+        @Override
+        public int getContentHash(final int position) {
+            return mSnapshot.getArtistContentHash(getRow(position));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.util.LruCache;
+
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.utils.ListDiffer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Mutable list of songs that only stores song ids.  Songs are created from a
+ * {@link MusicCatalog.Snapshot} when they are accessed and a small cache keeps the songs that
+ * were used last, so a queue of any size only materializes the rows that are on screen.  The
+ * list supports the removes and moves done while editing the queue.
+ */
+public class CatalogSongList extends AbstractList<Song>
+        implements RandomAccess, ListDiffer.KeyedList {
+    /* Enough songs for a few screens of the queue */
+    private static final int CACHE_SIZE = 256;
+
+    private final MusicCatalog.Snapshot mSnapshot;
+    private final LruCache<Long, Song> mSongs = new LruCache<>(CACHE_SIZE);
+    private long[] mIds;
+    private int mSize;
+
+    /**
+     * @param snapshot a snapshot that contains all the ids
+     * @param ids      the song ids in list order
+     * @param size     the number of ids to use
+     */
+    public CatalogSongList(final MusicCatalog.Snapshot snapshot, final long[] ids,
+                           final int size) {
+        mSnapshot = snapshot;
+        mIds = Arrays.copyOf(ids, size);
+        mSize = size;
+    }
+
+    /**
+     * @return the id of the song at the position without creating the song
+     */
+    @Override
+    public long getId(final int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + mSize);
+        }
+        return mIds[position];
+    }
+
+    /**
+     * @return the hash code of the song at the position without creating the song
+     */
+    @Override
+    public int getContentHash(final int position) {
+        final long id = getId(position);
+        final Song song = mSongs.get(id);
+        if (song != null) {
+            return song.hashCode();
+        }
+        final int row = mSnapshot.indexOfSong(id);
+        return row >= 0 ? mSnapshot.getSongContentHash(row) : Long.hashCode(id);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public Song get(final int position) {
+        final long id = getId(position);
+        Song song = mSongs.get(id);
+        if (song == null) {
+            final int row = mSnapshot.indexOfSong(id);
+            song = row >= 0 ? mSnapshot.createSong(row)
+                    : new Song(id, null, null, null, -1, 0, 0);
+            mSongs.put(id, song);
+        }
+        return song;
+    }
+
+    @Override
+    public void add(final int position, final Song song) {
+        if (position < 0 || position > mSize) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + mSize);
+        }
+
+        if (mSize == mIds.length) {
+            mIds = Arrays.copyOf(mIds, Math.max(16, mSize * 2));
+        }
+        System.arraycopy(mIds, position, mIds, position + 1, mSize - position);
+        mIds[position] = song.mSongId;
+        mSongs.put(song.mSongId, song);
+        mSize++;
+        modCount++;
+    }
+
+    @Override
+    public Song remove(final int position) {
+        final Song song = get(position);
+        System.arraycopy(mIds, position + 1, mIds, position, mSize - position - 1);
+        mSize--;
+        modCount++;
+        return song;
+    }
+
+    @Override
+    public void clear() {
+        mSize = 0;
+        mSongs.evictAll();
+        modCount++;
+    }
+}
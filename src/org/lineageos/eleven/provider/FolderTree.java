@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.provider.MediaStore.MediaColumns;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import org.lineageos.eleven.utils.MusicUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The folders that contain the music of the library.  The folders are kept in a prefix tree of
+ * path segments where chains of folders without songs of their own are merged into one node,
+ * so the top level is the first folder that actually branches.  The songs are numbered in the
+ * order of a depth first walk of the tree, so the songs below any folder are a range of one id
+ * array and can be played without asking MediaStore again.
+ */
+public class FolderTree {
+    private static final String TAG = FolderTree.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    private static final char SEPARATOR = '/';
+
+    /* Folder names sort ignoring case, names that only differ in case still get an order */
+    private static final Comparator<String> NAME_ORDER =
+            String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    private static FolderTree sInstance = null;
+
+    private final Context mContext;
+    private final MusicCatalog mCatalog;
+
+    /* The catalog version the tree was built for */
+    private int mVersion = -1;
+    private Tree mTree;
+
+    /**
+     * A folder of the tree
+     */
+    public static final class Folder {
+        /* The name shown for the folder, it spans several path segments for merged folders */
+        public final String mName;
+        /* The absolute path of the folder */
+        public final String mPath;
+        /* The first path segment of the name, the children are sorted by it */
+        final String mKey;
+        final Folder[] mChildren;
+        /* The songs of the folder itself are [mStart, mOwnEnd), all its songs [mStart, mEnd) */
+        final int mStart;
+        final int mOwnEnd;
+        final int mEnd;
+
+        private Folder(final String name, final String path, final Folder[] children,
+                       final int start, final int ownEnd, final int end) {
+            mName = name;
+            mPath = path;
+            final int separator = name.indexOf(SEPARATOR);
+            mKey = separator < 0 ? name : name.substring(0, separator);
+            mChildren = children;
+            mStart = start;
+            mOwnEnd = ownEnd;
+            mEnd = end;
+        }
+
+        /**
+         * @return the sub folders, sorted by name
+         */
+        public List<Folder> getFolders() {
+            return Collections.unmodifiableList(Arrays.asList(mChildren));
+        }
+
+        /**
+         * @return the number of songs in the folder and all its sub folders
+         */
+        public int getSongCount() {
+            return mEnd - mStart;
+        }
+
+        /**
+         * @return the number of songs directly in the folder
+         */
+        public int getOwnSongCount() {
+            return mOwnEnd - mStart;
+        }
+    }
+
+    /**
+     * An immutable folder tree of the whole library
+     */
+    public static final class Tree {
+        private final Folder mRoot;
+        /* The song ids in depth first order of the folders, sorted by file name in a folder */
+        private final long[] mSongIds;
+
+        private Tree(final Folder root, final long[] songIds) {
+            mRoot = root;
+            mSongIds = songIds;
+        }
+
+        /**
+         * @return the top folder, the deepest folder that contains every song
+         */
+        public Folder getRoot() {
+            return mRoot;
+        }
+
+        /**
+         * Finds a folder by walking down the path, one binary search per level
+         *
+         * @param path the {@link Folder#mPath} of a folder
+         * @return the folder or null if the library has no music below the path anymore
+         */
+        public Folder find(final String path) {
+            if (path == null || path.equals(mRoot.mPath)) {
+                return mRoot;
+            }
+            if (!path.startsWith(mRoot.mPath + SEPARATOR)) {
+                return null;
+            }
+
+            Folder folder = mRoot;
+            int offset = mRoot.mPath.length() + 1;
+            while (offset < path.length()) {
+                int end = path.indexOf(SEPARATOR, offset);
+                if (end < 0) {
+                    end = path.length();
+                }
+                final Folder child = findChild(folder, path.substring(offset, end));
+                if (child == null || !path.startsWith(child.mName, offset)) {
+                    return null;
+                }
+
+                // a merged child has to cover whole segments of the path
+                final int childEnd = offset + child.mName.length();
+                if (childEnd < path.length() && path.charAt(childEnd) != SEPARATOR) {
+                    return null;
+                }
+                folder = child;
+                offset = childEnd + 1;
+            }
+            return folder;
+        }
+
+        private static Folder findChild(final Folder folder, final String key) {
+            int low = 0;
+            int high = folder.mChildren.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int cmp = NAME_ORDER.compare(folder.mChildren[mid].mKey, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return folder.mChildren[mid];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the ids of the songs in the folder and all its sub folders, in folder order
+         */
+        public long[] getSongIds(final Folder folder) {
+            return Arrays.copyOfRange(mSongIds, folder.mStart, folder.mEnd);
+        }
+
+        /**
+         * @return the ids of the songs directly in the folder, sorted by file name
+         */
+        public long[] getOwnSongIds(final Folder folder) {
+            return Arrays.copyOfRange(mSongIds, folder.mStart, folder.mOwnEnd);
+        }
+    }
+
+    /**
+     * A folder while the tree is built
+     */
+    private static final class Node {
+        final String mName;
+        final HashMap<String, Node> mChildren = new HashMap<>();
+        final ArrayList<String> mFileNames = new ArrayList<>();
+        long[] mIds = new long[4];
+
+        Node(final String name) {
+            mName = name;
+        }
+
+        Node getChild(final String name) {
+            Node child = mChildren.get(name);
+            if (child == null) {
+                child = new Node(name);
+                mChildren.put(name, child);
+            }
+            return child;
+        }
+
+        void addSong(final long id, final String fileName) {
+            final int count = mFileNames.size();
+            if (count == mIds.length) {
+                mIds = Arrays.copyOf(mIds, count * 2);
+            }
+            mIds[count] = id;
+            mFileNames.add(fileName);
+        }
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized FolderTree getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new FolderTree(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor of <code>FolderTree</code>
+     *
+     * @param context The {@link Context} to use
+     */
+    private FolderTree(final Context context) {
+        mContext = context;
+        mCatalog = MusicCatalog.getInstance(context);
+    }
+
+    /**
+     * @return the folder tree of the library, rebuilt if the catalog changed since it was built
+     */
+    @WorkerThread
+    public synchronized Tree getTree() {
+        final int version = mCatalog.getSnapshot().mVersion;
+        if (mTree == null || version != mVersion) {
+            final long start = SystemClock.elapsedRealtime();
+            mTree = build();
+            mVersion = version;
+            if (DEBUG) {
+                Log.d(TAG, "Built folder tree of " + mTree.mSongIds.length + " songs in "
+                        + (SystemClock.elapsedRealtime() - start) + "ms");
+            }
+        }
+        return mTree;
+    }
+
+    /**
+     * Reads the paths of all the music in a single pass and freezes them into a {@link Tree}
+     */
+    private Tree build() {
+        final boolean hasRelativePath = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+        final String[] projection = hasRelativePath
+                ? new String[]{
+                /* 0 */
+                BaseColumns._ID,
+                /* 1 */
+                MediaColumns.DATA,
+                /* 2 */
+                MediaColumns.DISPLAY_NAME,
+                /* 3 */
+                MediaColumns.RELATIVE_PATH
+        } : new String[]{
+                /* 0 */
+                BaseColumns._ID,
+                /* 1 */
+                MediaColumns.DATA,
+                /* 2 */
+                MediaColumns.DISPLAY_NAME
+        };
+
+        final Node root = new Node("");
+        int songCount = 0;
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, projection,
+                MusicUtils.MUSIC_ONLY_SELECTION, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                // songs of one folder are usually next to each other
+                String lastFolder = null;
+                Node lastNode = null;
+                do {
+                    String folder;
+                    String fileName;
+                    final String data = cursor.getString(1);
+                    if (!TextUtils.isEmpty(data) && data.lastIndexOf(SEPARATOR) >= 0) {
+                        final int separator = data.lastIndexOf(SEPARATOR);
+                        folder = data.substring(0, separator);
+                        fileName = data.substring(separator + 1);
+                    } else if (hasRelativePath && !TextUtils.isEmpty(cursor.getString(3))) {
+                        folder = cursor.getString(3);
+                        fileName = cursor.getString(2);
+                    } else {
+                        continue;
+                    }
+                    if (fileName == null) {
+                        fileName = "";
+                    }
+
+                    if (!folder.equals(lastFolder)) {
+                        lastFolder = folder;
+                        lastNode = root;
+                        for (final String segment : TextUtils.split(folder, "/")) {
+                            if (!segment.isEmpty()) {
+                                lastNode = lastNode.getChild(segment);
+                            }
+                        }
+                    }
+                    lastNode.addSong(cursor.getLong(0), fileName);
+                    songCount++;
+                } while (cursor.moveToNext());
+            }
+        }
+
+        final long[] songIds = new long[songCount];
+        return new Tree(freeze(root, "", "", songIds, new int[1]), songIds);
+    }
+
+    /**
+     * Merges the chain of folders without songs below a node and numbers its songs
+     *
+     * @param node     the node to freeze
+     * @param name     the name of the node or the merged chain so far
+     * @param path     the path of the node
+     * @param songIds  the song ids of the tree
+     * @param position the next free position of the song ids, advanced by the songs added
+     * @return the folder
+     */
+    private static Folder freeze(Node node, String name, String path, final long[] songIds,
+                                 final int[] position) {
+        while (node.mFileNames.isEmpty() && node.mChildren.size() == 1) {
+            node = node.mChildren.values().iterator().next();
+            name = name.isEmpty() ? node.mName : name + SEPARATOR + node.mName;
+            path = path + SEPARATOR + node.mName;
+        }
+
+        final int start = position[0];
+        final ArrayList<String> fileNames = node.mFileNames;
+        final Integer[] order = new Integer[fileNames.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> NAME_ORDER.compare(fileNames.get(a), fileNames.get(b)));
+        for (final Integer song : order) {
+            songIds[position[0]++] = node.mIds[song];
+        }
+        final int ownEnd = position[0];
+
+        final ArrayList<Node> children = new ArrayList<>(node.mChildren.values());
+        children.sort((a, b) -> NAME_ORDER.compare(a.mName, b.mName));
+        final Folder[] folders = new Folder[children.size()];
+        for (int i = 0; i < folders.length; i++) {
+            final Node child = children.get(i);
+            folders[i] = freeze(child, child.mName, path + SEPARATOR + child.mName, songIds,
+                    position);
+        }
+        return new Folder(name, path, folders, start, ownEnd, position[0]);
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.provider.MediaStore.Audio.Genres;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import org.lineageos.eleven.utils.MusicUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Process wide index of the genres of every song, so that showing the genre of a song is a
+ * memory read instead of a MediaStore query per song.
+ * <p>
+ * The index is built in the background with a single pass over the songs on R and later, where
+ * each song has a genre column, and with one query of the members per genre before.  Changes of
+ * a single genre only reload that genre, new songs on R and later are read incrementally, and
+ * any other change rebuilds the index.  Lookups keep using the previous index meanwhile.
+ */
+public class GenreIndex {
+    private static final String TAG = GenreIndex.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* Segment of the MediaStore uris that is followed by the genre id */
+    private static final String GENRES = "genres";
+
+    /* Aggregate closely spaced MediaStore changes into a single refresh */
+    private static final long REFRESH_DELAY = 500;
+
+    private static final int MSG_REFRESH = 1;
+
+    private static GenreIndex sInstance = null;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* The genre names and members the index is built from, only used on the handler thread */
+    private final LongSparseArray<String> mNames = new LongSparseArray<>();
+    private final LongSparseArray<long[]> mMembers = new LongSparseArray<>();
+    private long mLastSongId;
+
+    /* The pending changes, guarded by this */
+    private boolean mRebuild = true;
+    private boolean mNewSongs;
+    private final LongSparseArray<Boolean> mChangedGenres = new LongSparseArray<>();
+
+    /* The current index, null until it was built */
+    private volatile Index mIndex;
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized GenreIndex getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new GenreIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor of <code>GenreIndex</code>, starts building the index
+     *
+     * @param context The {@link Context} to use
+     */
+    private GenreIndex(final Context context) {
+        mContext = context;
+
+        final HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(@NonNull final Message msg) {
+                if (msg.what == MSG_REFRESH) {
+                    refresh();
+                }
+            }
+        };
+        mHandler.sendEmptyMessage(MSG_REFRESH);
+
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(final boolean selfChange, final Uri uri) {
+                // only called directly before R, which doesn't report the kind of change
+                onChange(selfChange, uri, 0);
+            }
+
+            @Override
+            public void onChange(final boolean selfChange, final Uri uri, final int flags) {
+                onMediaStoreChange(uri, MediaStoreChanges.classify(uri, flags));
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, observer);
+        context.getContentResolver().registerContentObserver(
+                Genres.EXTERNAL_CONTENT_URI, true, observer);
+    }
+
+    /**
+     * Returns the genre of a song.  Until the index is built the genre is queried from
+     * MediaStore, so this should be called from a background thread.
+     *
+     * @param audioId the id of the song
+     * @return the name of the first genre of the song or null if it has none
+     */
+    public String getGenreName(final long audioId) {
+        final Index index = mIndex;
+        return index != null ? index.getGenreName(audioId) : queryGenreName(audioId);
+    }
+
+    /**
+     * Looks up the genre of a song for display
+     *
+     * @param audioId  the id of the song
+     * @param callback called on the main thread with the name of the first genre of the song or
+     *                 null, right away if the index is built
+     */
+    public void getGenreName(final long audioId, final Consumer<String> callback) {
+        final Index index = mIndex;
+        if (index != null) {
+            callback.accept(index.getGenreName(audioId));
+            return;
+        }
+
+        // the first refresh is queued before, so the index is built when this runs
+        mHandler.post(() -> {
+            final String name = getGenreName(audioId);
+            mMainHandler.post(() -> callback.accept(name));
+        });
+    }
+
+    /**
+     * @param genreName the name of the genre, ignoring case
+     * @return the sorted ids of the songs of all genres with that name
+     */
+    @WorkerThread
+    public long[] getSongIds(final String genreName) {
+        Index index = mIndex;
+        if (index == null) {
+            synchronized (this) {
+                // wait for the first build
+                while ((index = mIndex) == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return new long[0];
+                    }
+                }
+            }
+        }
+        return index.getSongIds(genreName);
+    }
+
+    private void onMediaStoreChange(final Uri uri, final int changes) {
+        if ((changes & (MediaStoreChanges.SONGS | MediaStoreChanges.GENRES)) == 0) {
+            return;
+        }
+
+        synchronized (this) {
+            final long genreId = getGenreId(uri);
+            if (changes == MediaStoreChanges.GENRES && genreId >= 0) {
+                mChangedGenres.put(genreId, Boolean.TRUE);
+            } else if (changes == (MediaStoreChanges.ALL & ~MediaStoreChanges.PLAYLISTS)
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                // new songs carry their genre
+                mNewSongs = true;
+            } else {
+                mRebuild = true;
+            }
+        }
+        mHandler.removeMessages(MSG_REFRESH);
+        mHandler.sendEmptyMessageDelayed(MSG_REFRESH, REFRESH_DELAY);
+    }
+
+    private void refresh() {
+        final boolean rebuild;
+        final boolean newSongs;
+        final long[] changedGenres;
+        synchronized (this) {
+            rebuild = mRebuild;
+            newSongs = mNewSongs;
+            changedGenres = new long[mChangedGenres.size()];
+            for (int i = 0; i < changedGenres.length; i++) {
+                changedGenres[i] = mChangedGenres.keyAt(i);
+            }
+            mRebuild = false;
+            mNewSongs = false;
+            mChangedGenres.clear();
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        if (rebuild) {
+            mNames.clear();
+            mMembers.clear();
+            mLastSongId = 0;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                readSongs(null);
+            } else {
+                readGenres(null);
+            }
+        } else {
+            if (newSongs) {
+                readSongs(mLastSongId);
+            }
+            for (final long genreId : changedGenres) {
+                readGenres(genreId);
+            }
+        }
+
+        final Index index = new Index(mNames, mMembers);
+        synchronized (this) {
+            mIndex = index;
+            notifyAll();
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, (rebuild ? "Built" : "Updated") + " index of " + index.mAudioIds.length
+                    + " songs in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    /**
+     * Reads the genres from the genre column of the songs, only available on R and later
+     *
+     * @param afterId only read the songs with a larger id, or null to read all of them
+     */
+    private void readSongs(final Long afterId) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return;
+        }
+
+        try (Cursor c = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, new String[]{
+                        /* 0 */
+                        BaseColumns._ID,
+                        /* 1 */
+                        AudioColumns.GENRE_ID,
+                        /* 2 */
+                        AudioColumns.GENRE,
+                }, afterId != null ? BaseColumns._ID + ">?" : null,
+                afterId != null ? new String[]{afterId.toString()} : null, null)) {
+            if (c == null) {
+                return;
+            }
+
+            // count the new members of each genre first, so each genre grows once
+            final LongSparseArray<int[]> counts = new LongSparseArray<>();
+            while (c.moveToNext()) {
+                mLastSongId = Math.max(mLastSongId, c.getLong(0));
+                if (c.isNull(1) || MusicUtils.isBlank(c.getString(2))) {
+                    continue;
+                }
+                final long genreId = c.getLong(1);
+                int[] count = counts.get(genreId);
+                if (count == null) {
+                    count = new int[1];
+                    counts.put(genreId, count);
+                    mNames.put(genreId, c.getString(2));
+                }
+                count[0]++;
+            }
+
+            for (int i = 0; i < counts.size(); i++) {
+                final long[] members = mMembers.get(counts.keyAt(i), new long[0]);
+                final long[] grown = Arrays.copyOf(members, members.length + counts.valueAt(i)[0]);
+                counts.valueAt(i)[0] = members.length;
+                mMembers.put(counts.keyAt(i), grown);
+            }
+
+            c.moveToPosition(-1);
+            while (c.moveToNext()) {
+                if (c.isNull(1) || MusicUtils.isBlank(c.getString(2))) {
+                    continue;
+                }
+                final long genreId = c.getLong(1);
+                mMembers.get(genreId)[counts.get(genreId)[0]++] = c.getLong(0);
+            }
+        }
+    }
+
+    /**
+     * Reads the names and members of the genres
+     *
+     * @param genreId the genre to read, or null to read all of them
+     */
+    private void readGenres(final Long genreId) {
+        if (genreId != null) {
+            mNames.remove(genreId);
+            mMembers.remove(genreId);
+        }
+
+        try (Cursor genres = mContext.getContentResolver().query(Genres.EXTERNAL_CONTENT_URI,
+                new String[]{
+                        /* 0 */
+                        BaseColumns._ID,
+                        /* 1 */
+                        Genres.NAME,
+                }, genreId != null ? BaseColumns._ID + "=?" : null,
+                genreId != null ? new String[]{genreId.toString()} : null, null)) {
+            while (genres != null && genres.moveToNext()) {
+                if (MusicUtils.isBlank(genres.getString(1))) {
+                    continue;
+                }
+                try (Cursor c = mContext.getContentResolver().query(
+                        Genres.Members.getContentUri("external", genres.getLong(0)),
+                        new String[]{Genres.Members.AUDIO_ID}, null, null, null)) {
+                    if (c == null || c.getCount() == 0) {
+                        continue;
+                    }
+                    final long[] members = new long[c.getCount()];
+                    for (int i = 0; c.moveToNext(); i++) {
+                        members[i] = c.getLong(0);
+                    }
+                    mNames.put(genres.getLong(0), genres.getString(1));
+                    mMembers.put(genres.getLong(0), members);
+                }
+            }
+        }
+    }
+
+    private String queryGenreName(final long audioId) {
+        try (Cursor c = mContext.getContentResolver().query(
+                Genres.getContentUriForAudioId("external", (int) audioId),
+                new String[]{Genres.NAME}, null, null, null)) {
+            if (c != null && c.moveToFirst()) {
+                return c.getString(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the genre id of a uri of a single genre or its members, -1 otherwise
+     */
+    private static long getGenreId(final Uri uri) {
+        // content://media/<volume>/audio/genres/<id>/members/...
+        final List<String> segments = uri.getPathSegments();
+        final int genres = segments.indexOf(GENRES);
+        if (genres >= 0 && genres + 1 < segments.size()) {
+            try {
+                return Long.parseLong(segments.get(genres + 1));
+            } catch (NumberFormatException e) {
+                // not a single genre
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Immutable mapping of the song ids to their genres
+     */
+    private static final class Index {
+        /* Bits of a membership that hold the genre, the song id takes the rest */
+        private static final int GENRE_BITS = 20;
+
+        /* The genres, in the order of their ids */
+        final String[] mGenreNames;
+        final long[][] mGenreMembers;
+
+        /* The sorted song ids, the genres of song i are mGenres[mOffsets[i]..mOffsets[i + 1]] */
+        final long[] mAudioIds;
+        final int[] mOffsets;
+        final int[] mGenres;
+
+        Index(final LongSparseArray<String> names, final LongSparseArray<long[]> members) {
+            final int genreCount = names.size();
+            mGenreNames = new String[genreCount];
+            mGenreMembers = new long[genreCount][];
+
+            // sort all memberships by song and genre at once, the genre takes the low bits
+            int total = 0;
+            for (int i = 0; i < genreCount; i++) {
+                mGenreNames[i] = names.valueAt(i);
+                mGenreMembers[i] = members.get(names.keyAt(i), new long[0]).clone();
+                Arrays.sort(mGenreMembers[i]);
+                total += mGenreMembers[i].length;
+            }
+            final long[] pairs = new long[total];
+            int count = 0;
+            for (int i = 0; i < genreCount; i++) {
+                for (final long audioId : mGenreMembers[i]) {
+                    pairs[count++] = (audioId << GENRE_BITS) | i;
+                }
+            }
+            Arrays.sort(pairs);
+
+            final long[] audioIds = new long[total];
+            final int[] offsets = new int[total + 1];
+            mGenres = new int[total];
+            int songs = 0;
+            for (int i = 0; i < total; i++) {
+                final long audioId = pairs[i] >>> GENRE_BITS;
+                if (songs == 0 || audioIds[songs - 1] != audioId) {
+                    audioIds[songs] = audioId;
+                    offsets[songs++] = i;
+                }
+                mGenres[i] = (int) (pairs[i] & ((1 << GENRE_BITS) - 1));
+            }
+            offsets[songs] = total;
+            mAudioIds = Arrays.copyOf(audioIds, songs);
+            mOffsets = Arrays.copyOf(offsets, songs + 1);
+        }
+
+        String getGenreName(final long audioId) {
+            final int song = Arrays.binarySearch(mAudioIds, audioId);
+            return song >= 0 ? mGenreNames[mGenres[mOffsets[song]]] : null;
+        }
+
+        long[] getSongIds(final String genreName) {
+            long[] ids = null;
+            for (int i = 0; i < mGenreNames.length; i++) {
+                if (mGenreNames[i].equalsIgnoreCase(genreName)) {
+                    if (ids == null) {
+                        ids = mGenreMembers[i];
+                    } else {
+                        final long[] merged = Arrays.copyOf(ids,
+                                ids.length + mGenreMembers[i].length);
+                        System.arraycopy(mGenreMembers[i], 0, merged, ids.length,
+                                mGenreMembers[i].length);
+                        Arrays.sort(merged);
+                        ids = merged;
+                    }
+                }
+            }
+            return ids != null ? ids.clone() : new long[0];
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import java.util.List;
+
+/**
+ * Classifies the uris reported for MediaStore changes into the kinds of lists they affect, so
+ * that a change only refreshes the lists that show the changed data.  Changes are collected
+ * until {@link #getAndReset()} is called, which lets closely spaced notifications be reported
+ * at once.
+ */
+public class MediaStoreChanges {
+    /**
+     * Song lists, including the smart playlists
+     */
+    public static final int SONGS = 1;
+
+    /**
+     * Album lists and album details
+     */
+    public static final int ALBUMS = 1 << 1;
+
+    /**
+     * Artist lists and artist details
+     */
+    public static final int ARTISTS = 1 << 2;
+
+    /**
+     * The user playlists and their members
+     */
+    public static final int PLAYLISTS = 1 << 3;
+
+    /**
+     * Genres
+     */
+    public static final int GENRES = 1 << 4;
+
+    /**
+     * Used when the change can't be classified
+     */
+    public static final int ALL = SONGS | ALBUMS | ARTISTS | PLAYLISTS | GENRES;
+
+    /* Path segment that precedes the table in the MediaStore audio uris */
+    private static final String AUDIO = "audio";
+
+    private int mChanges;
+
+    /**
+     * Records a change
+     *
+     * @param uri   the uri that changed
+     * @param flags the {@link ContentResolver} notify flags or 0 if they are unknown
+     */
+    public void add(final Uri uri, final int flags) {
+        mChanges |= classify(uri, flags);
+    }
+
+    /**
+     * @return the changes recorded since the last call
+     */
+    public int getAndReset() {
+        final int changes = mChanges;
+        mChanges = 0;
+        return changes;
+    }
+
+    /**
+     * @param uri   the uri that changed
+     * @param flags the {@link ContentResolver} notify flags or 0 if they are unknown
+     * @return the kinds of lists affected by the change
+     */
+    public static int classify(final Uri uri, final int flags) {
+        if (uri == null || !MediaStore.AUTHORITY.equals(uri.getAuthority())) {
+            return ALL;
+        }
+
+        // content://media/<volume>/audio/<table>/...
+        final List<String> segments = uri.getPathSegments();
+        final int audio = segments.indexOf(AUDIO);
+        if (audio < 0 || audio + 1 >= segments.size()) {
+            return ALL;
+        }
+
+        switch (segments.get(audio + 1)) {
+            case "media":
+                if ((flags & ContentResolver.NOTIFY_INSERT) != 0) {
+                    // a new song isn't part of any playlist yet
+                    return SONGS | ALBUMS | ARTISTS | GENRES;
+                }
+                // updated and deleted songs can show up anywhere
+                return ALL;
+            case "playlists":
+                return PLAYLISTS;
+            case "albums":
+                return ALBUMS;
+            case "artists":
+                // albums show the name of their artist
+                return ARTISTS | ALBUMS;
+            case "genres":
+                return GENRES;
+            default:
+                return ALL;
+        }
+    }
+}
@@ -0,0 +1,1451 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AlbumColumns;
+import android.provider.MediaStore.Audio.ArtistColumns;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import org.lineageos.eleven.loaders.SortedCursor;
+import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.utils.MusicUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Process wide copy of the music library. Songs, albums and artists are kept in columnar
+ * primitive arrays sorted by id, with all names stored once in a shared string pool. The
+ * catalog is built with a single MediaStore query and afterwards only the rows that changed
+ * are fetched again when MediaStore notifies us.
+ * <p>
+ * Readers always see an immutable {@link Snapshot}, so lookups never block on a sync.
+ */
+public class MusicCatalog {
+    private static final String TAG = MusicCatalog.class.getSimpleName();
+    private static final boolean DEBUG = false;
+    private static MusicCatalog sInstance = null;
+
+    private static final int MSG_SYNC = 0;
+    private static final int MSG_SAVE = 1;
+
+    // name of the file the last snapshot is persisted to
+    private static final String SNAPSHOT_FILE_NAME = "catalog.bin";
+
+    // milliseconds to delay before persisting a snapshot to aggregate successive changes
+    private static final long SAVE_DELAY = 2000;
+
+    // milliseconds to delay before syncing to aggregate MediaStore events
+    private static final long SYNC_DELAY = 500;
+
+    // maximum number of bound ids per query, below SQLITE_MAX_VARIABLE_NUMBER
+    public static final int QUERY_CHUNK_SIZE = 500;
+
+    private static final String[] SONG_PROJECTION = new String[]{
+            /* 0 */
+            AudioColumns._ID,
+            /* 1 */
+            AudioColumns.TITLE,
+            /* 2 */
+            AudioColumns.ARTIST,
+            /* 3 */
+            AudioColumns.ARTIST_ID,
+            /* 4 */
+            AudioColumns.ALBUM,
+            /* 5 */
+            AudioColumns.ALBUM_ID,
+            /* 6 */
+            AudioColumns.DURATION,
+            /* 7 */
+            AudioColumns.YEAR,
+            /* 8 */
+            AudioColumns.TRACK,
+            /* 9 */
+            AudioColumns.DATE_ADDED,
+            /* 10 */
+            AudioColumns.DATE_MODIFIED,
+    };
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final File mSnapshotFile;
+
+    /* Guards building the first snapshot and merging changes into it */
+    private final Object mSyncLock = new Object();
+
+    /* Only touched while holding mSyncLock */
+    private final StringPool mStringPool = new StringPool();
+
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * Immutable view of the catalog. Arrays are indexed by row and rows are sorted by id.
+     */
+    public static final class Snapshot {
+        public final int mVersion;
+
+        final String[] mStrings;
+
+        // songs
+        final long[] mSongIds;
+        final int[] mSongTitles;
+        final int[] mSongArtists;
+        final int[] mSongAlbums;
+        final long[] mSongArtistIds;
+        final long[] mSongAlbumIds;
+        final int[] mSongDurations;
+        final int[] mSongYears;
+        final int[] mSongTracks;
+        final long[] mSongDatesAdded;
+        final long[] mSongDatesModified;
+
+        // albums
+        final long[] mAlbumIds;
+        final int[] mAlbumNames;
+        final int[] mAlbumArtists;
+        final int[] mAlbumSongCounts;
+        final int[] mAlbumYears;
+
+        // artists
+        final long[] mArtistIds;
+        final int[] mArtistNames;
+        final int[] mArtistAlbumCounts;
+        final int[] mArtistSongCounts;
+
+        /* The latest modification date of the songs of each album row, made when first asked */
+        private volatile long[] mAlbumDatesModified;
+
+        private Snapshot(final int version, final String[] strings, final SongTable songs,
+                         final AlbumTable albums, final ArtistTable artists) {
+            mVersion = version;
+            mStrings = strings;
+
+            mSongIds = songs.ids;
+            mSongTitles = songs.titles;
+            mSongArtists = songs.artists;
+            mSongAlbums = songs.albums;
+            mSongArtistIds = songs.artistIds;
+            mSongAlbumIds = songs.albumIds;
+            mSongDurations = songs.durations;
+            mSongYears = songs.years;
+            mSongTracks = songs.tracks;
+            mSongDatesAdded = songs.datesAdded;
+            mSongDatesModified = songs.datesModified;
+
+            mAlbumIds = albums.ids;
+            mAlbumNames = albums.names;
+            mAlbumArtists = albums.artists;
+            mAlbumSongCounts = albums.songCounts;
+            mAlbumYears = albums.years;
+
+            mArtistIds = artists.ids;
+            mArtistNames = artists.names;
+            mArtistAlbumCounts = artists.albumCounts;
+            mArtistSongCounts = artists.songCounts;
+        }
+
+        /**
+         * Creates a snapshot with other songs that shares the albums and artists of the given one
+         */
+        private Snapshot(final Snapshot groups, final String[] strings, final SongTable songs) {
+            mVersion = groups.mVersion;
+            mStrings = strings;
+
+            mSongIds = songs.ids;
+            mSongTitles = songs.titles;
+            mSongArtists = songs.artists;
+            mSongAlbums = songs.albums;
+            mSongArtistIds = songs.artistIds;
+            mSongAlbumIds = songs.albumIds;
+            mSongDurations = songs.durations;
+            mSongYears = songs.years;
+            mSongTracks = songs.tracks;
+            mSongDatesAdded = songs.datesAdded;
+            mSongDatesModified = songs.datesModified;
+
+            mAlbumIds = groups.mAlbumIds;
+            mAlbumNames = groups.mAlbumNames;
+            mAlbumArtists = groups.mAlbumArtists;
+            mAlbumSongCounts = groups.mAlbumSongCounts;
+            mAlbumYears = groups.mAlbumYears;
+
+            mArtistIds = groups.mArtistIds;
+            mArtistNames = groups.mArtistNames;
+            mArtistAlbumCounts = groups.mArtistAlbumCounts;
+            mArtistSongCounts = groups.mArtistSongCounts;
+        }
+
+        public int getSongCount() {
+            return mSongIds.length;
+        }
+
+        /**
+         * @return the row of the song or a negative value if it isn't part of the catalog
+         */
+        public int indexOfSong(final long id) {
+            return Arrays.binarySearch(mSongIds, id);
+        }
+
+        public long getSongId(final int row) {
+            return mSongIds[row];
+        }
+
+        public String getSongTitle(final int row) {
+            return mStrings[mSongTitles[row]];
+        }
+
+        public String getSongArtist(final int row) {
+            return mStrings[mSongArtists[row]];
+        }
+
+        public String getSongAlbum(final int row) {
+            return mStrings[mSongAlbums[row]];
+        }
+
+        public long getSongArtistId(final int row) {
+            return mSongArtistIds[row];
+        }
+
+        public long getSongAlbumId(final int row) {
+            return mSongAlbumIds[row];
+        }
+
+        /**
+         * @return the duration of the song in seconds
+         */
+        public int getSongDuration(final int row) {
+            return mSongDurations[row];
+        }
+
+        public int getSongYear(final int row) {
+            return mSongYears[row];
+        }
+
+        public int getSongTrack(final int row) {
+            return mSongTracks[row];
+        }
+
+        /**
+         * @return the time the song was added in seconds since the epoch
+         */
+        public long getSongDateAdded(final int row) {
+            return mSongDatesAdded[row];
+        }
+
+        public Song createSong(final int row) {
+            return new Song(mSongIds[row], mStrings[mSongTitles[row]],
+                    mStrings[mSongArtists[row]], mStrings[mSongAlbums[row]],
+                    mSongAlbumIds[row], mSongDurations[row], mSongYears[row]);
+        }
+
+        /**
+         * @return the {@link Song#hashCode()} of the song without creating it
+         */
+        public int getSongContentHash(final int row) {
+            int hash = hash(1, mSongIds[row]);
+            hash = hash(hash, mStrings[mSongTitles[row]]);
+            hash = hash(hash, mStrings[mSongArtists[row]]);
+            hash = hash(hash, mStrings[mSongAlbums[row]]);
+            hash = hash(hash, mSongAlbumIds[row]);
+            hash = hash(hash, mSongDurations[row]);
+            return hash(hash, mSongYears[row]);
+        }
+
+        public int indexOfAlbum(final long id) {
+            return Arrays.binarySearch(mAlbumIds, id);
+        }
+
+        public long getAlbumId(final int row) {
+            return mAlbumIds[row];
+        }
+
+        public String getAlbumName(final int row) {
+            return mStrings[mAlbumNames[row]];
+        }
+
+        /**
+         * @return the time the last of the songs of the album was modified in seconds since
+         * the epoch, or 0 if the album isn't part of the catalog
+         */
+        public long getAlbumDateModified(final long id) {
+            final int row = indexOfAlbum(id);
+            if (row < 0) {
+                return 0;
+            }
+            long[] dates = mAlbumDatesModified;
+            if (dates == null) {
+                dates = new long[mAlbumIds.length];
+                for (int song = 0; song < mSongIds.length; song++) {
+                    final int album = indexOfAlbum(mSongAlbumIds[song]);
+                    if (album >= 0 && dates[album] < mSongDatesModified[song]) {
+                        dates[album] = mSongDatesModified[song];
+                    }
+                }
+                mAlbumDatesModified = dates;
+            }
+            return dates[row];
+        }
+
+        public Album createAlbum(final int row) {
+            return new Album(mAlbumIds[row], mStrings[mAlbumNames[row]],
+                    mStrings[mAlbumArtists[row]], mAlbumSongCounts[row],
+                    mStrings[mAlbumYears[row]]);
+        }
+
+        /**
+         * @return the {@link Album#hashCode()} of the album without creating it
+         */
+        public int getAlbumContentHash(final int row) {
+            int hash = hash(1, mAlbumIds[row]);
+            hash = hash(hash, mStrings[mAlbumNames[row]]);
+            hash = hash(hash, mStrings[mAlbumArtists[row]]);
+            hash = hash(hash, mAlbumSongCounts[row]);
+            return hash(hash, mStrings[mAlbumYears[row]]);
+        }
+
+        public int indexOfArtist(final long id) {
+            return Arrays.binarySearch(mArtistIds, id);
+        }
+
+        public long getArtistId(final int row) {
+            return mArtistIds[row];
+        }
+
+        public String getArtistName(final int row) {
+            return mStrings[mArtistNames[row]];
+        }
+
+        public Artist createArtist(final int row) {
+            return new Artist(mArtistIds[row], mStrings[mArtistNames[row]],
+                    mArtistSongCounts[row], mArtistAlbumCounts[row]);
+        }
+
+        /**
+         * @return the {@link Artist#hashCode()} of the artist without creating it
+         */
+        public int getArtistContentHash(final int row) {
+            int hash = hash(1, mArtistIds[row]);
+            hash = hash(hash, mStrings[mArtistNames[row]]);
+            hash = hash(hash, mArtistAlbumCounts[row]);
+            return hash(hash, mArtistSongCounts[row]);
+        }
+
+        /**
+         * Combines a field into a hash like Objects.hash() does for the model classes, without
+         * boxing it into an array.  The overloads hash every type like its boxed class.
+         */
+        private static int hash(final int hash, final long value) {
+            return 31 * hash + Long.hashCode(value);
+        }
+
+        private static int hash(final int hash, final int value) {
+            return 31 * hash + Integer.hashCode(value);
+        }
+
+        private static int hash(final int hash, final String value) {
+            return 31 * hash + (value == null ? 0 : value.hashCode());
+        }
+    }
+
+    /**
+     * @param context The {@link android.content.Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized MusicCatalog getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new MusicCatalog(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private MusicCatalog(final Context context) {
+        mContext = context;
+        mSnapshotFile = new File(context.getFilesDir(), SNAPSHOT_FILE_NAME);
+
+        final HandlerThread handlerThread = new HandlerThread("MusicCatalogWorker",
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        mHandler = new Handler(handlerThread.getLooper()) {
+            @Override
+            public void handleMessage(@NonNull Message msg) {
+                if (msg.what == MSG_SYNC && mSnapshot != null) {
+                    sync();
+                } else if (msg.what == MSG_SAVE) {
+                    SnapshotFile.write(mSnapshotFile, mSnapshot);
+                }
+            }
+        };
+
+        // the catalog is per process, so it listens to MediaStore on its own
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true,
+                new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        // aggregate closely spaced events into a single sync
+                        mHandler.removeMessages(MSG_SYNC);
+                        mHandler.sendEmptyMessageDelayed(MSG_SYNC, SYNC_DELAY);
+                    }
+                });
+    }
+
+    /**
+     * @return a counter that changes every time the catalog content changes, or -1 if the
+     * catalog hasn't been built yet
+     */
+    public int getVersion() {
+        final Snapshot snapshot = mSnapshot;
+        return snapshot == null ? -1 : snapshot.mVersion;
+    }
+
+    /**
+     * @return the current snapshot, building the catalog first if needed.  On a cold start the
+     * snapshot persisted by the previous process is returned right away and validated against
+     * MediaStore in the background.
+     */
+    @WorkerThread
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            synchronized (mSyncLock) {
+                if (mSnapshot == null) {
+                    SnapshotFile.deleteStaleTempFiles(mSnapshotFile);
+                    final Snapshot persisted = SnapshotFile.read(mSnapshotFile, mStringPool);
+                    if (persisted != null) {
+                        mSnapshot = persisted;
+                        mHandler.sendEmptyMessage(MSG_SYNC);
+                    } else {
+                        publish(build());
+                    }
+                }
+                snapshot = mSnapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Makes the snapshot visible to readers and schedules persisting it.  Must be called while
+     * holding mSyncLock.
+     */
+    private void publish(final Snapshot snapshot) {
+        if (snapshot == mSnapshot) {
+            return;
+        }
+
+        mSnapshot = snapshot;
+        mHandler.removeMessages(MSG_SAVE);
+        mHandler.sendEmptyMessageDelayed(MSG_SAVE, SAVE_DELAY);
+    }
+
+    /**
+     * @return the song or null if no music row exists for the id
+     */
+    @WorkerThread
+    public Song getSong(final long id) {
+        final List<Song> songs = getSongs(new long[]{id});
+        return songs.isEmpty() ? null : songs.get(0);
+    }
+
+    /**
+     * Creates the songs for the ids in the order given. Ids the catalog doesn't know about yet
+     * are fetched and merged before returning, ids that don't exist in MediaStore are skipped.
+     *
+     * @param ids the song ids
+     * @return the songs in the same order as the ids
+     */
+    @WorkerThread
+    public List<Song> getSongs(final long[] ids) {
+        return getSongs(ids, null);
+    }
+
+    /**
+     * Same as {@link #getSongs(long[])} but also assigns each song a bucket label
+     *
+     * @param ids          the song ids
+     * @param bucketLabels the bucket label of each id, or null
+     * @return the songs in the same order as the ids
+     */
+    @WorkerThread
+    public List<Song> getSongs(final long[] ids, final List<String> bucketLabels) {
+        final Snapshot snapshot = getSnapshot(ids);
+
+        final ArrayList<Song> songs = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            final int row = snapshot.indexOfSong(ids[i]);
+            if (row >= 0) {
+                final Song song = snapshot.createSong(row);
+                if (bucketLabels != null) {
+                    song.mBucketLabel = bucketLabels.get(i);
+                }
+                songs.add(song);
+            }
+        }
+        return songs;
+    }
+
+    /**
+     * Creates the songs for a cursor that provides the order of the ids. If the cursor is a
+     * {@link SortedCursor} its extra data is used as the bucket label of each song.
+     *
+     * @param cursor a cursor with the id in the first column, the cursor is not closed
+     * @return the songs in the order of the cursor
+     */
+    @WorkerThread
+    public List<Song> getSongs(final Cursor cursor) {
+        final Order order = new Order(cursor);
+        return getSongs(order.mIds, order.mBucketLabels == null
+                ? null : Arrays.asList(order.mBucketLabels));
+    }
+
+    /**
+     * Same as {@link #getSongs(Cursor)} but the songs are only created once they are accessed
+     *
+     * @param cursor a cursor with the id in the first column, the cursor is not closed
+     * @return a lazily populated list of the songs in the order of the cursor
+     */
+    @WorkerThread
+    public CatalogList<Song> getSongList(final Cursor cursor) {
+        final Order order = new Order(cursor);
+        final Snapshot snapshot = getSnapshot(order.mIds);
+
+        final int[] rows = new int[order.mIds.length];
+        final String[] bucketLabels = order.mBucketLabels == null ? null : new String[rows.length];
+        int count = 0;
+        for (int i = 0; i < order.mIds.length; i++) {
+            final int row = snapshot.indexOfSong(order.mIds[i]);
+            if (row >= 0) {
+                if (bucketLabels != null) {
+                    bucketLabels[count] = order.mBucketLabels[i];
+                }
+                rows[count++] = row;
+            }
+        }
+
+        return new CatalogList.SongList(snapshot, Arrays.copyOf(rows, count),
+                bucketLabels == null ? null : Arrays.copyOf(bucketLabels, count));
+    }
+
+    /**
+     * @param cursor a cursor with the album id in the first column, the cursor is not closed
+     * @return a lazily populated list of the albums in the order of the cursor, without the
+     * unknown album
+     */
+    @WorkerThread
+    public CatalogList<Album> getAlbumList(final Cursor cursor) {
+        final Order order = new Order(cursor);
+        final Snapshot snapshot = getGroupSnapshot(order.mIds, null);
+
+        final int[] rows = new int[order.mIds.length];
+        int count = 0;
+        for (long id : order.mIds) {
+            final int row = snapshot.indexOfAlbum(id);
+            // as per designer's request, don't show unknown albums
+            if (row >= 0 && !MediaStore.UNKNOWN_STRING.equals(snapshot.getAlbumName(row))) {
+                rows[count++] = row;
+            }
+        }
+
+        return new CatalogList.AlbumList(snapshot, Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * @param cursor a cursor with the artist id in the first column, the cursor is not closed
+     * @return a lazily populated list of the artists in the order of the cursor, without the
+     * unknown artist
+     */
+    @WorkerThread
+    public CatalogList<Artist> getArtistList(final Cursor cursor) {
+        final Order order = new Order(cursor);
+        final Snapshot snapshot = getGroupSnapshot(null, order.mIds);
+
+        final int[] rows = new int[order.mIds.length];
+        final String[] bucketLabels = order.mBucketLabels == null ? null : new String[rows.length];
+        int count = 0;
+        for (int i = 0; i < order.mIds.length; i++) {
+            final int row = snapshot.indexOfArtist(order.mIds[i]);
+            // as per designer's request, don't show unknown artist
+            if (row >= 0 && !MediaStore.UNKNOWN_STRING.equals(snapshot.getArtistName(row))) {
+                if (bucketLabels != null) {
+                    bucketLabels[count] = order.mBucketLabels[i];
+                }
+                rows[count++] = row;
+            }
+        }
+
+        return new CatalogList.ArtistList(snapshot, Arrays.copyOf(rows, count),
+                bucketLabels == null ? null : Arrays.copyOf(bucketLabels, count));
+    }
+
+    /**
+     * Makes sure every id is part of the snapshot, fetching the ones the catalog has not seen
+     * yet.  This covers the window between MediaStore adding a song and our observer firing.
+     *
+     * @param ids the song ids that need to be resolved
+     * @return a snapshot containing every id that exists in MediaStore
+     */
+    @WorkerThread
+    public Snapshot getSnapshot(final long[] ids) {
+        Snapshot snapshot = getSnapshot();
+
+        final long[] unknown = findUnknownSongs(snapshot, ids);
+        if (unknown != null) {
+            synchronized (mSyncLock) {
+                publish(merge(mSnapshot, unknown, null));
+                snapshot = mSnapshot;
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Same as {@link #getSnapshot(long[])} but for the queue, which may also hold tracks that
+     * aren't music, e.g. a ringtone opened from a file manager.  Those rows are fetched into a
+     * snapshot of their own that is only handed to the caller, so they never show up in the
+     * library.
+     *
+     * @param ids the queue
+     * @return a snapshot containing every id that exists in MediaStore, or null if MediaStore
+     * couldn't be queried and the ids the snapshot is missing might still exist
+     */
+    @WorkerThread
+    public Snapshot getQueueSnapshot(final long[] ids) {
+        final Snapshot snapshot = getSnapshot(ids);
+
+        final long[] unknown = findUnknownSongs(snapshot, ids);
+        if (unknown == null) {
+            return snapshot;
+        }
+
+        synchronized (mSyncLock) {
+            final SongTable fetched = fetch(unknown, false);
+            if (fetched == null) {
+                return null;
+            } else if (fetched.size == 0) {
+                return snapshot;
+            }
+            return new Snapshot(snapshot, mStringPool.toArray(),
+                    mergeSongs(snapshot, fetched, null));
+        }
+    }
+
+    /**
+     * @return the ids that aren't part of the snapshot, or null if it contains every id
+     */
+    private static long[] findUnknownSongs(final Snapshot snapshot, final long[] ids) {
+        long[] unknown = null;
+        int unknownCount = 0;
+        for (long id : ids) {
+            if (snapshot.indexOfSong(id) < 0) {
+                if (unknown == null) {
+                    unknown = new long[ids.length];
+                }
+                unknown[unknownCount++] = id;
+            }
+        }
+        return unknown == null ? null : Arrays.copyOf(unknown, unknownCount);
+    }
+
+    /**
+     * Same as {@link #getSnapshot(long[])} for album and artist ids.  The album and artist
+     * tables are small so they are reloaded as a whole when one of the ids is unknown.
+     *
+     * @param albumIds  the album ids that need to be resolved, or null
+     * @param artistIds the artist ids that need to be resolved, or null
+     * @return a snapshot containing every id that exists in MediaStore
+     */
+    @WorkerThread
+    private Snapshot getGroupSnapshot(final long[] albumIds, final long[] artistIds) {
+        final Snapshot snapshot = getSnapshot();
+        if (containsGroups(snapshot, albumIds, artistIds)) {
+            return snapshot;
+        }
+
+        synchronized (mSyncLock) {
+            // another thread may have reloaded the tables while we were waiting
+            if (!containsGroups(mSnapshot, albumIds, artistIds)) {
+                publish(reloadGroups(mSnapshot));
+            }
+            return mSnapshot;
+        }
+    }
+
+    private static boolean containsGroups(final Snapshot snapshot, final long[] albumIds,
+                                          final long[] artistIds) {
+        if (albumIds != null) {
+            for (long id : albumIds) {
+                if (snapshot.indexOfAlbum(id) < 0) {
+                    return false;
+                }
+            }
+        }
+        if (artistIds != null) {
+            for (long id : artistIds) {
+                if (snapshot.indexOfArtist(id) < 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a snapshot with the songs of the given one and freshly loaded albums and artists
+     */
+    private Snapshot reloadGroups(final Snapshot snapshot) {
+        final SongTable songs = new SongTable(snapshot.getSongCount());
+        for (int row = 0; row < snapshot.getSongCount(); row++) {
+            songs.copy(snapshot, row);
+        }
+        return new Snapshot(snapshot.mVersion + 1, mStringPool.toArray(), songs.trim(),
+                loadAlbums(), loadArtists());
+    }
+
+    /**
+     * Compares the id and modification date of every music row with the snapshot and only
+     * fetches the rows that were added or changed.
+     */
+    @WorkerThread
+    private void sync() {
+        final long start = SystemClock.elapsedRealtime();
+
+        final Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{AudioColumns._ID, AudioColumns.DATE_MODIFIED},
+                MusicUtils.MUSIC_ONLY_SELECTION, null, AudioColumns._ID);
+        if (cursor == null) {
+            return;
+        }
+
+        synchronized (mSyncLock) {
+            final Snapshot snapshot = mSnapshot;
+            final long[] current = new long[cursor.getCount()];
+            final long[] changed = new long[cursor.getCount()];
+            int changedCount = 0;
+
+            try {
+                while (cursor.moveToNext()) {
+                    final long id = cursor.getLong(0);
+                    current[cursor.getPosition()] = id;
+
+                    final int row = snapshot.indexOfSong(id);
+                    if (row < 0 || snapshot.mSongDatesModified[row] != cursor.getLong(1)) {
+                        changed[changedCount++] = id;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            final boolean removed = current.length - changedCount
+                    != snapshot.mSongIds.length - countMissing(snapshot, changed, changedCount);
+            if (changedCount == 0 && !removed) {
+                return;
+            }
+
+            publish(merge(snapshot, Arrays.copyOf(changed, changedCount), current));
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Synced catalog in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    /**
+     * @return the number of ids in the list that aren't part of the snapshot
+     */
+    private static int countMissing(final Snapshot snapshot, final long[] ids, final int count) {
+        int missing = 0;
+        for (int i = 0; i < count; i++) {
+            if (snapshot.indexOfSong(ids[i]) < 0) {
+                missing++;
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Builds the whole catalog from scratch
+     */
+    private Snapshot build() {
+        final long start = SystemClock.elapsedRealtime();
+
+        final SongTable songs = new SongTable(0);
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, SONG_PROJECTION,
+                MusicUtils.MUSIC_ONLY_SELECTION, null, AudioColumns._ID)) {
+            if (cursor != null) {
+                songs.ensureCapacity(cursor.getCount());
+                while (cursor.moveToNext()) {
+                    songs.add(cursor, mStringPool);
+                }
+            }
+        }
+
+        final Snapshot snapshot = new Snapshot(0, mStringPool.toArray(), songs.trim(),
+                loadAlbums(), loadArtists());
+
+        if (DEBUG) {
+            Log.d(TAG, "Built catalog of " + snapshot.getSongCount() + " songs in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Fetches the given rows and merges them into the snapshot
+     *
+     * @param snapshot the current snapshot
+     * @param changed  ids of the rows to (re)fetch
+     * @param current  all ids currently in MediaStore sorted ascending, or null to keep every
+     *                 row of the snapshot that wasn't fetched again
+     * @return the new snapshot
+     */
+    private Snapshot merge(final Snapshot snapshot, final long[] changed, final long[] current) {
+        final SongTable fetched = fetch(changed, true);
+        if ((fetched == null || fetched.size == 0) && current == null) {
+            // nothing new was found
+            return snapshot;
+        }
+
+        return new Snapshot(snapshot.mVersion + 1, mStringPool.toArray(),
+                mergeSongs(snapshot, fetched != null ? fetched : new SongTable(0), current),
+                loadAlbums(), loadArtists());
+    }
+
+    /**
+     * Fetches the given rows in bounded chunks with bound parameters
+     *
+     * @param ids       the ids of the rows
+     * @param musicOnly whether to skip rows that aren't music, e.g. ringtones
+     * @return the rows that exist, or null if MediaStore couldn't be queried
+     */
+    private SongTable fetch(final long[] ids, final boolean musicOnly) {
+        final SongTable fetched = new SongTable(ids.length);
+        for (int offset = 0; offset < ids.length; offset += QUERY_CHUNK_SIZE) {
+            final int count = Math.min(QUERY_CHUNK_SIZE, ids.length - offset);
+            final String selection = makeInSelection(AudioColumns._ID, count);
+            try (Cursor cursor = mContext.getContentResolver().query(
+                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, SONG_PROJECTION,
+                    musicOnly ? MusicUtils.MUSIC_ONLY_SELECTION + " AND " + selection
+                            : selection,
+                    makeInArgs(ids, offset, count), AudioColumns._ID)) {
+                if (cursor == null) {
+                    return null;
+                }
+                while (cursor.moveToNext()) {
+                    fetched.add(cursor, mStringPool);
+                }
+            }
+        }
+        return fetched;
+    }
+
+    /**
+     * @return the songs of the snapshot with the fetched rows merged in, see
+     * {@link #merge(Snapshot, long[], long[])}
+     */
+    private static SongTable mergeSongs(final Snapshot snapshot, final SongTable fetched,
+                                        final long[] current) {
+        final long[] fetchedIds = Arrays.copyOf(fetched.ids, fetched.size);
+        final int[] order = fetched.sortOrder();
+
+        // walk the old rows and the fetched rows in id order
+        final SongTable merged = new SongTable(snapshot.getSongCount() + fetched.size);
+        int oldRow = 0;
+        int newRow = 0;
+        while (oldRow < snapshot.mSongIds.length || newRow < order.length) {
+            final long oldId = oldRow < snapshot.mSongIds.length
+                    ? snapshot.mSongIds[oldRow] : Long.MAX_VALUE;
+            final long newId = newRow < order.length
+                    ? fetched.ids[order[newRow]] : Long.MAX_VALUE;
+
+            if (newId <= oldId) {
+                merged.copy(fetched, order[newRow++]);
+                if (newId == oldId) {
+                    oldRow++;
+                }
+            } else {
+                if (current == null || (Arrays.binarySearch(current, oldId) >= 0
+                        && Arrays.binarySearch(fetchedIds, oldId) < 0)) {
+                    merged.copy(snapshot, oldRow);
+                }
+                oldRow++;
+            }
+        }
+        return merged.trim();
+    }
+
+    private AlbumTable loadAlbums() {
+        final AlbumTable albums = new AlbumTable();
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI,
+                new String[]{
+                        /* 0 */
+                        AlbumColumns.ALBUM_ID,
+                        /* 1 */
+                        AlbumColumns.ALBUM,
+                        /* 2 */
+                        AlbumColumns.ARTIST,
+                        /* 3 */
+                        AlbumColumns.NUMBER_OF_SONGS,
+                        /* 4 */
+                        AlbumColumns.FIRST_YEAR
+                }, null, null, AlbumColumns.ALBUM_ID)) {
+            if (cursor != null) {
+                albums.allocate(cursor.getCount());
+                while (cursor.moveToNext()) {
+                    final int row = cursor.getPosition();
+                    albums.ids[row] = cursor.getLong(0);
+                    albums.names[row] = mStringPool.intern(cursor.getString(1));
+                    albums.artists[row] = mStringPool.intern(cursor.getString(2));
+                    albums.songCounts[row] = cursor.getInt(3);
+                    albums.years[row] = mStringPool.intern(cursor.getString(4));
+                }
+            }
+        }
+        return albums;
+    }
+
+    private ArtistTable loadArtists() {
+        final ArtistTable artists = new ArtistTable();
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Artists.EXTERNAL_CONTENT_URI,
+                new String[]{
+                        /* 0 */
+                        MediaStore.Audio.Artists._ID,
+                        /* 1 */
+                        ArtistColumns.ARTIST,
+                        /* 2 */
+                        ArtistColumns.NUMBER_OF_ALBUMS,
+                        /* 3 */
+                        ArtistColumns.NUMBER_OF_TRACKS
+                }, null, null, MediaStore.Audio.Artists._ID)) {
+            if (cursor != null) {
+                artists.allocate(cursor.getCount());
+                while (cursor.moveToNext()) {
+                    final int row = cursor.getPosition();
+                    artists.ids[row] = cursor.getLong(0);
+                    artists.names[row] = mStringPool.intern(cursor.getString(1));
+                    artists.albumCounts[row] = cursor.getInt(2);
+                    artists.songCounts[row] = cursor.getInt(3);
+                }
+            }
+        }
+        return artists;
+    }
+
+    /**
+     * @return a selection of the form "column IN (?,?,...)" with count parameters
+     */
+    public static String makeInSelection(final String column, final int count) {
+        final StringBuilder selection = new StringBuilder(column.length() + 6 + count * 2);
+        selection.append(column).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                selection.append(',');
+            }
+            selection.append('?');
+        }
+        return selection.append(')').toString();
+    }
+
+    /**
+     * @return the selection arguments for {@link #makeInSelection(String, int)}
+     */
+    public static String[] makeInArgs(final long[] ids, final int offset, final int count) {
+        final String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = Long.toString(ids[offset + i]);
+        }
+        return args;
+    }
+
+    /**
+     * The ids and bucket labels read from a cursor that determines the order of a list
+     */
+    private static final class Order {
+        final long[] mIds;
+        final String[] mBucketLabels;
+
+        Order(final Cursor cursor) {
+            mIds = new long[cursor.getCount()];
+            mBucketLabels = cursor instanceof SortedCursor ? new String[mIds.length] : null;
+
+            // the same few labels repeat for every item so only keep one copy of each
+            final HashMap<String, String> labels = new HashMap<>();
+            if (cursor.moveToFirst()) {
+                do {
+                    final int position = cursor.getPosition();
+                    mIds[position] = cursor.getLong(0);
+                    if (mBucketLabels != null) {
+                        final String label = (String) ((SortedCursor) cursor).getExtraData();
+                        if (label != null) {
+                            final String interned = labels.putIfAbsent(label, label);
+                            mBucketLabels[position] = interned != null ? interned : label;
+                        }
+                    }
+                } while (cursor.moveToNext());
+            }
+        }
+    }
+
+    /**
+     * Deduplicates strings and hands out stable indexes into a shared array.
+     * Index 0 is always null.
+     */
+    private static final class StringPool {
+        private final HashMap<String, Integer> mIndexes = new HashMap<>();
+        private final ArrayList<String> mStrings = new ArrayList<>();
+
+        StringPool() {
+            mStrings.add(null);
+        }
+
+        int intern(final String value) {
+            if (value == null) {
+                return 0;
+            }
+
+            Integer index = mIndexes.get(value);
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.add(value);
+                mIndexes.put(value, index);
+            }
+            return index;
+        }
+
+        String[] toArray() {
+            return mStrings.toArray(new String[0]);
+        }
+
+        /**
+         * Replaces the content of the pool with strings previously returned by toArray
+         */
+        void load(final String[] strings) {
+            mIndexes.clear();
+            mStrings.clear();
+            mStrings.add(null);
+            for (int i = 1; i < strings.length; i++) {
+                mStrings.add(strings[i]);
+                mIndexes.put(strings[i], i);
+            }
+        }
+    }
+
+    /**
+     * Growable column storage used while building a snapshot
+     */
+    private static final class SongTable {
+        long[] ids;
+        int[] titles;
+        int[] artists;
+        int[] albums;
+        long[] artistIds;
+        long[] albumIds;
+        int[] durations;
+        int[] years;
+        int[] tracks;
+        long[] datesAdded;
+        long[] datesModified;
+        int size;
+
+        SongTable(final int capacity) {
+            allocate(Math.max(capacity, 16));
+        }
+
+        private void allocate(final int capacity) {
+            ids = new long[capacity];
+            titles = new int[capacity];
+            artists = new int[capacity];
+            albums = new int[capacity];
+            artistIds = new long[capacity];
+            albumIds = new long[capacity];
+            durations = new int[capacity];
+            years = new int[capacity];
+            tracks = new int[capacity];
+            datesAdded = new long[capacity];
+            datesModified = new long[capacity];
+        }
+
+        void ensureCapacity(final int capacity) {
+            if (capacity <= ids.length) {
+                return;
+            }
+
+            ids = Arrays.copyOf(ids, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            artists = Arrays.copyOf(artists, capacity);
+            albums = Arrays.copyOf(albums, capacity);
+            artistIds = Arrays.copyOf(artistIds, capacity);
+            albumIds = Arrays.copyOf(albumIds, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            years = Arrays.copyOf(years, capacity);
+            tracks = Arrays.copyOf(tracks, capacity);
+            datesAdded = Arrays.copyOf(datesAdded, capacity);
+            datesModified = Arrays.copyOf(datesModified, capacity);
+        }
+
+        void add(final Cursor cursor, final StringPool pool) {
+            ensureCapacity(size == ids.length ? size * 2 : size);
+            ids[size] = cursor.getLong(0);
+            titles[size] = pool.intern(cursor.getString(1));
+            artists[size] = pool.intern(cursor.getString(2));
+            artistIds[size] = cursor.getLong(3);
+            albums[size] = pool.intern(cursor.getString(4));
+            albumIds[size] = cursor.getLong(5);
+            durations[size] = (int) (cursor.getLong(6) / 1000);
+            years[size] = cursor.getInt(7);
+            tracks[size] = cursor.getInt(8);
+            datesAdded[size] = cursor.getLong(9);
+            datesModified[size] = cursor.getLong(10);
+            size++;
+        }
+
+        void copy(final SongTable source, final int row) {
+            ensureCapacity(size == ids.length ? size * 2 : size);
+            ids[size] = source.ids[row];
+            titles[size] = source.titles[row];
+            artists[size] = source.artists[row];
+            artistIds[size] = source.artistIds[row];
+            albums[size] = source.albums[row];
+            albumIds[size] = source.albumIds[row];
+            durations[size] = source.durations[row];
+            years[size] = source.years[row];
+            tracks[size] = source.tracks[row];
+            datesAdded[size] = source.datesAdded[row];
+            datesModified[size] = source.datesModified[row];
+            size++;
+        }
+
+        void copy(final Snapshot source, final int row) {
+            ensureCapacity(size == ids.length ? size * 2 : size);
+            ids[size] = source.mSongIds[row];
+            titles[size] = source.mSongTitles[row];
+            artists[size] = source.mSongArtists[row];
+            artistIds[size] = source.mSongArtistIds[row];
+            albums[size] = source.mSongAlbums[row];
+            albumIds[size] = source.mSongAlbumIds[row];
+            durations[size] = source.mSongDurations[row];
+            years[size] = source.mSongYears[row];
+            tracks[size] = source.mSongTracks[row];
+            datesAdded[size] = source.mSongDatesAdded[row];
+            datesModified[size] = source.mSongDatesModified[row];
+            size++;
+        }
+
+        /**
+         * @return the rows ordered by id
+         */
+        int[] sortOrder() {
+            final Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = i;
+            }
+            Arrays.sort(boxed, (a, b) -> Long.compare(ids[a], ids[b]));
+
+            final int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = boxed[i];
+            }
+            return order;
+        }
+
+        SongTable trim() {
+            final int capacity = size;
+            ids = Arrays.copyOf(ids, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            artists = Arrays.copyOf(artists, capacity);
+            albums = Arrays.copyOf(albums, capacity);
+            artistIds = Arrays.copyOf(artistIds, capacity);
+            albumIds = Arrays.copyOf(albumIds, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            years = Arrays.copyOf(years, capacity);
+            tracks = Arrays.copyOf(tracks, capacity);
+            datesAdded = Arrays.copyOf(datesAdded, capacity);
+            datesModified = Arrays.copyOf(datesModified, capacity);
+            return this;
+        }
+    }
+
+    private static final class AlbumTable {
+        long[] ids = new long[0];
+        int[] names = new int[0];
+        int[] artists = new int[0];
+        int[] songCounts = new int[0];
+        int[] years = new int[0];
+
+        void allocate(final int capacity) {
+            ids = new long[capacity];
+            names = new int[capacity];
+            artists = new int[capacity];
+            songCounts = new int[capacity];
+            years = new int[capacity];
+        }
+    }
+
+    private static final class ArtistTable {
+        long[] ids = new long[0];
+        int[] names = new int[0];
+        int[] albumCounts = new int[0];
+        int[] songCounts = new int[0];
+
+        void allocate(final int capacity) {
+            ids = new long[capacity];
+            names = new int[capacity];
+            albumCounts = new int[capacity];
+            songCounts = new int[capacity];
+        }
+    }
+
+    /**
+     * Versioned binary representation of a {@link Snapshot}.  The file is memory mapped when
+     * read so the columns are copied straight out of the page cache with bulk gets.
+     */
+    private static final class SnapshotFile {
+        private static final int MAGIC = 0x454c4331; // "ELC1"
+
+        // bump whenever the layout below changes, older files are then ignored
+        private static final int FORMAT_VERSION = 1;
+
+        private static final String TEMP_SUFFIX = ".tmp";
+        private static final long STALE_TEMP_FILE_AGE = 60 * 1000;
+
+        static Snapshot read(final File file, final StringPool pool) {
+            if (!file.exists()) {
+                return null;
+            }
+
+            final long start = SystemClock.elapsedRealtime();
+            try (FileInputStream stream = new FileInputStream(file);
+                 FileChannel channel = stream.getChannel()) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+                if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                    return null;
+                }
+
+                final int version = buffer.getInt();
+
+                final String[] strings = new String[buffer.getInt()];
+                if (strings.length == 0) {
+                    throw new IOException("Empty string pool");
+                }
+                for (int i = 1; i < strings.length; i++) {
+                    final byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+
+                final SongTable songs = new SongTable(0);
+                songs.size = buffer.getInt();
+                songs.ids = readLongs(buffer, songs.size);
+                songs.titles = readInts(buffer, songs.size);
+                songs.artists = readInts(buffer, songs.size);
+                songs.albums = readInts(buffer, songs.size);
+                songs.artistIds = readLongs(buffer, songs.size);
+                songs.albumIds = readLongs(buffer, songs.size);
+                songs.durations = readInts(buffer, songs.size);
+                songs.years = readInts(buffer, songs.size);
+                songs.tracks = readInts(buffer, songs.size);
+                songs.datesAdded = readLongs(buffer, songs.size);
+                songs.datesModified = readLongs(buffer, songs.size);
+
+                final AlbumTable albums = new AlbumTable();
+                final int albumCount = buffer.getInt();
+                albums.ids = readLongs(buffer, albumCount);
+                albums.names = readInts(buffer, albumCount);
+                albums.artists = readInts(buffer, albumCount);
+                albums.songCounts = readInts(buffer, albumCount);
+                albums.years = readInts(buffer, albumCount);
+
+                final ArtistTable artists = new ArtistTable();
+                final int artistCount = buffer.getInt();
+                artists.ids = readLongs(buffer, artistCount);
+                artists.names = readInts(buffer, artistCount);
+                artists.albumCounts = readInts(buffer, artistCount);
+                artists.songCounts = readInts(buffer, artistCount);
+
+                // a file that doesn't match its string pool must not reach the lists
+                checkStrings(songs.titles, strings.length);
+                checkStrings(songs.artists, strings.length);
+                checkStrings(songs.albums, strings.length);
+                checkStrings(albums.names, strings.length);
+                checkStrings(albums.artists, strings.length);
+                checkStrings(artists.names, strings.length);
+
+                pool.load(strings);
+
+                if (DEBUG) {
+                    Log.d(TAG, "Read catalog of " + songs.size + " songs in "
+                            + (SystemClock.elapsedRealtime() - start) + "ms");
+                }
+                return new Snapshot(version, strings, songs, albums, artists);
+            } catch (IOException | RuntimeException e) {
+                // a truncated or corrupt file just means we need to build from scratch
+                Log.w(TAG, "Unable to read catalog snapshot", e);
+                file.delete();
+                return null;
+            }
+        }
+
+        static void write(final File file, final Snapshot snapshot) {
+            if (snapshot == null) {
+                return;
+            }
+
+            // the ui and the service process both write the snapshot, each to a file of its own
+            final File tempFile;
+            try {
+                tempFile = File.createTempFile(file.getName(), TEMP_SUFFIX,
+                        file.getParentFile());
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to write catalog snapshot", e);
+                return;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(snapshot.mVersion);
+
+                out.writeInt(snapshot.mStrings.length);
+                for (int i = 1; i < snapshot.mStrings.length; i++) {
+                    final byte[] bytes = snapshot.mStrings[i].getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+
+                out.writeInt(snapshot.mSongIds.length);
+                writeLongs(out, snapshot.mSongIds);
+                writeInts(out, snapshot.mSongTitles);
+                writeInts(out, snapshot.mSongArtists);
+                writeInts(out, snapshot.mSongAlbums);
+                writeLongs(out, snapshot.mSongArtistIds);
+                writeLongs(out, snapshot.mSongAlbumIds);
+                writeInts(out, snapshot.mSongDurations);
+                writeInts(out, snapshot.mSongYears);
+                writeInts(out, snapshot.mSongTracks);
+                writeLongs(out, snapshot.mSongDatesAdded);
+                writeLongs(out, snapshot.mSongDatesModified);
+
+                out.writeInt(snapshot.mAlbumIds.length);
+                writeLongs(out, snapshot.mAlbumIds);
+                writeInts(out, snapshot.mAlbumNames);
+                writeInts(out, snapshot.mAlbumArtists);
+                writeInts(out, snapshot.mAlbumSongCounts);
+                writeInts(out, snapshot.mAlbumYears);
+
+                out.writeInt(snapshot.mArtistIds.length);
+                writeLongs(out, snapshot.mArtistIds);
+                writeInts(out, snapshot.mArtistNames);
+                writeInts(out, snapshot.mArtistAlbumCounts);
+                writeInts(out, snapshot.mArtistSongCounts);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to write catalog snapshot", e);
+                tempFile.delete();
+                return;
+            }
+
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        }
+
+        /**
+         * Deletes the temporary files of writes that were interrupted, the files of writes that
+         * are still running are younger
+         */
+        static void deleteStaleTempFiles(final File file) {
+            final File[] files = file.getParentFile().listFiles((dir, name) ->
+                    name.startsWith(file.getName()) && name.endsWith(TEMP_SUFFIX));
+            if (files == null) {
+                return;
+            }
+            final long staleBefore = System.currentTimeMillis() - STALE_TEMP_FILE_AGE;
+            for (final File tempFile : files) {
+                if (tempFile.lastModified() < staleBefore) {
+                    tempFile.delete();
+                }
+            }
+        }
+
+        private static void checkStrings(final int[] indexes, final int poolSize)
+                throws IOException {
+            for (final int index : indexes) {
+                if (index < 0 || index >= poolSize) {
+                    throw new IOException("String index " + index + " out of " + poolSize);
+                }
+            }
+        }
+
+        private static long[] readLongs(final ByteBuffer buffer, final int count) {
+            final long[] values = new long[count];
+            buffer.asLongBuffer().get(values);
+            buffer.position(buffer.position() + count * Long.BYTES);
+            return values;
+        }
+
+        private static int[] readInts(final ByteBuffer buffer, final int count) {
+            final int[] values = new int[count];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            return values;
+        }
+
+        private static void writeLongs(final DataOutputStream out, final long[] values)
+                throws IOException {
+            for (long value : values) {
+                out.writeLong(value);
+            }
+        }
+
+        private static void writeInts(final DataOutputStream out, final int[] values)
+                throws IOException {
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+}
@@ -32,10 +32,13 @@ public class MusicDB extends SQLiteOpenHelper {
      * v3 Dec 4 2014    Add Sorting tables similar to Contacts to enable other languages like
      * Chinese to properly sort as they would expect
      * v4 Jan 6 2015    Missed Collate keyword on the LocalizedSongSortTable
+     * v5 Oct 19 2026   Added PlaylistCountStore to cache the song count of each playlist
+     * v6 Oct 19 2026   Added SmartPlaylistStore for user defined smart playlists
+     * v7 Oct 19 2026   Added AlbumColorStore to keep the palette colors of album artwork
      */
 
     /* Version constant to increment when the database should be rebuilt */
-    private static final int VERSION = 4;
+    private static final int VERSION = 7;
 
     /* Name of database file */
     private static final String DATABASENAME = "musicdb.db";
@@ -68,6 +71,9 @@ public class MusicDB extends SQLiteOpenHelper {
         SongPlayCount.getInstance(mContext).onCreate(db);
         MusicPlaybackState.getInstance(mContext).onCreate(db);
         LocalizedStore.getInstance(mContext).onCreate(db);
+        PlaylistCountStore.getInstance(mContext).onCreate(db);
+        SmartPlaylistStore.getInstance(mContext).onCreate(db);
+        AlbumColorStore.getInstance(mContext).onCreate(db);
     }
 
     @Override
@@ -75,6 +81,9 @@ public class MusicDB extends SQLiteOpenHelper {
         PropertiesStore.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
         MusicPlaybackState.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
         LocalizedStore.getInstance(mContext).onUpgrade(db, oldVersion);
+        PlaylistCountStore.getInstance(mContext).onUpgrade(db, oldVersion);
+        SmartPlaylistStore.getInstance(mContext).onUpgrade(db, oldVersion);
+        AlbumColorStore.getInstance(mContext).onUpgrade(db, oldVersion);
     }
 
     @Override
@@ -87,5 +96,8 @@ public class MusicDB extends SQLiteOpenHelper {
         SongPlayCount.getInstance(mContext).onDowngrade(db);
         MusicPlaybackState.getInstance(mContext).onDowngrade(db);
         LocalizedStore.getInstance(mContext).onDowngrade(db);
+        PlaylistCountStore.getInstance(mContext).onDowngrade(db);
+        SmartPlaylistStore.getInstance(mContext).onDowngrade(db);
+        AlbumColorStore.getInstance(mContext).onDowngrade(db);
     }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Process wide cache of the lists returned by the loaders, so that going back to a list or
+ * rotating the screen doesn't query the MediaStore and sort the result again.
+ * <p>
+ * Lists are keyed by their query and sort order and remember the {@link MediaStoreChanges} of
+ * the content they show.  They are dropped when that content changes, either because the
+ * MediaStore reported a change or because the {@link MusicCatalog} moved to a new version.
+ * The cache is sized after the memory class of the device and trimmed when the system is low on
+ * memory.
+ */
+public class MusicRepository {
+    private static final String TAG = MusicRepository.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* Number of cached list items per megabyte of the memory class */
+    private static final int ITEMS_PER_MEGABYTE = 1024;
+
+    private static MusicRepository sInstance = null;
+
+    private final MusicCatalog mCatalog;
+    private final LruCache<String, Entry> mEntries;
+
+    /* Increased on every invalidation, so a load that raced with one isn't cached */
+    private int mGeneration;
+
+    /* The catalog version the cached lists were built from */
+    private int mCatalogVersion = -1;
+
+    /**
+     * Constructor of <code>MusicRepository</code>
+     *
+     * @param context The {@link Context} to use
+     */
+    private MusicRepository(final Context context) {
+        mCatalog = MusicCatalog.getInstance(context);
+
+        final ActivityManager activityManager = context.getSystemService(ActivityManager.class);
+        mEntries = new LruCache<String, Entry>(
+                activityManager.getMemoryClass() * ITEMS_PER_MEGABYTE) {
+            @Override
+            protected int sizeOf(final String key, final Entry entry) {
+                return entry.mList.size() + 1;
+            }
+        };
+
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(final boolean selfChange, final Uri uri) {
+                // only called directly before R, which doesn't report the kind of change
+                onChange(selfChange, uri, 0);
+            }
+
+            @Override
+            public void onChange(final boolean selfChange, final Uri uri, final int flags) {
+                invalidate(MediaStoreChanges.classify(uri, flags));
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, observer);
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI, true, observer);
+
+        // Release some memory as needed
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+
+            @Override
+            public void onTrimMemory(final int level) {
+                if (level >= TRIM_MEMORY_MODERATE) {
+                    mEntries.evictAll();
+                } else if (level >= TRIM_MEMORY_BACKGROUND) {
+                    mEntries.trimToSize(mEntries.size() / 2);
+                }
+            }
+
+            @Override
+            public void onLowMemory() {
+                // Nothing to do
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull final Configuration newConfig) {
+                // Nothing to do
+            }
+        });
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized MusicRepository getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new MusicRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the cached list for the query or loads it.  The returned list belongs to the
+     * caller, so adapters can clear or edit it without affecting the cache.
+     *
+     * @param query     identifies what is loaded, including any selection
+     * @param sortOrder the sort order of the list
+     * @param changes   the {@link MediaStoreChanges} that make the list stale
+     * @param loader    loads the list if it isn't cached
+     * @return a copy of the list
+     */
+    @WorkerThread
+    public <T> List<T> get(final String query, final String sortOrder, final int changes,
+                           final Supplier<List<T>> loader) {
+        final String key = query + '\n' + sortOrder;
+        final int version = mCatalog.getVersion();
+
+        final int generation;
+        synchronized (this) {
+            // the lists are built from the catalog, so a new version makes all of them stale
+            if (version != mCatalogVersion) {
+                mCatalogVersion = version;
+                mGeneration++;
+                mEntries.evictAll();
+            }
+
+            final Entry entry = mEntries.get(key);
+            if (entry != null) {
+                if (DEBUG) {
+                    Log.d(TAG, "Cache hit for " + query);
+                }
+                return copyOf(entry.mList);
+            }
+            generation = mGeneration;
+        }
+
+        final List<T> list = loader.get();
+        synchronized (this) {
+            // empty lists are cheap to load again and may come from a failed query, and a list
+            // loaded while the catalog was built or synced may miss some of its content
+            if (!list.isEmpty() && generation == mGeneration
+                    && mCatalog.getVersion() == version) {
+                mEntries.put(key, new Entry(list, changes));
+            }
+        }
+        return copyOf(list);
+    }
+
+    /**
+     * Drops every list that shows any of the changed content
+     *
+     * @param changes the {@link MediaStoreChanges} flags of what changed
+     */
+    public synchronized void invalidate(final int changes) {
+        mGeneration++;
+        for (final Map.Entry<String, Entry> entry : mEntries.snapshot().entrySet()) {
+            if ((entry.getValue().mChanges & changes) != 0) {
+                mEntries.remove(entry.getKey());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> copyOf(final List<?> list) {
+        if (list instanceof CatalogList) {
+            // shares the rows but not the items of the cached list
+            return ((CatalogList<T>) list).copy();
+        }
+        return new ArrayList<>((List<T>) list);
+    }
+
+    private static final class Entry {
+        final List<?> mList;
+        final int mChanges;
+
+        Entry(final List<?> list, final int changes) {
+            mList = list;
+            mChanges = changes;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
+import org.lineageos.eleven.cache.ArtworkKey;
 import org.lineageos.eleven.utils.MusicUtils;
 
 /**
@@ -50,16 +51,16 @@ public class PlaylistArtworkStore {
      * @param playlistId playlist identifier
      * @return the key used for the imagae cache for the cover art
      */
-    public static String getCoverCacheKey(final long playlistId) {
-        return "playlist_cover_" + playlistId;
+    public static ArtworkKey getCoverCacheKey(final long playlistId) {
+        return ArtworkKey.forPlaylistCover(playlistId);
     }
 
     /**
      * @param playlistId playlist identifier
      * @return the key used for the imagae cache for the top artist image
      */
-    public static String getArtistCacheKey(final long playlistId) {
-        return "playlist_artist_" + playlistId;
+    public static ArtworkKey getArtistCacheKey(final long playlistId) {
+        return ArtworkKey.forPlaylistArtist(playlistId);
     }
 
     /**
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import androidx.annotation.WorkerThread;
+
+import org.lineageos.eleven.utils.MusicUtils;
+
+import java.util.List;
+
+/**
+ * This db caches the number of songs of each playlist, so that the playlists tab doesn't need a
+ * MediaStore query per playlist.  A count is kept as long as the date modified of its playlist
+ * doesn't change and is dropped when the playlist is edited or songs are changed or deleted.
+ */
+public class PlaylistCountStore {
+    private static final String TAG = PlaylistCountStore.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* Segment of the MediaStore uris that is followed by the playlist id */
+    private static final String PLAYLISTS = "playlists";
+
+    private static PlaylistCountStore sInstance = null;
+
+    private final Context mContext;
+    private final MusicDB mMusicDatabase;
+
+    /* Increased on every invalidation, so a count that raced with one isn't stored */
+    private int mGeneration;
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized PlaylistCountStore getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new PlaylistCountStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor of <code>PlaylistCountStore</code>
+     *
+     * @param context The {@link Context} to use
+     */
+    private PlaylistCountStore(final Context context) {
+        mContext = context;
+        mMusicDatabase = MusicDB.getInstance(context);
+
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(final boolean selfChange, final Uri uri) {
+                // only called directly before R, which doesn't report the kind of change
+                onChange(selfChange, uri, 0);
+            }
+
+            @Override
+            public void onChange(final boolean selfChange, final Uri uri, final int flags) {
+                onMediaStoreChange(uri, MediaStoreChanges.classify(uri, flags));
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, observer);
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI, true, observer);
+    }
+
+    public void onCreate(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + PlaylistCountColumns.NAME + " (" +
+                PlaylistCountColumns.ID + " LONG NOT NULL PRIMARY KEY," +
+                PlaylistCountColumns.DATE_MODIFIED + " LONG NOT NULL," +
+                PlaylistCountColumns.SONG_COUNT + " INT NOT NULL);");
+    }
+
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion) {
+        // this table was created in version 5
+        if (oldVersion < 5) {
+            onCreate(db);
+        }
+    }
+
+    public void onDowngrade(final SQLiteDatabase db) {
+        // If we ever have downgrade, drop the table to be safe
+        db.execSQL("DROP TABLE IF EXISTS " + PlaylistCountColumns.NAME);
+        onCreate(db);
+    }
+
+    /**
+     * Returns the number of songs of the playlists.  Cached counts are read with a single query,
+     * only the playlists without a valid count are counted in MediaStore.  Counts of playlists
+     * that aren't passed in are dropped, so the passed in playlists have to be all playlists.
+     *
+     * @param ids           the ids of all playlists
+     * @param datesModified the date modified of each playlist
+     * @return the number of songs of each playlist
+     */
+    @WorkerThread
+    public int[] getSongCounts(final List<Long> ids, final List<Long> datesModified) {
+        final int generation;
+        synchronized (this) {
+            generation = mGeneration;
+        }
+
+        // read the whole table, it has one short row per playlist
+        final LongSparseArray<long[]> cached = new LongSparseArray<>();
+        try (Cursor c = mMusicDatabase.getReadableDatabase().query(PlaylistCountColumns.NAME,
+                new String[]{
+                        /* 0 */
+                        PlaylistCountColumns.ID,
+                        /* 1 */
+                        PlaylistCountColumns.DATE_MODIFIED,
+                        /* 2 */
+                        PlaylistCountColumns.SONG_COUNT,
+                }, null, null, null, null, null)) {
+            while (c.moveToNext()) {
+                cached.put(c.getLong(0), new long[]{c.getLong(1), c.getInt(2)});
+            }
+        }
+
+        final int[] counts = new int[ids.size()];
+        final LongSparseArray<long[]> counted = new LongSparseArray<>();
+        for (int i = 0; i < counts.length; i++) {
+            final long id = ids.get(i);
+            final long dateModified = datesModified.get(i);
+            final long[] row = cached.get(id);
+            if (row != null && row[0] == dateModified) {
+                counts[i] = (int) row[1];
+            } else {
+                counts[i] = MusicUtils.getSongCountForPlaylist(mContext, id);
+                counted.put(id, new long[]{dateModified, counts[i]});
+            }
+            cached.remove(id);
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Counted " + counted.size() + " of " + counts.length + " playlists");
+        }
+
+        // whatever is left in the cache belongs to deleted playlists
+        if (counted.size() > 0 || cached.size() > 0) {
+            synchronized (this) {
+                if (generation == mGeneration) {
+                    write(counted, cached);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Stores the number of songs of a playlist that was just loaded, if its count is cached
+     *
+     * @param playlistId the id of the playlist
+     * @param songCount  the number of songs of the playlist
+     */
+    @WorkerThread
+    public void updateSongCount(final long playlistId, final int songCount) {
+        final ContentValues values = new ContentValues(1);
+        values.put(PlaylistCountColumns.SONG_COUNT, songCount);
+        mMusicDatabase.getWritableDatabase().update(PlaylistCountColumns.NAME, values,
+                PlaylistCountColumns.ID + "=?", new String[]{String.valueOf(playlistId)});
+    }
+
+    /**
+     * Drops the count of a playlist, must be called after its members were edited
+     *
+     * @param playlistId the id of the playlist
+     */
+    public synchronized void invalidate(final long playlistId) {
+        mGeneration++;
+        mMusicDatabase.getWritableDatabase().delete(PlaylistCountColumns.NAME,
+                PlaylistCountColumns.ID + "=?", new String[]{String.valueOf(playlistId)});
+    }
+
+    /**
+     * Drops the counts of all playlists
+     */
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mMusicDatabase.getWritableDatabase().delete(PlaylistCountColumns.NAME, null, null);
+    }
+
+    private void onMediaStoreChange(final Uri uri, final int changes) {
+        if ((changes & MediaStoreChanges.PLAYLISTS) == 0) {
+            // new songs aren't part of any playlist yet
+            return;
+        }
+
+        // content://media/<volume>/audio/playlists/<id>/members/...
+        final List<String> segments = uri.getPathSegments();
+        final int playlists = segments.indexOf(PLAYLISTS);
+        if (changes == MediaStoreChanges.PLAYLISTS && playlists >= 0
+                && playlists + 1 < segments.size()) {
+            try {
+                invalidate(Long.parseLong(segments.get(playlists + 1)));
+                return;
+            } catch (NumberFormatException e) {
+                // not a single playlist, fall through
+            }
+        }
+        invalidateAll();
+    }
+
+    private void write(final LongSparseArray<long[]> counted,
+                       final LongSparseArray<long[]> deleted) {
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            final ContentValues values = new ContentValues(3);
+            for (int i = 0; i < counted.size(); i++) {
+                values.put(PlaylistCountColumns.ID, counted.keyAt(i));
+                values.put(PlaylistCountColumns.DATE_MODIFIED, counted.valueAt(i)[0]);
+                values.put(PlaylistCountColumns.SONG_COUNT, counted.valueAt(i)[1]);
+                database.replace(PlaylistCountColumns.NAME, null, values);
+            }
+            for (int i = 0; i < deleted.size(); i++) {
+                database.delete(PlaylistCountColumns.NAME, PlaylistCountColumns.ID + "=?",
+                        new String[]{String.valueOf(deleted.keyAt(i))});
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    public interface PlaylistCountColumns {
+        /* Table name */
+        String NAME = "playlist_counts";
+
+        /* Playlist ID column */
+        String ID = "playlistid";
+
+        /* The date modified of the playlist when it was counted */
+        String DATE_MODIFIED = "date_modified";
+
+        /* The number of songs of the playlist */
+        String SONG_COUNT = "song_count";
+    }
+}
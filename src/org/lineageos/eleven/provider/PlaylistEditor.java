@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.Playlists;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Edits the members of a playlist.  Additions, removals and moves are collected and then
+ * written with {@link ContentResolver#applyBatch} calls of up to a thousand operations, so an
+ * edit costs a few round trips to the MediaStore instead of one per track.
+ * <p>
+ * {@link #repair} fixes the play order of a playlist by only rewriting the members whose order
+ * is broken, instead of recreating the whole playlist.
+ */
+public class PlaylistEditor {
+    private static final String TAG = PlaylistEditor.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* Yield the db every 100 operations to prevent ANRs */
+    private static final int YIELD_FREQUENCY = 100;
+
+    /* Operations per applyBatch call, a larger batch could exceed the binder transaction limit */
+    private static final int BATCH_SIZE = 1000;
+
+    private final ContentResolver mResolver;
+    private final PlaylistCountStore mCountStore;
+    private final long mPlaylistId;
+    private final Uri mMembersUri;
+    private final ArrayList<ContentProviderOperation> mOperations = new ArrayList<>();
+
+    /* Play order of the next added track, looked up when the first track is added */
+    private int mNextPlayOrder = -1;
+
+    /**
+     * @param context    The {@link Context} to use
+     * @param playlistId The id of the playlist to edit
+     */
+    public PlaylistEditor(final Context context, final long playlistId) {
+        mResolver = context.getContentResolver();
+        mCountStore = PlaylistCountStore.getInstance(context);
+        mPlaylistId = playlistId;
+        mMembersUri = Playlists.Members.getContentUri("external", playlistId);
+    }
+
+    /**
+     * Appends tracks to the end of the playlist
+     *
+     * @param ids The ids of the songs to add
+     * @return this editor
+     */
+    public PlaylistEditor add(final long[] ids) {
+        if (mNextPlayOrder < 0) {
+            mNextPlayOrder = queryNextPlayOrder();
+        }
+
+        for (final long id : ids) {
+            addOperation(ContentProviderOperation.newInsert(mMembersUri)
+                    .withValue(Playlists.Members.PLAY_ORDER, mNextPlayOrder++)
+                    .withValue(Playlists.Members.AUDIO_ID, id));
+        }
+        return this;
+    }
+
+    /**
+     * Removes every occurrence of the tracks from the playlist
+     *
+     * @param ids The ids of the songs to remove
+     * @return this editor
+     */
+    public PlaylistEditor remove(final long[] ids) {
+        for (int offset = 0; offset < ids.length; offset += MusicCatalog.QUERY_CHUNK_SIZE) {
+            final int count = Math.min(MusicCatalog.QUERY_CHUNK_SIZE, ids.length - offset);
+            addOperation(ContentProviderOperation.newDelete(mMembersUri)
+                    .withSelection(MusicCatalog.makeInSelection(Playlists.Members.AUDIO_ID,
+                            count), MusicCatalog.makeInArgs(ids, offset, count)));
+        }
+        return this;
+    }
+
+    /**
+     * Moves a track to a different position, the positions of the following moves have to take
+     * the previous moves into account
+     *
+     * @param from The current position of the track
+     * @param to   The new position of the track
+     * @return this editor
+     */
+    public PlaylistEditor move(final int from, final int to) {
+        if (from != to) {
+            // the same uri as MediaStore.Audio.Playlists.Members.moveItem() uses
+            final Uri uri = mMembersUri.buildUpon()
+                    .appendEncodedPath(String.valueOf(from))
+                    .appendQueryParameter("move", "true")
+                    .build();
+            addOperation(ContentProviderOperation.newUpdate(uri)
+                    .withValue(Playlists.Members.PLAY_ORDER, to));
+        }
+        return this;
+    }
+
+    /**
+     * Writes all the edits in a single batch
+     *
+     * @return the number of tracks that were added, removed or moved
+     */
+    @WorkerThread
+    public int apply() {
+        if (mOperations.isEmpty()) {
+            return 0;
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        int changed = 0;
+        try {
+            for (int offset = 0; offset < mOperations.size(); offset += BATCH_SIZE) {
+                final ArrayList<ContentProviderOperation> batch = new ArrayList<>(
+                        mOperations.subList(offset,
+                                Math.min(offset + BATCH_SIZE, mOperations.size())));
+                final ContentProviderResult[] results = mResolver.applyBatch(
+                        MediaStore.AUTHORITY, batch);
+                for (final ContentProviderResult result : results) {
+                    changed += result.uri != null ? 1 : (result.count != null ? result.count : 0);
+                }
+            }
+        } catch (RemoteException e) {
+            Log.e(TAG, "RemoteException " + e + " while editing playlist " + mPlaylistId);
+        } catch (OperationApplicationException e) {
+            Log.e(TAG, "OperationApplicationException " + e + " while editing playlist "
+                    + mPlaylistId);
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Applied " + mOperations.size() + " operations to playlist "
+                    + mPlaylistId + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        mCountStore.invalidate(mPlaylistId);
+        mOperations.clear();
+        mNextPlayOrder = -1;
+        return changed;
+    }
+
+    /**
+     * Repairs the play order of a playlist.  Members that point to songs that don't exist anymore
+     * are removed, and members whose play order isn't larger than the one of the previous member
+     * get the next free play order.  Only the broken ranges are rewritten, a gap in the play
+     * order ends a range.
+     *
+     * @param context    The {@link Context} to use
+     * @param playlistId The id of the playlist to repair
+     * @param cursor     The members of the playlist joined with their songs, sorted by play
+     *                   order, with the {@link Playlists.Members#_ID},
+     *                   {@link Playlists.Members#AUDIO_ID} and
+     *                   {@link Playlists.Members#PLAY_ORDER} columns
+     * @return true if the playlist was changed and has to be queried again
+     */
+    @WorkerThread
+    public static boolean repair(final Context context, final long playlistId,
+                                 final Cursor cursor) {
+        final PlaylistEditor editor = new PlaylistEditor(context, playlistId);
+        final int idColumn = cursor.getColumnIndexOrThrow(Playlists.Members._ID);
+        final int audioIdColumn = cursor.getColumnIndexOrThrow(Playlists.Members.AUDIO_ID);
+        final int playOrderColumn = cursor.getColumnIndexOrThrow(Playlists.Members.PLAY_ORDER);
+
+        final long[] audioIds = new long[cursor.getCount()];
+        int lastPlayOrder = Integer.MIN_VALUE;
+        if (cursor.moveToFirst()) {
+            do {
+                audioIds[cursor.getPosition()] = cursor.getLong(audioIdColumn);
+
+                final int playOrder = cursor.getInt(playOrderColumn);
+                if (playOrder > lastPlayOrder) {
+                    lastPlayOrder = playOrder;
+                } else {
+                    // duplicate or out of order, move it right behind the previous member
+                    lastPlayOrder++;
+                    editor.addOperation(ContentProviderOperation.newUpdate(editor.mMembersUri)
+                            .withSelection(Playlists.Members._ID + "=?",
+                                    new String[]{Long.toString(cursor.getLong(idColumn))})
+                            .withValue(Playlists.Members.PLAY_ORDER, lastPlayOrder));
+                }
+            } while (cursor.moveToNext());
+        }
+
+        // the raw mapping table also holds members whose song was deleted
+        final long[] orphans = findOrphans(context, playlistId, audioIds);
+        if (orphans.length > 0) {
+            Log.w(TAG, "Removing " + orphans.length + " missing songs from playlist "
+                    + playlistId);
+            editor.remove(orphans);
+        }
+
+        if (editor.mOperations.isEmpty()) {
+            return false;
+        }
+
+        Log.w(TAG, "Playlist order has flaws - repairing " + editor.mOperations.size()
+                + " members of playlist " + playlistId);
+        editor.apply();
+        return true;
+    }
+
+    private void addOperation(final ContentProviderOperation.Builder builder) {
+        // yield at the end and not at 0 by incrementing by 1
+        if ((mOperations.size() + 1) % YIELD_FREQUENCY == 0) {
+            builder.withYieldAllowed(true);
+        }
+        mOperations.add(builder.build());
+    }
+
+    private int queryNextPlayOrder() {
+        try (Cursor cursor = mResolver.query(mMembersUri, new String[]{
+                "max(" + Playlists.Members.PLAY_ORDER + ")",
+        }, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getInt(0) + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the song ids of the raw mapping table that aren't in the joined members
+     */
+    private static long[] findOrphans(final Context context, final long playlistId,
+                                      final long[] audioIds) {
+        final long[] sortedIds = audioIds.clone();
+        Arrays.sort(sortedIds);
+
+        long[] orphans = new long[0];
+        int count = 0;
+        // when we query using only the audio_id column we will get the raw mapping table
+        // results - which will tell us if the table has rows that don't exist in the normal
+        // table
+        try (Cursor c = context.getContentResolver().query(
+                Playlists.Members.getContentUri("external", playlistId),
+                new String[]{Playlists.Members.AUDIO_ID,}, null, null,
+                Playlists.Members.DEFAULT_SORT_ORDER)) {
+            if (c == null || c.getCount() == audioIds.length) {
+                return orphans;
+            }
+
+            while (c.moveToNext()) {
+                final long id = c.getLong(0);
+                if (Arrays.binarySearch(sortedIds, id) < 0) {
+                    if (count == orphans.length) {
+                        orphans = Arrays.copyOf(orphans, Math.max(16, count * 2));
+                    }
+                    orphans[count++] = id;
+                }
+            }
+        }
+        return Arrays.copyOf(orphans, count);
+    }
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.provider.MediaStore.Audio.Playlists;
+import android.provider.OpenableColumns;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import org.lineageos.eleven.utils.MusicUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Imports and exports playlist files.  M3U, M3U8 and PLS files are read line by line, so the
+ * size of a file doesn't matter, and the entries are resolved to songs with an index of all
+ * song paths that is built with a single MediaStore query.  Playlists are exported as M3U8.
+ * <p>
+ * M3U files are Latin-1 while M3U8 and PLS files are UTF-8.
+ */
+public final class PlaylistFiles {
+    private static final String TAG = PlaylistFiles.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* Size of the read and write buffers */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* First line of a PLS file */
+    private static final String PLS_HEADER = "[playlist]";
+
+    /* Prefix of the PLS lines that hold a path */
+    private static final String PLS_FILE = "file";
+
+    /* Prefix of the M3U lines that hold information */
+    private static final String M3U_COMMENT = "#";
+
+    /* Extension of the playlist files that aren't UTF-8 */
+    private static final String M3U_EXTENSION = ".m3u";
+
+    /* Authority of the documents on the external storage */
+    private static final String EXTERNAL_STORAGE_AUTHORITY =
+            "com.android.externalstorage.documents";
+
+    /* Document id prefix of the primary external storage */
+    private static final String PRIMARY_VOLUME = "primary";
+
+    /* Mime types of the files that can be imported */
+    public static final String[] MIME_TYPES = new String[]{
+            "audio/x-mpegurl",
+            "audio/mpegurl",
+            "application/x-mpegurl",
+            "application/vnd.apple.mpegurl",
+            "audio/x-scpls",
+    };
+
+    /* Mime type of exported playlists */
+    public static final String EXPORT_MIME_TYPE = "audio/x-mpegurl";
+
+    /* File extension of exported playlists */
+    public static final String EXPORT_EXTENSION = ".m3u8";
+
+    /* This class is never initiated */
+    private PlaylistFiles() {
+    }
+
+    /**
+     * Creates a playlist from a playlist file.  The playlist is named after the file, entries
+     * that can't be resolved to a song are skipped and no playlist is created if none of them
+     * can be resolved.
+     *
+     * @param context The {@link Context} to use
+     * @param uri     The uri of the playlist file
+     * @return the number of songs in the new playlist, or -1 if the file couldn't be imported
+     */
+    @WorkerThread
+    public static int importPlaylist(final Context context, final Uri uri) {
+        final long start = SystemClock.elapsedRealtime();
+        final String displayName = getDisplayName(context, uri);
+        final PathIndex index = new PathIndex(context, getDirectory(context, uri));
+        final Entries entries = new Entries();
+
+        final Charset charset = displayName.toLowerCase(Locale.ROOT).endsWith(M3U_EXTENSION)
+                ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r");
+             BufferedReader reader = new BufferedReader(Channels.newReader(
+                     new FileInputStream(pfd.getFileDescriptor()).getChannel(),
+                     charset.newDecoder()
+                             .onMalformedInput(CodingErrorAction.REPLACE)
+                             .onUnmappableCharacter(CodingErrorAction.REPLACE), -1),
+                     BUFFER_SIZE)) {
+            boolean pls = false;
+            boolean firstLine = true;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                if (firstLine) {
+                    firstLine = false;
+                    // a byte order mark isn't trimmed
+                    if (line.charAt(0) == '\uFEFF') {
+                        line = line.substring(1);
+                    }
+                    pls = PLS_HEADER.equalsIgnoreCase(line);
+                    if (pls) {
+                        continue;
+                    }
+                }
+
+                if (pls) {
+                    addPlsLine(line, index, entries);
+                } else if (!line.startsWith(M3U_COMMENT)) {
+                    entries.add(entries.size(), index.resolve(line));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to read playlist " + uri, e);
+            return -1;
+        }
+
+        final long[] ids = entries.getIds();
+        if (ids.length == 0) {
+            if (DEBUG) {
+                Log.d(TAG, "None of the " + entries.size() + " entries of " + uri
+                        + " is a song");
+            }
+            return 0;
+        }
+
+        final int extension = displayName.lastIndexOf('.');
+        final String name = getUniqueName(context, extension > 0
+                ? displayName.substring(0, extension) : displayName);
+        final long playlistId = MusicUtils.createPlaylist(context, name);
+        if (playlistId < 0) {
+            return -1;
+        }
+        final int added = new PlaylistEditor(context, playlistId).add(ids).apply();
+
+        if (DEBUG) {
+            Log.d(TAG, "Imported " + added + " of " + entries.size() + " entries from " + uri
+                    + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        return added;
+    }
+
+    /**
+     * Writes the songs of a playlist to an M3U8 file
+     *
+     * @param context    The {@link Context} to use
+     * @param playlistId The id of the playlist to export
+     * @param uri        The uri of the file to write
+     * @return the number of exported songs, or -1 if the file couldn't be written
+     */
+    @WorkerThread
+    public static int exportPlaylist(final Context context, final long playlistId,
+                                     final Uri uri) {
+        final long start = SystemClock.elapsedRealtime();
+        int count = 0;
+
+        // the same songs PlaylistSongLoader shows, with their paths
+        try (Cursor cursor = context.getContentResolver().query(
+                Playlists.Members.getContentUri("external", playlistId),
+                new String[]{
+                        /* 0 */
+                        AudioColumns.TITLE,
+                        /* 1 */
+                        AudioColumns.ARTIST,
+                        /* 2 */
+                        AudioColumns.DURATION,
+                        /* 3 */
+                        AudioColumns.DATA,
+                }, MusicUtils.MUSIC_ONLY_SELECTION, null, Playlists.Members.DEFAULT_SORT_ORDER);
+             ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "wt");
+             BufferedWriter writer = new BufferedWriter(Channels.newWriter(
+                     new FileOutputStream(pfd.getFileDescriptor()).getChannel(),
+                     StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE)) {
+            if (cursor == null) {
+                return -1;
+            }
+
+            writer.write("#EXTM3U\n");
+            while (cursor.moveToNext()) {
+                final String path = cursor.getString(3);
+                if (TextUtils.isEmpty(path)) {
+                    continue;
+                }
+                final String artist = cursor.getString(1);
+                final String title = cursor.getString(0);
+                writer.write("#EXTINF:");
+                writer.write(Long.toString(cursor.getLong(2) / 1000));
+                writer.write(',');
+                if (!TextUtils.isEmpty(artist)) {
+                    writer.write(artist);
+                    writer.write(" - ");
+                }
+                writer.write(!TextUtils.isEmpty(title) ? title
+                        : path.substring(path.lastIndexOf('/') + 1));
+                writer.write('\n');
+                writer.write(path);
+                writer.write('\n');
+                count++;
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to write playlist " + playlistId + " to " + uri, e);
+            return -1;
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Exported " + count + " songs of playlist " + playlistId + " in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        return count;
+    }
+
+    /**
+     * Resolves a line of a PLS file, only the FileN=path lines are used
+     */
+    private static void addPlsLine(final String line, final PathIndex index,
+                                   final Entries entries) {
+        final int separator = line.indexOf('=');
+        if (separator <= PLS_FILE.length()
+                || !line.regionMatches(true, 0, PLS_FILE, 0, PLS_FILE.length())) {
+            return;
+        }
+
+        try {
+            final int number = Integer.parseInt(
+                    line.substring(PLS_FILE.length(), separator).trim());
+            entries.add(number, index.resolve(line.substring(separator + 1).trim()));
+        } catch (NumberFormatException e) {
+            // not a path entry
+        }
+    }
+
+    /**
+     * @return the display name of the file
+     */
+    private static String getDisplayName(final Context context, final Uri uri) {
+        String name = null;
+        try (Cursor cursor = context.getContentResolver().query(uri,
+                new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                name = cursor.getString(0);
+            }
+        }
+        if (TextUtils.isEmpty(name)) {
+            name = uri.getLastPathSegment();
+        }
+        return name != null ? name : "";
+    }
+
+    /**
+     * @return the folder of the file on the storage, or null if the provider doesn't tell
+     */
+    private static String getDirectory(final Context context, final Uri uri) {
+        String path = null;
+        if ("file".equals(uri.getScheme())) {
+            path = uri.getPath();
+        } else if (DocumentsContract.isDocumentUri(context, uri)) {
+            if (EXTERNAL_STORAGE_AUTHORITY.equals(uri.getAuthority())) {
+                // the document id is the volume followed by the path on the volume
+                final String documentId = DocumentsContract.getDocumentId(uri);
+                final int separator = documentId.indexOf(':');
+                if (separator > 0) {
+                    final String volume = documentId.substring(0, separator);
+                    path = (PRIMARY_VOLUME.equals(volume)
+                            ? Environment.getExternalStorageDirectory().getPath()
+                            : "/storage/" + volume) + '/' + documentId.substring(separator + 1);
+                }
+            }
+        } else {
+            // MediaStore and some file managers still hand out the path
+            try (Cursor cursor = context.getContentResolver().query(uri,
+                    new String[]{MediaStore.MediaColumns.DATA}, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    path = cursor.getString(0);
+                }
+            } catch (RuntimeException e) {
+                // the provider doesn't know the column
+            }
+        }
+
+        final int slash = path != null ? path.lastIndexOf('/') : -1;
+        return slash > 0 ? path.substring(0, slash) : null;
+    }
+
+    /**
+     * @return the name, followed by a number if a playlist with that name already exists
+     */
+    private static String getUniqueName(final Context context, final String name) {
+        String uniqueName = name;
+        int number = 2;
+        while (MusicUtils.getIdForPlaylist(context, uniqueName) >= 0) {
+            uniqueName = name + " " + number++;
+        }
+        return uniqueName;
+    }
+
+    /**
+     * The resolved entries of a playlist file and the position each entry has in the file
+     */
+    private static final class Entries {
+        private int[] mNumbers = new int[256];
+        private long[] mIds = new long[256];
+        private int mSize;
+
+        void add(final int number, final long id) {
+            if (mSize == mIds.length) {
+                mNumbers = Arrays.copyOf(mNumbers, mSize * 2);
+                mIds = Arrays.copyOf(mIds, mSize * 2);
+            }
+            mNumbers[mSize] = number;
+            mIds[mSize] = id;
+            mSize++;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        /**
+         * @return the ids of the resolved entries, ordered by their position
+         */
+        long[] getIds() {
+            boolean sorted = true;
+            for (int i = 1; i < mSize && sorted; i++) {
+                sorted = mNumbers[i - 1] <= mNumbers[i];
+            }
+
+            // PLS entries are numbered and can come in any order
+            final Integer[] order = new Integer[mSize];
+            for (int i = 0; i < mSize; i++) {
+                order[i] = i;
+            }
+            if (!sorted) {
+                Arrays.sort(order, (a, b) -> Integer.compare(mNumbers[a], mNumbers[b]));
+            }
+
+            final long[] ids = new long[mSize];
+            int count = 0;
+            for (final int i : order) {
+                if (mIds[i] >= 0) {
+                    ids[count++] = mIds[i];
+                }
+            }
+            return Arrays.copyOf(ids, count);
+        }
+    }
+
+    /**
+     * Finds the songs for the paths of a playlist file.  The paths of a file that was written on
+     * another device rarely match the paths in MediaStore, so songs are found by their file name
+     * and the song with the most matching parent folders wins.  At least one parent folder has to
+     * match and a tie is ambiguous, so a common name like track01.mp3 isn't resolved to a song
+     * of another album.  Relative paths are resolved against the folder of the playlist file.
+     */
+    private static final class PathIndex {
+        /* Folder of the playlist file, or null if unknown */
+        private final String mDirectory;
+        private final long[] mIds;
+        private final String[] mPaths;
+        /* Next row with the same file name, or -1 */
+        private final int[] mNext;
+        /* First row of each lower case file name */
+        private final HashMap<String, Integer> mFirst;
+
+        PathIndex(final Context context, final String directory) {
+            mDirectory = directory;
+            try (Cursor cursor = context.getContentResolver().query(
+                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    new String[]{
+                            /* 0 */
+                            AudioColumns._ID,
+                            /* 1 */
+                            AudioColumns.DATA,
+                    }, MusicUtils.MUSIC_ONLY_SELECTION, null, null)) {
+                final int count = cursor != null ? cursor.getCount() : 0;
+                mIds = new long[count];
+                mPaths = new String[count];
+                mNext = new int[count];
+                mFirst = new HashMap<>(count * 2);
+
+                for (int row = 0; cursor != null && cursor.moveToNext(); row++) {
+                    mIds[row] = cursor.getLong(0);
+                    mPaths[row] = cursor.getString(1);
+                    final Integer first = mFirst.put(getFileName(mPaths[row]), row);
+                    mNext[row] = first != null ? first : -1;
+                }
+            }
+        }
+
+        /**
+         * @param entry a path, file uri or url of a playlist file
+         * @return the id of the song or -1 if no song matches
+         */
+        long resolve(String entry) {
+            if (entry.startsWith("file:")) {
+                entry = Uri.parse(entry).getPath();
+            } else if (entry.contains("://")) {
+                // streams can't be part of a MediaStore playlist
+                return -1;
+            }
+            if (TextUtils.isEmpty(entry)) {
+                return -1;
+            }
+            entry = entry.replace('\\', '/');
+            if (!isAbsolute(entry) && mDirectory != null) {
+                entry = normalize(mDirectory + '/' + entry);
+            }
+
+            final Integer first = mFirst.get(getFileName(entry));
+            if (first == null) {
+                return -1;
+            }
+
+            if (entry.indexOf('/') < 0) {
+                // a bare file name can only be trusted if no other song has that name
+                return mNext[first] < 0 ? mIds[first] : -1;
+            }
+
+            int best = -1;
+            // the file name is one segment, at least one parent folder has to match as well
+            int bestSegments = 1;
+            boolean ambiguous = false;
+            for (int row = first; row >= 0; row = mNext[row]) {
+                final int segments = countMatchingSegments(entry, mPaths[row]);
+                if (segments > bestSegments) {
+                    best = row;
+                    bestSegments = segments;
+                    ambiguous = false;
+                } else if (segments == bestSegments && best >= 0) {
+                    ambiguous = true;
+                }
+            }
+            return best >= 0 && !ambiguous ? mIds[best] : -1;
+        }
+
+        /**
+         * @return whether the path is absolute, either on Android or on Windows
+         */
+        private static boolean isAbsolute(final String path) {
+            return path.startsWith("/") || (path.length() > 2 && path.charAt(1) == ':'
+                    && path.charAt(2) == '/');
+        }
+
+        /**
+         * @return the path without any . and .. segments
+         */
+        private static String normalize(final String path) {
+            final ArrayList<String> segments = new ArrayList<>();
+            for (final String segment : path.split("/")) {
+                if (segment.isEmpty() || ".".equals(segment)) {
+                    continue;
+                }
+                if ("..".equals(segment)) {
+                    if (!segments.isEmpty()) {
+                        segments.remove(segments.size() - 1);
+                    }
+                } else {
+                    segments.add(segment);
+                }
+            }
+            return '/' + TextUtils.join("/", segments);
+        }
+
+        private static String getFileName(final String path) {
+            if (path == null) {
+                return "";
+            }
+            return path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * @return the number of trailing path segments both paths have in common
+         */
+        private static int countMatchingSegments(final String a, final String b) {
+            if (b == null) {
+                return 0;
+            }
+
+            int i = a.length() - 1;
+            int j = b.length() - 1;
+            int segments = 0;
+            while (i >= 0 && j >= 0) {
+                final char c = Character.toLowerCase(a.charAt(i));
+                if (c != Character.toLowerCase(b.charAt(j))) {
+                    break;
+                }
+                if (c == '/') {
+                    segments++;
+                }
+                i--;
+                j--;
+            }
+            // a relative path that matched completely also ends at a folder boundary
+            if (i < 0 && a.charAt(0) != '/' && (j < 0 || b.charAt(j) == '/')) {
+                segments++;
+            }
+            return segments;
+        }
+    }
+}
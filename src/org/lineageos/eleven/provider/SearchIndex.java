@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import org.lineageos.eleven.utils.MusicUtils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+/**
+ * In memory index to search the songs of the {@link MusicCatalog} by their title, artist and
+ * album.  Every word of the query has to be the prefix of a word of one of these fields, and the
+ * matches are ranked by the {@link SongPlayCount} score.
+ * <p>
+ * The words of the library are kept in a sorted dictionary, so the words with a given prefix are
+ * a range of it, and the songs of each word are stored in that same order in one array.  The
+ * words of a catalog string are remembered, so when the catalog changes only new strings are
+ * split into words again.
+ */
+public class SearchIndex {
+    private static final String TAG = SearchIndex.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* How long the play count ranking is used before it is read again */
+    private static final long SCORE_REFRESH_INTERVAL = 60 * 1000;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private static final int[] NO_WORDS = new int[0];
+
+    private static SearchIndex sInstance = null;
+
+    private final MusicCatalog mCatalog;
+    private final SongPlayCount mPlayCount;
+
+    /* The words of every catalog string, by the index of the string */
+    private String[] mIndexedStrings = new String[0];
+    private int[][] mStringWords = new int[0][];
+
+    /* Every word ever seen, by word id */
+    private final ArrayList<String> mWords = new ArrayList<>();
+    private final HashMap<String, Integer> mWordIds = new HashMap<>();
+
+    /* The dictionary, sorted, and the rank of each word id in it */
+    private String[] mSortedWords = new String[0];
+    private int[] mWordRanks = NO_WORDS;
+
+    /* The snapshot the rows below belong to */
+    private MusicCatalog.Snapshot mSnapshot;
+
+    /* Word ranks of each row, the title words come first */
+    private int[] mRowOffsets = NO_WORDS;
+    private int[] mRowWords = NO_WORDS;
+    private int[] mRowTitleWords = NO_WORDS;
+
+    /* Rows of each word rank, in ascending order */
+    private int[] mRankOffsets = new int[1];
+    private int[] mRankRows = NO_WORDS;
+
+    /* Play count ranking of each row, 0 if the song wasn't played */
+    private int[] mRowScores = NO_WORDS;
+    private long mScoresTime;
+
+    /* Marks the rows a query already looked at */
+    private int[] mRowStamps = NO_WORDS;
+    private int mStamp;
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized SearchIndex getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new SearchIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor of <code>SearchIndex</code>
+     *
+     * @param context The {@link Context} to use
+     */
+    private SearchIndex(final Context context) {
+        mCatalog = MusicCatalog.getInstance(context);
+        mPlayCount = SongPlayCount.getInstance(context);
+    }
+
+    /**
+     * Finds the songs whose title, artist or album contain a word starting with each word of the
+     * query.  Songs that are played more come first, and songs whose title matches the first
+     * word of the query come before the others with the same score.
+     *
+     * @param query the text typed by the user
+     * @param limit the maximum number of results
+     * @return the ids of the matching songs
+     */
+    @WorkerThread
+    public synchronized long[] search(final String query, final int limit) {
+        final String[] terms = splitWords(query);
+        if (terms.length == 0 || limit <= 0) {
+            return new long[0];
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        update();
+
+        // the ranks of the words with the prefix of each term
+        final int[] low = new int[terms.length];
+        final int[] high = new int[terms.length];
+        int rarest = 0;
+        for (int i = 0; i < terms.length; i++) {
+            low[i] = lowerBound(mSortedWords, terms[i]);
+            high[i] = lowerBound(mSortedWords, terms[i] + Character.MAX_VALUE);
+            if (low[i] == high[i]) {
+                return new long[0];
+            }
+            if (mRankOffsets[high[i]] - mRankOffsets[low[i]]
+                    < mRankOffsets[high[rarest]] - mRankOffsets[low[rarest]]) {
+                rarest = i;
+            }
+        }
+
+        if (++mStamp == Integer.MAX_VALUE) {
+            Arrays.fill(mRowStamps, 0);
+            mStamp = 1;
+        }
+
+        // walk the rows of the rarest term and keep the best ones in a min heap
+        final long[] heap = new long[limit];
+        int heapSize = 0;
+        for (int p = mRankOffsets[low[rarest]]; p < mRankOffsets[high[rarest]]; p++) {
+            final int row = mRankRows[p];
+            if (mRowStamps[row] == mStamp) {
+                continue;
+            }
+            mRowStamps[row] = mStamp;
+
+            boolean matches = true;
+            for (int i = 0; i < terms.length && matches; i++) {
+                matches = i == rarest || containsWord(row, low[i], high[i], false);
+            }
+            if (!matches) {
+                continue;
+            }
+
+            final long key = makeKey(row, containsWord(row, low[0], high[0], true));
+            if (heapSize < limit) {
+                heap[heapSize] = key;
+                siftUp(heap, heapSize++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        Arrays.sort(heap, 0, heapSize);
+        final long[] ids = new long[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            ids[i] = mSnapshot.getSongId(getRow(heap[heapSize - 1 - i]));
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Found " + ids.length + " songs for \"" + query + "\" in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        return ids;
+    }
+
+    /**
+     * Catches up with the catalog and the play counts
+     */
+    private void update() {
+        final MusicCatalog.Snapshot snapshot = mCatalog.getSnapshot();
+        if (snapshot != mSnapshot) {
+            final long start = SystemClock.elapsedRealtime();
+            indexStrings(snapshot.mStrings);
+            indexRows(snapshot);
+            mSnapshot = snapshot;
+            mScoresTime = 0;
+
+            if (DEBUG) {
+                Log.d(TAG, "Indexed " + snapshot.getSongCount() + " songs with "
+                        + mWords.size() + " words in "
+                        + (SystemClock.elapsedRealtime() - start) + "ms");
+            }
+        }
+
+        final long now = SystemClock.elapsedRealtime();
+        if (mScoresTime == 0 || now - mScoresTime > SCORE_REFRESH_INTERVAL) {
+            updateScores();
+            mScoresTime = now;
+        }
+    }
+
+    /**
+     * Splits the catalog strings that weren't indexed yet into words
+     */
+    private void indexStrings(final String[] strings) {
+        // the string pool of the catalog only grows, so usually only the end is new
+        int first = 0;
+        final int common = Math.min(strings.length, mIndexedStrings.length);
+        while (first < common && strings[first] == mIndexedStrings[first]) {
+            first++;
+        }
+
+        final int wordCount = mWords.size();
+        final int[][] stringWords = Arrays.copyOf(mStringWords, strings.length);
+        for (int i = first; i < strings.length; i++) {
+            final String[] words = splitWords(strings[i]);
+            final int[] ids = new int[words.length];
+            for (int j = 0; j < words.length; j++) {
+                Integer id = mWordIds.get(words[j]);
+                if (id == null) {
+                    id = mWords.size();
+                    mWords.add(words[j]);
+                    mWordIds.put(words[j], id);
+                }
+                ids[j] = id;
+            }
+            stringWords[i] = ids;
+        }
+        mIndexedStrings = strings;
+        mStringWords = stringWords;
+
+        if (mWords.size() != wordCount) {
+            // sort the dictionary again
+            final Integer[] order = new Integer[mWords.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> mWords.get(a).compareTo(mWords.get(b)));
+
+            mSortedWords = new String[order.length];
+            mWordRanks = new int[order.length];
+            for (int rank = 0; rank < order.length; rank++) {
+                mSortedWords[rank] = mWords.get(order[rank]);
+                mWordRanks[order[rank]] = rank;
+            }
+        }
+    }
+
+    /**
+     * Builds the word ranks of each row and the rows of each word rank
+     */
+    private void indexRows(final MusicCatalog.Snapshot snapshot) {
+        final int rows = snapshot.getSongCount();
+        final int[] rowOffsets = new int[rows + 1];
+        final int[] rowTitleWords = new int[rows];
+        int[] rowWords = new int[rows * 4];
+
+        // a word can be part of several fields of a row but is only listed once
+        final int[] seen = new int[mWords.size()];
+        int size = 0;
+        for (int row = 0; row < rows; row++) {
+            rowOffsets[row] = size;
+            final int[][] fields = new int[][]{
+                    mStringWords[snapshot.mSongTitles[row]],
+                    mStringWords[snapshot.mSongArtists[row]],
+                    mStringWords[snapshot.mSongAlbums[row]],
+            };
+            for (int f = 0; f < fields.length; f++) {
+                for (final int word : fields[f]) {
+                    if (seen[word] == row + 1) {
+                        continue;
+                    }
+                    seen[word] = row + 1;
+                    if (size == rowWords.length) {
+                        rowWords = Arrays.copyOf(rowWords, size * 2);
+                    }
+                    rowWords[size++] = mWordRanks[word];
+                }
+                if (f == 0) {
+                    rowTitleWords[row] = size - rowOffsets[row];
+                }
+            }
+        }
+        rowOffsets[rows] = size;
+
+        // invert the rows into postings by word rank
+        final int[] rankOffsets = new int[mSortedWords.length + 1];
+        for (int i = 0; i < size; i++) {
+            rankOffsets[rowWords[i] + 1]++;
+        }
+        for (int rank = 0; rank < mSortedWords.length; rank++) {
+            rankOffsets[rank + 1] += rankOffsets[rank];
+        }
+        final int[] fill = Arrays.copyOf(rankOffsets, mSortedWords.length);
+        final int[] rankRows = new int[size];
+        for (int row = 0; row < rows; row++) {
+            for (int i = rowOffsets[row]; i < rowOffsets[row + 1]; i++) {
+                rankRows[fill[rowWords[i]]++] = row;
+            }
+        }
+
+        mRowOffsets = rowOffsets;
+        mRowWords = Arrays.copyOf(rowWords, size);
+        mRowTitleWords = rowTitleWords;
+        mRankOffsets = rankOffsets;
+        mRankRows = rankRows;
+        mRowStamps = new int[rows];
+        mStamp = 0;
+    }
+
+    /**
+     * Reads the play count ranking, the most played song gets the highest score
+     */
+    private void updateScores() {
+        final int[] scores = new int[mSnapshot.getSongCount()];
+        try (Cursor cursor = mPlayCount.getTopPlayedResults(0)) {
+            if (cursor != null) {
+                int score = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    final int row = mSnapshot.indexOfSong(cursor.getLong(0));
+                    if (row >= 0) {
+                        scores[row] = score;
+                    }
+                    score--;
+                }
+            }
+        }
+        mRowScores = scores;
+    }
+
+    /**
+     * @return true if the row has a word with a rank between low and high
+     */
+    private boolean containsWord(final int row, final int low, final int high,
+                                 final boolean titleOnly) {
+        final int end = titleOnly
+                ? mRowOffsets[row] + mRowTitleWords[row] : mRowOffsets[row + 1];
+        for (int i = mRowOffsets[row]; i < end; i++) {
+            if (mRowWords[i] >= low && mRowWords[i] < high) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Packs the ranking of a row into a key that sorts like the results: score, title match and
+     * then the row itself
+     */
+    private long makeKey(final int row, final boolean titleMatch) {
+        return ((long) mRowScores[row] << 32) | (titleMatch ? 1L << 31 : 0)
+                | (Integer.MAX_VALUE - row);
+    }
+
+    private static int getRow(final long key) {
+        return Integer.MAX_VALUE - (int) (key & Integer.MAX_VALUE);
+    }
+
+    private static void siftUp(final long[] heap, int i) {
+        final long key = heap[i];
+        while (i > 0 && heap[(i - 1) / 2] > key) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = key;
+    }
+
+    private static void siftDown(final long[] heap, final int size) {
+        final long key = heap[0];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= key) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = key;
+    }
+
+    /**
+     * @return the index of the first word that isn't smaller than the key
+     */
+    private static int lowerBound(final String[] words, final String key) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Folds the text like {@link MusicUtils#getTrimmedName} and without accents, and splits it
+     * into words
+     */
+    private static String[] splitWords(final String text) {
+        String name = MusicUtils.getTrimmedName(text);
+        if (name == null || name.isEmpty()) {
+            return new String[0];
+        }
+        name = DIACRITICS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD))
+                .replaceAll("");
+
+        final ArrayList<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= name.length(); i++) {
+            final boolean letter = i < name.length() && Character.isLetterOrDigit(name.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(name.substring(start, i));
+                start = -1;
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+}
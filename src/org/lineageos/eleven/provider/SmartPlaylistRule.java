@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
+import org.lineageos.eleven.provider.SmartPlaylistStore.LastPlayedColumns;
+import org.lineageos.eleven.provider.SongPlayCount.SongPlayCountColumns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A condition a song has to meet to be part of a user defined smart playlist.  Conditions on the
+ * song itself compile to a MediaStore selection, conditions on how the song was played compile
+ * to a query of the song ids in {@link MusicDB} that either have to or must not match.
+ */
+public final class SmartPlaylistRule {
+    /* Separates the parts of a rule and the rules of a playlist when they are stored */
+    private static final char PART_SEPARATOR = '\t';
+    private static final char RULE_SEPARATOR = '\n';
+
+    public enum Field {
+        /* The name of a genre of the song */
+        GENRE,
+        /* The year the song was released */
+        YEAR,
+        /* The length of the song in seconds */
+        DURATION,
+        /* The number of days since the song was added */
+        DATE_ADDED,
+        /* The number of times the song was played in the last year */
+        PLAY_COUNT,
+        /* The number of days since the song was played, never played songs are infinitely old */
+        LAST_PLAYED
+    }
+
+    public enum Operator {
+        IS,
+        AT_LEAST,
+        AT_MOST
+    }
+
+    public final Field mField;
+    public final Operator mOperator;
+    public final String mValue;
+
+    /**
+     * @param field    the field the rule checks
+     * @param operator how the field is compared with the value
+     * @param value    a genre name or a number, depending on the field
+     * @throws IllegalArgumentException if the operator or value don't fit the field
+     */
+    public SmartPlaylistRule(final Field field, final Operator operator, final String value) {
+        if (field == Field.GENRE) {
+            if (operator != Operator.IS || TextUtils.isEmpty(value)
+                    || value.indexOf(PART_SEPARATOR) >= 0 || value.indexOf(RULE_SEPARATOR) >= 0) {
+                throw new IllegalArgumentException("Invalid genre rule " + value);
+            }
+        } else {
+            if (Long.parseLong(value) < 0) {
+                throw new IllegalArgumentException("Negative value " + value);
+            }
+            if (operator == Operator.IS && field != Field.YEAR && field != Field.PLAY_COUNT) {
+                throw new IllegalArgumentException(field + " can only be compared by range");
+            }
+        }
+        mField = field;
+        mOperator = operator;
+        mValue = value;
+    }
+
+    /**
+     * @return true if the rule compiles to a MediaStore selection
+     */
+    boolean isMediaStoreRule() {
+        return mField == Field.YEAR || mField == Field.DURATION || mField == Field.DATE_ADDED;
+    }
+
+    /**
+     * @return true if whether a song matches changes when it is played
+     */
+    boolean dependsOnPlays() {
+        return mField == Field.PLAY_COUNT || mField == Field.LAST_PLAYED;
+    }
+
+    /**
+     * @return true if whether a song matches changes as time passes
+     */
+    boolean dependsOnTime() {
+        return mField == Field.DATE_ADDED || mField == Field.LAST_PLAYED;
+    }
+
+    /**
+     * Appends the MediaStore selection of a song rule
+     *
+     * @param selection the selection to append to
+     * @param args      the selection arguments to append to
+     * @param now       the current time in milliseconds
+     */
+    void appendSelection(final StringBuilder selection, final List<String> args,
+                         final long now) {
+        final long value = Long.parseLong(mValue);
+        switch (mField) {
+            case YEAR:
+                selection.append(AudioColumns.YEAR).append(compare(mOperator));
+                args.add(mValue);
+                break;
+            case DURATION:
+                selection.append(AudioColumns.DURATION).append(compare(mOperator));
+                args.add(Long.toString(TimeUnit.SECONDS.toMillis(value)));
+                break;
+            case DATE_ADDED:
+                // added at most n days ago is added after the day n days ago
+                selection.append(AudioColumns.DATE_ADDED).append(compare(invert(mOperator)));
+                args.add(Long.toString(TimeUnit.MILLISECONDS.toSeconds(now)
+                        - TimeUnit.DAYS.toSeconds(value)));
+                break;
+            default:
+                throw new IllegalStateException(mField + " is not a MediaStore rule");
+        }
+    }
+
+    /**
+     * Compiles a play rule to a query of the song ids in {@link MusicDB} that the rule is about.
+     * Rules that also match songs without play data, like songs that weren't played in a month,
+     * are compiled to the songs that don't match, see {@link #isExclusion()}.
+     *
+     * @param args the selection arguments to append to
+     * @param now  the current time in milliseconds
+     * @return the query or null if the rule matches every song
+     */
+    String compileQuery(final List<String> args, final long now) {
+        final long value = Long.parseLong(mValue);
+        switch (mField) {
+            case PLAY_COUNT: {
+                final String playCount = SongPlayCount.makePlayCountExpression(now);
+                final String where;
+                if (mOperator == Operator.AT_LEAST) {
+                    if (value == 0) {
+                        return null;
+                    }
+                    where = playCount + ">=?";
+                } else if (mOperator == Operator.IS && value > 0) {
+                    where = playCount + "=?";
+                } else {
+                    // songs that were played more often than allowed
+                    where = playCount + ">?";
+                }
+                args.add(mValue);
+                return "SELECT " + SongPlayCountColumns.ID + " FROM " + SongPlayCountColumns.NAME
+                        + " WHERE " + where;
+            }
+            case LAST_PLAYED:
+                // the songs played in the last n days, the rule either wants only those or
+                // everything else
+                args.add(Long.toString(now - TimeUnit.DAYS.toMillis(value)));
+                return "SELECT " + LastPlayedColumns.ID + " FROM " + LastPlayedColumns.NAME
+                        + " WHERE " + LastPlayedColumns.LAST_PLAYED
+                        + (mOperator == Operator.AT_MOST ? ">=?" : ">?");
+            default:
+                throw new IllegalStateException(mField + " is not a play rule");
+        }
+    }
+
+    /**
+     * @return true if the songs of {@link #compileQuery} are the ones that don't match
+     */
+    boolean isExclusion() {
+        switch (mField) {
+            case PLAY_COUNT:
+                return mOperator == Operator.AT_MOST
+                        || (mOperator == Operator.IS && Long.parseLong(mValue) == 0);
+            case LAST_PLAYED:
+                return mOperator == Operator.AT_LEAST;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param rules the rules of a playlist
+     * @return the rules in the form they are stored in
+     */
+    public static String format(final List<SmartPlaylistRule> rules) {
+        final StringBuilder builder = new StringBuilder();
+        for (final SmartPlaylistRule rule : rules) {
+            if (builder.length() > 0) {
+                builder.append(RULE_SEPARATOR);
+            }
+            builder.append(rule.mField.name()).append(PART_SEPARATOR)
+                    .append(rule.mOperator.name()).append(PART_SEPARATOR)
+                    .append(rule.mValue);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param rules rules returned by {@link #format}
+     * @return the rules, rules that can't be read anymore are skipped
+     */
+    public static List<SmartPlaylistRule> parse(final String rules) {
+        final List<SmartPlaylistRule> result = new ArrayList<>();
+        if (TextUtils.isEmpty(rules)) {
+            return result;
+        }
+
+        for (final String rule : TextUtils.split(rules, String.valueOf(RULE_SEPARATOR))) {
+            final String[] parts = TextUtils.split(rule, String.valueOf(PART_SEPARATOR));
+            if (parts.length != 3) {
+                continue;
+            }
+            try {
+                result.add(new SmartPlaylistRule(Field.valueOf(parts[0]),
+                        Operator.valueOf(parts[1]), parts[2]));
+            } catch (IllegalArgumentException e) {
+                // written by a different version, ignore it
+            }
+        }
+        return result;
+    }
+
+    private static String compare(final Operator operator) {
+        switch (operator) {
+            case AT_LEAST:
+                return ">=?";
+            case AT_MOST:
+                return "<=?";
+            default:
+                return "=?";
+        }
+    }
+
+    private static Operator invert(final Operator operator) {
+        switch (operator) {
+            case AT_LEAST:
+                return Operator.AT_MOST;
+            case AT_MOST:
+                return Operator.AT_LEAST;
+            default:
+                return operator;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SmartPlaylistRule rule = (SmartPlaylistRule) o;
+        return mField == rule.mField && mOperator == rule.mOperator
+                && Objects.equals(mValue, rule.mValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mField, mOperator, mValue);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SmartPlaylistRule[" + mField + " " + mOperator + " " + mValue + "]";
+    }
+}
@@ -0,0 +1,623 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import org.lineageos.eleven.model.Playlist;
+import org.lineageos.eleven.provider.RecentStore.RecentStoreColumns;
+import org.lineageos.eleven.utils.MusicUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This db stores the user defined smart playlists and the songs that currently match their
+ * {@link SmartPlaylistRule}s, so that opening one reads the stored songs like a normal playlist.
+ * <p>
+ * The songs are kept up to date incrementally: a play only checks the played song against the
+ * playlists with play rules, and new songs in the MediaStore are only checked against the rules
+ * once a playlist is opened.  Playlists are only evaluated from scratch after songs were changed
+ * or deleted, and once an hour if their rules depend on the current time.
+ */
+public class SmartPlaylistStore {
+    private static final String TAG = SmartPlaylistStore.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /* The playlist ids of the user defined smart playlists are below the built in ones */
+    private static final long FIRST_PLAYLIST_ID = -1000;
+
+    /* How long songs matched by rules about the age of a song or play are used */
+    private static final long REFRESH_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    /* The states of the stored songs of a playlist */
+    private static final int STATE_CURRENT = 0;
+    private static final int STATE_NEW_SONGS = 1;
+    private static final int STATE_STALE = 2;
+
+    private static final String MUSIC_SELECTION = AudioColumns.IS_MUSIC + "=1 AND "
+            + AudioColumns.TITLE + "!=''";
+
+    private static final int MSG_SONG_PLAYED = 1;
+    private static final int MSG_CREATE = 2;
+    private static final int MSG_DELETE = 3;
+
+    private static SmartPlaylistStore sInstance = null;
+
+    private final Context mContext;
+    private final MusicDB mMusicDatabase;
+    private final Handler mHandler;
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized SmartPlaylistStore getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new SmartPlaylistStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor of <code>SmartPlaylistStore</code>
+     *
+     * @param context The {@link Context} to use
+     */
+    private SmartPlaylistStore(final Context context) {
+        mContext = context;
+        mMusicDatabase = MusicDB.getInstance(context);
+
+        final HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(@NonNull final Message msg) {
+                if (msg.what == MSG_SONG_PLAYED) {
+                    updatePlayedSong((Long) msg.obj);
+                } else if (msg.what == MSG_CREATE) {
+                    final Object[] playlist = (Object[]) msg.obj;
+                    @SuppressWarnings("unchecked")
+                    final List<SmartPlaylistRule> rules = (List<SmartPlaylistRule>) playlist[1];
+                    // evaluate right away, so the menus have the songs before it is opened
+                    getSongIds(insert((String) playlist[0], rules));
+                    MusicUtils.refresh();
+                } else if (msg.what == MSG_DELETE) {
+                    remove((Long) msg.obj);
+                    MusicUtils.refresh();
+                }
+            }
+        };
+
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(final boolean selfChange, final Uri uri) {
+                // only called directly before R, which doesn't report the kind of change
+                onChange(selfChange, uri, 0);
+            }
+
+            @Override
+            public void onChange(final boolean selfChange, final Uri uri, final int flags) {
+                onMediaStoreChange(MediaStoreChanges.classify(uri, flags));
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, observer);
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Genres.EXTERNAL_CONTENT_URI, true, observer);
+    }
+
+    public void onCreate(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SmartPlaylistColumns.NAME + " (" +
+                SmartPlaylistColumns.ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                SmartPlaylistColumns.PLAYLIST_NAME + " TEXT NOT NULL," +
+                SmartPlaylistColumns.RULES + " TEXT NOT NULL," +
+                SmartPlaylistColumns.STATE + " INT NOT NULL," +
+                SmartPlaylistColumns.EVALUATED + " LONG NOT NULL DEFAULT 0," +
+                SmartPlaylistColumns.LAST_SONG_ID + " LONG NOT NULL DEFAULT 0);");
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + MemberColumns.NAME + " (" +
+                MemberColumns.PLAYLIST_ID + " LONG NOT NULL," +
+                MemberColumns.ID + " LONG NOT NULL," +
+                "PRIMARY KEY (" + MemberColumns.PLAYLIST_ID + "," + MemberColumns.ID + "));");
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + LastPlayedColumns.NAME + " (" +
+                LastPlayedColumns.ID + " LONG NOT NULL PRIMARY KEY," +
+                LastPlayedColumns.LAST_PLAYED + " LONG NOT NULL);");
+
+        // start with what the recently played list still knows
+        db.execSQL("INSERT OR REPLACE INTO " + LastPlayedColumns.NAME + " SELECT " +
+                RecentStoreColumns.ID + ",max(" + RecentStoreColumns.TIME_PLAYED + ") FROM " +
+                RecentStoreColumns.NAME + " GROUP BY " + RecentStoreColumns.ID);
+    }
+
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion) {
+        // these tables were created in version 6
+        if (oldVersion < 6) {
+            onCreate(db);
+        }
+    }
+
+    public void onDowngrade(final SQLiteDatabase db) {
+        // If we ever have downgrade, drop the tables to be safe
+        db.execSQL("DROP TABLE IF EXISTS " + SmartPlaylistColumns.NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + MemberColumns.NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + LastPlayedColumns.NAME);
+        onCreate(db);
+    }
+
+    /**
+     * @param playlistId a playlist id as used by {@link Playlist}
+     * @return true if the id belongs to a user defined smart playlist
+     */
+    public static boolean isSmartPlaylist(final long playlistId) {
+        return playlistId < FIRST_PLAYLIST_ID;
+    }
+
+    private static long toPlaylistId(final long id) {
+        return FIRST_PLAYLIST_ID - id;
+    }
+
+    private static String toRowId(final long playlistId) {
+        return Long.toString(FIRST_PLAYLIST_ID - playlistId);
+    }
+
+    /**
+     * Creates a smart playlist and evaluates its songs in the background, the lists are
+     * refreshed once it is done
+     *
+     * @param name  the name of the playlist
+     * @param rules the rules every song of the playlist has to match
+     */
+    public void create(final String name, final List<SmartPlaylistRule> rules) {
+        mHandler.obtainMessage(MSG_CREATE, new Object[]{name, rules}).sendToTarget();
+    }
+
+    /**
+     * Deletes a smart playlist in the background, the lists are refreshed once it is done
+     *
+     * @param playlistId the playlist id of the smart playlist to delete
+     */
+    public void delete(final long playlistId) {
+        mHandler.obtainMessage(MSG_DELETE, playlistId).sendToTarget();
+    }
+
+    /**
+     * @return the playlist id of the new playlist
+     */
+    private long insert(final String name, final List<SmartPlaylistRule> rules) {
+        final ContentValues values = new ContentValues(3);
+        values.put(SmartPlaylistColumns.PLAYLIST_NAME, name);
+        values.put(SmartPlaylistColumns.RULES, SmartPlaylistRule.format(rules));
+        values.put(SmartPlaylistColumns.STATE, STATE_STALE);
+        return toPlaylistId(mMusicDatabase.getWritableDatabase()
+                .insert(SmartPlaylistColumns.NAME, null, values));
+    }
+
+    private synchronized void remove(final long playlistId) {
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            database.delete(SmartPlaylistColumns.NAME, SmartPlaylistColumns.ID + "=?",
+                    new String[]{toRowId(playlistId)});
+            database.delete(MemberColumns.NAME, MemberColumns.PLAYLIST_ID + "=?",
+                    new String[]{toRowId(playlistId)});
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * @return the smart playlists sorted by name, the song count is only known for playlists
+     * whose songs are up to date and -1 otherwise
+     */
+    @WorkerThread
+    public List<Playlist> getPlaylists() {
+        final long expired = System.currentTimeMillis() - REFRESH_INTERVAL;
+        final List<Playlist> playlists = new ArrayList<>();
+        try (Cursor c = mMusicDatabase.getReadableDatabase().rawQuery("SELECT "
+                /* 0 */
+                + SmartPlaylistColumns.ID + ","
+                /* 1 */
+                + SmartPlaylistColumns.PLAYLIST_NAME + ","
+                /* 2 */
+                + SmartPlaylistColumns.RULES + ","
+                /* 3 */
+                + SmartPlaylistColumns.STATE + ","
+                /* 4 */
+                + SmartPlaylistColumns.EVALUATED + ","
+                /* 5 */
+                + "(SELECT count(*) FROM " + MemberColumns.NAME + " WHERE "
+                + MemberColumns.PLAYLIST_ID + "=" + SmartPlaylistColumns.ID + ")"
+                + " FROM " + SmartPlaylistColumns.NAME
+                + " ORDER BY " + SmartPlaylistColumns.PLAYLIST_NAME + " COLLATE NOCASE", null)) {
+            while (c.moveToNext()) {
+                final boolean current = c.getInt(3) == STATE_CURRENT && (c.getLong(4) > expired
+                        || !dependsOnTime(SmartPlaylistRule.parse(c.getString(2))));
+                playlists.add(new Playlist(toPlaylistId(c.getLong(0)), c.getString(1),
+                        current ? c.getInt(5) : -1));
+            }
+        }
+        return playlists;
+    }
+
+    /**
+     * Returns the songs of a smart playlist, the newest first.  The stored songs are brought up
+     * to date first, which usually only checks the songs that were added since the last time.
+     *
+     * @param playlistId the playlist id of the smart playlist
+     * @return the song ids
+     */
+    @WorkerThread
+    public long[] getSongIds(final long playlistId) {
+        final String[] rowId = new String[]{toRowId(playlistId)};
+        synchronized (this) {
+            final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
+            try (Cursor c = database.query(SmartPlaylistColumns.NAME, new String[]{
+                    /* 0 */
+                    SmartPlaylistColumns.RULES,
+                    /* 1 */
+                    SmartPlaylistColumns.STATE,
+                    /* 2 */
+                    SmartPlaylistColumns.EVALUATED,
+                    /* 3 */
+                    SmartPlaylistColumns.LAST_SONG_ID,
+            }, SmartPlaylistColumns.ID + "=?", rowId, null, null, null)) {
+                if (!c.moveToFirst()) {
+                    return new long[0];
+                }
+
+                final List<SmartPlaylistRule> rules = SmartPlaylistRule.parse(c.getString(0));
+                final long now = System.currentTimeMillis();
+                if (c.getInt(1) == STATE_STALE
+                        || (dependsOnTime(rules) && now - c.getLong(2) > REFRESH_INTERVAL)) {
+                    evaluateAll(rowId, rules, now);
+                } else if (c.getInt(1) == STATE_NEW_SONGS) {
+                    evaluateNewSongs(rowId, rules, c.getLong(3), now);
+                }
+            }
+        }
+
+        return getStoredSongIds(playlistId);
+    }
+
+    /**
+     * Returns the songs that were stored when the smart playlist was last evaluated, the newest
+     * first.  Unlike {@link #getSongIds(long)} the rules aren't run, so this is a single indexed
+     * read that the menus can do right away.
+     *
+     * @param playlistId the playlist id of the smart playlist
+     * @return the song ids
+     */
+    public long[] getStoredSongIds(final long playlistId) {
+        try (Cursor c = mMusicDatabase.getReadableDatabase().query(MemberColumns.NAME,
+                new String[]{MemberColumns.ID}, MemberColumns.PLAYLIST_ID + "=?",
+                new String[]{toRowId(playlistId)}, null, null, MemberColumns.ID + " DESC")) {
+            return readIds(c);
+        }
+    }
+
+    /**
+     * Records a play and updates the smart playlists with play rules in the background
+     *
+     * @param songId the id of the song that started playing
+     */
+    public void onSongPlayed(final long songId) {
+        if (songId >= 0) {
+            mHandler.obtainMessage(MSG_SONG_PLAYED, songId).sendToTarget();
+        }
+    }
+
+    private synchronized void updatePlayedSong(final long songId) {
+        final long now = System.currentTimeMillis();
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        final ContentValues values = new ContentValues(2);
+        values.put(LastPlayedColumns.ID, songId);
+        values.put(LastPlayedColumns.LAST_PLAYED, now);
+        database.replace(LastPlayedColumns.NAME, null, values);
+
+        // stale playlists are evaluated from scratch anyway
+        try (Cursor c = database.query(SmartPlaylistColumns.NAME, new String[]{
+                /* 0 */
+                SmartPlaylistColumns.ID,
+                /* 1 */
+                SmartPlaylistColumns.RULES,
+        }, SmartPlaylistColumns.STATE + "!=" + STATE_STALE, null, null, null, null)) {
+            final String[] songArgs = new String[]{Long.toString(songId)};
+            while (c.moveToNext()) {
+                final List<SmartPlaylistRule> rules = SmartPlaylistRule.parse(c.getString(1));
+                if (!dependsOnPlays(rules)) {
+                    continue;
+                }
+
+                final String[] member = new String[]{c.getString(0), songArgs[0]};
+                if (evaluate(rules, BaseColumns._ID + "=?", songArgs, now).length > 0) {
+                    values.clear();
+                    values.put(MemberColumns.PLAYLIST_ID, c.getLong(0));
+                    values.put(MemberColumns.ID, songId);
+                    database.insertWithOnConflict(MemberColumns.NAME, null, values,
+                            SQLiteDatabase.CONFLICT_IGNORE);
+                } else {
+                    database.delete(MemberColumns.NAME, MemberColumns.PLAYLIST_ID + "=? AND "
+                            + MemberColumns.ID + "=?", member);
+                }
+            }
+        }
+    }
+
+    private synchronized void onMediaStoreChange(final int changes) {
+        final int state;
+        if ((changes & MediaStoreChanges.SONGS) != 0
+                && (changes & MediaStoreChanges.PLAYLISTS) == 0) {
+            // only new songs, which are checked when a playlist is opened
+            state = STATE_NEW_SONGS;
+        } else if ((changes & (MediaStoreChanges.SONGS | MediaStoreChanges.GENRES)) != 0) {
+            // changed or deleted songs can't be told apart
+            state = STATE_STALE;
+        } else {
+            return;
+        }
+
+        final ContentValues values = new ContentValues(1);
+        values.put(SmartPlaylistColumns.STATE, state);
+        mMusicDatabase.getWritableDatabase().update(SmartPlaylistColumns.NAME, values,
+                SmartPlaylistColumns.STATE + "<" + state, null);
+    }
+
+    private void evaluateAll(final String[] rowId, final List<SmartPlaylistRule> rules,
+                             final long now) {
+        final long start = SystemClock.elapsedRealtime();
+        // read before the songs, so no song that is added meanwhile is missed
+        final long lastSongId = queryLastSongId();
+        final long[] ids = evaluate(rules, null, null, now);
+
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            database.delete(MemberColumns.NAME, MemberColumns.PLAYLIST_ID + "=?", rowId);
+            insertMembers(database, rowId[0], ids);
+
+            final ContentValues values = new ContentValues(3);
+            values.put(SmartPlaylistColumns.STATE, STATE_CURRENT);
+            values.put(SmartPlaylistColumns.EVALUATED, now);
+            values.put(SmartPlaylistColumns.LAST_SONG_ID, lastSongId);
+            database.update(SmartPlaylistColumns.NAME, values, SmartPlaylistColumns.ID + "=?",
+                    rowId);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Evaluated smart playlist " + rowId[0] + " with " + ids.length
+                    + " songs in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    private void evaluateNewSongs(final String[] rowId, final List<SmartPlaylistRule> rules,
+                                  final long lastSongId, final long now) {
+        final long newLastSongId = queryLastSongId();
+        final long[] ids = evaluate(rules, BaseColumns._ID + ">?",
+                new String[]{Long.toString(lastSongId)}, now);
+
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            insertMembers(database, rowId[0], ids);
+
+            final ContentValues values = new ContentValues(2);
+            values.put(SmartPlaylistColumns.STATE, STATE_CURRENT);
+            values.put(SmartPlaylistColumns.LAST_SONG_ID, newLastSongId);
+            database.update(SmartPlaylistColumns.NAME, values, SmartPlaylistColumns.ID + "=?",
+                    rowId);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Added " + ids.length + " new songs to smart playlist " + rowId[0]);
+        }
+    }
+
+    /**
+     * Runs the compiled rules
+     *
+     * @param rules     the rules every song has to match
+     * @param selection an additional MediaStore selection or null
+     * @param args      the arguments of the additional selection
+     * @param now       the current time in milliseconds
+     * @return the ids of the matching songs
+     */
+    private long[] evaluate(final List<SmartPlaylistRule> rules, final String selection,
+                            final String[] args, final long now) {
+        final StringBuilder where = new StringBuilder(MUSIC_SELECTION);
+        final List<String> whereArgs = new ArrayList<>();
+        if (selection != null) {
+            where.append(" AND ").append(selection);
+            whereArgs.addAll(Arrays.asList(args));
+        }
+        for (final SmartPlaylistRule rule : rules) {
+            if (rule.isMediaStoreRule()) {
+                where.append(" AND ");
+                rule.appendSelection(where, whereArgs, now);
+            }
+        }
+
+        long[] ids;
+        try (Cursor c = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, new String[]{BaseColumns._ID},
+                where.toString(), whereArgs.toArray(new String[0]), BaseColumns._ID)) {
+            ids = readIds(c);
+        }
+
+        final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
+        for (final SmartPlaylistRule rule : rules) {
+            if (ids.length == 0) {
+                break;
+            }
+
+            if (rule.mField == SmartPlaylistRule.Field.GENRE) {
+                ids = filter(ids, GenreIndex.getInstance(mContext).getSongIds(rule.mValue), true);
+            } else if (!rule.isMediaStoreRule()) {
+                final List<String> queryArgs = new ArrayList<>();
+                final String query = rule.compileQuery(queryArgs, now);
+                if (query != null) {
+                    try (Cursor c = database.rawQuery(query, queryArgs.toArray(new String[0]))) {
+                        final long[] matches = readIds(c);
+                        Arrays.sort(matches);
+                        ids = filter(ids, matches, !rule.isExclusion());
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private long queryLastSongId() {
+        try (Cursor c = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, new String[]{
+                        "max(" + BaseColumns._ID + ")",
+                }, null, null, null)) {
+            if (c != null && c.moveToFirst()) {
+                return c.getLong(0);
+            }
+        }
+        return 0;
+    }
+
+    private static void insertMembers(final SQLiteDatabase database, final String rowId,
+                                      final long[] ids) {
+        final ContentValues values = new ContentValues(2);
+        values.put(MemberColumns.PLAYLIST_ID, rowId);
+        for (final long id : ids) {
+            values.put(MemberColumns.ID, id);
+            database.insertWithOnConflict(MemberColumns.NAME, null, values,
+                    SQLiteDatabase.CONFLICT_IGNORE);
+        }
+    }
+
+    /**
+     * @param ids    the ids to filter
+     * @param sorted the sorted ids to look up
+     * @param keep   whether the ids that are found or the ones that aren't are kept
+     * @return the filtered ids in the same order
+     */
+    private static long[] filter(final long[] ids, final long[] sorted, final boolean keep) {
+        final long[] result = new long[ids.length];
+        int count = 0;
+        for (final long id : ids) {
+            if ((Arrays.binarySearch(sorted, id) >= 0) == keep) {
+                result[count++] = id;
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(result, count);
+    }
+
+    private static long[] readIds(final Cursor cursor) {
+        if (cursor == null) {
+            return new long[0];
+        }
+        final long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        return ids;
+    }
+
+    private static boolean dependsOnPlays(final List<SmartPlaylistRule> rules) {
+        for (final SmartPlaylistRule rule : rules) {
+            if (rule.dependsOnPlays()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean dependsOnTime(final List<SmartPlaylistRule> rules) {
+        for (final SmartPlaylistRule rule : rules) {
+            if (rule.dependsOnTime()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public interface SmartPlaylistColumns {
+        /* Table name */
+        String NAME = "smart_playlists";
+
+        /* Smart playlist ID column */
+        String ID = "_id";
+
+        /* Playlist name column */
+        String PLAYLIST_NAME = "name";
+
+        /* The rules of the playlist, see SmartPlaylistRule.format() */
+        String RULES = "rules";
+
+        /* Whether the stored songs are up to date */
+        String STATE = "state";
+
+        /* The time the songs were last evaluated from scratch */
+        String EVALUATED = "evaluated";
+
+        /* The highest song id in MediaStore when the songs were last evaluated */
+        String LAST_SONG_ID = "last_song_id";
+    }
+
+    public interface MemberColumns {
+        /* Table name */
+        String NAME = "smart_playlist_members";
+
+        /* Smart playlist ID column */
+        String PLAYLIST_ID = "playlistid";
+
+        /* Song ID column */
+        String ID = "songid";
+    }
+
+    public interface LastPlayedColumns {
+        /* Table name */
+        String NAME = "song_last_played";
+
+        /* Song ID column */
+        String ID = "songid";
+
+        /* Time played column */
+        String LAST_PLAYED = "lastplayed";
+    }
+}
@@ -430,6 +430,31 @@ public class SongPlayCount {
         return SongPlayCountColumns.WEEK_PLAY_COUNT + week;
     }
 
+    /**
+     * The week columns of a row are only shifted when the song is played again, so each column
+     * is moved by the weeks since the row was last updated and dropped once it falls out of the
+     * tracked weeks, the same way {@link #bumpSongCount} shifts them.
+     *
+     * @param now the current time in milliseconds
+     * @return a sql expression of the number of times a song was played in the tracked weeks
+     */
+    static String makePlayCountExpression(final long now) {
+        final int currentWeek = (int) (now / ONE_WEEK_IN_MS);
+        final StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < NUM_WEEKS; i++) {
+            if (i > 0) {
+                builder.append('+');
+            }
+            // column i of a row last updated in week w holds week w - i
+            builder.append("(CASE WHEN ").append(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX)
+                    .append(" BETWEEN ").append(currentWeek + i - NUM_WEEKS + 1)
+                    .append(" AND ").append(currentWeek + i)
+                    .append(" THEN ").append(getColumnNameForWeek(i))
+                    .append(" ELSE 0 END)");
+        }
+        return builder.append(')').toString();
+    }
+
     /**
      * Gets the score multiplier for each week
      *
@@ -24,7 +24,6 @@ import org.lineageos.eleven.loaders.WrappedAsyncTaskLoader;
 import org.lineageos.eleven.utils.SectionCreatorUtils;
 
 import java.util.List;
-import java.util.TreeMap;
 
 /**
  * This class wraps a SimpleListLoader and creates header sections for the sections
@@ -71,7 +70,7 @@ public class SectionCreator<T> extends WrappedAsyncTaskLoader<SectionListContain
     @Override
     public SectionListContainer<T> loadInBackground() {
         List<T> results = mLoader.loadInBackground();
-        TreeMap<Integer, SectionCreatorUtils.Section> sections = null;
+        SectionIndex sections = null;
 
         if (mComparator != null) {
             sections = SectionCreatorUtils.createSections(results, mComparator);
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.sectionadapter;
+
+import org.lineageos.eleven.utils.SectionCreatorUtils.SectionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compact index of the sections of a list.  Sections are stored in parallel primitive arrays
+ * sorted by list position and every distinct label is only kept once, so a list with thousands
+ * of sections doesn't create an object per section.  Lookups are binary searches which makes
+ * the index usable from a fast scroller.
+ * <p>
+ * The index is built with a {@link Builder} that can be fed while the items are still being
+ * loaded.
+ */
+public class SectionIndex {
+    private final int[] mPositions;
+    private final int[] mLabelIds;
+    private final boolean[] mFooters;
+    private final String[] mLabels;
+
+    private SectionIndex(final int[] positions, final int[] labelIds, final boolean[] footers,
+                         final String[] labels) {
+        mPositions = positions;
+        mLabelIds = labelIds;
+        mFooters = footers;
+        mLabels = labels;
+    }
+
+    /**
+     * @return the number of sections
+     */
+    public int size() {
+        return mPositions.length;
+    }
+
+    /**
+     * @return true if there are no sections
+     */
+    public boolean isEmpty() {
+        return mPositions.length == 0;
+    }
+
+    /**
+     * @param section the index of the section
+     * @return the list position the section starts at
+     */
+    public int getPositionForSection(final int section) {
+        return mPositions[section];
+    }
+
+    /**
+     * @param section the index of the section
+     * @return the label of the section
+     */
+    public String getLabel(final int section) {
+        return mLabels[mLabelIds[section]];
+    }
+
+    /**
+     * @param section the index of the section
+     * @return the id of the label of the section, sections with equal labels share the same id
+     */
+    public int getLabelId(final int section) {
+        return mLabelIds[section];
+    }
+
+    /**
+     * @return the number of distinct labels
+     */
+    public int getLabelCount() {
+        return mLabels.length;
+    }
+
+    /**
+     * @param section the index of the section
+     * @return whether the section is a header or a footer
+     */
+    public SectionType getType(final int section) {
+        return mFooters[section] ? SectionType.Footer : SectionType.Header;
+    }
+
+    /**
+     * @param position the list position
+     * @return the index of the section that starts exactly at the position or a negative value
+     */
+    public int indexOfPosition(final int position) {
+        return Arrays.binarySearch(mPositions, position);
+    }
+
+    /**
+     * @param position the list position
+     * @return the index of the section the position belongs to, or -1 if the position comes
+     * before the first section
+     */
+    public int getSectionForPosition(final int position) {
+        final int index = Arrays.binarySearch(mPositions, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Incrementally builds a {@link SectionIndex}.  Sections have to be appended in increasing
+     * position order.  A section appended at the position of the previous one replaces it, so
+     * a header created after a footer for the same position wins.
+     */
+    public static class Builder {
+        private int[] mPositions = new int[16];
+        private int[] mLabelIds = new int[16];
+        private boolean[] mFooters = new boolean[16];
+        private int mSize;
+
+        private final HashMap<String, Integer> mLabelIndexes = new HashMap<>();
+        private final ArrayList<String> mLabels = new ArrayList<>();
+
+        /**
+         * @param position the list position the section starts at
+         * @param type     the type of the section
+         * @param label    the label of the section
+         * @return this builder
+         */
+        public Builder append(final int position, final SectionType type, final String label) {
+            if (mSize > 0 && mPositions[mSize - 1] == position) {
+                mSize--;
+            } else if (mSize > 0 && mPositions[mSize - 1] > position) {
+                throw new IllegalArgumentException("Sections must be appended in order");
+            }
+
+            if (mSize == mPositions.length) {
+                final int capacity = mSize * 2;
+                mPositions = Arrays.copyOf(mPositions, capacity);
+                mLabelIds = Arrays.copyOf(mLabelIds, capacity);
+                mFooters = Arrays.copyOf(mFooters, capacity);
+            }
+
+            Integer labelId = mLabelIndexes.get(label);
+            if (labelId == null) {
+                labelId = mLabels.size();
+                mLabels.add(label);
+                mLabelIndexes.put(label, labelId);
+            }
+
+            mPositions[mSize] = position;
+            mLabelIds[mSize] = labelId;
+            mFooters[mSize] = type == SectionType.Footer;
+            mSize++;
+            return this;
+        }
+
+        /**
+         * @return the number of sections appended so far
+         */
+        public int size() {
+            return mSize;
+        }
+
+        /**
+         * @return an index of the sections appended so far, the builder can still be used
+         */
+        public SectionIndex build() {
+            return new SectionIndex(Arrays.copyOf(mPositions, mSize),
+                    Arrays.copyOf(mLabelIds, mSize), Arrays.copyOf(mFooters, mSize),
+                    mLabels.toArray(new String[0]));
+        }
+    }
+}
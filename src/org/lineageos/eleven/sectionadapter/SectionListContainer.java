@@ -16,10 +16,7 @@
  */
 package org.lineageos.eleven.sectionadapter;
 
-import org.lineageos.eleven.utils.SectionCreatorUtils;
-
 import java.util.List;
-import java.util.TreeMap;
 
 /**
  * Simple Container that contains a list of T items as well as the map of section information
@@ -27,11 +24,10 @@ import java.util.TreeMap;
  * @param <T> the type of item that the list contains
  */
 public class SectionListContainer<T> {
-    public final TreeMap<Integer, SectionCreatorUtils.Section> mSections;
+    public final SectionIndex mSections;
     public final List<T> mListResults;
 
-    public SectionListContainer(final TreeMap<Integer, SectionCreatorUtils.Section> sections,
-                                final List<T> results) {
+    public SectionListContainer(final SectionIndex sections, final List<T> results) {
         mSections = sections;
         mListResults = results;
     }
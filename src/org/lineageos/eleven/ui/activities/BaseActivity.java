@@ -45,6 +45,9 @@ import androidx.fragment.app.FragmentActivity;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.MusicStateListener;
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ArtworkSize;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.provider.MusicRepository;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -306,7 +309,7 @@ public abstract class BaseActivity extends AppCompatActivity implements ServiceC
         // Set the artist name
         mArtistName.setText(MusicUtils.getArtistName());
         // Set the album art
-        ElevenUtils.getImageFetcher(this).loadCurrentArtwork(mAlbumArt);
+        ElevenUtils.getImageFetcher(this).loadCurrentArtwork(mAlbumArt, ArtworkSize.THUMB);
     }
 
     /**
@@ -361,8 +364,18 @@ public abstract class BaseActivity extends AppCompatActivity implements ServiceC
                 baseActivity.mPlayPauseButtonContainer.updateState();
                 baseActivity.mPlayPauseProgressButton.updateState();
             } else if (MusicPlaybackService.REFRESH.equals(action)) {
-                baseActivity.restartLoader();
+                final int changes = intent.getIntExtra(MusicPlaybackService.REFRESH_CHANGES,
+                        MediaStoreChanges.ALL);
+                // the repository observes the MediaStore itself, but explicit refreshes can
+                // arrive before its notification
+                if (!isInitialStickyBroadcast()) {
+                    MusicRepository.getInstance(context).invalidate(changes);
+                }
+                baseActivity.restartLoader(changes);
             } else if (MusicPlaybackService.PLAYLIST_CHANGED.equals(action)) {
+                if (!isInitialStickyBroadcast()) {
+                    MusicRepository.getInstance(context).invalidate(MediaStoreChanges.PLAYLISTS);
+                }
                 baseActivity.onPlaylistChanged();
             } else if (MusicPlaybackService.TRACK_ERROR.equals(action)) {
                 final String errorMsg = context.getString(R.string.error_playing_track,
@@ -387,9 +400,17 @@ public abstract class BaseActivity extends AppCompatActivity implements ServiceC
 
     @Override
     public void restartLoader() {
-        // Let the listener know to update a list
+        restartLoader(MediaStoreChanges.ALL);
+    }
+
+    /**
+     * Lets the listeners that show any of the changed content update their list
+     *
+     * @param changes the {@link MediaStoreChanges} flags of what changed
+     */
+    private void restartLoader(final int changes) {
         for (final MusicStateListener listener : mMusicStateListener) {
-            if (listener != null) {
+            if (listener != null && (listener.getRefreshChanges() & changes) != 0) {
                 listener.restartLoader();
             }
         }
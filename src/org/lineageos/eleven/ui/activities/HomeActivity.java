@@ -36,6 +36,7 @@ import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.Window;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
@@ -46,15 +47,21 @@ import androidx.fragment.app.FragmentTransaction;
 
 import org.lineageos.eleven.Config;
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ArtworkKey;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.provider.PlaylistFiles;
+import org.lineageos.eleven.provider.SmartPlaylistStore;
 import org.lineageos.eleven.ui.fragments.AlbumDetailFragment;
 import org.lineageos.eleven.ui.fragments.ArtistDetailFragment;
 import org.lineageos.eleven.ui.fragments.AudioPlayerFragment;
+import org.lineageos.eleven.ui.fragments.FolderFragment;
 import org.lineageos.eleven.ui.fragments.IChildFragment;
 import org.lineageos.eleven.ui.fragments.ISetupActionBar;
 import org.lineageos.eleven.ui.fragments.PlaylistDetailFragment;
 import org.lineageos.eleven.ui.fragments.RecentFragment;
+import org.lineageos.eleven.ui.fragments.SearchFragment;
 import org.lineageos.eleven.ui.fragments.phone.MusicBrowserPhoneFragment;
+import org.lineageos.eleven.ui.fragments.profile.CustomSmartPlaylistFragment;
 import org.lineageos.eleven.ui.fragments.profile.LastAddedFragment;
 import org.lineageos.eleven.ui.fragments.profile.TopTracksFragment;
 import org.lineageos.eleven.utils.AnimatorEndListener;
@@ -74,16 +81,22 @@ public class HomeActivity extends SlidingPanelActivity implements
     public static final String ACTION_VIEW_PLAYLIST_DETAILS =
             ACTION_PREFIX + ".view.PlaylistDetails";
     public static final String ACTION_VIEW_SMART_PLAYLIST = ACTION_PREFIX + ".view.SmartPlaylist";
+    public static final String ACTION_VIEW_SEARCH = ACTION_PREFIX + ".view.Search";
+    public static final String ACTION_VIEW_FOLDER = ACTION_PREFIX + ".view.Folder";
     public static final String EXTRA_BROWSE_PAGE_IDX = "BrowsePageIndex";
 
     private static final String STATE_KEY_BASE_FRAGMENT = "BaseFragment";
+    private static final String STATE_KEY_EXPORT_PLAYLIST_ID = "ExportPlaylistId";
 
     private static final int NEW_PHOTO = 1;
     public static final int EQUALIZER = 2;
+    private static final int IMPORT_PLAYLIST = 3;
+    private static final int EXPORT_PLAYLIST = 4;
 
     private Bundle mSavedInstanceState;
 
     private String mKey;
+    private long mExportPlaylistId = -1;
     private boolean mLoadedBaseFragment = false;
     private boolean mHasPendingPlaybackRequest = false;
     private final Handler mHandler = new Handler();
@@ -103,6 +116,11 @@ public class HomeActivity extends SlidingPanelActivity implements
         mSavedInstanceState = savedInstanceState;
         mRootView = getWindow().getDecorView();
 
+        // the file picker of an export may outlive this activity
+        if (savedInstanceState != null) {
+            mExportPlaylistId = savedInstanceState.getLong(STATE_KEY_EXPORT_PLAYLIST_ID, -1);
+        }
+
         if (!needRequestStoragePermission()) {
             init(savedInstanceState);
         }
@@ -162,6 +180,7 @@ public class HomeActivity extends SlidingPanelActivity implements
     protected void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putBoolean(STATE_KEY_BASE_FRAGMENT, mTopLevelActivity);
+        outState.putLong(STATE_KEY_EXPORT_PLAYLIST_ID, mExportPlaylistId);
     }
 
     public Fragment getTopFragment() {
@@ -226,8 +245,10 @@ public class HomeActivity extends SlidingPanelActivity implements
                 @Override
                 protected BitmapWithColors doInBackground(Void... params) {
                     ImageFetcher imageFetcher = ImageFetcher.getInstance(HomeActivity.this);
-                    return imageFetcher.getArtwork(
-                            MusicUtils.getAlbumName(), MusicUtils.getCurrentAlbumId(), true);
+                    BitmapWithColors bmc = imageFetcher.getArtwork(MusicUtils.getAlbumName(),
+                            MusicUtils.getArtistName(), MusicUtils.getCurrentAlbumId(), true);
+                    bmc.loadColors();
+                    return bmc;
                 }
                 @Override
                 protected void onPostExecute(BitmapWithColors bmc) {
@@ -290,6 +311,8 @@ public class HomeActivity extends SlidingPanelActivity implements
                     targetFragment = new RecentFragment();
                 } else if (Config.SmartPlaylistType.TopTracks.equals(type)) {
                     targetFragment = new TopTracksFragment();
+                } else if (SmartPlaylistStore.isSmartPlaylist(playlistId)) {
+                    targetFragment = new CustomSmartPlaylistFragment();
                 }
             } else if (action.equals(ACTION_VIEW_PLAYLIST_DETAILS)) {
                 targetFragment = new PlaylistDetailFragment();
@@ -297,6 +320,10 @@ public class HomeActivity extends SlidingPanelActivity implements
                 targetFragment = new AlbumDetailFragment();
             } else if (action.equals(ACTION_VIEW_ARTIST_DETAILS)) {
                 targetFragment = new ArtistDetailFragment();
+            } else if (action.equals(ACTION_VIEW_SEARCH)) {
+                targetFragment = new SearchFragment();
+            } else if (action.equals(ACTION_VIEW_FOLDER)) {
+                targetFragment = new FolderFragment();
             }
 
             if (targetFragment != null) {
@@ -347,13 +374,69 @@ public class HomeActivity extends SlidingPanelActivity implements
                     Bitmap bitmap = ImageFetcher.decodeSampledBitmapFromUri(getContentResolver(),
                             selectedImage);
                     ImageFetcher imageFetcher = ElevenUtils.getImageFetcher(HomeActivity.this);
-                    imageFetcher.addBitmapToCache(mKey, bitmap);
+                    imageFetcher.addBitmapToCache(ArtworkKey.of(mKey), bitmap);
                     MusicUtils.refresh();
                 }).start();
             }
+        } else if (requestCode == IMPORT_PLAYLIST) {
+            if (resultCode == RESULT_OK && data != null) {
+                final Uri playlistFile = data.getData();
+
+                new Thread(() -> {
+                    final int count = PlaylistFiles.importPlaylist(this, playlistFile);
+                    runOnUiThread(() -> {
+                        showPlaylistFileResult(count, R.plurals.NNNtracksimported,
+                                R.string.import_playlist_failed);
+                        MusicUtils.refresh();
+                    });
+                }).start();
+            }
+        } else if (requestCode == EXPORT_PLAYLIST && mExportPlaylistId >= 0) {
+            if (resultCode == RESULT_OK && data != null) {
+                final long playlistId = mExportPlaylistId;
+                final Uri playlistFile = data.getData();
+
+                new Thread(() -> {
+                    final int count = PlaylistFiles.exportPlaylist(this, playlistId,
+                            playlistFile);
+                    runOnUiThread(() -> showPlaylistFileResult(count,
+                            R.plurals.NNNtracksexported, R.string.export_playlist_failed));
+                }).start();
+            }
+            mExportPlaylistId = -1;
         }
     }
 
+    private void showPlaylistFileResult(final int count, final int pluralsId,
+                                        final int failedId) {
+        final String message = count < 0 ? getString(failedId)
+                : getResources().getQuantityString(pluralsId, count, count);
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Starts an activity for result that returns a playlist file to import.
+     */
+    public void importPlaylist() {
+        final Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, PlaylistFiles.MIME_TYPES);
+        startActivityForResult(intent, IMPORT_PLAYLIST);
+    }
+
+    /**
+     * Starts an activity for result that returns the file to export a playlist to.
+     */
+    public void exportPlaylist(long playlistId, String name) {
+        mExportPlaylistId = playlistId;
+        final Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(PlaylistFiles.EXPORT_MIME_TYPE);
+        intent.putExtra(Intent.EXTRA_TITLE, name + PlaylistFiles.EXPORT_EXTENSION);
+        startActivityForResult(intent, EXPORT_PLAYLIST);
+    }
+
     /**
      * Starts an activity for result that returns an image from the Gallery.
      */
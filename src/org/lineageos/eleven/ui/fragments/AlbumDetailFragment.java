@@ -40,8 +40,9 @@ import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.loaders.AlbumSongLoader;
 import org.lineageos.eleven.model.Album;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.GenreIndex;
+import org.lineageos.eleven.provider.MediaStoreChanges;
 import org.lineageos.eleven.utils.AlbumPopupMenuHelper;
-import org.lineageos.eleven.utils.GenreFetcher;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PopupMenuHelper;
 import org.lineageos.eleven.utils.SongPopupMenuHelper;
@@ -192,7 +193,22 @@ public class AlbumDetailFragment extends DetailFragment implements IChildFragmen
 
         // use the first song on the album to get a genre
         if (!songs.isEmpty() && activity != null) {
-            GenreFetcher.fetch(activity , (int) songs.get(0).mSongId, mGenre);
+            GenreIndex.getInstance(activity).getGenreName(songs.get(0).mSongId,
+                    this::showGenre);
+        }
+    }
+
+    private void showGenre(final String genre) {
+        if (mGenre == null) {
+            return;
+        }
+
+        if (!MusicUtils.isBlank(genre)) {
+            mGenre.setText(genre);
+            mGenre.setVisibility(View.VISIBLE);
+        } else {
+            // no displayable genre found
+            mGenre.setVisibility(View.GONE);
         }
     }
 
@@ -203,6 +219,11 @@ public class AlbumDetailFragment extends DetailFragment implements IChildFragmen
                 mAlbumArt);
     }
 
+    @Override
+    public int getRefreshChanges() {
+        return MediaStoreChanges.SONGS | MediaStoreChanges.ALBUMS;
+    }
+
     @Override
     public void onMetaChanged() {
         super.onMetaChanged();
@@ -40,6 +40,7 @@ import org.lineageos.eleven.adapters.AlbumAdapter;
 import org.lineageos.eleven.adapters.PagerAdapter;
 import org.lineageos.eleven.loaders.AlbumLoader;
 import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.provider.MediaStoreChanges;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
 import org.lineageos.eleven.ui.activities.BaseActivity;
@@ -194,6 +195,11 @@ public class AlbumFragment extends MusicBrowserFragment implements
         restartLoader(this);
     }
 
+    @Override
+    public int getRefreshChanges() {
+        return MediaStoreChanges.ALBUMS;
+    }
+
     @Override
     public void onMetaChanged() {
         // Nothing to do
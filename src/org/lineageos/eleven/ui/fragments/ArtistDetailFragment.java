@@ -43,6 +43,7 @@ import org.lineageos.eleven.menu.FragmentMenuItems;
 import org.lineageos.eleven.model.Album;
 import org.lineageos.eleven.model.Artist;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.MediaStoreChanges;
 import org.lineageos.eleven.utils.AlbumPopupMenuHelper;
 import org.lineageos.eleven.utils.ArtistPopupMenuHelper;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -280,6 +281,11 @@ public class ArtistDetailFragment extends DetailFragment implements IChildFragme
         ImageFetcher.getInstance(getActivity()).loadArtistImage(mArtistName, mHero, true);
     }
 
+    @Override
+    public int getRefreshChanges() {
+        return MediaStoreChanges.SONGS | MediaStoreChanges.ALBUMS | MediaStoreChanges.ARTISTS;
+    }
+
     @Override
     public void onMetaChanged() {
         super.onMetaChanged();
@@ -41,7 +41,9 @@ import org.lineageos.eleven.adapters.ArtistAdapter;
 import org.lineageos.eleven.adapters.PagerAdapter;
 import org.lineageos.eleven.loaders.ArtistLoader;
 import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.provider.MediaStoreChanges;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
+import org.lineageos.eleven.sectionadapter.SectionIndex;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
 import org.lineageos.eleven.ui.activities.BaseActivity;
 import org.lineageos.eleven.ui.fragments.phone.MusicBrowserFragment;
@@ -53,7 +55,6 @@ import org.lineageos.eleven.utils.SectionCreatorUtils.IItemCompare;
 import org.lineageos.eleven.widgets.LoadingEmptyContainer;
 import org.lineageos.eleven.widgets.SectionSeparatorItemDecoration;
 
-import java.util.TreeMap;
 
 /**
  * This class is used to display all of the artists on a user's device.
@@ -209,6 +210,11 @@ public class ArtistFragment extends MusicBrowserFragment implements
         restartLoader(this);
     }
 
+    @Override
+    public int getRefreshChanges() {
+        return MediaStoreChanges.ARTISTS;
+    }
+
     @Override
     public void onMetaChanged() {
         // Nothing to do
@@ -219,7 +225,7 @@ public class ArtistFragment extends MusicBrowserFragment implements
         // Nothing to do
     }
 
-    private void setHeaders(TreeMap<Integer, SectionCreatorUtils.Section> sections) {
+    private void setHeaders(SectionIndex sections) {
         for (int i = 0; i < mListView.getItemDecorationCount(); i++) {
             mListView.removeItemDecorationAt(i);
         }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.ui.fragments;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.loader.app.LoaderManager;
+import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.DefaultItemAnimator;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.lineageos.eleven.Config;
+import org.lineageos.eleven.MusicStateListener;
+import org.lineageos.eleven.R;
+import org.lineageos.eleven.adapters.FolderAdapter;
+import org.lineageos.eleven.adapters.PagerAdapter;
+import org.lineageos.eleven.loaders.FolderLoader;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.FolderTree;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.ui.activities.BaseActivity;
+import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.NavUtils;
+import org.lineageos.eleven.utils.PopupMenuHelper;
+import org.lineageos.eleven.utils.SongPopupMenuHelper;
+import org.lineageos.eleven.widgets.LoadingEmptyContainer;
+import org.lineageos.eleven.widgets.NoResultsContainer;
+
+/**
+ * This class is used to browse the music of the library by the folders it is stored in.  The
+ * sub folders of a folder are listed first, followed by the songs directly in it.  Songs are
+ * played from the ids of the {@link FolderTree}, without querying MediaStore again.
+ */
+public class FolderFragment extends Fragment implements
+        LoaderManager.LoaderCallbacks<FolderLoader.Contents>, MusicStateListener,
+        ISetupActionBar, IChildFragment {
+
+    /**
+     * LoaderCallbacks identifier
+     */
+    private static final int LOADER = 0;
+
+    /**
+     * The adapter for the list
+     */
+    private FolderAdapter mAdapter;
+
+    /**
+     * Pop up menu helper
+     */
+    private PopupMenuHelper mPopupMenuHelper;
+
+    /**
+     * This holds the loading progress bar as well as the no results message
+     */
+    private LoadingEmptyContainer mLoadingEmptyContainer;
+
+    /**
+     * The path of the folder or null for the top folder
+     */
+    private String mPath;
+
+    /**
+     * The last loaded folder
+     */
+    private FolderLoader.Contents mContents;
+
+    @Override
+    public void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        final Bundle arguments = getArguments();
+        if (arguments != null) {
+            mPath = arguments.getString(Config.FOLDER_PATH);
+        }
+
+        mPopupMenuHelper = new SongPopupMenuHelper(getActivity(), getChildFragmentManager()) {
+            @Override
+            public Song getSong(int position) {
+                return mAdapter.getSong(position);
+            }
+        };
+
+        // Create the adapter
+        mAdapter = new FolderAdapter(requireActivity(), this::onItemClick);
+        mAdapter.setPopupMenuClickedListener((v, position) ->
+                mPopupMenuHelper.showPopupMenu(v, position));
+    }
+
+    @Override
+    public View onCreateView(@NonNull final LayoutInflater inflater, final ViewGroup container,
+                             final Bundle savedInstanceState) {
+        setupActionBar();
+        setHasOptionsMenu(true);
+
+        // The View for the fragment's UI
+        final ViewGroup rootView = (ViewGroup) inflater.inflate(R.layout.fragment_list,
+                container, false);
+        // set the background on the root view
+        final Context context = getContext();
+        if (context != null) {
+            rootView.setBackgroundColor(ContextCompat.getColor(context, R.color.background_color));
+        }
+        // Initialize the list
+        final RecyclerView listView = rootView.findViewById(R.id.list_base);
+        listView.setLayoutManager(new LinearLayoutManager(requireActivity()));
+        listView.setItemAnimator(new DefaultItemAnimator());
+        listView.setAdapter(mAdapter);
+
+        // Setup the loading and empty state
+        mLoadingEmptyContainer = rootView.findViewById(R.id.loading_empty_container);
+        final NoResultsContainer empty = mLoadingEmptyContainer.getNoResultsContainer();
+        empty.setMainText(R.string.empty_folder_main);
+        empty.setSecondaryText(R.string.empty_folder);
+        mLoadingEmptyContainer.setVisibility(View.VISIBLE);
+
+        // Register the music status listener
+        final FragmentActivity activity = getActivity();
+        if (activity instanceof BaseActivity) {
+            ((BaseActivity) activity).setMusicStateListenerListener(this);
+        }
+
+        return rootView;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        final FragmentActivity activity = getActivity();
+        if (activity instanceof BaseActivity) {
+            ((BaseActivity) activity).removeMusicStateListenerListener(this);
+        }
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        // Start the loader
+        LoaderManager.getInstance(this).initLoader(LOADER, null, this);
+    }
+
+    @Override
+    public void setupActionBar() {
+        final FragmentActivity activity = getActivity();
+        if (activity instanceof BaseActivity) {
+            final BaseActivity baseActivity = (BaseActivity) activity;
+            final String name = getArguments() == null
+                    ? null : getArguments().getString(Config.NAME);
+            if (name == null) {
+                baseActivity.setupActionBar(R.string.menu_folders);
+            } else {
+                baseActivity.setupActionBar(name);
+            }
+            baseActivity.setActionBarElevation(true);
+        }
+    }
+
+    @Override
+    public void onCreateOptionsMenu(@NonNull final Menu menu,
+                                    @NonNull final MenuInflater inflater) {
+        inflater.inflate(R.menu.folder_detail, menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull final MenuItem item) {
+        final int id = item.getItemId();
+        if (id == R.id.menu_play_folder || id == R.id.menu_shuffle_folder) {
+            if (mContents != null && mContents.mFolder != null) {
+                // the songs of the folder and all its sub folders are one range of the tree
+                final long[] list = mContents.mTree.getSongIds(mContents.mFolder);
+                if (list.length > 0) {
+                    MusicUtils.playAll(list, 0, -1, Config.IdType.NA,
+                            id == R.id.menu_shuffle_folder);
+                }
+            }
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void onItemClick(final int position) {
+        final FolderTree.Folder folder = mAdapter.getFolder(position);
+        if (folder != null) {
+            NavUtils.openFolder(getActivity(), folder.mPath, folder.mName);
+            return;
+        }
+
+        final Song song = mAdapter.getSong(position);
+        if (song == null || mContents == null || mContents.mFolder == null) {
+            return;
+        }
+        final long[] list = mContents.mTree.getOwnSongIds(mContents.mFolder);
+        for (int i = 0; i < list.length; i++) {
+            if (list[i] == song.mSongId) {
+                MusicUtils.playAll(list, i, -1, Config.IdType.NA, false);
+                return;
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public Loader<FolderLoader.Contents> onCreateLoader(final int id, final Bundle args) {
+        return new FolderLoader(getActivity(), mPath);
+    }
+
+    @Override
+    public void onLoadFinished(@NonNull final Loader<FolderLoader.Contents> loader,
+                               final FolderLoader.Contents data) {
+        mContents = data;
+        if (data.mFolder == null || data.mFolder.getSongCount() == 0) {
+            mAdapter.unload();
+            mLoadingEmptyContainer.showNoResults();
+            return;
+        }
+
+        mLoadingEmptyContainer.setVisibility(View.GONE);
+        mAdapter.setData(data.mFolder.getFolders(), data.mSongs);
+    }
+
+    @Override
+    public void onLoaderReset(@NonNull final Loader<FolderLoader.Contents> loader) {
+        mContents = null;
+        mAdapter.unload();
+    }
+
+    @Override
+    public void restartLoader() {
+        LoaderManager.getInstance(this).restartLoader(LOADER, null, this);
+    }
+
+    @Override
+    public int getRefreshChanges() {
+        return MediaStoreChanges.SONGS;
+    }
+
+    @Override
+    public void onPlaylistChanged() {
+        // Nothing to do
+    }
+
+    @Override
+    public void onMetaChanged() {
+        // Nothing to do
+    }
+
+    @Override
+    public PagerAdapter.MusicFragments getMusicFragmentParent() {
+        return PagerAdapter.MusicFragments.SONG;
+    }
+}
@@ -17,10 +17,8 @@
 package org.lineageos.eleven.ui.fragments;
 
 import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
-import android.provider.MediaStore;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -43,6 +41,8 @@ import org.lineageos.eleven.loaders.PlaylistSongLoader;
 import org.lineageos.eleven.menu.FragmentMenuItems;
 import org.lineageos.eleven.model.Playlist;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.provider.PlaylistEditor;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PlaylistPopupMenuHelper;
 import org.lineageos.eleven.utils.PopupMenuHelper;
@@ -225,13 +225,10 @@ public class PlaylistDetailFragment extends DetailFragment implements
         handler.post(() -> {
             mAdapter.remove(song);
 
-            final Uri uri = MediaStore.Audio.Playlists.Members.getContentUri("external",
-                    mPlaylistId);
             final FragmentActivity activity = getActivity();
             if (activity != null) {
-                activity.getContentResolver().delete(uri,
-                        MediaStore.Audio.Playlists.Members.AUDIO_ID + "=" + song.mSongId,
-                        null);
+                new PlaylistEditor(activity, mPlaylistId).remove(new long[]{song.mSongId})
+                        .apply();
             }
 
             MusicUtils.refresh();
@@ -340,6 +337,11 @@ public class PlaylistDetailFragment extends DetailFragment implements
         LoaderManager.getInstance(this).restartLoader(0, getArguments(), this);
     }
 
+    @Override
+    public int getRefreshChanges() {
+        return MediaStoreChanges.PLAYLISTS;
+    }
+
     @Override
     public void onMetaChanged() {
         super.onMetaChanged();
@@ -366,8 +368,7 @@ public class PlaylistDetailFragment extends DetailFragment implements
 
         final FragmentActivity activity = getActivity();
         if (activity != null) {
-            MediaStore.Audio.Playlists.Members.moveItem(activity.getContentResolver(),
-                    mPlaylistId, startPosition, endPosition);
+            new PlaylistEditor(activity, mPlaylistId).move(startPosition, endPosition).apply();
         }
     }
 }
@@ -39,6 +39,7 @@ import org.lineageos.eleven.adapters.PagerAdapter;
 import org.lineageos.eleven.adapters.PlaylistAdapter;
 import org.lineageos.eleven.loaders.PlaylistLoader;
 import org.lineageos.eleven.model.Playlist;
+import org.lineageos.eleven.provider.MediaStoreChanges;
 import org.lineageos.eleven.ui.activities.BaseActivity;
 import org.lineageos.eleven.ui.fragments.phone.MusicBrowserFragment;
 import org.lineageos.eleven.utils.NavUtils;
@@ -152,6 +153,9 @@ public class PlaylistFragment extends MusicBrowserFragment implements
         SmartPlaylistType playlistType = SmartPlaylistType.getTypeById(playlist.mPlaylistId);
         if (playlistType != null) {
             NavUtils.openSmartPlaylist(getActivity(), playlistType);
+        } else if (playlist.isSmartPlaylist()) {
+            NavUtils.openSmartPlaylist(getActivity(), playlist.mPlaylistId,
+                    playlist.mPlaylistName);
         } else {
             NavUtils.openPlaylist(getActivity(), playlist.mPlaylistId, playlist.mPlaylistName);
         }
@@ -208,6 +212,12 @@ public class PlaylistFragment extends MusicBrowserFragment implements
         restartLoader(this);
     }
 
+    @Override
+    public int getRefreshChanges() {
+        // the song counts of the playlists and the smart playlists follow the songs and genres
+        return MediaStoreChanges.PLAYLISTS | MediaStoreChanges.SONGS | MediaStoreChanges.GENRES;
+    }
+
     @Override
     public void onPlaylistChanged() {
         restartLoader();
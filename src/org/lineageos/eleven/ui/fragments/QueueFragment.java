@@ -290,9 +290,9 @@ public class QueueFragment extends Fragment implements LoaderManager.LoaderCallb
     @Override
     public void onLoadFinished(@NonNull final Loader<List<Song>> loader, final List<Song> data) {
         Handler handler = new Handler(requireActivity().getMainLooper());
-        handler.post(() -> mAdapter.unload()); // Start fresh
 
         if (data.isEmpty()) {
+            handler.post(() -> mAdapter.unload());
             mLoadingEmptyContainer.showNoResults();
             mAdapter.setCurrentlyPlayingTrack(null);
             final FragmentActivity activity = getActivity();
@@ -302,7 +302,7 @@ public class QueueFragment extends Fragment implements LoaderManager.LoaderCallb
         } else {
             mLoadingEmptyContainer.setVisibility(View.GONE);
 
-            // Add the songs found to the adapter
+            // Update the adapter, only the songs that changed are rebound
             handler.post(() -> {
                 mAdapter.setData(data);
 
@@ -131,6 +131,11 @@ public class RecentFragment extends SmartPlaylistFragment implements ISetupActio
         protected boolean showNowPlayingIndicator(Song song, int position) {
             return position == 0 && super.showNowPlayingIndicator(song, position);
         }
+
+        @Override
+        protected boolean isBindingPositionDependent() {
+            return true;
+        }
     }
 
     @Override
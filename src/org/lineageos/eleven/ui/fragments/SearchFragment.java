@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.ui.fragments;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.widget.SearchView;
+import androidx.fragment.app.FragmentActivity;
+import androidx.loader.content.Loader;
+
+import org.lineageos.eleven.Config;
+import org.lineageos.eleven.R;
+import org.lineageos.eleven.adapters.PagerAdapter;
+import org.lineageos.eleven.loaders.SearchLoader;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.sectionadapter.SectionCreator;
+import org.lineageos.eleven.sectionadapter.SectionListContainer;
+import org.lineageos.eleven.ui.activities.BaseActivity;
+import org.lineageos.eleven.ui.fragments.profile.BasicSongFragment;
+import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.PopupMenuHelper.PopupMenuType;
+import org.lineageos.eleven.widgets.NoResultsContainer;
+
+/**
+ * This class is used to search the songs of the library by title, artist and album while the
+ * user types.
+ */
+public class SearchFragment extends BasicSongFragment implements ISetupActionBar,
+        IChildFragment {
+    /**
+     * LoaderCallbacks identifier
+     */
+    private static final int LOADER = 0;
+
+    private static final String STATE_QUERY = "query";
+
+    private String mQuery = "";
+
+    @Override
+    public void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState != null) {
+            mQuery = savedInstanceState.getString(STATE_QUERY, "");
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull final Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_QUERY, mQuery);
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        setupActionBar();
+        setHasOptionsMenu(true);
+        return super.onCreateView(inflater, container, savedInstanceState);
+    }
+
+    @Override
+    public void setupActionBar() {
+        final FragmentActivity activity = getActivity();
+        if (activity instanceof BaseActivity) {
+            final BaseActivity baseActivity = (BaseActivity) activity;
+            baseActivity.setupActionBar(R.string.menu_search);
+            baseActivity.setActionBarElevation(true);
+        }
+    }
+
+    @Override
+    public void onCreateOptionsMenu(@NonNull final Menu menu,
+                                    @NonNull final MenuInflater inflater) {
+        inflater.inflate(R.menu.search_view, menu);
+
+        final SearchView searchView = (SearchView) menu.findItem(R.id.menu_search_view)
+                .getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setIconified(false);
+        searchView.setQuery(mQuery, false);
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(final String query) {
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(final String newText) {
+                if (!newText.equals(mQuery)) {
+                    mQuery = newText;
+                    restartLoader();
+                }
+                return true;
+            }
+        });
+        searchView.setOnCloseListener(() -> {
+            // keep the search view open, the up button leaves the search
+            searchView.setQuery("", false);
+            return true;
+        });
+    }
+
+    @NonNull
+    @Override
+    public Loader<SectionListContainer<Song>> onCreateLoader(final int id, final Bundle args) {
+        SearchLoader loader = new SearchLoader(getActivity(), mQuery);
+        return new SectionCreator<>(getActivity(), loader, null);
+    }
+
+    @Override
+    public void setupNoResultsContainer(NoResultsContainer empty) {
+        super.setupNoResultsContainer(empty);
+
+        empty.setMainText(R.string.empty_search_main);
+        empty.setSecondaryText(R.string.empty_search);
+    }
+
+    @Override
+    public void playAll(int position) {
+        final long[] list = mAdapter.getSongIds();
+        if (list != null) {
+            MusicUtils.playAll(list, position, -1, Config.IdType.NA, false);
+        }
+    }
+
+    @Override
+    protected PopupMenuType getPopupMenuType() {
+        return PopupMenuType.SearchResult;
+    }
+
+    @Override
+    public int getLoaderId() {
+        return LOADER;
+    }
+
+    @Override
+    protected boolean hasHeaders() {
+        return false;
+    }
+
+    @Override
+    public PagerAdapter.MusicFragments getMusicFragmentParent() {
+        return PagerAdapter.MusicFragments.SONG;
+    }
+}
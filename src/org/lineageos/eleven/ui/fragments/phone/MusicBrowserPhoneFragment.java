@@ -30,11 +30,14 @@ import org.lineageos.eleven.R;
 import org.lineageos.eleven.adapters.PagerAdapter;
 import org.lineageos.eleven.adapters.PagerAdapter.MusicFragments;
 import org.lineageos.eleven.menu.CreateNewPlaylist;
+import org.lineageos.eleven.menu.CreateSmartPlaylist;
+import org.lineageos.eleven.ui.activities.HomeActivity;
 import org.lineageos.eleven.ui.fragments.AlbumFragment;
 import org.lineageos.eleven.ui.fragments.ArtistFragment;
 import org.lineageos.eleven.ui.fragments.BaseFragment;
 import org.lineageos.eleven.ui.fragments.SongFragment;
 import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.NavUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SortOrder;
 import org.lineageos.eleven.widgets.ViewPagerTabs;
@@ -159,6 +162,8 @@ public class MusicBrowserPhoneFragment extends BaseFragment {
                                     @NonNull final MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
 
+        inflater.inflate(R.menu.search, menu);
+        inflater.inflate(R.menu.folders, menu);
         inflater.inflate(R.menu.shuffle_all, menu);
         if (isArtistPage()) {
             inflater.inflate(R.menu.artist_sort_by, menu);
@@ -174,7 +179,11 @@ public class MusicBrowserPhoneFragment extends BaseFragment {
     @Override
     public boolean onOptionsItemSelected(final MenuItem item) {
         final int id = item.getItemId();
-        if (id == R.id.menu_shuffle_all) {
+        if (id == R.id.menu_search) {
+            NavUtils.openSearch(requireActivity());
+        } else if (id == R.id.menu_folders) {
+            NavUtils.openFolder(requireActivity(), null, null);
+        } else if (id == R.id.menu_shuffle_all) {
             // Shuffle all the songs
             MusicUtils.shuffleAll(getActivity());
         } else if (id == R.id.menu_sort_by_az) {
@@ -250,6 +259,14 @@ public class MusicBrowserPhoneFragment extends BaseFragment {
                 CreateNewPlaylist.getInstance(new long[0]).show(getChildFragmentManager(),
                         "CreatePlaylist");
             }
+        } else if (id == R.id.menu_new_smart_playlist) {
+            if (isPlaylistPage()) {
+                new CreateSmartPlaylist().show(getChildFragmentManager(), "CreateSmartPlaylist");
+            }
+        } else if (id == R.id.menu_import_playlist) {
+            if (isPlaylistPage() && getActivity() instanceof HomeActivity) {
+                ((HomeActivity) getActivity()).importPlaylist();
+            }
         } else {
             return super.onOptionsItemSelected(item);
         }
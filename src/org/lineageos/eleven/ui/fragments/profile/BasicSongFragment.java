@@ -42,18 +42,19 @@ import org.lineageos.eleven.MusicStateListener;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.adapters.SongListAdapter;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.MediaStoreChanges;
+import org.lineageos.eleven.sectionadapter.SectionIndex;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.ui.activities.BaseActivity;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PopupMenuHelper;
-import org.lineageos.eleven.utils.SectionCreatorUtils;
+import org.lineageos.eleven.utils.PopupMenuHelper.PopupMenuType;
 import org.lineageos.eleven.utils.SongPopupMenuHelper;
 import org.lineageos.eleven.widgets.LoadingEmptyContainer;
 import org.lineageos.eleven.widgets.NoResultsContainer;
 import org.lineageos.eleven.widgets.SectionSeparatorItemDecoration;
 
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 /**
@@ -114,6 +115,11 @@ public abstract class BasicSongFragment extends Fragment implements
                 return getFragmentSourceType();
             }
 
+            @Override
+            protected PopupMenuType getPopupMenuType() {
+                return BasicSongFragment.this.getPopupMenuType();
+            }
+
             @Override
             protected void updateMenuIds(PopupMenuType type, TreeSet<Integer> set) {
                 super.updateMenuIds(type, set);
@@ -139,6 +145,10 @@ public abstract class BasicSongFragment extends Fragment implements
         // do nothing - let subclasses override
     }
 
+    protected PopupMenuType getPopupMenuType() {
+        return PopupMenuType.Song;
+    }
+
     @SuppressLint("InflateParams")
     @Override
     public View onCreateView(final LayoutInflater inflater, final ViewGroup container,
@@ -245,6 +255,11 @@ public abstract class BasicSongFragment extends Fragment implements
         getFragmentLoaderManager().restartLoader(getLoaderId(), null, this);
     }
 
+    @Override
+    public int getRefreshChanges() {
+        return MediaStoreChanges.SONGS;
+    }
+
     @Override
     public void onLoaderReset(@NonNull final Loader<SectionListContainer<Song>> loader) {
         // Clear the data in the adapter
@@ -300,7 +315,7 @@ public abstract class BasicSongFragment extends Fragment implements
 
     protected abstract boolean hasHeaders();
 
-    private void setHeaders(TreeMap<Integer, SectionCreatorUtils.Section> sections) {
+    private void setHeaders(SectionIndex sections) {
         if (!hasHeaders() || sections == null) {
             return;
         }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.ui.fragments.profile;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.fragment.app.FragmentActivity;
+import androidx.loader.content.Loader;
+
+import org.lineageos.eleven.Config;
+import org.lineageos.eleven.Config.SmartPlaylistType;
+import org.lineageos.eleven.R;
+import org.lineageos.eleven.loaders.SmartPlaylistSongLoader;
+import org.lineageos.eleven.model.Playlist;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.sectionadapter.SectionCreator;
+import org.lineageos.eleven.sectionadapter.SectionListContainer;
+import org.lineageos.eleven.ui.activities.BaseActivity;
+import org.lineageos.eleven.ui.fragments.ISetupActionBar;
+import org.lineageos.eleven.widgets.NoResultsContainer;
+
+/**
+ * This class is used to display the songs of a smart playlist the user defined with rules
+ */
+public class CustomSmartPlaylistFragment extends SmartPlaylistFragment
+        implements ISetupActionBar {
+
+    @NonNull
+    @Override
+    public Loader<SectionListContainer<Song>> onCreateLoader(final int id, final Bundle args) {
+        // show the loading progress bar
+        mLoadingEmptyContainer.showLoading();
+
+        SmartPlaylistSongLoader loader = new SmartPlaylistSongLoader(getActivity(),
+                getFragmentSourceId());
+        return new SectionCreator<>(getActivity(), loader, null);
+    }
+
+    @Override
+    public void setupNoResultsContainer(NoResultsContainer empty) {
+        super.setupNoResultsContainer(empty);
+
+        empty.setMainText(R.string.empty_smart_playlist_main);
+        empty.setSecondaryText(R.string.empty_smart_playlist);
+    }
+
+    @Override
+    public final View onCreateView(LayoutInflater inflater, ViewGroup container,
+                                   Bundle savedInstanceState) {
+        setupActionBar();
+        return super.onCreateView(inflater, container, savedInstanceState);
+    }
+
+    @Override
+    public void setupActionBar() {
+        final FragmentActivity activity = getActivity();
+        if (activity instanceof BaseActivity) {
+            final BaseActivity baseActivity = (BaseActivity) activity;
+            baseActivity.setupActionBar(getPlaylistName());
+            baseActivity.setActionBarElevation(true);
+        }
+    }
+
+    @Override
+    protected long getFragmentSourceId() {
+        return requireArguments().getLong(Config.SMART_PLAYLIST_TYPE);
+    }
+
+    @Override
+    protected SmartPlaylistType getSmartPlaylistType() {
+        // not one of the built in smart playlists
+        return null;
+    }
+
+    @Override
+    protected Playlist getPlaylist() {
+        return new Playlist(getFragmentSourceId(), getPlaylistName(), 0);
+    }
+
+    @Override
+    protected int getShuffleTitleId() {
+        return R.string.menu_shuffle_playlist;
+    }
+
+    @Override
+    protected int getClearTitleId() {
+        // the songs follow the rules, the playlist is deleted from the playlists tab instead
+        return 0;
+    }
+
+    @Override
+    protected void clearList() {
+        // Nothing to do
+    }
+
+    private String getPlaylistName() {
+        return requireArguments().getString(Config.NAME);
+    }
+}
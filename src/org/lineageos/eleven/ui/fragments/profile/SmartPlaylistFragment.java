@@ -74,14 +74,15 @@ public abstract class SmartPlaylistFragment extends BasicSongFragment
         mActionMenuHelper = new PlaylistPopupMenuHelper(
                 getActivity(), getChildFragmentManager(), PopupMenuType.SmartPlaylist) {
             public Playlist getPlaylist(int position) {
-                SmartPlaylistType type = getSmartPlaylistType();
-                return new Playlist(type.mId, getString(type.mTitleId), 0);
+                return SmartPlaylistFragment.this.getPlaylist();
             }
         };
         mActionMenuHelper.onPreparePopupMenu(0);
         mActionMenuHelper.createPopupMenu(menu);
 
-        inflater.inflate(R.menu.clear_list, menu);
+        if (getClearTitleId() != 0) {
+            inflater.inflate(R.menu.clear_list, menu);
+        }
         super.onCreateOptionsMenu(menu, inflater);
     }
 
@@ -122,7 +123,7 @@ public abstract class SmartPlaylistFragment extends BasicSongFragment
         // enter the page.
         long[] songIds = getSongIdsFromAdapter();
         if (songIds != null) {
-            MusicUtils.playAll(songIds, position, getSmartPlaylistType().mId,
+            MusicUtils.playAll(songIds, position, getFragmentSourceId(),
                     Config.IdType.Playlist, shuffle);
         }
     }
@@ -138,13 +139,21 @@ public abstract class SmartPlaylistFragment extends BasicSongFragment
 
     protected abstract SmartPlaylistType getSmartPlaylistType();
 
+    /**
+     * the playlist the actions of the options menu apply to
+     */
+    protected Playlist getPlaylist() {
+        final SmartPlaylistType type = getSmartPlaylistType();
+        return new Playlist(type.mId, getString(type.mTitleId), 0);
+    }
+
     /**
      * text for menu item that shuffles items in this playlist
      */
     protected abstract int getShuffleTitleId();
 
     /**
-     * text for confirmation dialog that clears this playlist
+     * text for confirmation dialog that clears this playlist, 0 if it can't be cleared
      */
     protected abstract int getClearTitleId();
 
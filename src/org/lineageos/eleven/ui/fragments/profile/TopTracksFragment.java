@@ -105,6 +105,11 @@ public class TopTracksFragment extends SmartPlaylistFragment
             TextView positionText = holder.itemView.findViewById(R.id.position_number);
             positionText.setText(String.valueOf(position + 1));
         }
+
+        @Override
+        protected boolean isBindingPositionDependent() {
+            return true;
+        }
     }
 
     @Override
@@ -24,12 +24,13 @@ import android.view.MenuItem;
 import androidx.fragment.app.FragmentManager;
 
 import org.lineageos.eleven.Config;
-import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.cache.ArtworkKey;
 import org.lineageos.eleven.menu.DeleteDialog;
 import org.lineageos.eleven.menu.FragmentMenuItems;
 import org.lineageos.eleven.menu.PhotoSelectionDialog;
 import org.lineageos.eleven.model.Album;
 
+import java.util.Objects;
 import java.util.TreeSet;
 
 public abstract class AlbumPopupMenuHelper extends PopupMenuHelper {
@@ -72,7 +73,7 @@ public abstract class AlbumPopupMenuHelper extends PopupMenuHelper {
     protected void onDeleteClicked() {
         final String album = mAlbum.mAlbumName;
         DeleteDialog.newInstance(album, getIdList(),
-                ImageFetcher.generateAlbumCacheKey(album, mAlbum.mArtistName))
+                Objects.toString(ArtworkKey.forAlbum(album, mAlbum.mArtistName), null))
                 .show(mFragmentManager, "DeleteDialog");
     }
 
@@ -86,8 +87,8 @@ public abstract class AlbumPopupMenuHelper extends PopupMenuHelper {
         boolean handled = super.onMenuItemClick(item);
         if (!handled && item.getGroupId() == getGroupId()) {
             if (item.getItemId() == FragmentMenuItems.CHANGE_IMAGE) {
-                String key = ImageFetcher.generateAlbumCacheKey(mAlbum.mAlbumName,
-                        getArtistName());
+                String key = Objects.toString(ArtworkKey.forAlbum(mAlbum.mAlbumName,
+                        getArtistName()), null);
                 PhotoSelectionDialog.newInstance(mAlbum.mAlbumName, key)
                         .show(mFragmentManager, "PhotoSelectionDialog");
                 return true;
@@ -33,14 +33,21 @@ public class ImageUtils {
         if (src == null || imageView == null) {
             return src;
         }
+        return scaleBitmap(src, imageView.getWidth(), imageView.getHeight());
+    }
+
+    /**
+     * Scale the bitmap to the given bounds, see {@link #scaleBitmapForImageView}. This doesn't
+     * touch the image view, so it can be used off the main thread.
+     */
+    public static Bitmap scaleBitmap(Bitmap src, int viewWidth, int viewHeight) {
+        if (src == null) {
+            return null;
+        }
         // get bitmap properties
         int srcHeight = src.getHeight();
         int srcWidth = src.getWidth();
 
-        // get image view bounds
-        int viewHeight = imageView.getHeight();
-        int viewWidth = imageView.getWidth();
-
         int deltaWidth = viewWidth - srcWidth;
         int deltaHeight = viewHeight - srcHeight;
 
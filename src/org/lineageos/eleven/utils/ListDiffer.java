@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2021 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Applies a new list to a {@link RecyclerView.Adapter} with the minimal set of change
+ * notifications, so that refreshing a list only rebinds the rows that actually changed.
+ * <p>
+ * Items are compared with a stable id and a content hash.  The common prefix and suffix of
+ * both lists are matched in linear time, only the region in between is handed to
+ * {@link DiffUtil}, and all of that runs on a background thread.  When the region is too large
+ * to be diffed cheaply, for example after the sort order changed, it is replaced as a whole.
+ *
+ * @param <T> the type of item in the list
+ */
+public class ListDiffer<T> {
+    /**
+     * Lists that can provide ids and content hashes without creating their items
+     */
+    public interface KeyedList {
+        long getId(int position);
+
+        int getContentHash(int position);
+    }
+
+    /* Largest changed region that is still handed to DiffUtil */
+    private static final int MAX_DIFF_SIZE = 2000;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ListUpdateCallback mUpdateCallback;
+    private final ToLongFunction<T> mIdFunction;
+
+    private List<T> mList;
+    private Keys mKeys;
+    private int mGeneration;
+
+    private List<T> mPendingList;
+    private Runnable mPendingCommit;
+
+    /**
+     * @param adapter    the adapter to notify
+     * @param idFunction returns the stable id of an item
+     * @param list       the initial list of the adapter
+     */
+    public ListDiffer(final RecyclerView.Adapter<?> adapter, final ToLongFunction<T> idFunction,
+                      final List<T> list) {
+        mUpdateCallback = new AdapterListUpdateCallback(adapter);
+        mIdFunction = idFunction;
+        mList = list;
+    }
+
+    /**
+     * Must be called after the adapter modified the current list itself, for example when an
+     * item was dragged to a different position.  A list that is still being diffed is diffed
+     * again against the modified list.
+     */
+    @MainThread
+    public void onListModified() {
+        mKeys = null;
+        if (mPendingList != null) {
+            submitList(mPendingList, mPendingCommit);
+        }
+    }
+
+    /**
+     * Drops the list that is still being diffed, if any.  Must be called when the adapter
+     * cleared its list.
+     */
+    @MainThread
+    public void cancel() {
+        mGeneration++;
+        mKeys = null;
+        mPendingList = null;
+        mPendingCommit = null;
+    }
+
+    /**
+     * Calculates the difference to the current list in the background and then applies it
+     *
+     * @param list     the new list
+     * @param onCommit called on the main thread right after the new list became current and
+     *                 before the adapter is notified
+     */
+    @MainThread
+    public void submitList(final List<T> list, final Runnable onCommit) {
+        final int generation = ++mGeneration;
+        if (mKeys == null) {
+            mKeys = new Keys(mList, mIdFunction);
+        }
+        final Keys oldKeys = mKeys;
+        mPendingList = list;
+        mPendingCommit = onCommit;
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            final Keys newKeys = new Keys(list, mIdFunction);
+            final Diff diff = new Diff(oldKeys, newKeys);
+            sMainHandler.post(() -> {
+                // a newer list was submitted in the meantime
+                if (generation != mGeneration) {
+                    return;
+                }
+
+                mList = list;
+                mKeys = newKeys;
+                mPendingList = null;
+                mPendingCommit = null;
+                if (onCommit != null) {
+                    onCommit.run();
+                }
+                diff.dispatchUpdatesTo(mUpdateCallback);
+            });
+        });
+    }
+
+    /**
+     * The ids and content hashes of a list
+     */
+    private static final class Keys {
+        final long[] mIds;
+        final int[] mHashes;
+
+        <T> Keys(final List<T> list, final ToLongFunction<T> idFunction) {
+            final int size = list == null ? 0 : list.size();
+            mIds = new long[size];
+            mHashes = new int[size];
+            if (list instanceof KeyedList) {
+                final KeyedList keyedList = (KeyedList) list;
+                for (int i = 0; i < size; i++) {
+                    mIds[i] = keyedList.getId(i);
+                    mHashes[i] = keyedList.getContentHash(i);
+                }
+            } else {
+                for (int i = 0; i < size; i++) {
+                    final T item = list.get(i);
+                    mIds[i] = idFunction.applyAsLong(item);
+                    mHashes[i] = item.hashCode();
+                }
+            }
+        }
+    }
+
+    /**
+     * The difference between two lists
+     */
+    private static final class Diff {
+        private final int mPrefix;
+        private final int mOldMiddle;
+        private final int mNewMiddle;
+        private final int[] mChangedPositions;
+        private final int mChangedCount;
+        private final DiffUtil.DiffResult mMiddleResult;
+
+        Diff(final Keys oldKeys, final Keys newKeys) {
+            final int oldSize = oldKeys.mIds.length;
+            final int newSize = newKeys.mIds.length;
+            final int minSize = Math.min(oldSize, newSize);
+
+            int prefix = 0;
+            while (prefix < minSize && oldKeys.mIds[prefix] == newKeys.mIds[prefix]) {
+                prefix++;
+            }
+
+            int suffix = 0;
+            while (suffix < minSize - prefix && oldKeys.mIds[oldSize - 1 - suffix]
+                    == newKeys.mIds[newSize - 1 - suffix]) {
+                suffix++;
+            }
+
+            // items that kept their place but whose content changed, in old positions
+            final int[] changed = new int[prefix + suffix];
+            int changedCount = 0;
+            for (int i = 0; i < prefix; i++) {
+                if (oldKeys.mHashes[i] != newKeys.mHashes[i]) {
+                    changed[changedCount++] = i;
+                }
+            }
+            for (int i = 0; i < suffix; i++) {
+                if (oldKeys.mHashes[oldSize - 1 - i] != newKeys.mHashes[newSize - 1 - i]) {
+                    changed[changedCount++] = oldSize - 1 - i;
+                }
+            }
+
+            mPrefix = prefix;
+            mOldMiddle = oldSize - prefix - suffix;
+            mNewMiddle = newSize - prefix - suffix;
+            mChangedPositions = changed;
+            mChangedCount = changedCount;
+
+            if (mOldMiddle > 0 && mNewMiddle > 0
+                    && mOldMiddle <= MAX_DIFF_SIZE && mNewMiddle <= MAX_DIFF_SIZE) {
+                mMiddleResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                    @Override
+                    public int getOldListSize() {
+                        return mOldMiddle;
+                    }
+
+                    @Override
+                    public int getNewListSize() {
+                        return mNewMiddle;
+                    }
+
+                    @Override
+                    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                        return oldKeys.mIds[prefix + oldPosition]
+                                == newKeys.mIds[prefix + newPosition];
+                    }
+
+                    @Override
+                    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                        return oldKeys.mHashes[prefix + oldPosition]
+                                == newKeys.mHashes[prefix + newPosition];
+                    }
+                });
+            } else {
+                mMiddleResult = null;
+            }
+        }
+
+        void dispatchUpdatesTo(final ListUpdateCallback callback) {
+            // positions in the prefix and suffix are only valid until the middle changes
+            for (int i = 0; i < mChangedCount; i++) {
+                callback.onChanged(mChangedPositions[i], 1, null);
+            }
+
+            if (mMiddleResult != null) {
+                mMiddleResult.dispatchUpdatesTo(new ListUpdateCallback() {
+                    @Override
+                    public void onInserted(int position, int count) {
+                        callback.onInserted(mPrefix + position, count);
+                    }
+
+                    @Override
+                    public void onRemoved(int position, int count) {
+                        callback.onRemoved(mPrefix + position, count);
+                    }
+
+                    @Override
+                    public void onMoved(int fromPosition, int toPosition) {
+                        callback.onMoved(mPrefix + fromPosition, mPrefix + toPosition);
+                    }
+
+                    @Override
+                    public void onChanged(int position, int count, Object payload) {
+                        callback.onChanged(mPrefix + position, count, payload);
+                    }
+                });
+                return;
+            }
+
+            // replace the middle as a whole
+            final int common = Math.min(mOldMiddle, mNewMiddle);
+            if (common > 0) {
+                callback.onChanged(mPrefix, common, null);
+            }
+            if (mOldMiddle > common) {
+                callback.onRemoved(mPrefix + common, mOldMiddle - common);
+            } else if (mNewMiddle > common) {
+                callback.onInserted(mPrefix + common, mNewMiddle - common);
+            }
+        }
+    }
+}
@@ -52,6 +52,7 @@ import org.lineageos.eleven.Config.SmartPlaylistType;
 import org.lineageos.eleven.IElevenService;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ArtworkKey;
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.loaders.AlbumSongLoader;
 import org.lineageos.eleven.loaders.LastAddedLoader;
@@ -61,6 +62,10 @@ import org.lineageos.eleven.loaders.SongLoader;
 import org.lineageos.eleven.loaders.TopTracksLoader;
 import org.lineageos.eleven.locale.LocaleUtils;
 import org.lineageos.eleven.model.AlbumArtistDetails;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.MusicCatalog;
+import org.lineageos.eleven.provider.PlaylistCountStore;
+import org.lineageos.eleven.provider.PlaylistEditor;
 import org.lineageos.eleven.provider.RecentStore;
 import org.lineageos.eleven.provider.SongPlayCount;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
@@ -87,7 +92,6 @@ public final class MusicUtils {
 
     private static final long[] sEmptyList;
     private static final Set<WeakReference<ServiceToken>> sKnownTokens = new HashSet<>();
-    private static ContentValues[] mContentValuesCache = null;
 
     private static final int MIN_VALID_YEAR = 1900; // used to remove invalid years from metadata
 
@@ -689,6 +693,22 @@ public final class MusicUtils {
         return 0;
     }
 
+    /**
+     * @param ids The IDs of the tracks to remove.
+     * @return the number of tracks removed from the queue.
+     */
+    public static int removeTracks(final long[] ids) {
+        IElevenService service = getService();
+        try {
+            if (service != null) {
+                return service.removeTrackIds(ids);
+            }
+        } catch (final RemoteException exc) {
+            Log.e(TAG, "removeTracks(" + Arrays.toString(ids) + ")", exc);
+        }
+        return 0;
+    }
+
     /**
      * Remove song at a specified position in the list
      *
@@ -942,24 +962,6 @@ public final class MusicUtils {
         }
     }
 
-    public static void makeInsertItems(final long[] ids, final int offset, int len,
-                                       final int base) {
-        if (offset + len > ids.length) {
-            len = ids.length - offset;
-        }
-
-        if (mContentValuesCache == null || mContentValuesCache.length != len) {
-            mContentValuesCache = new ContentValues[len];
-        }
-        for (int i = 0; i < len; i++) {
-            if (mContentValuesCache[i] == null) {
-                mContentValuesCache[i] = new ContentValues();
-            }
-            mContentValuesCache[i].put(Playlists.Members.PLAY_ORDER, base + offset + i);
-            mContentValuesCache[i].put(Playlists.Members.AUDIO_ID, ids[offset + i]);
-        }
-    }
-
     /**
      * @param context The {@link Context} to use.
      * @param name    The name of the new playlist.
@@ -998,6 +1000,7 @@ public final class MusicUtils {
     public static void clearPlaylist(final Context context, final int playlistId) {
         final Uri uri = MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId);
         context.getContentResolver().delete(uri, null, null);
+        PlaylistCountStore.getInstance(context).invalidate(playlistId);
     }
 
     /**
@@ -1029,25 +1032,7 @@ public final class MusicUtils {
      */
     public static void addToPlaylist(final Context context, final long[] ids,
                                      final long playlistid) {
-        final int size = ids.length;
-        final ContentResolver resolver = context.getContentResolver();
-        final String[] projection = new String[]{
-                "max(" + Playlists.Members.PLAY_ORDER + ")",
-        };
-        final Uri uri = MediaStore.Audio.Playlists.Members.getContentUri("external", playlistid);
-
-        int base = 0;
-        try (Cursor cursor = resolver.query(uri, projection, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                base = cursor.getInt(0) + 1;
-            }
-        }
-
-        int numinserted = 0;
-        for (int offSet = 0; offSet < size; offSet += 1000) {
-            makeInsertItems(ids, offSet, 1000, base);
-            numinserted += resolver.bulkInsert(uri, mContentValuesCache);
-        }
+        final int numinserted = new PlaylistEditor(context, playlistid).add(ids).apply();
         final String message = context.getResources().getQuantityString(
                 R.plurals.NNNtrackstoplaylist, numinserted, numinserted);
         Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
@@ -1063,11 +1048,7 @@ public final class MusicUtils {
      */
     public static void removeFromPlaylist(final Context context, final long id,
                                           final long playlistId) {
-        final Uri uri = MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId);
-        final ContentResolver resolver = context.getContentResolver();
-        resolver.delete(uri, Playlists.Members.AUDIO_ID + " = ? ", new String[]{
-                Long.toString(id)
-        });
+        new PlaylistEditor(context, playlistId).remove(new long[]{id}).apply();
         final String message = context.getResources().getQuantityString(
                 R.plurals.NNNtracksfromplaylist, 1, 1);
         Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
@@ -1176,39 +1157,17 @@ public final class MusicUtils {
     }
 
     public static AlbumArtistDetails getAlbumArtDetails(final Context context, final long trackId) {
-        String selection = (AudioColumns.IS_MUSIC + "=1") +
-                " AND " + BaseColumns._ID + " = '" + trackId + "'";
-
-        final Cursor cursor = context.getContentResolver().query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                new String[]{
-                        /* 0 */
-                        MediaStore.Audio.AudioColumns.ALBUM_ID,
-                        /* 1 */
-                        MediaStore.Audio.AudioColumns.ALBUM,
-                        /* 2 */
-                        MediaStore.Audio.AlbumColumns.ARTIST,
-                }, selection, null, null
-        );
-
-        if (cursor == null) {
+        final Song song = MusicCatalog.getInstance(context).getSong(trackId);
+        if (song == null) {
             return null;
         }
 
-        try {
-            if (!cursor.moveToFirst()) {
-                return null;
-            }
-
-            final AlbumArtistDetails result = new AlbumArtistDetails();
-            result.mAudioId = trackId;
-            result.mAlbumId = cursor.getLong(0);
-            result.mAlbumName = cursor.getString(1);
-            result.mArtistName = cursor.getString(2);
-            return result;
-        } finally {
-            cursor.close();
-        }
+        final AlbumArtistDetails result = new AlbumArtistDetails();
+        result.mAudioId = trackId;
+        result.mAlbumId = song.mAlbumId;
+        result.mAlbumName = song.mAlbumName;
+        result.mArtistName = song.mArtistName;
+        return result;
     }
 
     /**
@@ -1616,7 +1575,7 @@ public final class MusicUtils {
     @WorkerThread
     public static void removeFromCache(FragmentActivity activity, String key) {
         ImageFetcher imageFetcher = ElevenUtils.getImageFetcher(activity);
-        imageFetcher.removeFromCache(key);
+        imageFetcher.removeFromCache(ArtworkKey.of(key));
 
         // Give the disk cache a little time before requesting a new image.
         // TODO: this is bad
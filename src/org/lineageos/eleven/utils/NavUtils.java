@@ -84,6 +84,33 @@ public final class NavUtils {
         context.startActivity(intent);
     }
 
+    /**
+     * Opens the search
+     *
+     * @param context The {@link Activity} to use.
+     */
+    public static void openSearch(final Activity context) {
+        final Intent intent = new Intent(context, HomeActivity.class);
+        intent.setAction(HomeActivity.ACTION_VIEW_SEARCH);
+        context.startActivity(intent);
+    }
+
+    /**
+     * Opens a folder of the folder browser
+     *
+     * @param context The {@link Activity} to use.
+     * @param path    the path of the folder or null for the top folder
+     * @param name    the name shown for the folder or null for the top folder
+     */
+    public static void openFolder(final Activity context, final String path,
+                                  final String name) {
+        final Intent intent = new Intent(context, HomeActivity.class);
+        intent.setAction(HomeActivity.ACTION_VIEW_FOLDER);
+        intent.putExtra(Config.FOLDER_PATH, path);
+        intent.putExtra(Config.NAME, name);
+        context.startActivity(intent);
+    }
+
     public static void openSmartPlaylist(final Activity context,
                                          final Config.SmartPlaylistType type) {
         // Create the intent to launch the profile activity
@@ -93,6 +120,22 @@ public final class NavUtils {
         context.startActivity(intent);
     }
 
+    /**
+     * Opens a smart playlist the user defined
+     *
+     * @param context      The {@link Activity} to use.
+     * @param playlistId   the id of the playlist
+     * @param playlistName the playlist name
+     */
+    public static void openSmartPlaylist(final Activity context, final long playlistId,
+                                         final String playlistName) {
+        final Intent intent = new Intent(context, HomeActivity.class);
+        intent.setAction(HomeActivity.ACTION_VIEW_SMART_PLAYLIST);
+        intent.putExtra(Config.SMART_PLAYLIST_TYPE, playlistId);
+        intent.putExtra(Config.NAME, playlistName);
+        context.startActivity(intent);
+    }
+
     /**
      * Opens the playlist view
      *
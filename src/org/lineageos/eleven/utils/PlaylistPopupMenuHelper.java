@@ -21,13 +21,19 @@ import android.app.AlertDialog;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.MediaStore;
+import android.view.MenuItem;
 
 import androidx.fragment.app.FragmentManager;
 
 import org.lineageos.eleven.Config;
 import org.lineageos.eleven.Config.SmartPlaylistType;
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.menu.FragmentMenuItems;
 import org.lineageos.eleven.model.Playlist;
+import org.lineageos.eleven.provider.SmartPlaylistStore;
+import org.lineageos.eleven.ui.activities.HomeActivity;
+
+import java.util.TreeSet;
 
 public abstract class PlaylistPopupMenuHelper extends PopupMenuHelper {
     private Playlist mPlaylist;
@@ -69,6 +75,10 @@ public abstract class PlaylistPopupMenuHelper extends PopupMenuHelper {
             final Config.SmartPlaylistType type = SmartPlaylistType.getTypeById(getSourceId());
             if (type != null) {
                 return MusicUtils.getSongListForSmartPlaylist(mActivity, type);
+            } else if (SmartPlaylistStore.isSmartPlaylist(getSourceId())) {
+                // running the rules could take a while, use the songs they matched last
+                return SmartPlaylistStore.getInstance(mActivity).getStoredSongIds(
+                        getSourceId());
             }
         } else {
             return MusicUtils.getSongListForPlaylist(mActivity, getSourceId());
@@ -76,6 +86,31 @@ public abstract class PlaylistPopupMenuHelper extends PopupMenuHelper {
         return new long[0];
     }
 
+    @Override
+    protected void updateMenuIds(PopupMenuType type, TreeSet<Integer> set) {
+        super.updateMenuIds(type, set);
+
+        // smart playlists the user defined can be deleted like playlists
+        if (SmartPlaylistStore.isSmartPlaylist(mPlaylist.mPlaylistId)) {
+            set.add(FragmentMenuItems.DELETE);
+        }
+    }
+
+    @Override
+    public boolean onMenuItemClick(MenuItem item) {
+        boolean handled = super.onMenuItemClick(item);
+        if (!handled && item.getGroupId() == getGroupId()) {
+            if (item.getItemId() == FragmentMenuItems.EXPORT_PLAYLIST
+                    && mActivity instanceof HomeActivity) {
+                ((HomeActivity) mActivity).exportPlaylist(mPlaylist.mPlaylistId,
+                        mPlaylist.mPlaylistName);
+                return true;
+            }
+        }
+
+        return handled;
+    }
+
     @Override
     protected void onDeleteClicked() {
         // TODO: do this with a proper DialogFragment
@@ -98,6 +133,11 @@ public abstract class PlaylistPopupMenuHelper extends PopupMenuHelper {
         return new AlertDialog.Builder(mActivity)
                 .setTitle(mActivity.getString(R.string.delete_dialog_title, playlistName))
                 .setPositiveButton(R.string.context_menu_delete, (dialog, which) -> {
+                    if (SmartPlaylistStore.isSmartPlaylist(playlistId)) {
+                        // refreshes the lists once the playlist is gone
+                        SmartPlaylistStore.getInstance(mActivity).delete(playlistId);
+                        return;
+                    }
                     final Uri mUri = ContentUris.withAppendedId(
                             MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI,
                             playlistId);
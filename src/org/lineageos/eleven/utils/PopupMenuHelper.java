@@ -236,6 +236,7 @@ public abstract class PopupMenuHelper implements PopupMenu.OnMenuItemClickListen
                         FragmentMenuItems.PLAY_SELECTION,
                         FragmentMenuItems.ADD_TO_QUEUE,
                         FragmentMenuItems.RENAME_PLAYLIST,
+                        FragmentMenuItems.EXPORT_PLAYLIST,
                         FragmentMenuItems.DELETE,
                 };
             case SmartPlaylist:
@@ -304,6 +305,8 @@ public abstract class PopupMenuHelper implements PopupMenu.OnMenuItemClickListen
                 return R.string.new_playlist;
             case FragmentMenuItems.RENAME_PLAYLIST:
                 return R.string.context_menu_rename_playlist;
+            case FragmentMenuItems.EXPORT_PLAYLIST:
+                return R.string.context_menu_export_playlist;
             case FragmentMenuItems.PLAYLIST_SELECTED:
                 return 0; // no string here expected
             case FragmentMenuItems.MORE_BY_ARTIST:
@@ -22,9 +22,10 @@ import android.text.TextUtils;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.model.Artist;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.CatalogList;
+import org.lineageos.eleven.sectionadapter.SectionIndex;
 
 import java.util.List;
-import java.util.TreeMap;
 
 /**
  * This Utils class contains code that compares two different items and determines whether
@@ -36,16 +37,6 @@ public class SectionCreatorUtils {
         Footer
     }
 
-    public static class Section {
-        public final SectionType mType;
-        public final String mIdentifier;
-
-        public Section(final SectionType type, final String identifier) {
-            mType = type;
-            mIdentifier = identifier;
-        }
-    }
-
     /**
      * Interface to compare two items and create labels
      *
@@ -127,6 +118,11 @@ public class SectionCreatorUtils {
         protected final Context mContext;
         private boolean mStopSectionCreation;
 
+        // sections are created pairwise, so remember the label of the last second item to
+        // avoid a second bucket lookup when it becomes the first item of the next pair
+        private T mLastItem;
+        private String mLastLabel;
+
         public LocalizedCompare(Context context) {
             mContext = context;
             mStopSectionCreation = false;
@@ -134,7 +130,12 @@ public class SectionCreatorUtils {
 
         @Override
         public String createSectionHeader(T first, T second) {
+            final String firstLabel = first == null ? null
+                    : first == mLastItem ? mLastLabel : createHeaderLabel(first);
             String secondLabel = createHeaderLabel(second);
+            mLastItem = second;
+            mLastLabel = secondLabel;
+
             // if we can't determine a good label then don't bother creating a section
             if (secondLabel == null) {
                 // stop section creation as the items further down the list
@@ -142,7 +143,7 @@ public class SectionCreatorUtils {
                 return null;
             }
 
-            if (first == null || !secondLabel.equals(createHeaderLabel(first))) {
+            if (first == null || !secondLabel.equals(firstLabel)) {
                 return secondLabel;
             }
 
@@ -350,43 +351,106 @@ public class SectionCreatorUtils {
      * @param list       The list of items to analyze
      * @param comparator The comparison function to use
      * @param <T>        the type of item to compare
-     * @return Creates a TreeMap of indices (if the headers were part of the list) to section labels
+     * @return Creates an index of positions (if the headers were part of the list) to section
+     * labels
      */
-    public static <T> TreeMap<Integer, Section> createSections(final List<T> list,
-                                                               final IItemCompare<T> comparator) {
+    @SuppressWarnings("unchecked")
+    public static <T> SectionIndex createSections(final List<T> list,
+                                                  final IItemCompare<T> comparator) {
+        if (list instanceof CatalogList && comparator instanceof LocalizedCompare
+                && ((CatalogList<T>) list).getBucketLabels() != null) {
+            return createSections((CatalogList<T>) list, (LocalizedCompare<T>) comparator);
+        }
+
         if (list != null && list.size() > 0) {
-            TreeMap<Integer, Section> sections = new TreeMap<>();
-            for (int i = 0; i < list.size() + 1; i++) {
-                T first = (i == 0 ? null : list.get(i - 1));
-                T second = (i == list.size() ? null : list.get(i));
-
-                // create the footer first because if we need both it should be footer,header,item
-                // not header,footer,item
-                if (first != null) {
-                    String footer = comparator.createSectionFooter(first, second, list, i - 1);
-                    if (footer != null) {
-                        // add sectionHeaders.size() to store the indices of the combined list
-                        sections.put(i, new Section(SectionType.Footer, footer));
-                    }
+            final SectionIndex.Builder sections = new SectionIndex.Builder();
+            appendSections(sections, list, 0, comparator);
+            return sections.build();
+        }
+
+        return null;
+    }
+
+    /**
+     * Appends the sections for the items starting at {@code start} to the builder. This can be
+     * called again as more items are added to the list, the sections up to {@code start} are
+     * kept and only the new items are compared.
+     *
+     * @param sections   The builder to append to
+     * @param list       The list of items to analyze
+     * @param start      The index of the first item that hasn't been analyzed yet
+     * @param comparator The comparison function to use
+     * @param <T>        the type of item to compare
+     * @return false if the comparator requested to stop creating sections
+     */
+    public static <T> boolean appendSections(final SectionIndex.Builder sections,
+                                             final List<T> list, final int start,
+                                             final IItemCompare<T> comparator) {
+        for (int i = start; i < list.size() + 1; i++) {
+            T first = (i == 0 ? null : list.get(i - 1));
+            T second = (i == list.size() ? null : list.get(i));
+
+            // create the footer first because if we need both it should be footer,header,item
+            // not header,footer,item
+            if (first != null) {
+                String footer = comparator.createSectionFooter(first, second, list, i - 1);
+                if (footer != null) {
+                    sections.append(i, SectionType.Footer, footer);
                 }
+            }
 
-                if (second != null) {
-                    String header = comparator.createSectionHeader(first, second, list, i - 1);
-                    if (header != null) {
-                        // add sectionHeaders.size() to store the indices of the combined list
-                        sections.put(i, new Section(SectionType.Header, header));
-                        // stop section creation
-                        if (comparator.shouldStopSectionCreation()) {
-                            break;
-                        }
+            if (second != null) {
+                String header = comparator.createSectionHeader(first, second, list, i - 1);
+                if (header != null) {
+                    sections.append(i, SectionType.Header, header);
+                    // stop section creation
+                    if (comparator.shouldStopSectionCreation()) {
+                        return false;
                     }
                 }
             }
+        }
+
+        return true;
+    }
 
-            return sections;
+    /**
+     * Creates the sections of a localized sort straight from the bucket labels of the list, so
+     * items only need to be created for the rare rows without a bucket label
+     *
+     * @param list       The list of items to analyze
+     * @param comparator The comparison function to use
+     * @param <T>        the type of item to compare
+     * @return Creates an index of positions to section labels
+     */
+    private static <T> SectionIndex createSections(final CatalogList<T> list,
+                                                   final LocalizedCompare<T> comparator) {
+        if (list.isEmpty()) {
+            return null;
         }
 
-        return null;
+        final String[] bucketLabels = list.getBucketLabels();
+        final SectionIndex.Builder sections = new SectionIndex.Builder();
+        String previousLabel = null;
+        for (int i = 0; i < bucketLabels.length; i++) {
+            // identical bucket labels are the same interned instance
+            final String label = bucketLabels[i] == null
+                    ? comparator.createHeaderLabel(list.get(i))
+                    : i > 0 && bucketLabels[i] == bucketLabels[i - 1]
+                    ? previousLabel
+                    : comparator.createHeaderLabel(bucketLabels[i]);
+            if (label == null) {
+                // same as LocalizedCompare, stop once we can't determine a good label
+                break;
+            }
+
+            if (!label.equals(previousLabel)) {
+                sections.append(i, SectionType.Header, label);
+            }
+            previousLabel = label;
+        }
+
+        return sections.build();
     }
 
     /**
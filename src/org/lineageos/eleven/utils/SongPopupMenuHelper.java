@@ -44,6 +44,13 @@ public abstract class SongPopupMenuHelper extends PopupMenuHelper {
             return null;
         }
 
+        return getPopupMenuType();
+    }
+
+    /**
+     * @return the type of pop up menu to show for a song
+     */
+    protected PopupMenuType getPopupMenuType() {
         return PopupMenuType.Song;
     }
 
@@ -18,14 +18,14 @@ package org.lineageos.eleven.utils.colors;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.os.Looper;
-import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.palette.graphics.Palette;
 
+import org.lineageos.eleven.provider.AlbumColorStore;
+
 public class BitmapWithColors {
-    private static final class BitmapColors {
+    public static final class BitmapColors {
         public final int mVibrantColor;
         public final int mVibrantDarkColor;
         public final int mVibrantLightColor;
@@ -39,10 +39,15 @@ public class BitmapWithColors {
         }
 
         public BitmapColors(int vibrantColor, int vibrantDarkColor) {
+            this(vibrantColor, vibrantDarkColor, Color.TRANSPARENT, vibrantColor);
+        }
+
+        public BitmapColors(int vibrantColor, int vibrantDarkColor, int vibrantLightColor,
+                            int dominantColor) {
             mVibrantColor = vibrantColor;
             mVibrantDarkColor = vibrantDarkColor;
-            mVibrantLightColor = Color.TRANSPARENT;
-            mDominantColor = vibrantColor;
+            mVibrantLightColor = vibrantLightColor;
+            mDominantColor = dominantColor;
         }
 
         private int determineColor(Palette.Swatch swatch) {
@@ -69,28 +74,35 @@ public class BitmapWithColors {
         }
     }
 
-    private static final int CACHE_SIZE_MAX = 20;
-    private static final LruCache<Integer, BitmapColors> sCachedColors =
-            new LruCache<>(CACHE_SIZE_MAX);
-
     private final Bitmap mBitmap;
     private final int mBitmapKey;
+    private final AlbumColorStore mColorStore;
+    private final String mArtworkId;
+    private final long mAlbumId;
     private BitmapColors mColors;
 
-    public BitmapWithColors(Bitmap bitmap, int bitmapKey) {
+    /**
+     * @param bitmap     the album artwork
+     * @param bitmapKey  identifies the bitmap
+     * @param colorStore the store the colors of the artwork are looked up in when needed
+     * @param artworkId  identifies the artwork in the color store
+     * @param albumId    the album of the artwork
+     */
+    public BitmapWithColors(Bitmap bitmap, int bitmapKey, AlbumColorStore colorStore,
+                            String artworkId, long albumId) {
         mBitmap = bitmap;
         mBitmapKey = bitmapKey;
-
-        if (Thread.currentThread() != Looper.getMainLooper().getThread()) {
-            // we're already running in background, so do the
-            // (costly) palette initialization immediately
-            loadColorsIfNeeded();
-        }
+        mColorStore = colorStore;
+        mArtworkId = artworkId;
+        mAlbumId = albumId;
     }
 
     public BitmapWithColors(Bitmap bitmap, int bitmapKey, int vibrantColor, int vibrantDarkColor) {
         mBitmap = bitmap;
         mBitmapKey = bitmapKey;
+        mColorStore = null;
+        mArtworkId = null;
+        mAlbumId = -1;
         mColors = new BitmapColors(vibrantColor, vibrantDarkColor);
     }
 
@@ -99,7 +111,7 @@ public class BitmapWithColors {
     }
 
     public int getVibrantColor() {
-        loadColorsIfNeeded();
+        loadColors();
         if (mColors.mVibrantColor == Color.TRANSPARENT) {
             return mColors.mVibrantDarkColor;
         }
@@ -107,7 +119,7 @@ public class BitmapWithColors {
     }
 
     public int getVibrantDarkColor() {
-        loadColorsIfNeeded();
+        loadColors();
         if (mColors.mVibrantDarkColor == Color.TRANSPARENT) {
             return mColors.mVibrantColor;
         }
@@ -115,7 +127,7 @@ public class BitmapWithColors {
     }
 
     public int getContrastingColor() {
-        loadColorsIfNeeded();
+        loadColors();
 
         float contrastToDark = computeContrastBetweenColors(mColors.mDominantColor,
                 mColors.mVibrantDarkColor);
@@ -168,23 +180,13 @@ public class BitmapWithColors {
         return Math.abs((fgL + 0.05f) / (bgL + 0.05f));
     }
 
-    private synchronized void loadColorsIfNeeded() {
-        if (mColors != null) {
-            return;
-        }
-
-        synchronized (sCachedColors) {
-            mColors = sCachedColors.get(mBitmapKey);
-        }
-        if (mColors != null) {
-            return;
-        }
-
-        final Palette p = Palette.from(mBitmap).generate();
-
-        mColors = new BitmapColors(p);
-        synchronized (sCachedColors) {
-            sCachedColors.put(mBitmapKey, mColors);
+    /**
+     * Looks the colors up now, so the color getters don't have to on the main thread.  They
+     * are only extracted from the artwork the first time it is seen.
+     */
+    public synchronized void loadColors() {
+        if (mColors == null) {
+            mColors = mColorStore.getColors(mArtworkId, mAlbumId, mBitmap);
         }
     }
 
@@ -16,54 +16,71 @@
  */
 package org.lineageos.eleven.utils.colors;
 
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.utils.MusicUtils;
 
+/**
+ * Looks up the colors of the current artwork on a background thread.  The colors come from
+ * {@link org.lineageos.eleven.provider.AlbumColorStore}, so they are only extracted the first
+ * time an artwork is played.
+ */
 public class ColorExtractor {
+    private static final String TAG = ColorExtractor.class.getSimpleName();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static Handler sHandler = null;
+
     public interface Callback {
         void onColorExtracted(final BitmapWithColors bitmapWithColors);
     }
 
+    private static synchronized Handler getHandler() {
+        if (sHandler == null) {
+            final HandlerThread thread = new HandlerThread(TAG,
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sHandler = new Handler(thread.getLooper());
+        }
+        return sHandler;
+    }
+
     public static void extractColors(final ImageFetcher imageFetcher,
                                      final ColorExtractor.Callback callback) {
-        new ColorExtractionTask(imageFetcher, callback).execute();
+        if (callback == null) {
+            return;
+        }
+        final Handler handler = getHandler();
+        // skipping tracks quickly only looks up the colors of the last one
+        handler.removeCallbacksAndMessages(callback);
+        handler.postAtTime(() -> {
+            final BitmapWithColors bitmapWithColors = getColors(imageFetcher);
+            sMainHandler.post(() -> callback.onColorExtracted(bitmapWithColors));
+        }, callback, SystemClock.uptimeMillis());
     }
 
-    private static class ColorExtractionTask extends AsyncTask<Void, Void, BitmapWithColors> {
-        private final ImageFetcher imageFetcher;
-        private final ColorExtractor.Callback callback;
-
-        ColorExtractionTask(final ImageFetcher imageFetcher,
-                            final ColorExtractor.Callback callback) {
-            this.imageFetcher = imageFetcher;
-            this.callback = callback;
+    private static BitmapWithColors getColors(final ImageFetcher imageFetcher) {
+        if (imageFetcher == null) {
+            return null;
         }
+        final String albumName = MusicUtils.getAlbumName();
+        final long albumId = MusicUtils.getCurrentAlbumId();
+        final String artistName = MusicUtils.getArtistName();
 
-        @Override
-        protected BitmapWithColors doInBackground(Void... voids) {
-            if (imageFetcher == null) {
-                return null;
-            }
-            final String albumName = MusicUtils.getAlbumName();
-            final long albumId = MusicUtils.getCurrentAlbumId();
-            final String artistName = MusicUtils.getArtistName();
-
-            // We are not playing anything, return null. Otherwise we will
-            // potentially override any default colors.
-            if (albumName == null && artistName == null && albumId == -1) {
-                return null;
-            }
-
-            return imageFetcher.getArtwork(albumName, albumId, true);
+        // We are not playing anything, return null. Otherwise we will
+        // potentially override any default colors.
+        if (albumName == null && artistName == null && albumId == -1) {
+            return null;
         }
 
-        @Override
-        protected void onPostExecute(final BitmapWithColors bitmapWithColors) {
-            if (callback != null) {
-                callback.onColorExtracted(bitmapWithColors);
-            }
-        }
+        final BitmapWithColors bitmapWithColors =
+                imageFetcher.getArtwork(albumName, artistName, albumId, true);
+        bitmapWithColors.loadColors();
+        return bitmapWithColors;
     }
 }
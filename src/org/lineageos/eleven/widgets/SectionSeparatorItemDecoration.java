@@ -24,20 +24,18 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.text.StaticLayout;
 import android.text.TextPaint;
-import android.util.SparseArray;
 import android.view.View;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.R;
-import org.lineageos.eleven.utils.SectionCreatorUtils;
-
-import java.util.TreeMap;
+import org.lineageos.eleven.sectionadapter.SectionIndex;
 
 public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration {
 
-    private final SparseArray<StaticLayout> mLabels;
+    private final SectionIndex mSections;
+    private final StaticLayout[] mLabels;
     private final TextPaint mPaint;
     private final int mTextWidth;
     private final int mDecorHeight;
@@ -45,8 +43,7 @@ public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration
     private final int mVerticalPadding;
     private final float mVerticalBias;
 
-    public SectionSeparatorItemDecoration(Context context,
-                                          TreeMap<Integer, SectionCreatorUtils.Section> items) {
+    public SectionSeparatorItemDecoration(Context context, SectionIndex sections) {
         mPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
 
         TypedArray attrs = context.obtainStyledAttributes(
@@ -79,18 +76,22 @@ public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration
         mVerticalBias = bias;
 
         attrs.recycle();
-        mLabels = buildLabels(items);
+        mSections = sections;
+        // sections sharing a label share the layout, which is built once it is first drawn
+        mLabels = new StaticLayout[sections.getLabelCount()];
     }
 
-    private SparseArray<StaticLayout> buildLabels(TreeMap<Integer,
-            SectionCreatorUtils.Section> items) {
-        SparseArray<StaticLayout> sparseArray = new SparseArray<>();
-        items.forEach((index, section) -> {
-            String text = section.mIdentifier;
-            StaticLayout label = newStaticLayout(text);
-            sparseArray.put(index, label);
-        });
-        return sparseArray;
+    private StaticLayout getLabel(int position) {
+        int section = mSections.indexOfPosition(position);
+        if (section < 0) {
+            return null;
+        }
+
+        int labelId = mSections.getLabelId(section);
+        if (mLabels[labelId] == null) {
+            mLabels[labelId] = newStaticLayout(mSections.getLabel(section));
+        }
+        return mLabels[labelId];
     }
 
     @Override
@@ -112,7 +113,7 @@ public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration
             View child = parent.getChildAt(i);
             if (child != null && child.getTop() < parent.getHeight() && child.getBottom() > 0) {
                 // Child is visible
-                StaticLayout layout = mLabels.get(parent.getChildAdapterPosition(child), null);
+                StaticLayout layout = getLabel(parent.getChildAdapterPosition(child));
                 if (layout != null) {
                     float dy = mVerticalPadding +
                             layoutManager.getDecoratedTop(child) +
@@ -135,6 +136,6 @@ public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration
     }
 
     private boolean hasLabel(int position) {
-        return mLabels.indexOfKey(position) > -1;
+        return mSections.indexOfPosition(position) >= 0;
     }
 }